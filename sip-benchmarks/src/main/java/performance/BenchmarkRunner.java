@@ -0,0 +1,206 @@
+package performance;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs the benchmarks of the stack with settings short enough for a CI build,
+ * saves their scores and compares them with the scores of a previous run, so
+ * that a performance regression fails the build.
+ *
+ * The JMH options and benchmark patterns are passed through, for instance:
+ * <pre>
+ * java -cp sip-benchmarks-with-dependencies.jar performance.BenchmarkRunner \
+ *     --output scores.csv --baseline baseline-scores.csv --tolerance 0.15 \
+ *     StringMsgParserBenchmark SIPTransactionStackBenchmark
+ * </pre>
+ *
+ * Each line of the scores file holds a benchmark with its parameters, its
+ * mode, its score and the unit of the score. A benchmark is a regression when
+ * its score is worse than the one of the baseline by more than the tolerance,
+ * 10% by default; the runner then exits with 1. The benchmarks missing from
+ * the baseline are only reported.
+ */
+public class BenchmarkRunner {
+
+    private static final double DEFAULT_TOLERANCE = 0.10;
+
+    public static void main(String[] args) throws IOException {
+        String output = null;
+        String baseline = null;
+        double tolerance = DEFAULT_TOLERANCE;
+        List<String> jmhArgs = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if ("--output".equals(args[i]) && i + 1 < args.length) {
+                output = args[++i];
+            } else if ("--baseline".equals(args[i]) && i + 1 < args.length) {
+                baseline = args[++i];
+            } else if ("--tolerance".equals(args[i]) && i + 1 < args.length) {
+                tolerance = Double.parseDouble(args[++i]);
+            } else {
+                jmhArgs.add(args[i]);
+            }
+        }
+
+        Collection<RunResult> results;
+        try {
+            results = new Runner(createOptions(jmhArgs.toArray(new String[jmhArgs.size()]))).run();
+        } catch (CommandLineOptionException e) {
+            System.err.println("Bad JMH options: " + e.getMessage());
+            System.exit(2);
+            return;
+        } catch (RunnerException e) {
+            e.printStackTrace();
+            System.exit(2);
+            return;
+        }
+
+        Map<String, Score> scores = new LinkedHashMap<String, Score>();
+        for (RunResult result : results) {
+            Result<?> primaryResult = result.getPrimaryResult();
+            BenchmarkParams params = result.getParams();
+            scores.put(getKey(params), new Score(params.getMode(), primaryResult.getScore(), primaryResult.getScoreUnit()));
+        }
+        if (output != null) {
+            writeScores(output, scores);
+        }
+        if (baseline != null && compare(readScores(baseline), scores, tolerance) > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static Options createOptions(String[] args) throws CommandLineOptionException {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLineOptions);
+        if (commandLineOptions.getIncludes().isEmpty()) {
+            options.include("performance\\..*Benchmark");
+        }
+        // enough to tell a regression apart from the noise of a CI machine
+        if (!commandLineOptions.getWarmupIterations().hasValue()) {
+            options.warmupIterations(3);
+        }
+        if (!commandLineOptions.getWarmupTime().hasValue()) {
+            options.warmupTime(TimeValue.seconds(1));
+        }
+        if (!commandLineOptions.getMeasurementIterations().hasValue()) {
+            options.measurementIterations(5);
+        }
+        if (!commandLineOptions.getMeasurementTime().hasValue()) {
+            options.measurementTime(TimeValue.seconds(1));
+        }
+        if (!commandLineOptions.getForkCount().hasValue()) {
+            options.forks(1);
+        }
+        return options.build();
+    }
+
+    private static String getKey(BenchmarkParams params) {
+        String benchmark = params.getBenchmark();
+        StringBuilder key = new StringBuilder(benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1));
+        if (!params.getParamsKeys().isEmpty()) {
+            char separator = '[';
+            for (String name : params.getParamsKeys()) {
+                key.append(separator).append(name).append('=').append(params.getParam(name));
+                separator = ';';
+            }
+            key.append(']');
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return the number of regressions
+     */
+    private static int compare(Map<String, Score> baseline, Map<String, Score> scores, double tolerance) {
+        int regressions = 0;
+        for (Map.Entry<String, Score> entry : scores.entrySet()) {
+            Score score = entry.getValue();
+            Score baselineScore = baseline.get(entry.getKey());
+            if (baselineScore == null || baselineScore.mode != score.mode || !baselineScore.unit.equals(score.unit)) {
+                System.out.println("NEW        " + entry.getKey() + " " + score);
+                continue;
+            }
+            // the throughput has to stay high, the times low
+            double change = score.mode == Mode.Throughput ? (baselineScore.value - score.value) / baselineScore.value
+                    : (score.value - baselineScore.value) / baselineScore.value;
+            String status = "OK        ";
+            if (change > tolerance) {
+                status = "REGRESSION";
+                regressions++;
+            }
+            System.out.println(status + " " + entry.getKey() + " " + score + " (baseline " + baselineScore + ", "
+                    + String.format("%+.1f%%", -change * 100) + ")");
+        }
+        System.out.println(regressions + " regressions above " + String.format("%.0f%%", tolerance * 100));
+        return regressions;
+    }
+
+    private static void writeScores(String file, Map<String, Score> scores) throws IOException {
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+        try {
+            for (Map.Entry<String, Score> entry : scores.entrySet()) {
+                Score score = entry.getValue();
+                writer.println(entry.getKey() + "," + score.mode.shortLabel() + "," + score.value + "," + score.unit);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static Map<String, Score> readScores(String file) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<String, Score>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String[] fields = line.split(",");
+                if (fields.length == 4) {
+                    scores.put(fields[0], new Score(Mode.deepValueOf(fields[1]), Double.parseDouble(fields[2]), fields[3]));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return scores;
+    }
+
+    private static class Score {
+        private final Mode mode;
+        private final double value;
+        private final String unit;
+
+        private Score(Mode mode, double value, String unit) {
+            this.mode = mode;
+            this.value = value;
+            this.unit = unit;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.3f %s", value, unit);
+        }
+    }
+}
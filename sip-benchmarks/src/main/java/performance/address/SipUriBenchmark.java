@@ -0,0 +1,69 @@
+package performance.address;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.nist.javax.sip.address.GenericURI;
+import gov.nist.javax.sip.address.SipUri;
+import gov.nist.javax.sip.parser.URLParser;
+
+/**
+ * JMH benchmark of the parsing and the encoding of the SIP URIs found in the
+ * Request-URI, the Contact and the Route headers, from a bare address of
+ * record to a URI carrying parameters and headers.
+ *
+ * Run it from the sip-benchmarks jar with dependencies:
+ * <pre>
+ * java -cp sip-benchmarks-with-dependencies.jar org.openjdk.jmh.Main SipUriBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SipUriBenchmark {
+
+    @Param({ "AOR", "CONTACT", "ROUTE", "FULL" })
+    public String uri;
+
+    private String text;
+    private SipUri sipUri;
+
+    @Setup
+    public void setup() throws ParseException {
+        if ("AOR".equals(uri)) {
+            text = "sip:bob@biloxi.example.com";
+        } else if ("CONTACT".equals(uri)) {
+            text = "sip:bob@192.0.2.201:5060;transport=tcp;ob";
+        } else if ("ROUTE".equals(uri)) {
+            text = "sip:bigbox3.site3.atlanta.example.com;lr";
+        } else {
+            text = "sips:+15551234567;npdi;rn=+15550000000@gateway.biloxi.example.com:5061;user=phone;maddr=192.0.2.3;ttl=15;method=INVITE?Subject=benchmark&Priority=urgent";
+        }
+        sipUri = (SipUri) new URLParser(text).parse();
+    }
+
+    @Benchmark
+    public GenericURI parse() throws ParseException {
+        return new URLParser(text).parse();
+    }
+
+    @Benchmark
+    public String encode() {
+        return sipUri.encode();
+    }
+}
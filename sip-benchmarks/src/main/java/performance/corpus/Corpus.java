@@ -0,0 +1,99 @@
+package performance.corpus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.parser.StringMsgParser;
+
+/**
+ * Representative messages of a call, a registration and a subscription, used
+ * by the benchmarks so that their results can be compared with each other and
+ * from one build to the next.
+ *
+ * The messages are kept in performance/corpus/*.sip with plain line feeds and
+ * without their Content-Length, which are fixed when they are loaded, so that
+ * they can be edited without caring about either.
+ */
+public final class Corpus {
+
+    public static final String INVITE = "INVITE";
+    public static final String OK = "OK";
+    public static final String ACK = "ACK";
+    public static final String BYE = "BYE";
+    public static final String REGISTER = "REGISTER";
+    public static final String SUBSCRIBE = "SUBSCRIBE";
+    public static final String NOTIFY = "NOTIFY";
+
+    /**
+     * Names of the messages of the corpus, as the values of the message
+     * parameter of the benchmarks.
+     */
+    public static final String[] MESSAGES = { INVITE, OK, ACK, BYE, REGISTER, SUBSCRIBE, NOTIFY };
+
+    private static final String CONTENT_LENGTH = "Content-Length:";
+
+    private Corpus() {
+    }
+
+    /**
+     * @param name one of the MESSAGES
+     * @return the message as sent on the wire, with CRLF line endings and the
+     *         length of its body in its Content-Length
+     */
+    public static byte[] getBytes(String name) {
+        String resource = "/performance/corpus/" + name.toLowerCase() + ".sip";
+        InputStream in = Corpus.class.getResourceAsStream(resource);
+        if (in == null) {
+            throw new IllegalArgumentException("No message " + name + " in the corpus");
+        }
+        String text;
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+            text = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can not read " + resource, e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+            }
+        }
+
+        text = text.replace("\r\n", "\n");
+        int headersEnd = text.indexOf("\n\n");
+        if (headersEnd < 0) {
+            throw new IllegalArgumentException("No empty line after the headers of " + resource);
+        }
+        byte[] body = text.substring(headersEnd + 2).replace("\n", "\r\n").getBytes(StandardCharsets.UTF_8);
+        StringBuilder headers = new StringBuilder();
+        for (String line : text.substring(0, headersEnd).split("\n")) {
+            if (line.regionMatches(true, 0, CONTENT_LENGTH, 0, CONTENT_LENGTH.length())) {
+                line = CONTENT_LENGTH + " " + body.length;
+            }
+            headers.append(line).append("\r\n");
+        }
+        headers.append("\r\n");
+
+        byte[] head = headers.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] message = new byte[head.length + body.length];
+        System.arraycopy(head, 0, message, 0, head.length);
+        System.arraycopy(body, 0, message, head.length, body.length);
+        return message;
+    }
+
+    /**
+     * @param name one of the MESSAGES
+     * @return the message parsed by the StringMsgParser
+     */
+    public static SIPMessage parse(String name) throws ParseException {
+        return new StringMsgParser().parseSIPMessage(getBytes(name), true, false, null);
+    }
+}
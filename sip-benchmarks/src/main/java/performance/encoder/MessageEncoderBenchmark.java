@@ -0,0 +1,92 @@
+package performance.encoder;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.parser.NettyMessageParser;
+import gov.nist.javax.sip.stack.transports.processors.netty.NettyMessageEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+/**
+ * JMH benchmark comparing the encoding of an outgoing message through
+ * encodeAsBytes and a wrapped buffer, as the Netty channels used to do, with
+ * the NettyMessageEncoder writing into pooled buffers.
+ *
+ * Run it from the sip-benchmarks jar with dependencies, adding the gc profiler
+ * to get the allocation rate per encoded message :
+ * <pre>
+ * java -cp sip-benchmarks-with-dependencies.jar org.openjdk.jmh.Main MessageEncoderBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageEncoderBenchmark {
+
+    private static final String INVITE = "INVITE sip:bob@biloxi.example.com SIP/2.0\r\n"
+            + "Via: SIP/2.0/UDP client.atlanta.example.com:5060;branch=z9hG4bK74bf9\r\n"
+            + "Max-Forwards: 70\r\n"
+            + "From: Alice <sip:alice@atlanta.example.com>;tag=9fxced76sl\r\n"
+            + "To: Bob <sip:bob@biloxi.example.com>\r\n"
+            + "Call-ID: 3848276298220188511@atlanta.example.com\r\n"
+            + "CSeq: 1 INVITE\r\n"
+            + "Contact: <sip:alice@client.atlanta.example.com;transport=udp>\r\n"
+            + "Allow: INVITE, ACK, CANCEL, OPTIONS, BYE, REFER, NOTIFY, MESSAGE, SUBSCRIBE, INFO\r\n"
+            + "Supported: replaces, timer\r\n"
+            + "User-Agent: Corsac Benchmark\r\n"
+            + "Content-Type: application/sdp\r\n"
+            + "Content-Length: 151\r\n"
+            + "\r\n"
+            + "v=0\r\n"
+            + "o=alice 2890844526 2890844526 IN IP4 client.atlanta.example.com\r\n"
+            + "s=-\r\n"
+            + "c=IN IP4 192.0.2.101\r\n"
+            + "t=0 0\r\n"
+            + "m=audio 49172 RTP/AVP 0\r\n"
+            + "a=rtpmap:0 PCMU/8000\r\n";
+
+    @Param({ "false", "true" })
+    public boolean direct;
+
+    private SIPMessage message;
+
+    @Setup
+    public void setup() throws ParseException {
+        NettyMessageParser parser = new NettyMessageParser(0, false);
+        message = parser.parseBytes(Unpooled.wrappedBuffer(INVITE.getBytes())).consumeSIPMessage();
+    }
+
+    @Benchmark
+    public int encodeAsBytes() {
+        ByteBuf byteBuf = Unpooled.wrappedBuffer(message.encodeAsBytes("UDP"));
+        int length = byteBuf.readableBytes();
+        byteBuf.release();
+        return length;
+    }
+
+    @Benchmark
+    public int encodeToByteBuf() {
+        ByteBuf byteBuf = NettyMessageEncoder.encode(message, "UDP", PooledByteBufAllocator.DEFAULT, direct);
+        int length = byteBuf.readableBytes();
+        byteBuf.release();
+        return length;
+    }
+}
@@ -0,0 +1,58 @@
+package performance.encoder;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.nist.javax.sip.message.SIPMessage;
+import performance.corpus.Corpus;
+
+/**
+ * JMH benchmark of the encoding of the messages of the corpus by
+ * encodeAsBytes, as the NIO and blocking channels send them, and by encode,
+ * as they are logged.
+ *
+ * Run it from the sip-benchmarks jar with dependencies:
+ * <pre>
+ * java -cp sip-benchmarks-with-dependencies.jar org.openjdk.jmh.Main SIPMessageEncodeBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SIPMessageEncodeBenchmark {
+
+    @Param({ Corpus.INVITE, Corpus.OK, Corpus.ACK, Corpus.BYE, Corpus.REGISTER, Corpus.SUBSCRIBE, Corpus.NOTIFY })
+    public String message;
+
+    private SIPMessage sipMessage;
+
+    @Setup
+    public void setup() throws ParseException {
+        sipMessage = Corpus.parse(message);
+    }
+
+    @Benchmark
+    public byte[] encodeAsBytes() {
+        return sipMessage.encodeAsBytes("UDP");
+    }
+
+    @Benchmark
+    public String encode() {
+        return sipMessage.encode();
+    }
+}
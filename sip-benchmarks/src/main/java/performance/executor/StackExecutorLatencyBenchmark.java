@@ -0,0 +1,109 @@
+package performance.executor;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.nist.core.executor.EventDrivenStackExecutor;
+import gov.nist.core.executor.MessageProcessorExecutor;
+import gov.nist.core.executor.SIPTask;
+import gov.nist.core.executor.StackExecutor;
+import gov.nist.core.executor.ThreadPoolStackExecutor;
+
+/**
+ * JMH benchmark measuring the time between queuing a task in a stack executor
+ * and its execution, as seen by an incoming INVITE waiting for its 100 Trying,
+ * for the MessageProcessorExecutor and ThreadPoolStackExecutor polling their
+ * queues every task interval and the EventDrivenStackExecutor, with and
+ * without spinning.
+ *
+ * Run it from the sip-benchmarks jar with dependencies, the sample time mode
+ * reports the latency percentiles :
+ * <pre>
+ * java -cp sip-benchmarks-with-dependencies.jar org.openjdk.jmh.Main StackExecutorLatencyBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StackExecutorLatencyBenchmark {
+
+    private static final String CALLID = "3848276298220188511@atlanta.example.com";
+
+    @Param({ "MESSAGE_PROCESSOR", "THREAD_POOL", "EVENT_DRIVEN", "EVENT_DRIVEN_SPINNING" })
+    public String executor;
+
+    // the stack default
+    @Param({ "10" })
+    public long taskInterval;
+
+    private StackExecutor stackExecutor;
+
+    private LatencyTask task;
+
+    private static class LatencyTask implements SIPTask {
+        private volatile boolean executed;
+
+        public String getId() {
+            return CALLID;
+        }
+
+        public void execute() {
+            executed = true;
+        }
+
+        public long getStartTime() {
+            return 0;
+        }
+
+        public String printTaskDetails() {
+            return "Task name: LatencyTask";
+        }
+    }
+
+    @Setup
+    public void setup() {
+        if ("MESSAGE_PROCESSOR".equals(executor)) {
+            stackExecutor = new MessageProcessorExecutor();
+        } else if ("THREAD_POOL".equals(executor)) {
+            stackExecutor = new ThreadPoolStackExecutor();
+        } else {
+            EventDrivenStackExecutor eventDrivenStackExecutor = new EventDrivenStackExecutor();
+            if ("EVENT_DRIVEN_SPINNING".equals(executor)) {
+                eventDrivenStackExecutor.setSpinCount(10000);
+            }
+            stackExecutor = eventDrivenStackExecutor;
+        }
+        stackExecutor.start(4, taskInterval);
+        task = new LatencyTask();
+    }
+
+    @TearDown
+    public void tearDown() {
+        stackExecutor.stop();
+    }
+
+    @Benchmark
+    public boolean queueToExecution() {
+        task.executed = false;
+        stackExecutor.addTaskLast(task);
+        while (!task.executed) {
+            Thread.yield();
+        }
+        return task.executed;
+    }
+}
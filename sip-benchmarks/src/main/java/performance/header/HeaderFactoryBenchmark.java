@@ -0,0 +1,79 @@
+package performance.header;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import javax.sip.InvalidArgumentException;
+import javax.sip.address.Address;
+import javax.sip.header.CSeqHeader;
+import javax.sip.header.CallIdHeader;
+import javax.sip.header.FromHeader;
+import javax.sip.header.Header;
+import javax.sip.header.ViaHeader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.nist.javax.sip.address.AddressFactoryImpl;
+import gov.nist.javax.sip.header.HeaderFactoryImpl;
+
+/**
+ * JMH benchmark of the creation of the headers of an outgoing request by the
+ * HeaderFactoryImpl, as an application builds them, from their values or from
+ * their text.
+ *
+ * Run it from the sip-benchmarks jar with dependencies:
+ * <pre>
+ * java -cp sip-benchmarks-with-dependencies.jar org.openjdk.jmh.Main HeaderFactoryBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderFactoryBenchmark {
+
+    private HeaderFactoryImpl headerFactory;
+    private Address fromAddress;
+
+    @Setup
+    public void setup() throws ParseException {
+        headerFactory = new HeaderFactoryImpl();
+        fromAddress = new AddressFactoryImpl().createAddress("Alice <sip:alice@atlanta.example.com>");
+    }
+
+    @Benchmark
+    public ViaHeader createViaHeader() throws ParseException, InvalidArgumentException {
+        return headerFactory.createViaHeader("client.atlanta.example.com", 5060, "UDP", "z9hG4bK74bf9");
+    }
+
+    @Benchmark
+    public FromHeader createFromHeader() throws ParseException {
+        return headerFactory.createFromHeader(fromAddress, "9fxced76sl");
+    }
+
+    @Benchmark
+    public CallIdHeader createCallIdHeader() throws ParseException {
+        return headerFactory.createCallIdHeader("3848276298220188511@atlanta.example.com");
+    }
+
+    @Benchmark
+    public CSeqHeader createCSeqHeader() throws ParseException, InvalidArgumentException {
+        return headerFactory.createCSeqHeader(1L, "INVITE");
+    }
+
+    @Benchmark
+    public Header createHeaderFromText() throws ParseException {
+        return headerFactory.createHeader("Contact: <sip:alice@client.atlanta.example.com;transport=udp>;expires=3600");
+    }
+}
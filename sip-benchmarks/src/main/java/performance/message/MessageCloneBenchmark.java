@@ -0,0 +1,110 @@
+package performance.message;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.parser.StringMsgParser;
+
+/**
+ * JMH benchmark of the operations a proxy or a B2BUA performs on the object
+ * model of the messages it forwards : cloning a request, comparing it with its
+ * clone and matching it against a template. The clone is measured with and
+ * without the copy on write clone of the headers.
+ *
+ * Run it from the sip-benchmarks jar with dependencies, adding the gc profiler
+ * to get the allocation rate per operation :
+ * <pre>
+ * java -cp sip-benchmarks-with-dependencies.jar org.openjdk.jmh.Main MessageCloneBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCloneBenchmark {
+
+    private static final String INVITE = "INVITE sip:bob@biloxi.example.com SIP/2.0\r\n"
+            + "Via: SIP/2.0/UDP proxy.example.com:5060;branch=z9hG4bK-proxy;received=192.0.2.1\r\n"
+            + "Via: SIP/2.0/UDP client.atlanta.example.com:5060;branch=z9hG4bK74bf9;rport=5060\r\n"
+            + "Max-Forwards: 69\r\n"
+            + "Record-Route: <sip:proxy.example.com;lr>\r\n"
+            + "Route: <sip:edge.biloxi.example.com;lr>\r\n"
+            + "From: Alice <sip:alice@atlanta.example.com>;tag=9fxced76sl\r\n"
+            + "To: Bob <sip:bob@biloxi.example.com>\r\n"
+            + "Call-ID: 3848276298220188511@atlanta.example.com\r\n"
+            + "CSeq: 1 INVITE\r\n"
+            + "Contact: <sip:alice@client.atlanta.example.com;transport=udp>;expires=3600\r\n"
+            + "Allow: INVITE, ACK, CANCEL, OPTIONS, BYE, REFER, NOTIFY, MESSAGE, SUBSCRIBE, INFO\r\n"
+            + "Supported: replaces, timer\r\n"
+            + "Session-Expires: 1800;refresher=uac\r\n"
+            + "User-Agent: Corsac Benchmark\r\n"
+            + "P-Asserted-Identity: <sip:alice@atlanta.example.com>\r\n"
+            + "X-Correlation-Id: 5c1a9e0f\r\n"
+            + "Content-Type: application/sdp\r\n"
+            + "Content-Length: 151\r\n"
+            + "\r\n"
+            + "v=0\r\n"
+            + "o=alice 2890844526 2890844526 IN IP4 client.atlanta.example.com\r\n"
+            + "s=-\r\n"
+            + "c=IN IP4 192.0.2.101\r\n"
+            + "t=0 0\r\n"
+            + "m=audio 49172 RTP/AVP 0\r\n"
+            + "a=rtpmap:0 PCMU/8000\r\n";
+
+    @Param({ "false", "true" })
+    public boolean copyOnWrite;
+
+    private SIPRequest request;
+    private SIPRequest copy;
+    private SIPRequest template;
+
+    @Setup
+    public void setup() throws ParseException {
+        SIPMessage.setCopyOnWriteClone(copyOnWrite);
+        StringMsgParser parser = new StringMsgParser();
+        request = (SIPRequest) parser.parseSIPMessage(INVITE.getBytes(), true, false, null);
+        copy = (SIPRequest) parser.parseSIPMessage(INVITE.getBytes(), true, false, null);
+        template = (SIPRequest) parser.parseSIPMessage(("INVITE sip:bob@biloxi.example.com SIP/2.0\r\n"
+                + "From: <sip:alice@atlanta.example.com>\r\n"
+                + "Contact: <sip:alice@client.atlanta.example.com;transport=udp>\r\n"
+                + "Supported: timer\r\n"
+                + "Content-Length: 0\r\n\r\n").getBytes(), true, false, null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        SIPMessage.setCopyOnWriteClone(false);
+    }
+
+    @Benchmark
+    public Object cloneRequest() {
+        return request.clone();
+    }
+
+    @Benchmark
+    public boolean equalsRequest() {
+        return request.equals(copy);
+    }
+
+    @Benchmark
+    public boolean matchRequest() {
+        return request.match(template);
+    }
+}
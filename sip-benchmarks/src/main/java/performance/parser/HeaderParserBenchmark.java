@@ -0,0 +1,74 @@
+package performance.parser;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.nist.javax.sip.header.SIPHeader;
+import gov.nist.javax.sip.parser.ParserFactory;
+
+/**
+ * JMH benchmark of the header parsers returned by the ParserFactory, for the
+ * headers found in most messages and the costly Authorization and Contact
+ * ones. The lookup of the parser is part of the measure, as it is part of the
+ * parsing of every header line.
+ *
+ * Run it from the sip-benchmarks jar with dependencies:
+ * <pre>
+ * java -cp sip-benchmarks-with-dependencies.jar org.openjdk.jmh.Main HeaderParserBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderParserBenchmark {
+
+    @Param({ "Via", "From", "To", "Call-ID", "CSeq", "Contact", "Route", "Content-Type", "Authorization" })
+    public String header;
+
+    private String line;
+
+    @Setup
+    public void setup() {
+        if ("Via".equals(header)) {
+            line = "Via: SIP/2.0/UDP client.atlanta.example.com:5060;branch=z9hG4bK74bf9;received=192.0.2.101;rport=5060\n";
+        } else if ("From".equals(header)) {
+            line = "From: Alice <sip:alice@atlanta.example.com>;tag=9fxced76sl\n";
+        } else if ("To".equals(header)) {
+            line = "To: Bob <sip:bob@biloxi.example.com>;tag=8321234356\n";
+        } else if ("Call-ID".equals(header)) {
+            line = "Call-ID: 3848276298220188511@atlanta.example.com\n";
+        } else if ("CSeq".equals(header)) {
+            line = "CSeq: 1 INVITE\n";
+        } else if ("Contact".equals(header)) {
+            line = "Contact: <sip:bob@client.biloxi.example.com;transport=tcp;ob>;expires=3600;+sip.instance=\"<urn:uuid:00000000-0000-1000-8000-AABBCCDDEEFF>\";reg-id=1\n";
+        } else if ("Route".equals(header)) {
+            line = "Route: <sip:bigbox3.site3.atlanta.example.com;lr>, <sip:server10.biloxi.example.com;lr>\n";
+        } else if ("Content-Type".equals(header)) {
+            line = "Content-Type: application/sdp\n";
+        } else {
+            line = "Authorization: Digest username=\"bob\", realm=\"atlanta.example.com\", nonce=\"ea9c8e88df84f1cec4341ae6cbe5a359\", "
+                    + "opaque=\"\", uri=\"sips:ss2.biloxi.example.com\", response=\"dfe56131d1958046689d83306477ecc\", "
+                    + "algorithm=MD5, qop=auth, cnonce=\"0a4f113b\", nc=00000001\n";
+        }
+    }
+
+    @Benchmark
+    public SIPHeader parseHeader() throws ParseException {
+        return ParserFactory.createParser(line).parse();
+    }
+}
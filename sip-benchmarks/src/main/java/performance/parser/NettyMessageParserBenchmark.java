@@ -0,0 +1,114 @@
+package performance.parser;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.parser.NettyMessageParser;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * JMH benchmark comparing the String based header reading of the
+ * NettyMessageParser with the byte scanning and lazy header parsing modes, and
+ * the streaming parsing with the one shot parsing of datagrams.
+ *
+ * Run it from the sip-benchmarks jar with dependencies, adding the gc profiler
+ * to get the allocation rate per parsed message :
+ * <pre>
+ * java -cp sip-benchmarks-with-dependencies.jar org.openjdk.jmh.Main NettyMessageParserBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NettyMessageParserBenchmark {
+
+    private static final String INVITE = "INVITE sip:bob@biloxi.example.com SIP/2.0\r\n"
+            + "Via: SIP/2.0/UDP client.atlanta.example.com:5060;branch=z9hG4bK74bf9\r\n"
+            + "Max-Forwards: 70\r\n"
+            + "From: Alice <sip:alice@atlanta.example.com>;tag=9fxced76sl\r\n"
+            + "To: Bob <sip:bob@biloxi.example.com>\r\n"
+            + "Call-ID: 3848276298220188511@atlanta.example.com\r\n"
+            + "CSeq: 1 INVITE\r\n"
+            + "Contact: <sip:alice@client.atlanta.example.com;transport=udp>\r\n"
+            + "Allow: INVITE, ACK, CANCEL, OPTIONS, BYE, REFER, NOTIFY, MESSAGE, SUBSCRIBE, INFO\r\n"
+            + "Supported: replaces, timer\r\n"
+            + "User-Agent: Corsac Benchmark\r\n"
+            + "Content-Type: application/sdp\r\n"
+            + "Content-Length: 151\r\n"
+            + "\r\n"
+            + "v=0\r\n"
+            + "o=alice 2890844526 2890844526 IN IP4 client.atlanta.example.com\r\n"
+            + "s=-\r\n"
+            + "c=IN IP4 192.0.2.101\r\n"
+            + "t=0 0\r\n"
+            + "m=audio 49172 RTP/AVP 0\r\n"
+            + "a=rtpmap:0 PCMU/8000\r\n";
+
+    private static final String OK = "SIP/2.0 200 OK\r\n"
+            + "Via: SIP/2.0/UDP client.atlanta.example.com:5060;branch=z9hG4bK74bf9;received=192.0.2.101\r\n"
+            + "From: Alice <sip:alice@atlanta.example.com>;tag=9fxced76sl\r\n"
+            + "To: Bob <sip:bob@biloxi.example.com>;tag=8321234356\r\n"
+            + "Call-ID: 3848276298220188511@atlanta.example.com\r\n"
+            + "CSeq: 1 INVITE\r\n"
+            + "Contact: <sip:bob@client.biloxi.example.com;transport=udp>\r\n"
+            + "Content-Length: 0\r\n"
+            + "\r\n";
+
+    @Param({ "INVITE", "OK" })
+    public String message;
+
+    @Param({ "STRING", "BYTE_SCANNING", "LAZY" })
+    public String mode;
+
+    private byte[] bytes;
+    private NettyMessageParser parser;
+
+    @Setup
+    public void setup() {
+        bytes = ("INVITE".equals(message) ? INVITE : OK).getBytes();
+        parser = createParser();
+    }
+
+    private NettyMessageParser createParser() {
+        return new NettyMessageParser(0, false, !"STRING".equals(mode), "LAZY".equals(mode));
+    }
+
+    @Benchmark
+    public SIPMessage parseNewParser() throws ParseException {
+        // what the datagram decoder used to do for each incoming packet
+        NettyMessageParser nettyMessageParser = createParser();
+        ByteBuf byteBuf = Unpooled.wrappedBuffer(bytes);
+        return nettyMessageParser.parseBytes(byteBuf).consumeSIPMessage();
+    }
+
+    @Benchmark
+    public SIPMessage parseReusedParser() throws ParseException {
+        // the stream decoders keep one parser per connection
+        ByteBuf byteBuf = Unpooled.wrappedBuffer(bytes);
+        return parser.parseBytes(byteBuf).consumeSIPMessage();
+    }
+
+    @Benchmark
+    public SIPMessage parseDatagram() throws ParseException {
+        // the datagram decoder keeps one parser per channel and skips the streaming states
+        ByteBuf byteBuf = Unpooled.wrappedBuffer(bytes);
+        return parser.parseDatagram(byteBuf);
+    }
+}
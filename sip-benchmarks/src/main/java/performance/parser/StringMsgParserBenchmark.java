@@ -0,0 +1,66 @@
+package performance.parser;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.parser.NettyMessageParser;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import io.netty.buffer.Unpooled;
+import performance.corpus.Corpus;
+
+/**
+ * JMH benchmark of the parsing of the messages of the corpus, by the
+ * StringMsgParser used by the NIO and blocking channels and by the
+ * NettyMessageParser used by the Netty datagram channels, both parsing every
+ * header of the message.
+ *
+ * Run it from the sip-benchmarks jar with dependencies:
+ * <pre>
+ * java -cp sip-benchmarks-with-dependencies.jar org.openjdk.jmh.Main StringMsgParserBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringMsgParserBenchmark {
+
+    @Param({ Corpus.INVITE, Corpus.OK, Corpus.ACK, Corpus.BYE, Corpus.REGISTER, Corpus.SUBSCRIBE, Corpus.NOTIFY })
+    public String message;
+
+    private byte[] bytes;
+    private StringMsgParser stringMsgParser;
+    private NettyMessageParser nettyMessageParser;
+
+    @Setup
+    public void setup() {
+        bytes = Corpus.getBytes(message);
+        stringMsgParser = new StringMsgParser();
+        nettyMessageParser = new NettyMessageParser(0, false, true, false);
+    }
+
+    @Benchmark
+    public SIPMessage parseStringMsgParser() throws ParseException {
+        return stringMsgParser.parseSIPMessage(bytes, true, false, null);
+    }
+
+    @Benchmark
+    public SIPMessage parseNettyMessageParser() throws ParseException {
+        return nettyMessageParser.parseDatagram(Unpooled.wrappedBuffer(bytes));
+    }
+}
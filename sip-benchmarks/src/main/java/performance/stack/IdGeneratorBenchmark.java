@@ -0,0 +1,67 @@
+package performance.stack;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.nist.javax.sip.UtilsExt;
+import gov.nist.javax.sip.util.RandomIdGenerator;
+import gov.nist.javax.sip.util.UUIDIdGenerator;
+
+/**
+ * JMH benchmark of the rate at which the branch identifiers, tags and Call-IDs
+ * are generated, by the RandomIdGenerator the stack uses by default and by
+ * the UUIDIdGenerator drawing them from the SecureRandom shared by the JVM.
+ * Every new call needs a branch, a Call-ID and two tags, generated by all the
+ * workers of the stack at once, hence the 4 threads.
+ *
+ * Run it from the sip-benchmarks jar with dependencies:
+ * <pre>
+ * java -cp sip-benchmarks-with-dependencies.jar org.openjdk.jmh.Main IdGeneratorBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class IdGeneratorBenchmark {
+
+    @Param({ "uuid", "random" })
+    public String generator;
+
+    private UtilsExt idGenerator;
+
+    @Setup
+    public void setup() {
+        idGenerator = generator.equals("uuid") ? new UUIDIdGenerator() : new RandomIdGenerator();
+    }
+
+    @Benchmark
+    public String generateBranchId() {
+        return idGenerator.generateBranchId();
+    }
+
+    @Benchmark
+    public String generateTag() {
+        return idGenerator.generateTag();
+    }
+
+    @Benchmark
+    public String generateCallIdentifier() {
+        return idGenerator.generateCallIdentifier("192.0.2.1");
+    }
+}
@@ -0,0 +1,223 @@
+package performance.stack;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.sip.ListeningPoint;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.nist.javax.sip.SipProviderImpl;
+import gov.nist.javax.sip.SipStackImpl;
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import gov.nist.javax.sip.stack.SIPDialog;
+import gov.nist.javax.sip.stack.SIPServerTransaction;
+import gov.nist.javax.sip.stack.SIPTransaction;
+import gov.nist.javax.sip.stack.SIPTransactionStack;
+import gov.nist.javax.sip.stack.transports.processors.MessageChannel;
+
+/**
+ * JMH benchmark of the matching of incoming requests to their server
+ * transaction and dialog by the SIPTransactionStack, with the tables holding
+ * as many transactions and dialogs as a loaded stack.
+ *
+ * The requests go through findTransaction and getDialog of a running stack,
+ * including the computation of their keys. TransactionMatchBenchmark covers
+ * the INVITE and CANCEL matching.
+ *
+ * Run it from the sip-benchmarks jar with dependencies:
+ * <pre>
+ * java -cp sip-benchmarks-with-dependencies.jar org.openjdk.jmh.Main SIPTransactionStackBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SIPTransactionStackBenchmark {
+
+    private static final String MESSAGE = "MESSAGE sip:bob@biloxi.example.com SIP/2.0\r\n"
+            + "Via: SIP/2.0/UDP client.atlanta.example.com:5060;branch=z9hG4bK%1$08xa7c6\r\n"
+            + "Max-Forwards: 70\r\n"
+            + "From: Alice <sip:alice@atlanta.example.com>;tag=%1$d\r\n"
+            + "To: Bob <sip:bob@biloxi.example.com>\r\n"
+            + "Call-ID: %1$d@atlanta.example.com\r\n"
+            + "CSeq: 1 MESSAGE\r\n"
+            + "Content-Length: 0\r\n"
+            + "\r\n";
+
+    // the 200 OK received by the stack for the INVITE it sent
+    private static final String OK = "SIP/2.0 200 OK\r\n"
+            + "Via: SIP/2.0/UDP 127.0.0.1:15060;branch=z9hG4bK%1$08xb8d7\r\n"
+            + "From: Alice <sip:alice@atlanta.example.com>;tag=a%1$d\r\n"
+            + "To: Bob <sip:bob@biloxi.example.com>;tag=b%1$d\r\n"
+            + "Call-ID: dialog-%1$d@atlanta.example.com\r\n"
+            + "CSeq: 1 INVITE\r\n"
+            + "Contact: <sip:bob@client.biloxi.example.com>\r\n"
+            + "Content-Length: 0\r\n"
+            + "\r\n";
+
+    // the BYE then sent by the peer
+    private static final String BYE = "BYE sip:alice@127.0.0.1:15060 SIP/2.0\r\n"
+            + "Via: SIP/2.0/UDP client.biloxi.example.com:5060;branch=z9hG4bK%1$08xc9e8\r\n"
+            + "Max-Forwards: 70\r\n"
+            + "From: Bob <sip:bob@biloxi.example.com>;tag=b%1$d\r\n"
+            + "To: Alice <sip:alice@atlanta.example.com>;tag=a%1$d\r\n"
+            + "Call-ID: dialog-%1$d@atlanta.example.com\r\n"
+            + "CSeq: 2 BYE\r\n"
+            + "Content-Length: 0\r\n"
+            + "\r\n";
+
+    private static final int MESSAGES = 1024;
+
+    @Param({ "1000", "100000" })
+    public int calls;
+
+    private SipStackImpl sipStack;
+    private SIPRequest[] requests;
+    private SIPRequest[] inDialogRequests;
+    private int index;
+
+    @Setup
+    public void setup() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("javax.sip.STACK_NAME", "SIPTransactionStackBenchmark");
+        sipStack = new SipStackImpl(properties);
+        ListeningPoint listeningPoint = sipStack.createListeningPoint("127.0.0.1", 15060, ListeningPoint.UDP);
+        SipProviderImpl sipProvider = (SipProviderImpl) sipStack.createSipProvider(listeningPoint);
+        MessageChannel messageChannel = new BenchmarkMessageChannel(sipStack);
+
+        StringMsgParser parser = new StringMsgParser();
+        for (int i = 0; i < calls; i++) {
+            SIPRequest request = (SIPRequest) parser.parseSIPMessage(String.format(MESSAGE, i).getBytes(), true, false, null);
+            SIPServerTransaction transaction = sipStack.createNewServerTransaction(sipProvider, messageChannel);
+            transaction.setOriginalRequest(request);
+            sipStack.addTransaction(transaction);
+
+            SIPResponse response = (SIPResponse) parser.parseSIPMessage(String.format(OK, i).getBytes(), true, false, null);
+            SIPDialog dialog = new SIPDialog(sipProvider, response);
+            dialog.setDialogId(response.getDialogId(false));
+            sipStack.putDialog(dialog);
+        }
+
+        requests = new SIPRequest[MESSAGES];
+        inDialogRequests = new SIPRequest[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            // the requests are parsed again, as retransmissions would be
+            int call = i * (calls / MESSAGES + 1) % calls;
+            requests[i] = (SIPRequest) parser.parseSIPMessage(String.format(MESSAGE, call).getBytes(), true, false, null);
+            inDialogRequests[i] = (SIPRequest) parser.parseSIPMessage(String.format(BYE, call).getBytes(), true, false, null);
+            if (sipStack.findTransaction(requests[i], true) == null
+                    || sipStack.getDialog(inDialogRequests[i].getDialogId(true)) == null) {
+                throw new IllegalStateException("Call " + call + " is not matched");
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        sipStack.stop();
+    }
+
+    @Benchmark
+    public SIPTransaction findServerTransaction() {
+        SIPRequest request = requests[index++ & (MESSAGES - 1)];
+        return sipStack.findTransaction(request, true);
+    }
+
+    @Benchmark
+    public SIPDialog findDialog() {
+        SIPRequest request = inDialogRequests[index++ & (MESSAGES - 1)];
+        return sipStack.getDialog(request.getDialogId(true));
+    }
+
+    /**
+     * Channel the transactions were received from, never used to send.
+     */
+    static class BenchmarkMessageChannel extends MessageChannel {
+        private final SIPTransactionStack sipStack;
+
+        BenchmarkMessageChannel(SIPTransactionStack sipStack) {
+            this.sipStack = sipStack;
+        }
+
+        public void sendMessage(SIPMessage sipMessage) throws IOException {
+        }
+
+        public void sendMessage(byte[] message, InetAddress receiverAddress, int receiverPort, boolean reconnectFlag) {
+        }
+
+        public void close() {
+        }
+
+        public SIPTransactionStack getSIPStack() {
+            return sipStack;
+        }
+
+        public String getTransport() {
+            return "UDP";
+        }
+
+        public boolean isReliable() {
+            return false;
+        }
+
+        public boolean isSecure() {
+            return false;
+        }
+
+        public String getPeerAddress() {
+            return "127.0.0.1";
+        }
+
+        public InetAddress getPeerInetAddress() {
+            return InetAddress.getLoopbackAddress();
+        }
+
+        public String getPeerProtocol() {
+            return "UDP";
+        }
+
+        public int getPeerPort() {
+            return 5060;
+        }
+
+        public int getPeerPacketSourcePort() {
+            return 5060;
+        }
+
+        public InetAddress getPeerPacketSourceAddress() {
+            return InetAddress.getLoopbackAddress();
+        }
+
+        public String getKey() {
+            return "127.0.0.1:5060/UDP";
+        }
+
+        public String getViaHost() {
+            return "127.0.0.1";
+        }
+
+        public int getViaPort() {
+            return 5060;
+        }
+    }
+}
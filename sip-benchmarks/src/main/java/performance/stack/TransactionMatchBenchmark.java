@@ -0,0 +1,131 @@
+package performance.stack;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.sip.ListeningPoint;
+import javax.sip.message.Request;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.nist.javax.sip.SipProviderImpl;
+import gov.nist.javax.sip.SipStackImpl;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import gov.nist.javax.sip.stack.SIPServerTransaction;
+import gov.nist.javax.sip.stack.SIPTransaction;
+import gov.nist.javax.sip.stack.transports.processors.MessageChannel;
+
+/**
+ * JMH benchmark of the rate at which incoming requests are matched to their
+ * server transaction by SIPTransactionStack.findTransaction, with the server
+ * INVITE transactions of a loaded stack in its tables.
+ *
+ * An INVITE retransmission is looked up three times, as the stack does when
+ * it checks for an existing server transaction, when it finds it again for
+ * the listener and when the dialog layer checks it. A CANCEL is looked up
+ * for its own server transaction, which does not exist yet, then for the
+ * INVITE transaction it cancels through findCancelTransaction.
+ *
+ * Run it from the sip-benchmarks jar with dependencies:
+ * <pre>
+ * java -cp sip-benchmarks-with-dependencies.jar org.openjdk.jmh.Main TransactionMatchBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionMatchBenchmark {
+
+    private static final String REQUEST = "%1$s sip:bob@biloxi.example.com SIP/2.0\r\n"
+            + "Via: SIP/2.0/UDP client.atlanta.example.com:5060;branch=z9hG4bK%2$08xa7c6\r\n"
+            + "Max-Forwards: 70\r\n"
+            + "From: Alice <sip:alice@atlanta.example.com>;tag=%2$d\r\n"
+            + "To: Bob <sip:bob@biloxi.example.com>\r\n"
+            + "Call-ID: %2$d@atlanta.example.com\r\n"
+            + "CSeq: 1 %1$s\r\n"
+            + "Content-Length: 0\r\n"
+            + "\r\n";
+
+    private static final int MESSAGES = 1024;
+
+    @Param({ "1000", "100000" })
+    public int transactions;
+
+    private SipStackImpl sipStack;
+    private SIPRequest[] invites;
+    private SIPRequest[] cancels;
+    private int index;
+
+    @Setup
+    public void setup() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("javax.sip.STACK_NAME", "TransactionMatchBenchmark");
+        sipStack = new SipStackImpl(properties);
+        ListeningPoint listeningPoint = sipStack.createListeningPoint("127.0.0.1", 15061, ListeningPoint.UDP);
+        SipProviderImpl sipProvider = (SipProviderImpl) sipStack.createSipProvider(listeningPoint);
+        MessageChannel messageChannel = new SIPTransactionStackBenchmark.BenchmarkMessageChannel(sipStack);
+
+        for (int i = 0; i < transactions; i++) {
+            SIPServerTransaction transaction = sipStack.createNewServerTransaction(sipProvider, messageChannel);
+            transaction.setOriginalRequest(parse(Request.INVITE, i));
+            sipStack.addTransaction(transaction);
+        }
+
+        invites = new SIPRequest[MESSAGES];
+        cancels = new SIPRequest[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            // the requests are parsed again, as retransmissions would be
+            int transaction = i * (transactions / MESSAGES + 1) % transactions;
+            invites[i] = parse(Request.INVITE, transaction);
+            cancels[i] = parse(Request.CANCEL, transaction);
+            if (sipStack.findTransaction(invites[i], true) == null
+                    || sipStack.findCancelTransaction(cancels[i], true) == null) {
+                throw new IllegalStateException("Transaction " + transaction + " is not matched");
+            }
+        }
+    }
+
+    private static SIPRequest parse(String method, int transaction) throws Exception {
+        return (SIPRequest) new StringMsgParser()
+                .parseSIPMessage(String.format(REQUEST, method, transaction).getBytes(), true, false, null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        sipStack.stop();
+    }
+
+    @Benchmark
+    public SIPTransaction matchInvite() {
+        SIPRequest request = invites[index++ & (MESSAGES - 1)];
+        SIPTransaction transaction = sipStack.findTransaction(request, true);
+        if (sipStack.findTransaction(request, true) != transaction) {
+            throw new IllegalStateException();
+        }
+        return sipStack.findTransaction(request, true);
+    }
+
+    @Benchmark
+    public SIPTransaction matchCancel() {
+        SIPRequest request = cancels[index++ & (MESSAGES - 1)];
+        if (sipStack.findTransaction(request, true) != null) {
+            throw new IllegalStateException();
+        }
+        return sipStack.findCancelTransaction(request, true);
+    }
+}
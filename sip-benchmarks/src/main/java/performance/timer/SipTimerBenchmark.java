@@ -0,0 +1,99 @@
+package performance.timer;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.sip.PeerUnavailableException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.nist.javax.sip.SipStackImpl;
+import gov.nist.javax.sip.stack.timers.MobiusSipTimer;
+import gov.nist.javax.sip.stack.timers.SIPStackTimerTask;
+import gov.nist.javax.sip.stack.timers.SipTimer;
+import gov.nist.javax.sip.stack.timers.TimingWheelSipTimer;
+
+/**
+ * JMH benchmark of the scheduling and the cancellation of the retransmission
+ * and timeout timers of the transactions, which are almost always cancelled
+ * before they fire, by the MobiusSipTimer the stack uses by default and by the
+ * TimingWheelSipTimer.
+ *
+ * Run it from the sip-benchmarks jar with dependencies:
+ * <pre>
+ * java -cp sip-benchmarks-with-dependencies.jar org.openjdk.jmh.Main SipTimerBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SipTimerBenchmark {
+
+    // timer A of an INVITE client transaction
+    private static final long DELAY = 500;
+
+    @Param({ "mobius", "wheel" })
+    public String timer;
+
+    private SipStackImpl sipStack;
+    private SipTimer sipTimer;
+
+    @Setup
+    public void setup() throws PeerUnavailableException {
+        Properties properties = new Properties();
+        properties.setProperty("javax.sip.STACK_NAME", "SipTimerBenchmark");
+        properties.setProperty("gov.nist.javax.sip.TIMER_CLASS_NAME",
+                "mobius".equals(timer) ? MobiusSipTimer.class.getName() : TimingWheelSipTimer.class.getName());
+        sipStack = new SipStackImpl(properties);
+        sipTimer = sipStack.getTimer();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        // lets the timer fire its last tasks before the executor of the stack stops
+        sipTimer.stop();
+        Thread.sleep(100);
+        sipStack.stop();
+    }
+
+    @Benchmark
+    public boolean scheduleAndCancel() {
+        BenchmarkTimerTask task = new BenchmarkTimerTask();
+        sipTimer.schedule(task, DELAY);
+        return sipTimer.cancel(task);
+    }
+
+    @Benchmark
+    public boolean schedule() {
+        // the tasks fire after the delay, as the timeouts of unanswered requests
+        return sipTimer.schedule(new BenchmarkTimerTask(), DELAY);
+    }
+
+    private static class BenchmarkTimerTask extends SIPStackTimerTask {
+
+        BenchmarkTimerTask() {
+            super("BenchmarkTimerTask");
+        }
+
+        public String getId() {
+            return "benchmark";
+        }
+
+        public void runTask() {
+        }
+    }
+}
@@ -0,0 +1,542 @@
+package performance.uac;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sip.ClientTransaction;
+import javax.sip.Dialog;
+import javax.sip.DialogTerminatedEvent;
+import javax.sip.IOExceptionEvent;
+import javax.sip.InvalidArgumentException;
+import javax.sip.ListeningPoint;
+import javax.sip.RequestEvent;
+import javax.sip.ResponseEvent;
+import javax.sip.ServerTransaction;
+import javax.sip.SipException;
+import javax.sip.SipFactory;
+import javax.sip.SipListener;
+import javax.sip.SipProvider;
+import javax.sip.SipStack;
+import javax.sip.Timeout;
+import javax.sip.TimeoutEvent;
+import javax.sip.TransactionTerminatedEvent;
+import javax.sip.address.Address;
+import javax.sip.address.AddressFactory;
+import javax.sip.address.SipURI;
+import javax.sip.header.CSeqHeader;
+import javax.sip.header.CallIdHeader;
+import javax.sip.header.HeaderFactory;
+import javax.sip.message.MessageFactory;
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+
+import gov.nist.core.NamingThreadFactory;
+import gov.nist.javax.sip.ClientTransactionExt;
+import gov.nist.javax.sip.ListeningPointExt;
+import gov.nist.javax.sip.Utils;
+
+/**
+ * Load generator built on the stack, running call flows against a UAS such as
+ * the Shootme at a target rate of scenarios per second, so that the throughput
+ * of the stack can be measured without SIPp and with the costs of the client
+ * side of the stack included.
+ *
+ * The scenarios are:
+ * <ul>
+ * <li>CALL: INVITE, 180, 200, ACK, then BYE and 200 after the hold time</li>
+ * <li>REGISTER: REGISTER and 200</li>
+ * <li>SUBSCRIBE: SUBSCRIBE fetching the state (Expires 0), 200, then NOTIFY
+ * and 200</li>
+ * <li>MESSAGE: MESSAGE and 200</li>
+ * </ul>
+ *
+ * It is configured by system properties:
+ * <ul>
+ * <li>LOAD_SCENARIO: CALL, REGISTER, SUBSCRIBE or MESSAGE, CALL by default</li>
+ * <li>LOAD_TRANSPORT: UDP, TCP, TLS or WS, UDP by default</li>
+ * <li>LOAD_TARGET: host:port of the UAS, 127.0.0.1:5080 by default, the port
+ * being 5081 for TLS and 5082 for WS as the Shootme listens</li>
+ * <li>LOAD_LOCAL_ADDRESS and LOAD_LOCAL_PORT: 127.0.0.1 and 5060 by default</li>
+ * <li>LOAD_CPS: scenarios started per second, 100 by default</li>
+ * <li>LOAD_DURATION: seconds during which scenarios are started, 30 by
+ * default</li>
+ * <li>LOAD_HOLD_TIME: milliseconds between the ACK and the BYE, 1000 by
+ * default</li>
+ * <li>LOAD_MAX_CALLS: scenarios running at once above which no new one is
+ * started, 10000 by default</li>
+ * <li>LOAD_DRAIN_TIME: seconds to wait for the running scenarios once the
+ * duration is over, 40 by default</li>
+ * <li>LOAD_STACK_PROPERTIES_PATH: properties of the stack overriding the
+ * default ones</li>
+ * <li>LOAD_UAS: Shootme, ShootmeDialogStateless or ShootmeDialogAndTxStateless
+ * to start in the same JVM before the load, none by default. The stateless
+ * variants only listen on UDP and only answer the CALL scenario</li>
+ * </ul>
+ *
+ * For instance, from the sip-performance directory:
+ * <pre>
+ * java -DLOAD_UAS=Shootme -DLOAD_CPS=500 -DLOAD_DURATION=60 -cp target/sip-performance-with-dependencies.jar performance.uac.LoadGenerator
+ * </pre>
+ *
+ * The progress is printed every second, and once the scenarios are over the
+ * latencies of their stages, the retransmissions and the failed scenarios.
+ * The process exits with 1 when a scenario failed or did not complete.
+ */
+public class LoadGenerator implements SipListener {
+
+    public enum Scenario {
+        CALL, REGISTER, SUBSCRIBE, MESSAGE
+    }
+
+    private static final String SDP = "v=0\r\n"
+            + "o=loadgen 2890844526 2890844526 IN IP4 %1$s\r\n"
+            + "s=-\r\n"
+            + "c=IN IP4 %1$s\r\n"
+            + "t=0 0\r\n"
+            + "m=audio 49172 RTP/AVP 0\r\n"
+            + "a=rtpmap:0 PCMU/8000\r\n";
+
+    private static final long PROGRESS_INTERVAL = 1000;
+    private static final long TICK = 10;
+
+    private final Scenario scenario;
+    private final String transport;
+    private final String targetHost;
+    private final int targetPort;
+    private final String localAddress;
+    private final int localPort;
+    private final double cps;
+    private final long duration;
+    private final long holdTime;
+    private final int maxCalls;
+    private final long drainTime;
+    private final String stackPropertiesPath;
+
+    private final LoadStatistics statistics = new LoadStatistics();
+    private final ConcurrentHashMap<String, Flow> flows = new ConcurrentHashMap<String, Flow>();
+
+    private SipStack sipStack;
+    private SipProvider sipProvider;
+    private AddressFactory addressFactory;
+    private HeaderFactory headerFactory;
+    private MessageFactory messageFactory;
+    private ScheduledExecutorService scheduler;
+
+    private long startTime;
+    private long scheduledScenarios;
+    private volatile boolean sending;
+    private long lastProgressTime;
+    private long lastProgressStarted;
+
+    public LoadGenerator(Properties configuration) {
+        scenario = Scenario.valueOf(configuration.getProperty("LOAD_SCENARIO", Scenario.CALL.name()).toUpperCase());
+        transport = configuration.getProperty("LOAD_TRANSPORT", ListeningPoint.UDP).toUpperCase();
+        int defaultPort = ListeningPoint.TLS.equals(transport) ? 5081 : ListeningPointExt.WS.equals(transport) ? 5082 : 5080;
+        String target = configuration.getProperty("LOAD_TARGET", "127.0.0.1:" + defaultPort);
+        int colon = target.lastIndexOf(':');
+        targetHost = colon < 0 ? target : target.substring(0, colon);
+        targetPort = colon < 0 ? defaultPort : Integer.parseInt(target.substring(colon + 1));
+        localAddress = configuration.getProperty("LOAD_LOCAL_ADDRESS", "127.0.0.1");
+        localPort = Integer.parseInt(configuration.getProperty("LOAD_LOCAL_PORT", "5060"));
+        cps = Double.parseDouble(configuration.getProperty("LOAD_CPS", "100"));
+        duration = TimeUnit.SECONDS.toMillis(Long.parseLong(configuration.getProperty("LOAD_DURATION", "30")));
+        holdTime = Long.parseLong(configuration.getProperty("LOAD_HOLD_TIME", "1000"));
+        maxCalls = Integer.parseInt(configuration.getProperty("LOAD_MAX_CALLS", "10000"));
+        drainTime = TimeUnit.SECONDS.toMillis(Long.parseLong(configuration.getProperty("LOAD_DRAIN_TIME", "40")));
+        stackPropertiesPath = configuration.getProperty("LOAD_STACK_PROPERTIES_PATH");
+        if (cps <= 0) {
+            throw new IllegalArgumentException("LOAD_CPS has to be positive");
+        }
+    }
+
+    public LoadStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Creates the stack and starts the scenarios at the configured rate.
+     */
+    public void start() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("javax.sip.STACK_NAME", "LoadGenerator");
+        properties.setProperty("gov.nist.javax.sip.REENTRANT_LISTENER", "true");
+        properties.setProperty("gov.nist.javax.sip.AGGRESSIVE_CLEANUP", "true");
+        properties.setProperty("gov.nist.javax.sip.DELIVER_UNSOLICITED_NOTIFY", "true");
+        properties.setProperty("gov.nist.javax.sip.RECEIVE_UDP_BUFFER_SIZE", "131072");
+        properties.setProperty("gov.nist.javax.sip.SEND_UDP_BUFFER_SIZE", "131072");
+        properties.setProperty("gov.nist.javax.sip.TLS_CLIENT_AUTH_TYPE", "DisabledAll");
+        if (stackPropertiesPath != null) {
+            InputStream in = new FileInputStream(new File(stackPropertiesPath));
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+        }
+
+        SipFactory sipFactory = SipFactory.getInstance();
+        sipFactory.setPathName("gov.nist");
+        sipStack = sipFactory.createSipStack(properties);
+        addressFactory = sipFactory.createAddressFactory();
+        headerFactory = sipFactory.createHeaderFactory();
+        messageFactory = sipFactory.createMessageFactory();
+        ListeningPoint listeningPoint = sipStack.createListeningPoint(localAddress, localPort, transport);
+        sipProvider = sipStack.createSipProvider(listeningPoint);
+        sipProvider.addSipListener(this);
+        sipStack.start();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(new NamingThreadFactory("sip_load_generator"));
+        startTime = System.nanoTime();
+        lastProgressTime = startTime;
+        sending = true;
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                tick();
+            }
+        }, 0, TICK, TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                printProgress();
+            }
+        }, PROGRESS_INTERVAL, PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits for the end of the duration, then for the running scenarios to
+     * complete or fail, at most LOAD_DRAIN_TIME.
+     *
+     * @return true if no scenario is still running
+     */
+    public boolean awaitCompletion() throws InterruptedException {
+        long end = System.currentTimeMillis() + duration;
+        while (sending && System.currentTimeMillis() < end + TICK * 10) {
+            Thread.sleep(TICK * 10);
+        }
+        long drainEnd = System.currentTimeMillis() + drainTime;
+        while (!flows.isEmpty() && System.currentTimeMillis() < drainEnd) {
+            Thread.sleep(TICK * 10);
+        }
+        return flows.isEmpty();
+    }
+
+    /**
+     * @return the milliseconds elapsed since the start of the load
+     */
+    public long getElapsedTime() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    }
+
+    public void stop() {
+        sending = false;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (sipStack != null) {
+            sipStack.stop();
+        }
+    }
+
+    private void tick() {
+        long elapsed = System.nanoTime() - startTime;
+        if (elapsed >= TimeUnit.MILLISECONDS.toNanos(duration)) {
+            sending = false;
+        }
+        if (!sending) {
+            return;
+        }
+        long due = (long) (elapsed / 1e9 * cps);
+        while (scheduledScenarios < due) {
+            scheduledScenarios++;
+            if (statistics.getRunning() >= maxCalls) {
+                statistics.scenarioThrottled();
+            } else {
+                startScenario();
+            }
+        }
+    }
+
+    private void printProgress() {
+        long now = System.nanoTime();
+        long started = statistics.getStarted();
+        double rate = (started - lastProgressStarted) * 1e9 / Math.max(1, now - lastProgressTime);
+        lastProgressTime = now;
+        lastProgressStarted = started;
+        statistics.printProgress(System.out, TimeUnit.NANOSECONDS.toMillis(now - startTime), rate);
+    }
+
+    private void startScenario() {
+        CallIdHeader callId = sipProvider.getNewCallId();
+        Flow flow = new Flow(callId.getCallId());
+        statistics.scenarioStarted();
+        flows.put(flow.callId, flow);
+        try {
+            String method = scenario == Scenario.CALL ? Request.INVITE : scenario.name();
+            Request request = createRequest(method, callId);
+            synchronized (flow) {
+                flow.send(method, request);
+            }
+        } catch (Exception e) {
+            fail(flow, e.getClass().getSimpleName());
+        }
+    }
+
+    private Request createRequest(String method, CallIdHeader callId)
+            throws ParseException, InvalidArgumentException, SipException {
+        SipURI requestUri = addressFactory.createSipURI(Request.REGISTER.equals(method) ? null : "service", targetHost);
+        requestUri.setPort(targetPort);
+        SipURI fromUri = addressFactory.createSipURI("loadgen", localAddress);
+        SipURI contactUri = addressFactory.createSipURI("loadgen", localAddress);
+        contactUri.setPort(localPort);
+        if (!ListeningPoint.UDP.equals(transport)) {
+            requestUri.setTransportParam(transport.toLowerCase());
+            contactUri.setTransportParam(transport.toLowerCase());
+        }
+        Address fromAddress = addressFactory.createAddress(fromUri);
+        Address toAddress = Request.REGISTER.equals(method) ? fromAddress
+                : addressFactory.createAddress(addressFactory.createSipURI("service", targetHost));
+
+        Request request = messageFactory.createRequest(requestUri, method, callId,
+                headerFactory.createCSeqHeader(1L, method),
+                headerFactory.createFromHeader(fromAddress, Utils.getInstance().generateTag()),
+                headerFactory.createToHeader(toAddress, null),
+                Collections.singletonList(headerFactory.createViaHeader(localAddress, localPort, transport, null)),
+                headerFactory.createMaxForwardsHeader(70));
+        request.addHeader(headerFactory.createContactHeader(addressFactory.createAddress(contactUri)));
+        if (Request.INVITE.equals(method)) {
+            request.setContent(String.format(SDP, localAddress), headerFactory.createContentTypeHeader("application", "sdp"));
+        } else if (Request.REGISTER.equals(method)) {
+            request.addHeader(headerFactory.createExpiresHeader(3600));
+        } else if (Request.SUBSCRIBE.equals(method)) {
+            request.addHeader(headerFactory.createEventHeader("presence"));
+            // fetches the state, the subscription ends with the NOTIFY
+            request.addHeader(headerFactory.createExpiresHeader(0));
+        } else if (Request.MESSAGE.equals(method)) {
+            request.setContent("Load generator message", headerFactory.createContentTypeHeader("text", "plain"));
+        }
+        return request;
+    }
+
+    private void complete(Flow flow) {
+        if (flows.remove(flow.callId, flow)) {
+            statistics.scenarioCompleted();
+        }
+    }
+
+    private void fail(Flow flow, String reason) {
+        if (flows.remove(flow.callId, flow)) {
+            statistics.scenarioFailed(reason);
+            if (flow.dialog != null) {
+                flow.dialog.delete();
+            }
+        }
+    }
+
+    private static String getCallId(javax.sip.message.Message message) {
+        return ((CallIdHeader) message.getHeader(CallIdHeader.NAME)).getCallId();
+    }
+
+    public void processResponse(ResponseEvent responseEvent) {
+        Response response = responseEvent.getResponse();
+        Flow flow = flows.get(getCallId(response));
+        if (flow == null) {
+            if (response.getStatusCode() >= 200) {
+                statistics.responseRetransmitted();
+            }
+            return;
+        }
+        synchronized (flow) {
+            try {
+                flow.processResponse(responseEvent);
+            } catch (Exception e) {
+                fail(flow, e.getClass().getSimpleName());
+            }
+        }
+    }
+
+    public void processRequest(RequestEvent requestEvent) {
+        Request request = requestEvent.getRequest();
+        if (Request.ACK.equals(request.getMethod())) {
+            return;
+        }
+        try {
+            ServerTransaction serverTransaction = requestEvent.getServerTransaction();
+            if (serverTransaction == null) {
+                serverTransaction = sipProvider.getNewServerTransaction(request);
+            }
+            serverTransaction.sendResponse(messageFactory.createResponse(Response.OK, request));
+        } catch (Exception e) {
+            statistics.ioError();
+            return;
+        }
+        Flow flow = flows.get(getCallId(request));
+        if (flow != null && Request.NOTIFY.equals(request.getMethod())) {
+            synchronized (flow) {
+                flow.processNotify();
+            }
+        }
+    }
+
+    public void processTimeout(TimeoutEvent timeoutEvent) {
+        if (timeoutEvent.getTimeout() == Timeout.RETRANSMIT) {
+            statistics.requestRetransmitted();
+            return;
+        }
+        ClientTransaction clientTransaction = timeoutEvent.getClientTransaction();
+        if (clientTransaction != null) {
+            Flow flow = flows.get(getCallId(clientTransaction.getRequest()));
+            if (flow != null) {
+                fail(flow, "timeout");
+            }
+        }
+    }
+
+    public void processIOException(IOExceptionEvent exceptionEvent) {
+        // the scenario of the request fails once its transaction times out
+        statistics.ioError();
+    }
+
+    public void processTransactionTerminated(TransactionTerminatedEvent transactionTerminatedEvent) {
+    }
+
+    public void processDialogTerminated(DialogTerminatedEvent dialogTerminatedEvent) {
+    }
+
+    /**
+     * A scenario, from its first request to its last response. Its methods are
+     * called holding its lock.
+     */
+    private class Flow {
+        private final String callId;
+        private String method;
+        private long stageStart;
+        private Dialog dialog;
+        private boolean ringing;
+        private boolean answered;
+        private boolean subscribed;
+        private boolean notified;
+
+        private Flow(String callId) {
+            this.callId = callId;
+        }
+
+        private void send(String method, Request request) throws SipException {
+            ClientTransaction clientTransaction = sipProvider.getNewClientTransaction(request);
+            ((ClientTransactionExt) clientTransaction).setNotifyOnRetransmit(true);
+            this.method = method;
+            stageStart = System.nanoTime();
+            if (dialog != null) {
+                dialog.sendRequest(clientTransaction);
+            } else {
+                clientTransaction.sendRequest();
+            }
+        }
+
+        private void record(String stage) {
+            statistics.recordLatency(stage, System.nanoTime() - stageStart);
+        }
+
+        private void processResponse(ResponseEvent responseEvent) throws Exception {
+            Response response = responseEvent.getResponse();
+            int status = response.getStatusCode();
+            CSeqHeader cseq = (CSeqHeader) response.getHeader(CSeqHeader.NAME);
+            if (!cseq.getMethod().equals(method)) {
+                return;
+            }
+            if (status < 200) {
+                if (status > 100 && Request.INVITE.equals(method) && !ringing) {
+                    ringing = true;
+                    record(method + " " + status);
+                }
+                return;
+            }
+            if (status >= 300) {
+                fail(this, String.valueOf(status));
+                return;
+            }
+            if (Request.INVITE.equals(method)) {
+                if (answered) {
+                    statistics.responseRetransmitted();
+                    return;
+                }
+                answered = true;
+                record(method + " 200");
+                dialog = responseEvent.getDialog();
+                dialog.sendAck(dialog.createAck(cseq.getSeqNumber()));
+                scheduler.schedule(new Runnable() {
+                    public void run() {
+                        sendBye();
+                    }
+                }, holdTime, TimeUnit.MILLISECONDS);
+            } else if (Request.SUBSCRIBE.equals(method)) {
+                record(method + " 200");
+                subscribed = true;
+                if (notified) {
+                    complete(this);
+                }
+            } else {
+                record(method + " 200");
+                complete(this);
+            }
+        }
+
+        private void processNotify() {
+            if (!Request.SUBSCRIBE.equals(method) || notified) {
+                return;
+            }
+            record("SUBSCRIBE NOTIFY");
+            notified = true;
+            if (subscribed) {
+                complete(this);
+            }
+        }
+
+        private void sendBye() {
+            synchronized (this) {
+                if (flows.get(callId) != this) {
+                    return;
+                }
+                try {
+                    send(Request.BYE, dialog.createRequest(Request.BYE));
+                } catch (Exception e) {
+                    fail(this, e.getClass().getSimpleName());
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Properties configuration = System.getProperties();
+        String transport = configuration.getProperty("LOAD_TRANSPORT", ListeningPoint.UDP);
+        if ((ListeningPoint.TLS.equalsIgnoreCase(transport) || ListeningPointExt.WSS.equalsIgnoreCase(transport))
+                && System.getProperty("javax.net.ssl.keyStore") == null) {
+            // the test keys shipped with the performance scripts
+            String keyStore = "src/test/resources/performance/testkeys";
+            System.setProperty("javax.net.ssl.keyStore", keyStore);
+            System.setProperty("javax.net.ssl.trustStore", keyStore);
+            System.setProperty("javax.net.ssl.keyStorePassword", "passphrase");
+            System.setProperty("javax.net.ssl.keyStoreType", "jks");
+        }
+        String uas = configuration.getProperty("LOAD_UAS");
+        if (uas != null) {
+            String uasClassName = uas.indexOf('.') < 0 ? "performance.uas." + uas : uas;
+            Class.forName(uasClassName).getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+        }
+
+        LoadGenerator loadGenerator = new LoadGenerator(configuration);
+        loadGenerator.start();
+        boolean drained = loadGenerator.awaitCompletion();
+        long elapsed = loadGenerator.getElapsedTime();
+        loadGenerator.stop();
+        LoadStatistics statistics = loadGenerator.getStatistics();
+        statistics.printReport(System.out, elapsed);
+        System.exit(drained && statistics.getFailed() == 0 ? 0 : 1);
+    }
+}
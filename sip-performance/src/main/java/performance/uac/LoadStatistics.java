@@ -0,0 +1,164 @@
+package performance.uac;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms of a run of the LoadGenerator.
+ *
+ * The latencies are kept per stage of the scenario, named after the request
+ * and the message that ended the stage, for instance "INVITE 180" or
+ * "SUBSCRIBE NOTIFY". The failed scenarios are counted per reason: the status
+ * code of the final response, "timeout" or "io".
+ */
+public class LoadStatistics {
+
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong retransmissions = new AtomicLong();
+    private final AtomicLong retransmittedResponses = new AtomicLong();
+    private final AtomicLong ioErrors = new AtomicLong();
+
+    private final ConcurrentMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+    // the stages in the order they were first reached, to print them in the order of the scenario
+    private final List<String> stages = new CopyOnWriteArrayList<String>();
+    private final ConcurrentMap<String, AtomicLong> failures = new ConcurrentHashMap<String, AtomicLong>();
+
+    void scenarioStarted() {
+        started.incrementAndGet();
+    }
+
+    void scenarioCompleted() {
+        completed.incrementAndGet();
+    }
+
+    void scenarioFailed(String reason) {
+        failed.incrementAndGet();
+        AtomicLong counter = failures.get(reason);
+        if (counter == null) {
+            AtomicLong existing = failures.putIfAbsent(reason, counter = new AtomicLong());
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    void scenarioThrottled() {
+        throttled.incrementAndGet();
+    }
+
+    void requestRetransmitted() {
+        retransmissions.incrementAndGet();
+    }
+
+    void responseRetransmitted() {
+        retransmittedResponses.incrementAndGet();
+    }
+
+    void ioError() {
+        ioErrors.incrementAndGet();
+    }
+
+    void recordLatency(String stage, long nanos) {
+        LatencyHistogram histogram = latencies.get(stage);
+        if (histogram == null) {
+            LatencyHistogram existing = latencies.putIfAbsent(stage, histogram = new LatencyHistogram());
+            if (existing != null) {
+                histogram = existing;
+            } else {
+                stages.add(stage);
+            }
+        }
+        histogram.record(nanos / 1000);
+    }
+
+    /**
+     * @return the number of scenarios started
+     */
+    public long getStarted() {
+        return started.get();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return the number of scenarios not started because LOAD_MAX_CALLS were
+     *         already running
+     */
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    /**
+     * @return the number of requests retransmitted by the client transactions
+     */
+    public long getRetransmissions() {
+        return retransmissions.get();
+    }
+
+    /**
+     * @return the number of final responses received again after their
+     *         scenario moved on, mostly retransmitted 200 OK to INVITE
+     */
+    public long getRetransmittedResponses() {
+        return retransmittedResponses.get();
+    }
+
+    public long getIoErrors() {
+        return ioErrors.get();
+    }
+
+    /**
+     * @return the number of scenarios started and not yet completed or failed
+     */
+    public long getRunning() {
+        return started.get() - completed.get() - failed.get();
+    }
+
+    public Map<String, LatencyHistogram> getLatencies() {
+        return latencies;
+    }
+
+    public Map<String, AtomicLong> getFailures() {
+        return failures;
+    }
+
+    void printProgress(PrintStream out, long elapsedMillis, double rate) {
+        out.println(String.format("%6.1fs started=%d completed=%d failed=%d running=%d throttled=%d retransmissions=%d rate=%.1f/s",
+                elapsedMillis / 1000.0, getStarted(), getCompleted(), getFailed(), getRunning(), getThrottled(),
+                getRetransmissions(), rate));
+    }
+
+    void printReport(PrintStream out, long elapsedMillis) {
+        out.println(String.format("Ran %d scenarios in %.1fs (%.1f/s): %d completed, %d failed, %d not completed, %d throttled",
+                getStarted(), elapsedMillis / 1000.0, getStarted() * 1000.0 / Math.max(1, elapsedMillis), getCompleted(),
+                getFailed(), getRunning(), getThrottled()));
+        out.println(String.format("Retransmitted requests %d, retransmitted responses %d, IO errors %d",
+                getRetransmissions(), getRetransmittedResponses(), getIoErrors()));
+        for (Map.Entry<String, AtomicLong> failure : failures.entrySet()) {
+            out.println(String.format("Failed with %s: %d", failure.getKey(), failure.getValue().get()));
+        }
+        out.println(String.format("%-18s %10s %10s %10s %10s %10s %10s %10s", "latency (us)", "count", "mean", "p50",
+                "p90", "p99", "p99.9", "max"));
+        for (String stage : stages) {
+            LatencyHistogram histogram = latencies.get(stage);
+            out.println(String.format("%-18s %10d %10.0f %10d %10d %10d %10d %10d", stage, histogram.getCount(),
+                    histogram.getMean(), histogram.getPercentile(50), histogram.getPercentile(90),
+                    histogram.getPercentile(99), histogram.getPercentile(99.9), histogram.getMax()));
+        }
+    }
+}
@@ -2,6 +2,8 @@ package performance.uas;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -22,14 +24,21 @@ import javax.sip.TransactionTerminatedEvent;
 import javax.sip.address.Address;
 import javax.sip.address.AddressFactory;
 import javax.sip.address.SipURI;
+import javax.sip.header.CallIdHeader;
 import javax.sip.header.ContactHeader;
 import javax.sip.header.HeaderFactory;
+import javax.sip.header.EventHeader;
+import javax.sip.header.FromHeader;
+import javax.sip.header.SubscriptionStateHeader;
 import javax.sip.header.ToHeader;
+import javax.sip.header.ViaHeader;
 import javax.sip.message.MessageFactory;
 import javax.sip.message.Request;
 import javax.sip.message.Response;
 
+import gov.nist.javax.sip.ListeningPointExt;
 import gov.nist.javax.sip.message.RequestExt;
+import gov.nist.javax.sip.stack.transports.processors.netty.NettyMessageProcessorFactory;
 
 
 /**
@@ -103,6 +112,12 @@ public class Shootme implements SipListener {
             processBye(requestEvent, serverTransactionId);
         } else if (request.getMethod().equals(Request.CANCEL)) {
             processCancel(requestEvent, serverTransactionId);
+        } else if (request.getMethod().equals(Request.REGISTER)
+                || request.getMethod().equals(Request.MESSAGE)) {
+            // answered as a BYE, with a 200 OK
+            processBye(requestEvent, serverTransactionId);
+        } else if (request.getMethod().equals(Request.SUBSCRIBE)) {
+            processSubscribe(requestEvent, serverTransactionId);
         }
 
     }
@@ -146,10 +161,7 @@ public class Shootme implements SipListener {
 
             response = messageFactory.createResponse(Response.OK,
                     request);
-            final Address address = addressFactory.createAddress("Shootme <sip:"
-                    + myAddress + ":" + myPort + ">");
-            final ContactHeader contactHeader = headerFactory
-                    .createContactHeader(address);
+            final ContactHeader contactHeader = createContactHeader(sipProvider, request);
             response.addHeader(contactHeader);
             toHeader = (ToHeader) response.getHeader(ToHeader.NAME);
             toHeader.setTag(toTag); // Application is supposed to set.
@@ -181,6 +193,71 @@ public class Shootme implements SipListener {
         }
     }
 
+    /**
+     * Process the subscribe request, the state is fetched by a single NOTIFY
+     * terminating the subscription. The NOTIFY is built from the SUBSCRIBE, as
+     * the dialog is only established once the response has been sent.
+     */
+    public void processSubscribe(RequestEvent requestEvent,
+            ServerTransaction serverTransaction) {
+        final Request request = requestEvent.getRequest();
+        final SipProvider sipProvider = (SipProvider) requestEvent.getSource();
+        ServerTransaction st = serverTransaction;
+        try {
+            if (st == null) {
+                st = sipProvider.getNewServerTransaction(request);
+            }
+            final String toTag = "" + System.nanoTime();
+            final Response response = messageFactory.createResponse(Response.OK, request);
+            ((ToHeader) response.getHeader(ToHeader.NAME)).setTag(toTag);
+            final ContactHeader contactHeader = createContactHeader(sipProvider, request);
+            response.addHeader(contactHeader);
+            response.addHeader(headerFactory.createExpiresHeader(0));
+            st.sendResponse(response);
+
+            final FromHeader from = (FromHeader) request.getHeader(FromHeader.NAME);
+            final ToHeader to = (ToHeader) request.getHeader(ToHeader.NAME);
+            final String transport = ((ViaHeader) request.getHeader(ViaHeader.NAME)).getTransport();
+            final ListeningPoint listeningPoint = sipProvider.getListeningPoint(transport);
+            final List<ViaHeader> viaHeaders = new ArrayList<ViaHeader>();
+            viaHeaders.add(headerFactory.createViaHeader(listeningPoint.getIPAddress(),
+                    listeningPoint.getPort(), transport, null));
+            final Request notify = messageFactory.createRequest(
+                    ((ContactHeader) request.getHeader(ContactHeader.NAME)).getAddress().getURI(),
+                    Request.NOTIFY, (CallIdHeader) request.getHeader(CallIdHeader.NAME),
+                    headerFactory.createCSeqHeader(1L, Request.NOTIFY),
+                    headerFactory.createFromHeader(to.getAddress(), toTag),
+                    headerFactory.createToHeader(from.getAddress(), from.getTag()),
+                    viaHeaders, headerFactory.createMaxForwardsHeader(70));
+            notify.addHeader(contactHeader);
+            notify.addHeader(request.getHeader(EventHeader.NAME));
+            notify.addHeader(headerFactory.createSubscriptionStateHeader(SubscriptionStateHeader.TERMINATED));
+            sipProvider.getNewClientTransaction(notify).sendRequest();
+        } catch (Exception ex) {
+            // left to the stack to log, a subscriber would otherwise wait for
+            // a NOTIFY that was never sent without any trace of it
+            throw new IllegalStateException("Could not process the SUBSCRIBE "
+                    + ((CallIdHeader) request.getHeader(CallIdHeader.NAME)).getCallId(), ex);
+        }
+    }
+
+    /**
+     * Contact reached through the listening point the request came from, so
+     * that the requests of the dialog use the same transport.
+     */
+    private ContactHeader createContactHeader(SipProvider sipProvider, Request request) throws Exception {
+        final String transport = ((ViaHeader) request.getHeader(ViaHeader.NAME)).getTransport();
+        final ListeningPoint listeningPoint = sipProvider.getListeningPoint(transport);
+        final SipURI uri = addressFactory.createSipURI(null, listeningPoint.getIPAddress());
+        uri.setPort(listeningPoint.getPort());
+        if (!ListeningPoint.UDP.equalsIgnoreCase(transport)) {
+            uri.setTransportParam(transport.toLowerCase());
+        }
+        final Address address = addressFactory.createAddress(uri);
+        address.setDisplayName("Shootme");
+        return headerFactory.createContactHeader(address);
+    }
+
     public void processCancel(RequestEvent requestEvent,
             ServerTransaction serverTransactionId) {
 
@@ -253,6 +330,11 @@ public class Shootme implements SipListener {
             sipProvider.addSipListener(listener);
             sipProvider.addListeningPoint(tcpListeningPoint);
             sipProvider.addListeningPoint(tlsListeningPoint);		
+            if (isNetty(properties)) {
+                ListeningPoint wsListeningPoint = sipStack.createListeningPoint(properties.getProperty(
+                    SIP_BIND_ADDRESS, myAddress), myPort + 2, ListeningPointExt.WS);
+                sipProvider.addListeningPoint(wsListeningPoint);
+            }
 
         } catch (Exception ex) {
             ex.printStackTrace();
@@ -261,6 +343,12 @@ public class Shootme implements SipListener {
 
     }
 
+    private static boolean isNetty(Properties properties) {
+        // websockets are only handled by the Netty message processors
+        return NettyMessageProcessorFactory.class.getName().equals(properties.getProperty(
+            "gov.nist.javax.sip.MESSAGE_PROCESSOR_FACTORY", NettyMessageProcessorFactory.class.getName()));
+    }
+
     public static void main(String args[]) {
         new Shootme().init();
     }
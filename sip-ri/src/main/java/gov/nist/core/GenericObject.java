@@ -198,6 +198,97 @@ public abstract class GenericObject implements Serializable, Cloneable {
         return clone_obj;
     }
 
+    /**
+     * The fields compared and matched by the introspection based predicates,
+     * that is the non private declared fields of a class apart from the
+     * formatting ones. They are looked up and made accessible once per class
+     * rather than on every comparison.
+     */
+    private static final ClassValue<Field[]> introspectedFields = new ClassValue<Field[]>() {
+        @Override
+        protected Field[] computeValue(Class<?> type) {
+            List<Field> retval = new ArrayList<Field>();
+            for (Field f : type.getDeclaredFields()) {
+                if (Modifier.isPrivate(f.getModifiers()))
+                    continue;
+                String fieldName = f.getName();
+                if (fieldName.equals("stringRepresentation") || fieldName.equals("indentation"))
+                    continue;
+                try {
+                    f.setAccessible(true);
+                } catch (SecurityException ex) {
+                }
+                retval.add(f);
+            }
+            return retval.toArray(new Field[retval.size()]);
+        }
+    };
+
+    /**
+     * Get the fields of the given class compared by the introspection based
+     * equals and match predicates.
+     */
+    protected static Field[] getIntrospectedFields(Class<?> type) {
+        return introspectedFields.get(type);
+    }
+
+    /**
+     * Compare the values of a primitive field in two objects, without boxing them.
+     */
+    protected static boolean primitiveFieldEquals(Field f, Object obj, Object other) throws IllegalAccessException {
+        Class<?> fieldType = f.getType();
+        if (fieldType == Integer.TYPE)
+            return f.getInt(obj) == f.getInt(other);
+        else if (fieldType == Boolean.TYPE)
+            return f.getBoolean(obj) == f.getBoolean(other);
+        else if (fieldType == Long.TYPE)
+            return f.getLong(obj) == f.getLong(other);
+        else if (fieldType == Short.TYPE)
+            return f.getShort(obj) == f.getShort(other);
+        else if (fieldType == Character.TYPE)
+            return f.getChar(obj) == f.getChar(other);
+        else if (fieldType == Double.TYPE)
+            return f.getDouble(obj) == f.getDouble(other);
+        else if (fieldType == Float.TYPE)
+            return f.getFloat(obj) == f.getFloat(other);
+        else if (fieldType == Byte.TYPE)
+            return f.getByte(obj) == f.getByte(other);
+        return true;
+    }
+
+    /**
+     * Compare two field values, either of which may be null, for the equals
+     * methods written for the most common classes.
+     */
+    protected static boolean equalValues(Object mine, Object his) {
+        return mine == his || (mine != null && mine.equals(his));
+    }
+
+    /**
+     * Match a field value with the one of a template, for the match methods
+     * written for the most common classes. Follows the rules of the
+     * introspection based match: a null template value matches anything, a
+     * string matches ignoring case or when the template is blank, and an
+     * object matches the matcher registered on the template value, or else
+     * the template value itself.
+     */
+    protected static boolean matchValues(Object mine, Object his) {
+        if (his == null)
+            return true;
+        if (mine == null)
+            return false;
+        if (mine instanceof String && his instanceof String)
+            return ((String) his).trim().length() == 0 || ((String) mine).equalsIgnoreCase((String) his);
+        if (mine instanceof GenericObject) {
+            if (mine.getClass() == his.getClass() && ((GenericObject) his).getMatcher() != null)
+                return ((GenericObject) his).getMatcher().match(((GenericObject) mine).encode());
+            return ((GenericObject) mine).match(his);
+        }
+        if (mine instanceof GenericObjectList)
+            return ((GenericObjectList) mine).match(his);
+        return true;
+    }
+
     /** Clones this object.
      */
     public Object clone() {
@@ -415,60 +506,26 @@ public abstract class GenericObject implements Serializable, Cloneable {
         if (!this.getClass().equals(that.getClass()))
             return false;
         Class<?> myclass = this.getClass();
-        Class<?> hisclass = that.getClass();
         while (true) {
-            Field[] fields = myclass.getDeclaredFields();
-            Field[] hisfields = hisclass.getDeclaredFields();
+            Field[] fields = getIntrospectedFields(myclass);
             for (int i = 0; i < fields.length; i++) {
                 Field f = fields[i];
-                Field g = hisfields[i];
-                // Only print protected and public members.
-                int modifier = f.getModifiers();
-                if ((modifier & Modifier.PRIVATE) == Modifier.PRIVATE)
-                    continue;
-                Class<?> fieldType = f.getType();
-                String fieldName = f.getName();
-                if (fieldName.compareTo("stringRepresentation") == 0) {
-                    continue;
-                }
-                if (fieldName.compareTo("indentation") == 0) {
-                    continue;
-                }
                 try {
-                    // Primitive fields are printed with type: value
-                    if (fieldType.isPrimitive()) {
-                        String fname = fieldType.toString();
-                        if (fname.compareTo("int") == 0) {
-                            if (f.getInt(this) != g.getInt(that))
-                                return false;
-                        } else if (fname.compareTo("short") == 0) {
-                            if (f.getShort(this) != g.getShort(that))
-                                return false;
-                        } else if (fname.compareTo("char") == 0) {
-                            if (f.getChar(this) != g.getChar(that))
-                                return false;
-                        } else if (fname.compareTo("long") == 0) {
-                            if (f.getLong(this) != g.getLong(that))
-                                return false;
-                        } else if (fname.compareTo("boolean") == 0) {
-                            if (f.getBoolean(this) != g.getBoolean(that))
-                                return false;
-                        } else if (fname.compareTo("double") == 0) {
-                            if (f.getDouble(this) != g.getDouble(that))
-                                return false;
-                        } else if (fname.compareTo("float") == 0) {
-                            if (f.getFloat(this) != g.getFloat(that))
-                                return false;
-                        }
-                    } else if (g.get(that) == f.get(this))
+                    // Primitive fields are compared by value
+                    if (f.getType().isPrimitive()) {
+                        if (!primitiveFieldEquals(f, this, that))
+                            return false;
+                        continue;
+                    }
+                    Object myObj = f.get(this);
+                    Object hisObj = f.get(that);
+                    if (hisObj == myObj)
                         return true;
-                    else if (f.get(this) == null)
-                        return false;
-                    else if (g.get(that) == null)
+                    else if (myObj == null)
                         return false;
-                    else if (g.get(that) == null && f.get(this) != null)
+                    else if (hisObj == null)
                         return false;
-                    else if (!f.get(this).equals(g.get(that)))
+                    else if (!myObj.equals(hisObj))
                         return false;
                 } catch (IllegalAccessException ex1) {
                     InternalErrorHandler.handleException(ex1);
@@ -476,11 +533,8 @@ public abstract class GenericObject implements Serializable, Cloneable {
             }
             if (myclass.equals(GenericObject.class))
                 break;
-            else {
+            else
                 myclass = myclass.getSuperclass();
-                hisclass = hisclass.getSuperclass();
-            }
-
         }
         return true;
     }
@@ -500,59 +554,20 @@ public abstract class GenericObject implements Serializable, Cloneable {
         if (!this.getClass().equals(other.getClass()))
             return false;
         GenericObject that = (GenericObject) other;
-        Class<?> myclass = this.getClass();
-        Field[] fields = myclass.getDeclaredFields();
-        Class<?> hisclass = other.getClass();
-        Field[] hisfields = hisclass.getDeclaredFields();
+        Field[] fields = getIntrospectedFields(this.getClass());
         for (int i = 0; i < fields.length; i++) {
             Field f = fields[i];
-            Field g = hisfields[i];
-            // Only print protected and public members.
-            int modifier = f.getModifiers();
-            if ((modifier & Modifier.PRIVATE) == Modifier.PRIVATE)
-                continue;
-            Class<?> fieldType = f.getType();
-            String fieldName = f.getName();
-            if (fieldName.compareTo("stringRepresentation") == 0) {
-                continue;
-            }
-            if (fieldName.compareTo("indentation") == 0) {
-                continue;
-            }
             try {
-                // Primitive fields are printed with type: value
-                if (fieldType.isPrimitive()) {
-                    String fname = fieldType.toString();
-                    if (fname.compareTo("int") == 0) {
-                        if (f.getInt(this) != g.getInt(that))
-                            return false;
-                    } else if (fname.compareTo("short") == 0) {
-                        if (f.getShort(this) != g.getShort(that))
-                            return false;
-                    } else if (fname.compareTo("char") == 0) {
-                        if (f.getChar(this) != g.getChar(that))
-                            return false;
-                    } else if (fname.compareTo("long") == 0) {
-                        if (f.getLong(this) != g.getLong(that))
-                            return false;
-                    } else if (fname.compareTo("boolean") == 0) {
-                        if (f.getBoolean(this) != g.getBoolean(that))
-                            return false;
-                    } else if (fname.compareTo("double") == 0) {
-                        if (f.getDouble(this) != g.getDouble(that))
-                            return false;
-                    } else if (fname.compareTo("float") == 0) {
-                        if (f.getFloat(this) != g.getFloat(that))
-                            return false;
-                    }
+                // Primitive fields are compared by value
+                if (f.getType().isPrimitive()) {
+                    if (!primitiveFieldEquals(f, this, that))
+                        return false;
                 } else {
                     Object myObj = f.get(this);
-                    Object hisObj = g.get(that);
+                    Object hisObj = f.get(that);
                     if (hisObj != null && myObj == null)
                         return false;
-                    else if (hisObj == null && myObj != null)
-                        continue;
-                    else if (hisObj == null && myObj == null)
+                    else if (hisObj == null)
                         continue;
                     else if (
                         hisObj instanceof java.lang.String
@@ -564,11 +579,11 @@ public abstract class GenericObject implements Serializable, Cloneable {
                             != 0)
                             return false;
                     } else if (
-                        GenericObject.isMySubclass(myObj.getClass())
+                        myObj instanceof GenericObject
                             && !((GenericObject) myObj).match(hisObj))
                         return false;
                     else if (
-                        GenericObjectList.isMySubclass(myObj.getClass())
+                        myObj instanceof GenericObjectList
                             && !((GenericObjectList) myObj).match(hisObj))
                         return false;
 
@@ -318,4 +318,16 @@ public class Host extends GenericObject {
         return this.getHostname().hashCode();
 
     }
+
+    /**
+     * Match the host name with a template.
+     */
+    public boolean match(Object other) {
+        if (other == null)
+            return true;
+        if (other.getClass() != this.getClass())
+            return false;
+        final Host o = (Host) other;
+        return addressType == o.addressType && matchValues(hostname, o.hostname);
+    }
 }
@@ -168,4 +168,16 @@ public final class HostPort extends GenericObject {
     public int hashCode() {
         return this.host.hashCode() + this.port;
     }
+
+    /**
+     * Match the host and the port with a template.
+     */
+    public boolean match(Object other) {
+        if (other == null)
+            return true;
+        if (other.getClass() != this.getClass())
+            return false;
+        final HostPort o = (HostPort) other;
+        return port == o.port && matchValues(host, o.host);
+    }
 }
@@ -38,6 +38,15 @@ public interface ServerLogger extends LogLevels {
 	 
 	 void logMessage(SIPMessage message, String from, String to, String status,
 	            boolean sender);
+
+	 /**
+	  * Logs a message with the bytes it was sent or received as, so that a
+	  * logger capturing the messages does not encode it again. The bytes are
+	  * null when the transport no longer has them.
+	  */
+	 default void logMessage(SIPMessage message, byte[] bytes, String from, String to, boolean sender, long time) {
+		 logMessage(message, from, to, sender, time);
+	 }
 	            	
 	 void logException(Exception ex);
 	 
@@ -45,5 +54,14 @@ public interface ServerLogger extends LogLevels {
 	 
 	 public void setSipStack(SipStack sipStack);
 	 
+	 /**
+	  * Returns true when this logger wants every message regardless of the
+	  * stack log level, so that the transports hand messages over even when
+	  * debug logging is off.
+	  */
+	 default boolean isCapturingMessages() {
+		 return false;
+	 }
+	 
 	
 }
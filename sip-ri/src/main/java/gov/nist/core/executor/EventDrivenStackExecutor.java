@@ -0,0 +1,184 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.core.executor;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import com.mobius.software.common.dal.timers.Task;
+
+import gov.nist.core.CommonLogger;
+import gov.nist.core.NamingThreadFactory;
+import gov.nist.core.StackLogger;
+
+/**
+ * Executor running each queue on a dedicated worker thread which parks when
+ * its queue is empty and is unparked by the thread adding a task, so that a
+ * task starts as soon as it is queued instead of waiting for the next
+ * execution of a fixed delay job.
+ *
+ * Tasks are dispatched to the workers with the same id hash affinity as the
+ * other executors, so all the tasks of a Call-ID run in order on the same
+ * worker. The queues are lock free deques, written by any thread and only
+ * read by their worker, addTaskFirst putting the task at the head of the
+ * queue. Each worker counts its queued tasks, the size of a deque taking a
+ * walk through all its nodes.
+ *
+ * A worker can optionally poll its queue a bounded number of times before
+ * parking, trading some CPU for a lower latency under steady load. The task
+ * interval is not used, since the workers never poll on a timer.
+ *
+ * As for the ThreadPoolStackExecutor, the stack timer must not depend on the
+ * MessageProcessorExecutor worker pool, TimingWheelSipTimer,
+ * ScheduledExecutorSipTimer or DefaultSipTimer should be configured with it.
+ */
+public class EventDrivenStackExecutor implements StackExecutor {
+	private static StackLogger logger = CommonLogger.getLogger(EventDrivenStackExecutor.class);
+	private int workersNumber;
+	private int spinCount;
+	private CopyOnWriteArrayList<Worker> workers;
+
+	/**
+	 * Sets the number of times an idle worker polls its queue before parking,
+	 * 0 (the default) parks as soon as the queue is empty. Has to be set
+	 * before the executor is started.
+	 */
+	public void setSpinCount(int spinCount) {
+		this.spinCount = spinCount;
+	}
+
+	public int getSpinCount() {
+		return spinCount;
+	}
+
+	public void start(int workersNumber, long taskInterval) {
+		if(logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
+			logger.logDebug("Starting EventDrivenStackExecutor with workersNumber: " + workersNumber + " and spinCount: " + spinCount);
+		}
+		this.workersNumber = workersNumber;
+		workers = new CopyOnWriteArrayList<>();
+		NamingThreadFactory threadFactory = new NamingThreadFactory("event_driven_stack_executor");
+		for(int i = 0; i < workersNumber; i++) {
+			Worker worker = new Worker();
+			workers.add(worker);
+			Thread thread = threadFactory.newThread(worker);
+			worker.thread = thread;
+			thread.start();
+		}
+	}
+
+	public void stop() {
+		if(logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
+			logger.logDebug("Stopping EventDrivenStackExecutor");
+		}
+		for (Worker worker : workers) {
+			worker.running = false;
+			LockSupport.unpark(worker.thread);
+		}
+		workers.clear();
+		workers = null;
+	}
+
+	public void addTaskFirst(SIPTask task) {
+		Worker worker = getWorker(task.getId());
+		if (worker != null) {
+			if(logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
+				logger.logDebug("Adding Task First : "  + task + " " + task.getId() + ", Queue Size: "  + worker.queueSize.get());
+			}
+			// counted before it is queued, so the worker never takes the count below 0
+			worker.queueSize.incrementAndGet();
+			worker.queue.offerFirst(task);
+			worker.wakeup();
+		}
+	}
+
+	public void addTaskLast(SIPTask task) {
+		Worker worker = getWorker(task.getId());
+		if (worker != null) {
+			if(logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
+				logger.logDebug("Adding Task Last : "  + task + " " + task.getId() + ", Queue Size: "  + worker.queueSize.get());
+			}
+			worker.queueSize.incrementAndGet();
+			worker.queue.offerLast(task);
+			worker.wakeup();
+		}
+	}
+
+	/**
+	 * @return the number of tasks waiting in the queue of the given worker
+	 */
+	public int getQueueSize(int index) {
+		return workers.get(index).queueSize.get();
+	}
+
+	private Worker getWorker(String id) {
+		return workers.get(findQueueIndex(id));
+	}
+
+	public int findQueueIndex(String id) {
+		return Math.abs(id.hashCode()) % workersNumber;
+	}
+
+	private class Worker implements Runnable {
+		private final ConcurrentLinkedDeque<Task> queue = new ConcurrentLinkedDeque<>();
+		private final AtomicInteger queueSize = new AtomicInteger();
+		private final AtomicBoolean parked = new AtomicBoolean(false);
+		private volatile boolean running = true;
+		private volatile Thread thread;
+
+		private void wakeup() {
+			// the flag is only raised by the worker after it found the queue empty,
+			// so unpark is only called for a worker that is or is about to be parked
+			if (parked.get() && parked.compareAndSet(true, false)) {
+				LockSupport.unpark(thread);
+			}
+		}
+
+		@Override
+		public void run() {
+			while (running) {
+				Task task = queue.poll();
+				for (int i = 0; task == null && i < spinCount; i++) {
+					task = queue.poll();
+				}
+
+				if (task == null) {
+					parked.set(true);
+					// checked again after raising the flag, a task queued before it
+					// was raised did not unpark this worker
+					if (queue.isEmpty() && running) {
+						LockSupport.park(this);
+					}
+					parked.set(false);
+					continue;
+				}
+				queueSize.decrementAndGet();
+
+				try {
+					task.execute();
+				} catch (Exception e) {
+					logger.logError("Error while executing task " + task, e);
+				}
+			}
+		}
+	}
+}
@@ -87,6 +87,10 @@ public class MessageProcessorExecutor implements StackExecutor {
 		return workerPool.findQueueIndex(id);
 	}
 
+	public int getQueueSize(int index) {
+		return workerPool.getLocalQueue(index).size();
+	}
+
 	public PeriodicQueuedTasks<Timer> getPeriodicQueue() {
 		return workerPool.getPeriodicQueue();
 	}	
@@ -26,4 +26,18 @@ public interface StackExecutor {
     void stop();
     void addTaskFirst(SIPTask task);
     void addTaskLast(SIPTask task);
+
+    /**
+     * @return the index of the worker queue running the tasks of the given id
+     */
+    default int findQueueIndex(String id) {
+        return 0;
+    }
+
+    /**
+     * @return the number of tasks waiting in the given worker queue, -1 if not known
+     */
+    default int getQueueSize(int index) {
+        return -1;
+    }
 }
@@ -104,6 +104,10 @@ public class ThreadPoolStackExecutor implements StackExecutor {
 		return Math.abs(id.hashCode()) % workersNumber;
 	}	
 
+	public int getQueueSize(int index) {
+		return queues.get(index).size();
+	}
+
 	public class Dispatch implements Runnable {    	
     	LinkedBlockingQueue<Task> queue;
     	
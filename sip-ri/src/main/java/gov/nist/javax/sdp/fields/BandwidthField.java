@@ -117,4 +117,15 @@ public class BandwidthField extends SDPField implements javax.sdp.BandWidth {
         setBandwidth(value);
     }
 
+    /**
+     * Compare the bandwidth modifier and value of this b= field.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final BandwidthField o = (BandwidthField) other;
+        return equalFields(o) && bandwidth == o.bandwidth && equalValues(bwtype, o.bwtype);
+    }
 }
@@ -111,5 +111,16 @@ public class ConnectionAddress extends SDPObject {
         return retval;
     }
 
+    /**
+     * Compare the address, TTL and number of addresses of a connection.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final ConnectionAddress o = (ConnectionAddress) other;
+        return ttl == o.ttl && port == o.port && equalValues(address, o.address);
+    }
 }
 
@@ -181,4 +181,16 @@ public class ConnectionField extends SDPField implements javax.sdp.Connection {
         return retval;
     }
 
+    /**
+     * Compare the network type, address type and address of this c= field.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final ConnectionField o = (ConnectionField) other;
+        return equalFields(o) && equalValues(nettype, o.nettype) && equalValues(addrtype, o.addrtype)
+                && equalValues(address, o.address);
+    }
 }
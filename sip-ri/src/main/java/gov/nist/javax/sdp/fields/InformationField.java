@@ -84,5 +84,16 @@ public class InformationField extends SDPField implements javax.sdp.Info {
         }
     }
 
+    /**
+     * Compare the text of this i= field.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final InformationField o = (InformationField) other;
+        return equalFields(o) && equalValues(information, o.information);
+    }
 }
 
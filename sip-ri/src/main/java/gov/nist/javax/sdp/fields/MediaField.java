@@ -244,5 +244,19 @@ public class MediaField extends SDPField implements Media {
             retval.formats = (Vector<String>) this.formats.clone();
         return retval;
     }
+
+    /**
+     * Compare the media type, port, port count, transport and formats of this
+     * m= field.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final MediaField o = (MediaField) other;
+        return equalFields(o) && port == o.port && nports == o.nports && equalValues(media, o.media)
+                && equalValues(proto, o.proto) && equalValues(formats, o.formats);
+    }
 }
 
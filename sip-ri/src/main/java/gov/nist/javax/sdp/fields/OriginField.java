@@ -314,5 +314,19 @@ public class OriginField extends SDPField implements javax.sdp.Origin {
         return retval;
     }
 
+    /**
+     * Compare the user name, network type, address type and address of this
+     * o= field. As with the introspection based equals, the session id and
+     * version are not compared.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final OriginField o = (OriginField) other;
+        return equalFields(o) && equalValues(username, o.username) && equalValues(nettype, o.nettype)
+                && equalValues(addrtype, o.addrtype) && equalValues(address, o.address);
+    }
 }
 
@@ -90,5 +90,16 @@ public class ProtoVersionField extends SDPField implements javax.sdp.Version {
         return PROTO_VERSION_FIELD + protoVersion + Separators.NEWLINE;
     }
 
+    /**
+     * Compare the protocol version of this v= field.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final ProtoVersionField o = (ProtoVersionField) other;
+        return equalFields(o) && protoVersion == o.protoVersion;
+    }
 }
 
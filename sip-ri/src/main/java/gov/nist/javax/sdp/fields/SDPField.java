@@ -52,6 +52,14 @@ public abstract class SDPField extends SDPObject {
         fieldName = hname;
     }
 
+    /**
+     * Compare the type of this field with the one of a field of the same
+     * class, for the equals methods written for the common fields.
+     */
+    protected boolean equalFields(SDPField other) {
+        return equalValues(fieldName, other.fieldName);
+    }
+
     public String getFieldName() {
         return fieldName;
     }
@@ -75,58 +75,23 @@ public abstract class SDPObject
     public boolean equals(Object that) {
         if (!this.getClass().equals(that.getClass()))
             return false;
-        Class<?> myclass = this.getClass();
-        Field[] fields = myclass.getDeclaredFields();
-        Class<?> hisclass = that.getClass();
-        Field[] hisfields = hisclass.getDeclaredFields();
+        Field[] fields = getIntrospectedFields(this.getClass());
         for (int i = 0; i < fields.length; i++) {
             Field f = fields[i];
-            Field g = hisfields[i];
-            // Only print protected and public members.
-            int modifier = f.getModifiers();
-            if (modifier == Modifier.PRIVATE)
-                continue;
-            Class<?> fieldType = f.getType();
-            String fieldName = f.getName();
-            if (fieldName.compareTo("stringRepresentation") == 0) {
-                continue;
-            }
-            if (fieldName.compareTo("indentation") == 0) {
-                continue;
-            }
             try {
-                // Primitive fields are printed with type: value
-                if (fieldType.isPrimitive()) {
-                    String fname = fieldType.toString();
-                    if (fname.compareTo("int") == 0) {
-                        if (f.getInt(this) != g.getInt(that))
-                            return false;
-                    } else if (fname.compareTo("short") == 0) {
-                        if (f.getShort(this) != g.getShort(that))
-                            return false;
-                    } else if (fname.compareTo("char") == 0) {
-                        if (f.getChar(this) != g.getChar(that))
-                            return false;
-                    } else if (fname.compareTo("long") == 0) {
-                        if (f.getLong(this) != g.getLong(that))
-                            return false;
-                    } else if (fname.compareTo("boolean") == 0) {
-                        if (f.getBoolean(this) != g.getBoolean(that))
-                            return false;
-                    } else if (fname.compareTo("double") == 0) {
-                        if (f.getDouble(this) != g.getDouble(that))
-                            return false;
-                    } else if (fname.compareTo("float") == 0) {
-                        if (f.getFloat(this) != g.getFloat(that))
-                            return false;
-                    }
-                } else if (g.get(that) == f.get(this))
+                // Primitive fields are compared by value
+                if (f.getType().isPrimitive()) {
+                    if (!primitiveFieldEquals(f, this, that))
+                        return false;
                     continue;
-                else if (f.get(this) == null && g.get(that) != null)
-                    return false;
-                else if (g.get(that) == null && f.get(that) != null)
+                }
+                Object myObj = f.get(this);
+                Object hisObj = f.get(that);
+                if (hisObj == myObj)
+                    continue;
+                else if (myObj == null || hisObj == null)
                     return false;
-                else if (!f.get(this).equals(g.get(that)))
+                else if (!myObj.equals(hisObj))
                     return false;
             } catch (IllegalAccessException ex1) {
                 InternalErrorHandler.handleException(ex1);
@@ -259,54 +224,17 @@ public abstract class SDPObject
         if (!this.getClass().equals(other.getClass()))
             return false;
         GenericObject that = (GenericObject) other;
-        Class<?> myclass = this.getClass();
-        Field[] fields = myclass.getDeclaredFields();
-        Class<?> hisclass = other.getClass();
-        Field[] hisfields = hisclass.getDeclaredFields();
+        Field[] fields = getIntrospectedFields(this.getClass());
         for (int i = 0; i < fields.length; i++) {
             Field f = fields[i];
-            Field g = hisfields[i];
-            // Only print protected and public members.
-            int modifier = f.getModifiers();
-            if (modifier == Modifier.PRIVATE)
-                continue;
-            Class<?> fieldType = f.getType();
-            String fieldName = f.getName();
-            if (fieldName.compareTo("stringRepresentation") == 0) {
-                continue;
-            }
-            if (fieldName.compareTo("indentation") == 0) {
-                continue;
-            }
             try {
-                // Primitive fields are printed with type: value
-                if (fieldType.isPrimitive()) {
-                    String fname = fieldType.toString();
-                    if (fname.compareTo("int") == 0) {
-                        if (f.getInt(this) != g.getInt(that))
-                            return false;
-                    } else if (fname.compareTo("short") == 0) {
-                        if (f.getShort(this) != g.getShort(that))
-                            return false;
-                    } else if (fname.compareTo("char") == 0) {
-                        if (f.getChar(this) != g.getChar(that))
-                            return false;
-                    } else if (fname.compareTo("long") == 0) {
-                        if (f.getLong(this) != g.getLong(that))
-                            return false;
-                    } else if (fname.compareTo("boolean") == 0) {
-                        if (f.getBoolean(this) != g.getBoolean(that))
-                            return false;
-                    } else if (fname.compareTo("double") == 0) {
-                        if (f.getDouble(this) != g.getDouble(that))
-                            return false;
-                    } else if (fname.compareTo("float") == 0) {
-                        if (f.getFloat(this) != g.getFloat(that))
-                            return false;
-                    }
+                // Primitive fields are compared by value
+                if (f.getType().isPrimitive()) {
+                    if (!primitiveFieldEquals(f, this, that))
+                        return false;
                 } else {
                     Object myObj = f.get(this);
-                    Object hisObj = g.get(that);
+                    Object hisObj = f.get(that);
                     if (hisObj == myObj)
                         return true;
                     else if (hisObj != null && myObj == null)
@@ -320,19 +248,18 @@ public abstract class SDPObject
                             return false;
                     } else if (
                         hisObj != null
-                            && GenericObject.isMySubclass(myObj.getClass())
-                            && GenericObject.isMySubclass(hisObj.getClass())
+                            && myObj instanceof GenericObject
                             && myObj.getClass().equals(hisObj.getClass())
                             && ((GenericObject) hisObj).getMatcher() != null) {
                         String myObjEncoded = ((GenericObject) myObj).encode();
                         return ((GenericObject) hisObj).getMatcher().match(
                             myObjEncoded);
                     } else if (
-                        GenericObject.isMySubclass(myObj.getClass())
+                        myObj instanceof GenericObject
                             && !((GenericObject) myObj).match(hisObj))
                         return false;
                     else if (
-                        GenericObjectList.isMySubclass(myObj.getClass())
+                        myObj instanceof GenericObjectList
                             && !((GenericObjectList) myObj).match(hisObj))
                         return false;
                 }
@@ -78,4 +78,15 @@ public class SessionNameField extends SDPField implements SessionName {
         return SESSION_NAME_FIELD + sessionName + Separators.NEWLINE;
     }
 
+    /**
+     * Compare the session name of this s= field.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final SessionNameField o = (SessionNameField) other;
+        return equalFields(o) && equalValues(sessionName, o.sessionName);
+    }
 }
@@ -175,5 +175,16 @@ public class TimeField extends SDPField implements Time {
             .toString();
     }
 
+    /**
+     * Compare the start and stop times of this t= field.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final TimeField o = (TimeField) other;
+        return equalFields(o) && startTime == o.startTime && stopTime == o.stopTime;
+    }
 }
 
@@ -48,6 +48,8 @@ import gov.nist.javax.sip.stack.SIPClientTransaction;
 import gov.nist.javax.sip.stack.SIPDialog;
 import gov.nist.javax.sip.stack.SIPServerTransaction;
 import gov.nist.javax.sip.stack.SIPTransaction;
+import gov.nist.javax.sip.stack.metrics.MetricStage;
+import gov.nist.javax.sip.stack.metrics.StackMetrics;
 import gov.nist.javax.sip.stack.transports.processors.netty.NettyMessageProcessorFactory;
 
 /* bug fixes SIPQuest communications and Shu-Lin Chen. */
@@ -73,6 +75,8 @@ public class EventScanner implements Runnable {
     
     private SipStackImpl sipStack;
 
+    private volatile ListenerMailboxDispatcher mailboxDispatcher;
+
     public void incrementRefcount() {
         this.refCount.incrementAndGet();
     }
@@ -114,6 +118,7 @@ public class EventScanner implements Runnable {
     public void stop() {
             if (refCount.decrementAndGet() == 0) {
             	isStopped.set(true);
+            	stopMailboxDispatcher();
             }
     }
 
@@ -125,6 +130,63 @@ public class EventScanner implements Runnable {
     public void forceStop() {
             isStopped.set(true);
             this.refCount.set(0);
+            stopMailboxDispatcher();
+    }
+
+    private synchronized void stopMailboxDispatcher() {
+        if (mailboxDispatcher != null) {
+            mailboxDispatcher.shutdown();
+            mailboxDispatcher = null;
+        }
+    }
+
+    /**
+     * @return the mailboxes delivering the events to the listener when
+     *         ASYNC_LISTENER_DISPATCH is set, created on first use, null once
+     *         the scanner is stopped
+     */
+    public ListenerMailboxDispatcher getMailboxDispatcher() {
+        ListenerMailboxDispatcher dispatcher = mailboxDispatcher;
+        if (dispatcher == null) {
+            synchronized (this) {
+                dispatcher = mailboxDispatcher;
+                if (dispatcher == null && !isStopped.get()) {
+                    dispatcher = new ListenerMailboxDispatcher(this, sipStack.isReEntrantListener(),
+                            sipStack.getListenerThreadPoolSize(), sipStack.getListenerMaxPendingEvents());
+                    mailboxDispatcher = dispatcher;
+                }
+            }
+        }
+        return dispatcher;
+    }
+
+    /**
+     * Deliver the event to the listener from the calling thread, or from the
+     * mailbox of its Call-ID when ASYNC_LISTENER_DISPATCH is set.
+     */
+    public void dispatchEvent(EventWrapper eventWrapper) {
+        if (!sipStack.isAsyncListenerDispatch()) {
+            deliverEvent(eventWrapper);
+            return;
+        }
+
+        ListenerMailboxDispatcher dispatcher = getMailboxDispatcher();
+        if (dispatcher == null) {
+            if (logger.isLoggingEnabled(LogLevels.TRACE_DEBUG))
+                logger.logDebug("Event scanner stopped, dropping " + eventWrapper.sipEvent);
+            return;
+        }
+
+        // the next request of the dialog is judged consumable from the stack
+        // thread, so this one is consumed before it waits in the mailbox
+        if (eventWrapper.sipEvent instanceof RequestEvent && eventWrapper.transaction != null) {
+            SIPDialog dialog = (SIPDialog) eventWrapper.transaction.getDialog();
+            if (dialog != null) {
+                dialog.requestConsumed();
+                eventWrapper.requestConsumed = true;
+            }
+        }
+        dispatcher.dispatch(eventWrapper);
     }
 
     public boolean isStarted() {
@@ -249,8 +311,13 @@ public class EventScanner implements Runnable {
                     logger.logDebug(
                             "Calling listener " + eventWrapper.transaction);
                 }
-                if (sipListener != null)
+                if (sipListener != null) {
+                    StackMetrics stackMetrics = sipStack.getStackMetrics();
+                    long listenerStart = stackMetrics != null ? System.nanoTime() : 0;
                     sipListener.processRequest((RequestEvent) sipEvent);
+                    if (stackMetrics != null)
+                        stackMetrics.record(MetricStage.LISTENER, listenerStart);
+                }
 
                 if (logger.isLoggingEnabled(LogLevels.TRACE_DEBUG)) {
                     logger.logDebug(
@@ -261,7 +328,7 @@ public class EventScanner implements Runnable {
 
                     SIPDialog dialog = (SIPDialog) eventWrapper.transaction
                             .getDialog();
-                    if (dialog != null)
+                    if (dialog != null && !eventWrapper.requestConsumed)
                         dialog.requestConsumed();
 
                 }
@@ -316,7 +383,11 @@ public class EventScanner implements Runnable {
                     if (tx != null) {
                         tx.setPassToListener();
                     }
+                    StackMetrics stackMetrics = sipStack.getStackMetrics();
+                    long listenerStart = stackMetrics != null ? System.nanoTime() : 0;
                     sipListener.processResponse(responseEvent);
+                    if (stackMetrics != null)
+                        stackMetrics.record(MetricStage.LISTENER, listenerStart);
                 }
 
                 /*
@@ -35,6 +35,8 @@ public class EventWrapper {
 
     protected EventObject sipEvent;
     protected SIPTransaction transaction;
+    // set when the dialog already consumed the request before it was queued
+    protected boolean requestConsumed;
 
     public EventWrapper(EventObject sipEvent, SIPTransaction transaction) {
         this.sipEvent = sipEvent;
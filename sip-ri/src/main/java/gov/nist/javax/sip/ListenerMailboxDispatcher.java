@@ -0,0 +1,314 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.EventObject;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sip.DialogTerminatedEvent;
+import javax.sip.IOExceptionEvent;
+import javax.sip.RequestEvent;
+import javax.sip.ResponseEvent;
+import javax.sip.TimeoutEvent;
+import javax.sip.Transaction;
+import javax.sip.TransactionTerminatedEvent;
+
+import gov.nist.core.CommonLogger;
+import gov.nist.core.LogLevels;
+import gov.nist.core.NamingThreadFactory;
+import gov.nist.core.StackLogger;
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.stack.SIPDialog;
+import gov.nist.javax.sip.stack.SIPTransactionImpl;
+
+/**
+ * Delivers the events of the stack to the SipListener from mailboxes run off
+ * the stack executor, so that a listener waiting for a database or a remote
+ * service only delays the events of its own calls.
+ *
+ * Each Call-ID has its own mailbox, whose events are delivered in the order
+ * the stack produced them by one thread at a time. Unless the listener is
+ * re-entrant (REENTRANT_LISTENER) all the events go through a single mailbox,
+ * so that the listener is never called by two threads at once. A mailbox is
+ * removed once empty and gives its thread back after MAX_BATCH events, so that
+ * a busy call does not hold a pool thread.
+ *
+ * The mailboxes run on virtual threads when the JVM provides them and no pool
+ * size is configured, on a fixed pool of threads otherwise.
+ *
+ * The events waiting in the mailboxes are the backpressure of the listener:
+ * they are counted by getPendingEvents and getMailboxDepth, and above
+ * LISTENER_MAX_PENDING_EVENTS the dispatcher is saturated, which the
+ * AdaptiveOverloadControlMessageValve takes as a congestion of the stack.
+ */
+public class ListenerMailboxDispatcher {
+	private static StackLogger logger = CommonLogger.getLogger(ListenerMailboxDispatcher.class);
+
+	private static final int MAX_BATCH = 64;
+	private static final String SERIAL_MAILBOX = "";
+
+	private final EventScanner eventScanner;
+	private final boolean reEntrantListener;
+	private final int maxPendingEvents;
+	private final ExecutorService executor;
+
+	private final ConcurrentHashMap<String, Mailbox> mailboxes = new ConcurrentHashMap<String, Mailbox>();
+	private final AtomicInteger pendingEvents = new AtomicInteger();
+	private final AtomicInteger maxMailboxDepth = new AtomicInteger();
+	private final AtomicLong deliveredEvents = new AtomicLong();
+
+	/**
+	 * @param eventScanner      delivers the events to the listener
+	 * @param reEntrantListener whether the listener can be called by several
+	 *                          threads at once
+	 * @param poolSize          number of threads delivering the events, 0 for a
+	 *                          virtual thread per mailbox when the JVM has them
+	 * @param maxPendingEvents  number of pending events above which the
+	 *                          dispatcher is saturated, 0 for no limit
+	 */
+	public ListenerMailboxDispatcher(EventScanner eventScanner, boolean reEntrantListener, int poolSize,
+			int maxPendingEvents) {
+		this.eventScanner = eventScanner;
+		this.reEntrantListener = reEntrantListener;
+		this.maxPendingEvents = maxPendingEvents;
+		this.executor = createExecutor(poolSize);
+	}
+
+	private static ExecutorService createExecutor(int poolSize) {
+		if (poolSize <= 0) {
+			try {
+				Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+				return (ExecutorService) method.invoke(null);
+			} catch (Exception e) {
+				// virtual threads need Java 21
+				poolSize = Runtime.getRuntime().availableProcessors() * 8;
+				if (logger.isLoggingEnabled(LogLevels.TRACE_INFO))
+					logger.logInfo("Virtual threads are not available, delivering the listener events on "
+							+ poolSize + " threads");
+			}
+		}
+		return Executors.newFixedThreadPool(poolSize, new NamingThreadFactory("sip_listener_mailbox"));
+	}
+
+	/**
+	 * Queue the event in the mailbox of its Call-ID, the listener is called
+	 * later on by another thread.
+	 */
+	public void dispatch(EventWrapper eventWrapper) {
+		String key = reEntrantListener ? getMailboxKey(eventWrapper) : SERIAL_MAILBOX;
+		pendingEvents.incrementAndGet();
+		while (true) {
+			Mailbox mailbox = mailboxes.get(key);
+			if (mailbox == null) {
+				mailbox = new Mailbox(key);
+				Mailbox existing = mailboxes.putIfAbsent(key, mailbox);
+				if (existing != null)
+					mailbox = existing;
+			}
+			// a mailbox closed once drained is replaced by a new one
+			if (mailbox.offer(eventWrapper))
+				return;
+		}
+	}
+
+	private static String getMailboxKey(EventWrapper eventWrapper) {
+		if (eventWrapper.transaction instanceof SIPTransactionImpl) {
+			String callId = ((SIPTransactionImpl) eventWrapper.transaction).getCallId();
+			if (callId != null)
+				return callId;
+		}
+		EventObject sipEvent = eventWrapper.sipEvent;
+		if (sipEvent instanceof RequestEvent)
+			return getCallId((SIPMessage) ((RequestEvent) sipEvent).getRequest());
+		if (sipEvent instanceof ResponseEvent)
+			return getCallId((SIPMessage) ((ResponseEvent) sipEvent).getResponse());
+		if (sipEvent instanceof DialogTerminatedEvent)
+			return getCallId((SIPDialog) ((DialogTerminatedEvent) sipEvent).getDialog());
+		if (sipEvent instanceof DialogTimeoutEvent)
+			return getCallId((SIPDialog) ((DialogTimeoutEvent) sipEvent).getDialog());
+		if (sipEvent instanceof TimeoutEvent) {
+			TimeoutEvent timeoutEvent = (TimeoutEvent) sipEvent;
+			return getCallId(timeoutEvent.isServerTransaction() ? timeoutEvent.getServerTransaction()
+					: timeoutEvent.getClientTransaction());
+		}
+		if (sipEvent instanceof TransactionTerminatedEvent) {
+			TransactionTerminatedEvent terminatedEvent = (TransactionTerminatedEvent) sipEvent;
+			return getCallId(terminatedEvent.isServerTransaction() ? terminatedEvent.getServerTransaction()
+					: terminatedEvent.getClientTransaction());
+		}
+		if (sipEvent instanceof IOExceptionEvent) {
+			IOExceptionEvent ioExceptionEvent = (IOExceptionEvent) sipEvent;
+			return ioExceptionEvent.getHost() + ":" + ioExceptionEvent.getPort() + "/" + ioExceptionEvent.getTransport();
+		}
+		return SERIAL_MAILBOX;
+	}
+
+	private static String getCallId(SIPMessage message) {
+		return message == null || message.getCallId() == null ? SERIAL_MAILBOX : message.getCallId().getCallId();
+	}
+
+	private static String getCallId(SIPDialog dialog) {
+		return dialog == null || dialog.getCallId() == null ? SERIAL_MAILBOX : dialog.getCallId().getCallId();
+	}
+
+	private static String getCallId(Transaction transaction) {
+		if (transaction instanceof SIPTransactionImpl && ((SIPTransactionImpl) transaction).getCallId() != null)
+			return ((SIPTransactionImpl) transaction).getCallId();
+		return SERIAL_MAILBOX;
+	}
+
+	/**
+	 * Stop the threads once the events already queued are delivered.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * @return the number of events queued or being delivered
+	 */
+	public int getPendingEvents() {
+		return pendingEvents.get();
+	}
+
+	/**
+	 * @return the number of events queued in the mailbox of the given Call-ID
+	 */
+	public int getMailboxDepth(String callId) {
+		Mailbox mailbox = mailboxes.get(reEntrantListener ? callId : SERIAL_MAILBOX);
+		return mailbox == null ? 0 : mailbox.getDepth();
+	}
+
+	/**
+	 * @return the highest number of events queued in a mailbox so far
+	 */
+	public int getMaxMailboxDepth() {
+		return maxMailboxDepth.get();
+	}
+
+	/**
+	 * @return the number of mailboxes holding events
+	 */
+	public int getMailboxes() {
+		return mailboxes.size();
+	}
+
+	/**
+	 * @return the number of events delivered to the listener
+	 */
+	public long getDeliveredEvents() {
+		return deliveredEvents.get();
+	}
+
+	/**
+	 * @return whether more events than LISTENER_MAX_PENDING_EVENTS wait for the listener
+	 */
+	public boolean isSaturated() {
+		return maxPendingEvents > 0 && pendingEvents.get() > maxPendingEvents;
+	}
+
+	/**
+	 * Events of a Call-ID, delivered by at most one thread at a time.
+	 */
+	private class Mailbox implements Runnable {
+		private final String key;
+		private final ArrayDeque<EventWrapper> events = new ArrayDeque<EventWrapper>();
+		private boolean scheduled;
+		private boolean closed;
+
+		private Mailbox(String key) {
+			this.key = key;
+		}
+
+		private synchronized boolean offer(EventWrapper eventWrapper) {
+			if (closed)
+				return false;
+			events.add(eventWrapper);
+			int depth = events.size();
+			for (int max = maxMailboxDepth.get(); depth > max; max = maxMailboxDepth.get()) {
+				if (maxMailboxDepth.compareAndSet(max, depth))
+					break;
+			}
+			if (!scheduled) {
+				scheduled = true;
+				schedule();
+			}
+			return true;
+		}
+
+		private synchronized int getDepth() {
+			return events.size();
+		}
+
+		private void schedule() {
+			try {
+				executor.execute(this);
+			} catch (RejectedExecutionException e) {
+				logger.logError("The listener mailboxes are stopped, dropping " + events.size() + " events of " + key);
+				pendingEvents.addAndGet(-events.size());
+				events.clear();
+				scheduled = false;
+				close();
+			}
+		}
+
+		private void close() {
+			closed = true;
+			mailboxes.remove(key, this);
+		}
+
+		public void run() {
+			for (int i = 0; i < MAX_BATCH; i++) {
+				EventWrapper eventWrapper;
+				synchronized (this) {
+					eventWrapper = events.poll();
+					if (eventWrapper == null) {
+						scheduled = false;
+						close();
+						return;
+					}
+				}
+				try {
+					eventScanner.deliverEvent(eventWrapper);
+				} catch (Exception e) {
+					logger.logError("Unexpected exception caught while delivering event -- carrying on bravely", e);
+				} finally {
+					pendingEvents.decrementAndGet();
+					deliveredEvents.incrementAndGet();
+				}
+			}
+			synchronized (this) {
+				if (events.isEmpty()) {
+					scheduled = false;
+					close();
+				} else {
+					// lets the other mailboxes run on a bounded pool
+					schedule();
+				}
+			}
+		}
+	}
+}
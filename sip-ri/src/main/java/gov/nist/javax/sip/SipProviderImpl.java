@@ -54,6 +54,8 @@ import javax.sip.TransactionAlreadyExistsException;
 import javax.sip.TransactionState;
 import javax.sip.TransactionUnavailableException;
 import javax.sip.address.Hop;
+import javax.sip.address.Router;
+import javax.sip.address.SipURI;
 import javax.sip.header.CallIdHeader;
 import javax.sip.message.Request;
 import javax.sip.message.Response;
@@ -64,6 +66,7 @@ import gov.nist.core.LogLevels;
 import gov.nist.core.StackLogger;
 import gov.nist.javax.sip.DialogTimeoutEvent.Reason;
 import gov.nist.javax.sip.address.RouterExt;
+import gov.nist.javax.sip.dns.DNSAwareRouter;
 import gov.nist.javax.sip.header.CallID;
 import gov.nist.javax.sip.header.Via;
 import gov.nist.javax.sip.message.SIPMessage;
@@ -179,8 +182,8 @@ public class SipProviderImpl implements gov.nist.javax.sip.SipProviderExt,
         //     // Run the event in the context of a single thread.
         //     this.eventScanner.addEvent(eventWrapper);
         // } else {
-            // just call the delivery method
-            this.eventScanner.deliverEvent(eventWrapper);
+            // just call the delivery method, or queue it for the listener
+            this.eventScanner.dispatchEvent(eventWrapper);
         // }
     }
 
@@ -727,20 +730,65 @@ public class SipProviderImpl implements gov.nist.javax.sip.SipProviderExt,
                                 + dialog.getState());
             }
         }
-        Hop hop = sipStack.getRouter((SIPRequest) request).getNextHop(request);
-        if (hop == null)
-            throw new SipException("could not determine next hop!");
-        SIPRequest sipRequest = (SIPRequest) request;
+        final SIPRequest sipRequest = (SIPRequest) request;
         // Check if we have a valid via.
         // Null request is used to send default proxy keepalive messages.
         if ((!sipRequest.isNullRequest()) && sipRequest.getTopmostVia() == null)
             throw new SipException("Invalid SipRequest -- no via header!");
 
+        Router router = sipStack.getRouter(sipRequest);
+        if (router instanceof DNSAwareRouter && !sipRequest.isNullRequest()) {
+            // the request is sent once the DNS lookups of its target completed,
+            // without blocking the caller on them, a failure is reported to the
+            // listener as the caller is gone
+            ((DNSAwareRouter) router).getNextHopAsync(request).whenComplete((hop, error) -> {
+                if (error != null || hop == null) {
+                    if (logger.isLoggingEnabled())
+                        logger.logError("could not determine next hop for " + sipRequest.getFirstLine(), error);
+                    noNextHop(sipRequest);
+                    return;
+                }
+                sipStack.getMessageProcessorExecutor().addTaskLast(
+                        new SipProviderOutgoingRequestTask(this, sipRequest, hop, "SipProviderSendRequest"));
+            });
+            return;
+        }
+
+        Hop hop = router.getNextHop(request);
+        if (hop == null)
+            throw new SipException("could not determine next hop!");
+
         SipProviderOutgoingRequestTask outgoingMessageProcessingTask = 
             new SipProviderOutgoingRequestTask(this, sipRequest, hop, "SipProviderSendRequest");
         sipStack.getMessageProcessorExecutor().addTaskLast(outgoingMessageProcessingTask);
     }
 
+    /**
+     * Raises an IOExceptionEvent for a request sent statelessly whose next hop
+     * could not be found, in place of the SipException sendRequest throws when
+     * it routes the request synchronously.
+     */
+    private void noNextHop(SIPRequest sipRequest) {
+        String transport = sipRequest.getTopmostVia().getTransport();
+        ListeningPoint listeningPoint = getListeningPoint(transport);
+        String peerHost = null;
+        int peerPort = -1;
+        if (sipRequest.getRequestURI() instanceof SipURI) {
+            SipURI requestURI = (SipURI) sipRequest.getRequestURI();
+            peerHost = requestURI.getHost();
+            peerPort = requestURI.getPort();
+        }
+        IOExceptionEventExt exceptionEvent = new IOExceptionEventExt(
+            sipRequest, this,
+            IOExceptionEventExt.Reason.ConnectionFailure,
+            listeningPoint != null ? listeningPoint.getIPAddress() : null,
+            listeningPoint != null ? listeningPoint.getPort() : -1,
+            peerHost,
+            peerPort,
+            transport);
+        handleEvent(exceptionEvent, null);
+    }
+
     /*
      * (non-Javadoc)
      *
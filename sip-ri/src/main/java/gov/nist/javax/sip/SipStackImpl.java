@@ -56,6 +56,7 @@ import gov.nist.core.LogLevels;
 import gov.nist.core.ServerLogger;
 import gov.nist.core.StackLogger;
 import gov.nist.core.ThreadAuditor;
+import gov.nist.core.executor.EventDrivenStackExecutor;
 import gov.nist.core.executor.MessageProcessorExecutor;
 import gov.nist.core.executor.StackExecutor;
 import gov.nist.core.net.AddressResolver;
@@ -68,18 +69,22 @@ import gov.nist.javax.sip.clientauthutils.AuthenticationHelper;
 import gov.nist.javax.sip.clientauthutils.AuthenticationHelperImpl;
 import gov.nist.javax.sip.clientauthutils.SecureAccountManager;
 import gov.nist.javax.sip.dns.DNSLookupPerformer;
+import gov.nist.javax.sip.dns.CachingDNSLookupPerformer;
 import gov.nist.javax.sip.dns.DefaultDNSLookupPerformer;
 import gov.nist.javax.sip.dns.HopperFactory;
 import gov.nist.javax.sip.dns.Rfc3263HopperFactory;
+import gov.nist.javax.sip.message.SIPMessage;
 import gov.nist.javax.sip.parser.MessageParserFactory;
 import gov.nist.javax.sip.parser.StringMsgParser;
 import gov.nist.javax.sip.parser.StringMsgParserFactory;
 import gov.nist.javax.sip.stack.ByteBufferFactory;
 import gov.nist.javax.sip.stack.DefaultMessageLogFactory;
 import gov.nist.javax.sip.stack.DefaultRouter;
+import gov.nist.javax.sip.stack.DialogStore;
 import gov.nist.javax.sip.stack.SIPEventInterceptor;
 import gov.nist.javax.sip.stack.SIPMessageValve;
 import gov.nist.javax.sip.stack.SIPTransactionStack;
+import gov.nist.javax.sip.stack.metrics.StackMetrics;
 import gov.nist.javax.sip.stack.timers.MobiusSipTimer;
 import gov.nist.javax.sip.stack.timers.SipTimer;
 import gov.nist.javax.sip.stack.timers.StackTimer;
@@ -89,6 +94,8 @@ import gov.nist.javax.sip.stack.transports.processors.MessageProcessor;
 import gov.nist.javax.sip.stack.transports.processors.MessageProcessorFactory;
 import gov.nist.javax.sip.stack.transports.processors.netty.NettyMessageProcessorFactory;
 import gov.nist.javax.sip.stack.transports.processors.nio.NIOMode;
+import gov.nist.javax.sip.stack.transports.processors.nio.NIOSelectorAssignment;
+import gov.nist.javax.sip.util.RandomIdGenerator;
 
 /**
  * Implementation of SipStack.
@@ -174,7 +181,10 @@ import gov.nist.javax.sip.stack.transports.processors.nio.NIOMode;
  * a no arg constructor. This allows to use different logging implementations
  * than the ones provided by default to log sent/received messages by the sip
  * stack. If this property is not defined, the default sip stack ServerLog will
- * be used for logging</li>
+ * be used for logging. gov.nist.javax.sip.stack.CaptureServerLog captures the
+ * messages in binary form through a ring buffer drained by a background thread
+ * into rotating pcap or length prefixed files, see its documentation for the
+ * CAPTURE_* properties.</li>
  *
  * <li><b>gov.nist.javax.sip.AUTOMATIC_DIALOG_ERROR_HANDLING = [true|false] </b>
  * <br/>
@@ -262,6 +272,25 @@ import gov.nist.javax.sip.stack.transports.processors.nio.NIOMode;
  * multithreaded machine write your listener to be re-entrant and set this
  * property to be true </b></li>
  *
+ * <li><b>gov.nist.javax.sip.ASYNC_LISTENER_DISPATCH = true|false </b> <br/>
+ * Default is false. If set to true the events are not delivered to the
+ * listener by the stack thread that produced them, but queued in a mailbox
+ * per Call-ID, whose events are delivered in order by one thread at a time.
+ * A listener blocking on a database or a remote service then only delays the
+ * events of its own calls. Unless REENTRANT_LISTENER is set, all the events
+ * go through a single mailbox, so the listener is still never called by two
+ * threads at once. See gov.nist.javax.sip.ListenerMailboxDispatcher.</li>
+ *
+ * <li><b>gov.nist.javax.sip.LISTENER_THREAD_POOL_SIZE = integer </b> <br/>
+ * Default is 0, which delivers the events of the mailboxes on virtual threads
+ * when the JVM has them (Java 21 and later), and on 8 threads per processor
+ * otherwise. Any other value delivers them on a pool of this many threads.</li>
+ *
+ * <li><b>gov.nist.javax.sip.LISTENER_MAX_PENDING_EVENTS = integer </b> <br/>
+ * Default is 0, no limit. Number of events waiting in the mailboxes above
+ * which the listener is considered saturated, the
+ * AdaptiveOverloadControlMessageValve then rejects new calls.</li>
+ *
  * <li><b>gov.nist.javax.sip.MAX_CONNECTIONS = integer </b> <br/>
  * Max number of simultaneous TCP connections handled by stack.</li>
  *
@@ -371,7 +400,8 @@ import gov.nist.javax.sip.stack.transports.processors.nio.NIOMode;
  * last IO operation on that socket. This allows to clean up after high initial load
  * of new calls that hang up or stay idle. Note that disconnecting the socket does't
  * end the SIP call. A new socket will be established when needed for any existing calls
- * by the SIP RFC spec.
+ * by the SIP RFC spec. Idle sockets are found by a timing wheel swept every second, so
+ * a socket may be closed up to a second after its idle time.
  * </li>
  *
  * <li><b>gov.nist.javax.sip.NIO_BLOCKING_MODE = String </b> <br/>
@@ -379,6 +409,21 @@ import gov.nist.javax.sip.stack.transports.processors.nio.NIOMode;
  * as "BLOCKING". Set to "NONBLOCKING" for nonBlocking connect behavior
  * </li>
  *
+ * <li><b>gov.nist.javax.sip.NIO_SELECTOR_THREADS = integer </b> <br/>
+ * Number of selector threads of each NIO TCP, TLS, WS and WSS listening point.
+ * Default is 1, a single thread accepting and serving every connection. With
+ * more threads a separate acceptor thread spreads the connections over them.
+ * The value may be set for a single listening point with
+ * gov.nist.javax.sip.NIO_SELECTOR_THREADS.TRANSPORT.port, for example
+ * gov.nist.javax.sip.NIO_SELECTOR_THREADS.WSS.443
+ * </li>
+ *
+ * <li><b>gov.nist.javax.sip.NIO_SELECTOR_ASSIGNMENT = String </b> <br/>
+ * How a new connection is given to a selector thread, "ROUND_ROBIN" (default)
+ * or "LEAST_LOAD" for the thread with the fewest connections. It may be set
+ * per listening point like gov.nist.javax.sip.NIO_SELECTOR_THREADS.
+ * </li>
+ *
  * <li><b>gov.nist.javax.sip.stack.USE_DIRECT_BUFFERS = [true|false]</b> <br/>
  * Default is <i>true</i> If set to <i>false</i>, the NIO stack won't use direct buffers.
  * As Direct buffers reside outside of the heap memory, they can lead to unforeseen out of memory exceptions
@@ -394,6 +439,67 @@ import gov.nist.javax.sip.stack.transports.processors.nio.NIOMode;
  * parameter in the Message. Otherwise, it will use the content length supplied
  * and generate a parse exception if the content is truncated.
  *
+ * <li><b>gov.nist.javax.sip.NETTY_PARSER_BYTE_SCANNING = [true|false] </b> <br/>
+ * Default is <i>false</i>. If set to <i>true</i>, the Netty based transports
+ * scan the incoming header lines directly in the received buffers : header
+ * names are matched byte by byte, Content-Length is read without building a
+ * String and only the lines handed over to a header parser are converted.
+ * </li>
+ *
+ * <li><b>gov.nist.javax.sip.LAZY_HEADER_PARSING = [true|false] </b> <br/>
+ * Default is <i>false</i>. If set to <i>true</i>, the Netty based transports
+ * only parse the Via, From, To, Call-ID, CSeq, Max-Forwards and Content-Length
+ * headers of incoming messages. The other header lines are kept as received
+ * and parsed the first time they are accessed, so that a proxy forwarding a
+ * message does not pay for headers it never looks at, untouched ones being
+ * forwarded verbatim. Implies byte scanning of the header lines (see
+ * NETTY_PARSER_BYTE_SCANNING). Note that a malformed header that is parsed
+ * lazily does not fail the message, it is moved to the unrecognized headers
+ * of the message instead.
+ * </li>
+ *
+ * <li><b>gov.nist.javax.sip.COPY_ON_WRITE_MESSAGE_CLONE = [true|false] </b> <br/>
+ * Default is <i>false</i>. If set to <i>true</i>, cloning a message only
+ * clones its From, To, CSeq, Call-ID, Content-Length and Max-Forwards headers.
+ * The other headers are shared with the clone and copied by either message the
+ * first time it hands them out, which saves copying the headers a proxy or a
+ * B2BUA forwards untouched. Headers obtained from a message before cloning it
+ * must not be modified afterwards. This applies to all the messages of the
+ * JVM and is left unchanged by the stacks that do not set the property, see
+ * SIPMessage.setCopyOnWriteClone.
+ * </li>
+ *
+ * <li><b>gov.nist.javax.sip.ID_GENERATOR_CLASS_NAME = name of the class implementing gov.nist.javax.sip.UtilsExt</b> <br/>
+ * Default is <i>gov.nist.javax.sip.util.RandomIdGenerator</i>, which generates
+ * the branch identifiers, tags and Call-IDs from a random generator per
+ * thread. gov.nist.javax.sip.util.UUIDIdGenerator generates them from random
+ * UUIDs, as the stack did before. This applies to all the stacks of the JVM
+ * and is left unchanged by the stacks that do not set the property, see
+ * Utils.setIdGenerator.
+ * </li>
+ *
+ * <li><b>gov.nist.javax.sip.ID_GENERATOR_NODE_PREFIX = string </b> <br/>
+ * Prefix of the branch identifiers and Call-IDs generated by the
+ * RandomIdGenerator, made of letters, digits, '.', '_' or '-', none by
+ * default. Gives each node of a cluster its own identifiers.
+ * </li>
+ *
+ * <li><b>gov.nist.javax.sip.NETTY_DIRECT_BUFFERS = [true|false] </b> <br/>
+ * Default is <i>false</i>. The Netty based transports encode outgoing
+ * messages straight into buffers taken from the channel allocator. If set to
+ * <i>true</i> direct buffers are allocated instead of heap ones, saving the
+ * copy done by the socket write at the cost of slower encoding.
+ * </li>
+ *
+ * <li><b>gov.nist.javax.sip.EXECUTOR_SPIN_COUNT = integer </b> <br/>
+ * Default is <i>0</i>. Used when gov.nist.javax.sip.STACK_EXECUTOR is set to
+ * gov.nist.core.executor.EventDrivenStackExecutor, whose workers are woken up
+ * as soon as a task is queued instead of polling their queue every
+ * gov.nist.javax.sip.EXECUTOR_TASK_INTERVAL ms. This is the number of times an
+ * idle worker polls its queue again before parking, trading some CPU for a
+ * lower latency under load.
+ * </li>
+ *
  * <li><b>gov.nist.javax.sip.CANCEL_CLIENT_TRANSACTION_CHECKED = [true|false]
  * </b> <br/>
  * Default is <i>true</i>. This flag is added in support of load balancers or
@@ -514,7 +620,12 @@ import gov.nist.javax.sip.stack.transports.processors.nio.NIOMode;
  *
  * <li><b>gov.nist.javax.sip.TIMER_CLASS_NAME =  name of the class implementing gov.nist.javax.sip.stack.timers.SipTimer</b> interface
  * This allows pluggable implementations of the Timer that will take care of scheduling the various SIP Timers.
- * By example one could plug a regular timer, a scheduled thread pool executor.</li>
+ * By example one could plug a regular timer, a scheduled thread pool executor.
+ * gov.nist.javax.sip.stack.timers.TimingWheelSipTimer removes cancelled timers right away and works with any STACK_EXECUTOR.</li>
+ *
+ * <li><b>gov.nist.javax.sip.timers.TIMING_WHEEL_TICK = integer </b> <br/>
+ * Default is <b>10</b>. The tick duration in milliseconds of the TimingWheelSipTimer,
+ * timers fire at most one tick after their delay.</li>
  *
  * <li><b>gov.nist.javax.sip.DELIVER_RETRANSMITTED_ACK_TO_LISTENER=boolean</b> A testing property
  * that allows application to see the ACK for retransmitted 200 OK requests. <b>Note that this is for test
@@ -560,7 +671,8 @@ import gov.nist.javax.sip.stack.transports.processors.nio.NIOMode;
  * (no transactions, no dialogs). From within the processRequest callback implementation you can drop messages, send a response statelessly or
  * otherwise transform/pre-process the message before it reaches the next steps of the pipeline. Similarly from processResponse() you can manipulate
  * a response or drop it silently, but dropping responses is not recommended, because the transaction already exists when the request for the response
- * was sent.
+ * was sent. gov.nist.javax.sip.stack.AdaptiveOverloadControlMessageValve rejects new dialogs according to the queueing delay of the stack executor
+ * workers, see its documentation for the OVERLOAD_* properties.
  * </li>
  *
  * <li><b>gov.nist.javax.sip.SIP_EVENT_INTERCEPTOR</b> Default to null. The class name of your custom interceptor object.
@@ -575,6 +687,22 @@ import gov.nist.javax.sip.stack.transports.processors.nio.NIOMode;
  *  of this feature is that you must use  gov.nist.javax.sip.REENTRANT_LISTENER=true to ensure that the request will be
  *  processed in the original thread completely for UDP.</li>
  *
+ * <li><b>gov.nist.javax.sip.DIALOG_STORE = String</b> Default to null. The class name of an implementation of
+ * gov.nist.javax.sip.stack.DialogStore. The stack writes the binary snapshots of its confirmed dialogs through to the
+ * store, and SIPTransactionStack.passivateDialog leaves a dialog in the store only until it is looked up again.
+ * gov.nist.javax.sip.stack.InMemoryDialogStore keeps them in the heap, gov.nist.javax.sip.stack.MappedFileDialogStore
+ * in a memory-mapped file found again after a restart, see its documentation for the DIALOG_STORE_* properties.</li>
+ *
+ * <li><b>gov.nist.javax.sip.DIALOG_STORE_WRITE_INTERVAL = long</b> Default to 1000. The milliseconds between two writes
+ * of the dialogs whose CSeq counters or remote target changed. A dialog is written at once when it is confirmed, its later
+ * changes are written together off the message path, and the pending ones when the stack stops.</li>
+ *
+ * <li><b>gov.nist.javax.sip.STACK_METRICS = [true|false] </b> Default is <i>false</i>. When true the stack keeps
+ * per thread latency histograms of its pipeline stages (queue delay, decode, valves, transaction matching, dialog
+ * processing, listener, encode and send) along with counters of the messages per method and status code, of the
+ * retransmissions and of the timers fired. They are read through SIPTransactionStack.getStackMetrics() and, unless
+ * gov.nist.javax.sip.STACK_METRICS_JMX is false, through the gov.nist.javax.sip:type=StackMetrics MBean.</li>
+ *
  *  <li><b>gov.nist.javax.sip.TLS_CLIENT_PROTOCOLS = String </b>
  *  Comma-separated list of protocols to use when creating outgoing TLS connections.
  *  The default is "TLSv1.2, TLSv1.1, TLSv1".
@@ -603,6 +731,10 @@ import gov.nist.javax.sip.stack.transports.processors.nio.NIOMode;
  *<li><b>gov.nist.javax.sip.RELIABLE_CONNECTION_KEEP_ALIVE_TIMEOUT</b> Value in seconds which is used as default keepalive timeout
  * (See also http://tools.ietf.org/html/rfc5626#section-4.4.1). Defaults to "infiinity" seconds (i.e. timeout event not delivered).</li>
  *
+ *<li><b>gov.nist.javax.sip.RELIABLE_CONNECTION_KEEP_ALIVE_PING_INTERVAL</b> Value in seconds after which a CRLF ping
+ * (See also http://tools.ietf.org/html/rfc5626#section-4.4.1) is sent over a NIO reliable connection without activity.
+ * The pong is then expected within the keep alive timeout. Defaults to -1 (i.e. no ping sent).</li>
+ *
  * <li><b>gov.nist.javax.sip.ALLOW_DIALOG_ON_DIFFERENT_PROVIDER = [true|false]</b> Default value is <b>false</b>. Whether to allow dialog continuation on different provider or not.</li>
  *
  * <li><b>gov.nist.javax.sip.SSL_HANDSHAKE_TIMEOUT</b> Value in seconds which is used as default timeout for performing the SSL Handshake
@@ -615,7 +747,25 @@ import gov.nist.javax.sip.stack.transports.processors.nio.NIOMode;
  *
  * <li><b>org.restcomm.ext.java.sip.DNS_LOOKUP_PERFORMER = classpath </b><br/>
  * The fully qualified class path for an implementation of the DNSLookupPerformer
- * interface. The DNSLookupPerformer Allow stack to provide its own DNS Lookup Performer instance.</li>
+ * interface. The DNSLookupPerformer Allow stack to provide its own DNS Lookup Performer instance.
+ * gov.nist.javax.sip.dns.CachingDNSLookupPerformer runs the lookups asynchronously and caches their answers.</li>
+ *
+ * <li><b>org.restcomm.ext.java.sip.DNS_CACHE_SIZE = integer </b> <br/>
+ * Default is <b>10000</b>. The maximum number of DNS answers kept by the
+ * CachingDNSLookupPerformer, the least recently used are evicted first.</li>
+ *
+ * <li><b>org.restcomm.ext.java.sip.DNS_NEGATIVE_CACHE_TTL = integer </b> <br/>
+ * Default is <b>30</b>. The number of seconds the CachingDNSLookupPerformer
+ * remembers that a name or record type does not exist, 0 to disable.</li>
+ *
+ * <li><b>org.restcomm.ext.java.sip.DNS_MAX_CACHE_TTL = integer </b> <br/>
+ * Default is <b>3600</b>. The maximum number of seconds the CachingDNSLookupPerformer
+ * keeps an answer, whatever the TTL of its records.</li>
+ *
+ * <li><b>org.restcomm.ext.java.sip.DNS_MIN_CACHE_TTL = integer </b> <br/>
+ * Default is <b>1</b>. The minimum number of seconds the CachingDNSLookupPerformer
+ * keeps an answer, so that the answers with a TTL of 0 are still found by the
+ * routing of the request they were resolved for.</li>
  *
  * <li><b>org.restcomm.ext.java.sip.DNS_HOPPER_FACTORY = classpath </b><br/>
  * The fully qualified class path for an implementation of the HopperFactory
@@ -675,6 +825,12 @@ public class SipStackImpl extends SIPTransactionStack implements SipStackExt {
 	// Use this flag with caution.
 	private boolean reEntrantListener;
 
+	private boolean asyncListenerDispatch;
+
+	private int listenerThreadPoolSize;
+
+	private int listenerMaxPendingEvents;
+
 	SipListener sipListener;
 	TlsSecurityPolicy tlsSecurityPolicy;
 	
@@ -866,6 +1022,8 @@ public class SipStackImpl extends SIPTransactionStack implements SipStackExt {
 
 		super.setReliableConnectionKeepAliveTimeout(1000 * Integer.parseInt(
 			        configurationProperties.getProperty("gov.nist.javax.sip.RELIABLE_CONNECTION_KEEP_ALIVE_TIMEOUT", "-1")));
+		super.setReliableConnectionKeepAlivePingInterval(1000L * Integer.parseInt(
+			        configurationProperties.getProperty("gov.nist.javax.sip.RELIABLE_CONNECTION_KEEP_ALIVE_PING_INTERVAL", "-1")));
 
 		// http://java.net/jira/browse/JSIP-415 Prevent Bad Client or Attacker (DoS) to block the TLSMessageProcessor or TLSMessageChannel
 		super.setSslHandshakeTimeout(Long.parseLong(
@@ -1162,6 +1320,9 @@ public class SipStackImpl extends SIPTransactionStack implements SipStackExt {
 				.getProperty("gov.nist.javax.sip.STACK_EXECUTOR", MessageProcessorExecutor.class.getName());
 		try {
 			messageProcessorExecutor = (StackExecutor) Class.forName(stackExecutorString).newInstance();
+			if(messageProcessorExecutor instanceof EventDrivenStackExecutor)
+				((EventDrivenStackExecutor)messageProcessorExecutor).setSpinCount(Integer.parseInt(
+						configurationProperties.getProperty("gov.nist.javax.sip.EXECUTOR_SPIN_COUNT", "0")));
 			if(this.workerPool!=null && messageProcessorExecutor instanceof MessageProcessorExecutor)
 				((MessageProcessorExecutor)messageProcessorExecutor).start(this.workerPool);
 			else if(this.threadPoolSize <= 0) {
@@ -1352,6 +1513,19 @@ public class SipStackImpl extends SIPTransactionStack implements SipStackExt {
 				.getProperty("gov.nist.javax.sip.REENTRANT_LISTENER");
 		this.reEntrantListener = (rel != null && "true".equalsIgnoreCase(rel));
 
+		this.asyncListenerDispatch = Boolean.parseBoolean(configurationProperties.getProperty(
+				"gov.nist.javax.sip.ASYNC_LISTENER_DISPATCH", "false"));
+		try {
+			this.listenerThreadPoolSize = Integer.parseInt(configurationProperties.getProperty(
+					"gov.nist.javax.sip.LISTENER_THREAD_POOL_SIZE", "0"));
+			this.listenerMaxPendingEvents = Integer.parseInt(configurationProperties.getProperty(
+					"gov.nist.javax.sip.LISTENER_MAX_PENDING_EVENTS", "0"));
+		} catch (NumberFormatException ex) {
+			if (logger.isLoggingEnabled())
+				logger.logError(
+					"Bad configuration value for the listener mailboxes - " + ex.getMessage());
+		}
+
 		// Check if a thread audit interval is specified
 		String interval = configurationProperties
 				.getProperty("gov.nist.javax.sip.THREAD_AUDIT_INTERVAL_IN_MILLISECS");
@@ -1410,6 +1584,37 @@ public class SipStackImpl extends SIPTransactionStack implements SipStackExt {
 		StringMsgParser
 				.setComputeContentLengthFromMessage(computeContentLengthFromMessage);
 
+		// the clone mode is shared by all the stacks, only set when configured
+		String copyOnWriteClone = configurationProperties.getProperty(
+				"gov.nist.javax.sip.COPY_ON_WRITE_MESSAGE_CLONE");
+		if (copyOnWriteClone != null)
+			SIPMessage.setCopyOnWriteClone(Boolean.parseBoolean(copyOnWriteClone));
+
+		// so is the identifier generator
+		String idGeneratorClassName = configurationProperties.getProperty(
+				"gov.nist.javax.sip.ID_GENERATOR_CLASS_NAME");
+		String idGeneratorNodePrefix = configurationProperties.getProperty(
+				"gov.nist.javax.sip.ID_GENERATOR_NODE_PREFIX");
+		if (idGeneratorClassName != null || idGeneratorNodePrefix != null) {
+			try {
+				if (idGeneratorClassName == null || idGeneratorClassName.equals(RandomIdGenerator.class.getName()))
+					Utils.setIdGenerator(new RandomIdGenerator(idGeneratorNodePrefix));
+				else
+					Utils.setIdGenerator((UtilsExt) Class.forName(idGeneratorClassName).newInstance());
+			} catch (Exception e) {
+				logger.logError("Bad configuration value for gov.nist.javax.sip.ID_GENERATOR_CLASS_NAME or gov.nist.javax.sip.ID_GENERATOR_NODE_PREFIX", e);
+			}
+		}
+
+		super.nettyParserByteScanning = Boolean.parseBoolean(configurationProperties.getProperty(
+				"gov.nist.javax.sip.NETTY_PARSER_BYTE_SCANNING", "false"));
+
+		super.lazyHeaderParsing = Boolean.parseBoolean(configurationProperties.getProperty(
+				"gov.nist.javax.sip.LAZY_HEADER_PARSING", "false"));
+
+		super.nettyDirectBuffers = Boolean.parseBoolean(configurationProperties.getProperty(
+				"gov.nist.javax.sip.NETTY_DIRECT_BUFFERS", "false"));
+
 		String tlsClientProtocols = configurationProperties.getProperty(
 				"gov.nist.javax.sip.TLS_CLIENT_PROTOCOLS");
 		if (tlsClientProtocols != null)
@@ -1583,6 +1788,24 @@ public class SipStackImpl extends SIPTransactionStack implements SipStackExt {
 				.logError(
 						"Bad configuration value for gov.nist.javax.sip.NIO_BLOCKING_MODE=" + nioMode, e);
 		}
+
+		String selectorThreads = configurationProperties.getProperty("gov.nist.javax.sip.NIO_SELECTOR_THREADS", "1");
+		try {
+			super.nioSelectorThreads = Integer.parseInt(selectorThreads);
+		} catch (Exception e) {
+			logger
+				.logError(
+						"Bad configuration value for gov.nist.javax.sip.NIO_SELECTOR_THREADS=" + selectorThreads, e);
+		}
+
+		String selectorAssignment = configurationProperties.getProperty("gov.nist.javax.sip.NIO_SELECTOR_ASSIGNMENT", "ROUND_ROBIN");
+		try {
+			super.nioSelectorAssignment = NIOSelectorAssignment.valueOf(selectorAssignment);
+		} catch (Exception e) {
+			logger
+				.logError(
+						"Bad configuration value for gov.nist.javax.sip.NIO_SELECTOR_ASSIGNMENT=" + selectorAssignment, e);
+		}
 		
 		String defaultTimerName = configurationProperties.getProperty("gov.nist.javax.sip.TIMER_CLASS_NAME",MobiusSipTimer.class.getName());
 		try {
@@ -1660,6 +1883,39 @@ public class SipStackImpl extends SIPTransactionStack implements SipStackExt {
 			}
 		}
 
+		String dialogStoreClassName = configurationProperties.getProperty("gov.nist.javax.sip.DIALOG_STORE", null);
+		if(dialogStoreClassName != null && !dialogStoreClassName.equals("")) {
+			try {
+				DialogStore dialogStore = (DialogStore) Class.forName(dialogStoreClassName).newInstance();
+				dialogStore.init(this);
+				super.dialogStore = dialogStore;
+			} catch (Exception e) {
+				logger
+					.logError(
+							"Bad configuration value for gov.nist.javax.sip.DIALOG_STORE", e);
+			}
+		}
+
+		String dialogStoreWriteInterval = configurationProperties.getProperty("gov.nist.javax.sip.DIALOG_STORE_WRITE_INTERVAL", "1000");
+		try {
+			long writeInterval = Long.parseLong(dialogStoreWriteInterval);
+			if (writeInterval <= 0)
+				throw new NumberFormatException("The interval must be positive");
+			super.dialogStoreWriteInterval = writeInterval;
+		} catch (NumberFormatException e) {
+			logger
+				.logError(
+						"Bad configuration value for gov.nist.javax.sip.DIALOG_STORE_WRITE_INTERVAL=" + dialogStoreWriteInterval, e);
+		}
+
+		if (Boolean.parseBoolean(configurationProperties.getProperty("gov.nist.javax.sip.STACK_METRICS", "false"))) {
+			super.stackMetrics = new StackMetrics();
+			if (Boolean.parseBoolean(
+					configurationProperties.getProperty("gov.nist.javax.sip.STACK_METRICS_JMX", "true"))) {
+				super.stackMetrics.register(getStackName());
+			}
+		}
+
 		boolean allowDialogOnDifferentProvider = Boolean.parseBoolean(configurationProperties.getProperty(
 				"gov.nist.javax.sip.ALLOW_DIALOG_ON_DIFFERENT_PROVIDER",
 				"false"));
@@ -1738,6 +1994,45 @@ public class SipStackImpl extends SIPTransactionStack implements SipStackExt {
 		} catch (ClassNotFoundException | InstantiationException | IllegalAccessException e) {
 			throw new PeerUnavailableException("The DNS Lookup Provider of type " + dnsLookupPerformerClassName + " could not be instantiated", e);
 		}
+		if(this.dnsLookupPerformer instanceof CachingDNSLookupPerformer) {
+			CachingDNSLookupPerformer cachingLookupPerformer = (CachingDNSLookupPerformer) this.dnsLookupPerformer;
+			String dnsCacheSize = configurationProperties.getProperty("org.restcomm.ext.java.sip.DNS_CACHE_SIZE");
+			if (dnsCacheSize != null) {
+				try {
+					cachingLookupPerformer.setMaxCacheEntries(Integer.parseInt(dnsCacheSize));
+				} catch (NumberFormatException ex) {
+					if (logger.isLoggingEnabled())
+						logger.logError("DNS cache size - bad value " + ex.getMessage());
+				}
+			}
+			String dnsNegativeCacheTtl = configurationProperties.getProperty("org.restcomm.ext.java.sip.DNS_NEGATIVE_CACHE_TTL");
+			if (dnsNegativeCacheTtl != null) {
+				try {
+					cachingLookupPerformer.setNegativeCacheTtl(Integer.parseInt(dnsNegativeCacheTtl));
+				} catch (NumberFormatException ex) {
+					if (logger.isLoggingEnabled())
+						logger.logError("DNS negative cache TTL - bad value " + ex.getMessage());
+				}
+			}
+			String dnsMaxCacheTtl = configurationProperties.getProperty("org.restcomm.ext.java.sip.DNS_MAX_CACHE_TTL");
+			if (dnsMaxCacheTtl != null) {
+				try {
+					cachingLookupPerformer.setMaxCacheTtl(Integer.parseInt(dnsMaxCacheTtl));
+				} catch (NumberFormatException ex) {
+					if (logger.isLoggingEnabled())
+						logger.logError("DNS max cache TTL - bad value " + ex.getMessage());
+				}
+			}
+			String dnsMinCacheTtl = configurationProperties.getProperty("org.restcomm.ext.java.sip.DNS_MIN_CACHE_TTL");
+			if (dnsMinCacheTtl != null) {
+				try {
+					cachingLookupPerformer.setMinCacheTtl(Integer.parseInt(dnsMinCacheTtl));
+				} catch (NumberFormatException ex) {
+					if (logger.isLoggingEnabled())
+						logger.logError("DNS min cache TTL - bad value " + ex.getMessage());
+				}
+			}
+		}
 
 		final String defaultTransport = configurationProperties.getProperty("org.restcomm.ext.java.sip.DEFAULT_TRANSPORT", ListeningPoint.UDP);
 		final String defaultSecureTransport = configurationProperties.getProperty("org.restcomm.ext.java.sip.DEFAULT_SECURE_TRANSPORT", ListeningPoint.TLS);
@@ -2199,6 +2494,33 @@ public class SipStackImpl extends SIPTransactionStack implements SipStackExt {
 		return reEntrantListener;
 	}
 
+	/**
+	 * @return whether the events are delivered to the listener from per Call-ID
+	 *         mailboxes instead of the stack threads
+	 */
+	public boolean isAsyncListenerDispatch() {
+		return asyncListenerDispatch;
+	}
+
+	public int getListenerThreadPoolSize() {
+		return listenerThreadPoolSize;
+	}
+
+	public int getListenerMaxPendingEvents() {
+		return listenerMaxPendingEvents;
+	}
+
+	/**
+	 * @return the mailboxes delivering the events to the listener, null unless
+	 *         ASYNC_LISTENER_DISPATCH is set and the stack is running
+	 */
+	public ListenerMailboxDispatcher getListenerMailboxDispatcher() {
+		EventScanner scanner = this.eventScanner;
+		if (!asyncListenerDispatch || scanner == null)
+			return null;
+		return scanner.getMailboxDispatcher();
+	}
+
 	@Override
 	public StackTimer getStackTimer() {
 		return this.timer;
@@ -24,12 +24,12 @@ package gov.nist.javax.sip;
 import java.security.MessageDigest;
 import java.util.HashSet;
 import java.util.Locale;
-import java.util.UUID;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
 import gov.nist.javax.sip.header.Via;
 import gov.nist.javax.sip.message.SIPResponse;
+import gov.nist.javax.sip.util.RandomIdGenerator;
 
 /**
  * A few utilities that are used in various places by the stack. This is used to
@@ -53,6 +53,10 @@ public class Utils implements UtilsExt {
 
     private static String signature;
 
+    private static String branchSignature;
+
+    private static volatile UtilsExt idGenerator;
+
     private static Utils instance = new Utils();
 
 
@@ -71,6 +75,8 @@ public class Utils implements UtilsExt {
         }
         // rand = new java.util.Random(System.nanoTime());
         signature = toHexString(Integer.toString(Math.abs(new java.util.Random(System.nanoTime()).nextInt() % 1000 )).getBytes());
+        branchSignature = SIPConstants.BRANCH_MAGIC_COOKIE + "-" + signature;
+        idGenerator = new RandomIdGenerator();
     }
 
 
@@ -146,22 +152,7 @@ public class Utils implements UtilsExt {
      * call identifier in advance of generating a message.
      */
     public String generateCallIdentifier(String address) {
-    	// long random = rand.nextLong();
-    	// int hash = (int) Math.abs(random%digesterPoolsSize);
-    	// MessageDigest md = digesterPool[hash];
-    	
-    	// synchronized (md) {
-    	// 	String date = Long.toString(System.nanoTime() + System.currentTimeMillis() + callIDCounter++
-    	// 			+ random);
-    	// 	byte cid[] = md.digest(date.getBytes());
-
-    	// 	String cidString = Utils.toHexString(cid);
-    	// 	return cidString + "@" + address;
-    	// }
-        // Generate a random unique number
-        UUID uniqueNumber = UUID.randomUUID();
-        String uniqueNumberString = uniqueNumber.toString();
-        return uniqueNumberString + "@" + address;
+        return idGenerator.generateCallIdentifier(address);
     }
 
     /**
@@ -175,9 +166,7 @@ public class Utils implements UtilsExt {
      * twice
      */
     public String generateTag() {
-            return 	UUID.randomUUID().toString();
-            // return Integer.toHexString(rand.nextInt());
-
+        return idGenerator.generateTag();
     }
 
     /**
@@ -188,29 +177,35 @@ public class Utils implements UtilsExt {
      *         used as a branch identifier.
      */
     public String generateBranchId() {
-    	//
-    	// long num = rand.nextLong() + Utils.counter++  + System.currentTimeMillis() + System.nanoTime();
-    	// int hash = (int) Math.abs(num%digesterPoolsSize);
-    	// MessageDigest digester = digesterPool[hash];
-    	// synchronized(digester) {
-    		// byte bid[] = digester.digest(Long.toString(num).getBytes());
-    		// prepend with a magic cookie to indicate we are bis09 compatible.
-    		return SIPConstants.BRANCH_MAGIC_COOKIE + "-"  
-    		    + signature + "-" + UUID.randomUUID().toString();
-    	// }
+        return idGenerator.generateBranchId();
     }
 
     public boolean responseBelongsToUs(SIPResponse response) {
         Via topmostVia = response.getTopmostVia();
         String branch = topmostVia.getBranch();
-        return branch != null && branch.startsWith(
-                   SIPConstants.BRANCH_MAGIC_COOKIE + "-" + signature);
+        return branch != null && branch.startsWith(branchSignature);
     }
 
     public static String getSignature() {
         return signature;
     }
 
+    /**
+     * Set the generator of the branch identifiers, tags and Call-IDs of all
+     * the stacks of the JVM, a RandomIdGenerator by default. The branch
+     * identifiers it generates must start with the magic cookie followed by
+     * "-" and the signature, for responseBelongsToUs to recognize them.
+     */
+    public static void setIdGenerator(UtilsExt generator) {
+        if (generator == null || generator instanceof Utils)
+            throw new IllegalArgumentException("Invalid identifier generator " + generator);
+        idGenerator = generator;
+    }
+
+    public static UtilsExt getIdGenerator() {
+        return idGenerator;
+    }
+
     public static void main(String[] args) {
     	final HashSet<String> branchIds = new HashSet<String>();
     	Executor e = Executors.newFixedThreadPool(100);
@@ -17,6 +17,11 @@
 package gov.nist.javax.sip;
 
 /**
+ * Generator of the identifiers of the stack. Besides Utils, the implementations
+ * of this interface can be plugged in through the
+ * gov.nist.javax.sip.ID_GENERATOR_CLASS_NAME stack property or
+ * Utils.setIdGenerator, Utils then delegates the generation to them.
+ *
  * @author jean.deruelle@gmail.com
  *
  */
@@ -43,7 +48,9 @@ public interface UtilsExt {
     public String generateTag();
     /**
      * Generate a cryptographically random identifier that can be used to
-     * generate a branch identifier.
+     * generate a branch identifier. It starts with the magic cookie, "-" and the
+     * signature returned by Utils.getSignature, so that the stack recognizes
+     * the responses to its own requests.
      *
      * @return a cryptographically random gloablly unique string that can be
      *         used as a branch identifier.
@@ -233,4 +233,16 @@ public class Authority extends NetObject {
         if ( this.hostPort == null ) throw new UnsupportedOperationException("Null hostPort cannot compute hashcode");
         return this.hostPort.encode().hashCode();
     }
+
+    /**
+     * Match the host, the port and the user info with a template.
+     */
+    public boolean match(Object other) {
+        if (other == null)
+            return true;
+        if (other.getClass() != this.getClass())
+            return false;
+        final Authority o = (Authority) other;
+        return matchValues(hostPort, o.hostPort) && matchValues(userInfo, o.userInfo);
+    }
 }
@@ -131,4 +131,23 @@ public class GenericURI extends NetObject implements javax.sip.address.URI {
     public int hashCode() {
         return this.toString().hashCode();
     }
+
+    /**
+     * Match the fields declared up to this class with the ones of a template
+     * of the same class. Subclasses add their own fields.
+     */
+    protected boolean matchFields(GenericURI template) {
+        return matchValues(uriString, template.uriString) && matchValues(scheme, template.scheme);
+    }
+
+    /**
+     * Match this URI with a template of the same class.
+     */
+    public boolean match(Object other) {
+        if (other == null)
+            return true;
+        if (other.getClass() != this.getClass())
+            return false;
+        return matchFields((GenericURI) other);
+    }
 }
@@ -1078,4 +1078,12 @@ public class SipUri extends GenericURI implements SipURIExt{
      *remove the +sip-instance value from the parameter list if it exists.
      */
 
+    /**
+     * Also match the authority, the parameters and the headers.
+     */
+    protected boolean matchFields(GenericURI template) {
+        final SipUri o = (SipUri) template;
+        return super.matchFields(o) && matchValues(authority, o.authority) && matchValues(uriParms, o.uriParms)
+                && matchValues(qheaders, o.qheaders) && matchValues(telephoneSubscriber, o.telephoneSubscriber);
+    }
 }
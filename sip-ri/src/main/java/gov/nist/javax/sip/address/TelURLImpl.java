@@ -219,4 +219,11 @@ public class TelURLImpl
 
         return this.getParameter("phone-context");
     }
+
+    /**
+     * Also match the telephone number.
+     */
+    protected boolean matchFields(GenericURI template) {
+        return super.matchFields(template) && matchValues(telephoneNumber, ((TelURLImpl) template).telephoneNumber);
+    }
 }
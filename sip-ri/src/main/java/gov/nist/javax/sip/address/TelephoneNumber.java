@@ -249,4 +249,28 @@ public class TelephoneNumber extends NetObject {
     public NameValueList getParameters() {
         return this.parameters;
     }
+
+    /**
+     * Compare the number, whether it is global and the parameters.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final TelephoneNumber o = (TelephoneNumber) other;
+        return isglobal == o.isglobal && equalValues(phoneNumber, o.phoneNumber) && equalValues(parameters, o.parameters);
+    }
+
+    /**
+     * Match the number and the parameters with a template.
+     */
+    public boolean match(Object other) {
+        if (other == null)
+            return true;
+        if (other.getClass() != this.getClass())
+            return false;
+        final TelephoneNumber o = (TelephoneNumber) other;
+        return isglobal == o.isglobal && matchValues(phoneNumber, o.phoneNumber) && matchValues(parameters, o.parameters);
+    }
 }
@@ -181,4 +181,16 @@ public final class UserInfo extends NetObject {
         }
         userType = type;
     }
+
+    /**
+     * Match the user and the password with a template.
+     */
+    public boolean match(Object other) {
+        if (other == null)
+            return true;
+        if (other.getClass() != this.getClass())
+            return false;
+        final UserInfo o = (UserInfo) other;
+        return userType == o.userType && matchValues(user, o.user) && matchValues(password, o.password);
+    }
 }
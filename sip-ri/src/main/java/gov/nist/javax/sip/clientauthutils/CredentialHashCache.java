@@ -0,0 +1,117 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.clientauthutils;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * HA1 values by user, realm and algorithm, kept for a time to live and
+ * bounded in size. When full the expired entries are dropped first and then
+ * arbitrary ones, which is good enough for a registrar where each user comes
+ * back once per refresh interval.
+ */
+class CredentialHashCache {
+	private static final char SEPARATOR = '\0';
+
+	private final ConcurrentHashMap<String, CachedHash> hashes = new ConcurrentHashMap<String, CachedHash>();
+
+	private final int maxSize;
+
+	private final long timeToLive;
+
+	CredentialHashCache(int maxSize, long timeToLive) {
+		this.maxSize = maxSize;
+		this.timeToLive = timeToLive;
+	}
+
+	String get(String username, String realm, String algorithm) {
+		if (maxSize <= 0)
+			return null;
+
+		String key = getKey(username, realm, algorithm);
+		CachedHash cachedHash = hashes.get(key);
+		if (cachedHash == null)
+			return null;
+
+		if (cachedHash.expiryTime <= System.currentTimeMillis()) {
+			hashes.remove(key, cachedHash);
+			return null;
+		}
+		return cachedHash.hash;
+	}
+
+	void put(String username, String realm, String algorithm, String hash) {
+		if (maxSize <= 0)
+			return;
+
+		long now = System.currentTimeMillis();
+		hashes.put(getKey(username, realm, algorithm), new CachedHash(hash, now + timeToLive));
+		if (hashes.size() > maxSize)
+			evict(now);
+	}
+
+	void invalidate(String username, String realm) {
+		String prefix = username + SEPARATOR + realm + SEPARATOR;
+		Iterator<String> iterator = hashes.keySet().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().startsWith(prefix))
+				iterator.remove();
+		}
+	}
+
+	void clear() {
+		hashes.clear();
+	}
+
+	int size() {
+		return hashes.size();
+	}
+
+	private void evict(long now) {
+		Iterator<CachedHash> iterator = hashes.values().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().expiryTime <= now)
+				iterator.remove();
+		}
+
+		// leave some room so that the next puts do not evict again
+		int target = maxSize - maxSize / 8;
+		iterator = hashes.values().iterator();
+		while (hashes.size() > target && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+		}
+	}
+
+	private static String getKey(String username, String realm, String algorithm) {
+		return username + SEPARATOR + realm + SEPARATOR + algorithm;
+	}
+
+	private static class CachedHash {
+		private final String hash;
+
+		private final long expiryTime;
+
+		private CachedHash(String hash, long expiryTime) {
+			this.hash = hash;
+			this.expiryTime = expiryTime;
+		}
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.clientauthutils;
+
+/**
+ * Outcome of {@link DigestServerAuthenticator#authenticate(javax.sip.message.Request, String)}.
+ * Everything but SUCCESS should be answered with a new challenge, with
+ * stale=true for STALE_NONCE so the client retries without prompting.
+ */
+public enum DigestAuthenticationResult {
+	/** the credentials are valid */
+	SUCCESS,
+	/** the request carries no credentials for the realm */
+	MISSING_CREDENTIALS,
+	/** the account manager does not know the user */
+	UNKNOWN_USER,
+	/** the nonce was issued by this server but has expired */
+	STALE_NONCE,
+	/** the nonce was not issued by this server or for this realm */
+	INVALID_NONCE,
+	/** the nonce count was already used with this nonce */
+	REPLAYED,
+	/** the algorithm or qop is not supported */
+	UNSUPPORTED,
+	/** the digest response does not match */
+	FAILED;
+}
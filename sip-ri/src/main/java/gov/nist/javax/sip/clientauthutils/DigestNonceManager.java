@@ -0,0 +1,247 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.clientauthutils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Issues and verifies the nonces of a {@link DigestServerAuthenticator}.
+ *
+ * A nonce carries its issue time and a random value, signed with HMAC-SHA256
+ * over these and the realm, so any node holding the same key verifies it
+ * without having stored it. State is kept only for the nonces a client has
+ * answered with qop: the highest nonce count seen and a 64 bit window of the
+ * counts below it, so a count is accepted once while the nonce lives and the
+ * nonce can be reused by the REGISTER refreshes until it goes stale.
+ */
+public class DigestNonceManager {
+	public static final long DEFAULT_NONCE_LIFETIME = 3600000L;
+
+	private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+	private static final int PAYLOAD_LENGTH = 16;
+
+	private static final int SIGNATURE_LENGTH = 16;
+
+	private static final int NONCE_LENGTH = PAYLOAD_LENGTH + SIGNATURE_LENGTH;
+
+	private static final int WINDOW_SIZE = 64;
+
+	private final SecretKeySpec key;
+
+	private final long nonceLifetime;
+
+	private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+		@Override
+		protected Mac initialValue() {
+			try {
+				Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+				mac.init(key);
+				return mac;
+			} catch (GeneralSecurityException ex) {
+				throw new IllegalStateException("Can not create " + HMAC_ALGORITHM, ex);
+			}
+		}
+	};
+
+	private final ConcurrentHashMap<String, NonceCounter> nonceCounters = new ConcurrentHashMap<String, NonceCounter>();
+
+	private final AtomicLong nextPurge = new AtomicLong();
+
+	/**
+	 * Creates a manager signing with a random key, for a single node.
+	 */
+	public DigestNonceManager() {
+		this(randomKey(), DEFAULT_NONCE_LIFETIME);
+	}
+
+	/**
+	 * Creates a manager signing with the given key, which all the nodes that
+	 * may receive the answer to a challenge have to share.
+	 *
+	 * @param key the HMAC key, at least 16 bytes
+	 * @param nonceLifetime milliseconds after which a nonce is stale
+	 */
+	public DigestNonceManager(byte[] key, long nonceLifetime) {
+		if (key == null || key.length < 16)
+			throw new IllegalArgumentException("The nonce key has to be at least 16 bytes");
+		if (nonceLifetime <= 0)
+			throw new IllegalArgumentException("Bad nonce lifetime " + nonceLifetime);
+
+		this.key = new SecretKeySpec(key.clone(), HMAC_ALGORITHM);
+		this.nonceLifetime = nonceLifetime;
+	}
+
+	private static byte[] randomKey() {
+		byte[] key = new byte[32];
+		new SecureRandom().nextBytes(key);
+		return key;
+	}
+
+	public long getNonceLifetime() {
+		return nonceLifetime;
+	}
+
+	/**
+	 * Returns a new nonce for the realm.
+	 */
+	public String generateNonce(String realm) {
+		byte[] nonce = new byte[NONCE_LENGTH];
+		putLong(nonce, 0, System.currentTimeMillis());
+		putLong(nonce, 8, ThreadLocalRandom.current().nextLong());
+		System.arraycopy(sign(nonce, realm), 0, nonce, PAYLOAD_LENGTH, SIGNATURE_LENGTH);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(nonce);
+	}
+
+	/**
+	 * Checks that the nonce was issued by this manager for the realm and has
+	 * not expired.
+	 *
+	 * @return SUCCESS, STALE_NONCE or INVALID_NONCE
+	 */
+	public DigestAuthenticationResult verifyNonce(String nonce, String realm) {
+		byte[] decoded;
+		try {
+			decoded = Base64.getUrlDecoder().decode(nonce);
+		} catch (IllegalArgumentException ex) {
+			return DigestAuthenticationResult.INVALID_NONCE;
+		}
+		if (decoded.length != NONCE_LENGTH)
+			return DigestAuthenticationResult.INVALID_NONCE;
+
+		byte[] signature = sign(decoded, realm);
+		int difference = 0;
+		for (int i = 0; i < SIGNATURE_LENGTH; i++)
+			difference |= signature[i] ^ decoded[PAYLOAD_LENGTH + i];
+		if (difference != 0)
+			return DigestAuthenticationResult.INVALID_NONCE;
+
+		long age = System.currentTimeMillis() - getLong(decoded, 0);
+		if (age < 0 || age >= nonceLifetime)
+			return DigestAuthenticationResult.STALE_NONCE;
+
+		return DigestAuthenticationResult.SUCCESS;
+	}
+
+	/**
+	 * Accepts each nonce count of a verified nonce once. Counts older than the
+	 * last 64 are refused, as a client does not send that many requests out of
+	 * order.
+	 *
+	 * @return false if the count was already used or is out of the window
+	 */
+	public boolean acceptNonceCount(String nonce, long nonceCount) {
+		if (nonceCount <= 0)
+			return false;
+
+		long now = System.currentTimeMillis();
+		long purgeTime = nextPurge.get();
+		if (now >= purgeTime && nextPurge.compareAndSet(purgeTime, now + Math.min(nonceLifetime, 60000L)))
+			purge(now);
+
+		NonceCounter counter = nonceCounters.get(nonce);
+		if (counter == null) {
+			byte[] decoded = Base64.getUrlDecoder().decode(nonce);
+			counter = new NonceCounter(getLong(decoded, 0) + nonceLifetime);
+			NonceCounter existing = nonceCounters.putIfAbsent(nonce, counter);
+			if (existing != null)
+				counter = existing;
+		}
+		return counter.accept(nonceCount);
+	}
+
+	/**
+	 * Returns the number of nonces for which the counts are tracked.
+	 */
+	public int getTrackedNonces() {
+		return nonceCounters.size();
+	}
+
+	private void purge(long now) {
+		Iterator<NonceCounter> iterator = nonceCounters.values().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().expiryTime <= now)
+				iterator.remove();
+		}
+	}
+
+	private byte[] sign(byte[] nonce, String realm) {
+		Mac mac = macs.get();
+		mac.update(nonce, 0, PAYLOAD_LENGTH);
+		if (realm != null)
+			mac.update(realm.getBytes(StandardCharsets.UTF_8));
+		return mac.doFinal();
+	}
+
+	private static void putLong(byte[] buffer, int offset, long value) {
+		for (int i = 7; i >= 0; i--) {
+			buffer[offset + i] = (byte) value;
+			value >>>= 8;
+		}
+	}
+
+	private static long getLong(byte[] buffer, int offset) {
+		long value = 0;
+		for (int i = 0; i < 8; i++)
+			value = (value << 8) | (buffer[offset + i] & 0xFF);
+		return value;
+	}
+
+	private static class NonceCounter {
+		private final long expiryTime;
+
+		private long highest;
+
+		private long window;
+
+		private NonceCounter(long expiryTime) {
+			this.expiryTime = expiryTime;
+		}
+
+		private synchronized boolean accept(long nonceCount) {
+			if (nonceCount > highest) {
+				long shift = nonceCount - highest;
+				window = shift >= WINDOW_SIZE ? 1L : (window << shift) | 1L;
+				highest = nonceCount;
+				return true;
+			}
+
+			long offset = highest - nonceCount;
+			if (offset >= WINDOW_SIZE)
+				return false;
+
+			long bit = 1L << offset;
+			if ((window & bit) != 0)
+				return false;
+
+			window |= bit;
+			return true;
+		}
+	}
+}
@@ -39,6 +39,8 @@ import javax.sip.message.Request;
 import javax.sip.message.Response;
 /**
  * Implements the HTTP digest authentication method server side functionality.
+ * See {@link DigestServerAuthenticator} for nonce replay protection and
+ * servers authenticating many requests concurrently.
  * 
  * @author M. Ranganathan
  * @author Marc Bednarek
@@ -0,0 +1,470 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.clientauthutils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.util.ListIterator;
+
+import javax.sip.header.AuthorizationHeader;
+import javax.sip.header.HeaderFactory;
+import javax.sip.header.ProxyAuthorizationHeader;
+import javax.sip.header.WWWAuthenticateHeader;
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+
+import gov.nist.core.CommonLogger;
+import gov.nist.core.LogWriter;
+import gov.nist.core.StackLogger;
+import gov.nist.javax.sip.header.AuthenticationHeader;
+import gov.nist.javax.sip.header.ParameterNames;
+
+/**
+ * Server side digest authentication (RFC 2617, RFC 8760) for registrars and
+ * proxies handling many requests per second, unlike the
+ * {@link DigestServerAuthenticationHelper} which shares one MessageDigest and
+ * keeps no nonce state.
+ *
+ * <ul>
+ * <li>The nonces are signed and verified by a {@link DigestNonceManager}, which
+ * also refuses a nonce count used twice, so a REGISTER refresh reuses its
+ * nonce with the next count instead of being challenged again.</li>
+ * <li>The digests are computed with per thread MD5 and SHA-256 instances
+ * over a per thread buffer.</li>
+ * <li>The HA1 values returned by the {@link ServerAccountManager} are cached
+ * per user, realm and algorithm.</li>
+ * <li>The credentials are read as the parameters of the parsed Authorization
+ * or Proxy-Authorization header, the uri included, so nothing is encoded
+ * again.</li>
+ * </ul>
+ */
+public class DigestServerAuthenticator {
+	private static StackLogger logger = CommonLogger.getLogger(DigestServerAuthenticator.class);
+
+	public static final String DEFAULT_SCHEME = "Digest";
+
+	public static final String MD5 = "MD5";
+
+	public static final String SHA_256 = "SHA-256";
+
+	public static final String SESSION_SUFFIX = "-sess";
+
+	public static final String QOP_AUTH = "auth";
+
+	public static final String QOP_AUTH_INT = "auth-int";
+
+	public static final int DEFAULT_CACHE_SIZE = 100000;
+
+	public static final long DEFAULT_CACHE_TIME_TO_LIVE = 300000L;
+
+	private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+	private static final ThreadLocal<DigestContext> contexts = new ThreadLocal<DigestContext>() {
+		@Override
+		protected DigestContext initialValue() {
+			return new DigestContext();
+		}
+	};
+
+	private final ServerAccountManager accountManager;
+
+	private final DigestNonceManager nonceManager;
+
+	private final CredentialHashCache credentialHashCache;
+
+	private String[] algorithms = { MD5 };
+
+	private boolean legacyDigestAllowed;
+
+	public DigestServerAuthenticator(ServerAccountManager accountManager) {
+		this(accountManager, new DigestNonceManager(), DEFAULT_CACHE_SIZE, DEFAULT_CACHE_TIME_TO_LIVE);
+	}
+
+	/**
+	 * @param accountManager the source of the HA1 values
+	 * @param nonceManager signs the nonces, shared by the authenticators of
+	 *        the nodes that may receive the answer to a challenge
+	 * @param cacheSize the number of HA1 values cached, 0 to disable the cache
+	 * @param cacheTimeToLive milliseconds for which a HA1 value is cached
+	 */
+	public DigestServerAuthenticator(ServerAccountManager accountManager, DigestNonceManager nonceManager,
+			int cacheSize, long cacheTimeToLive) {
+		if (accountManager == null || nonceManager == null)
+			throw new NullPointerException("Null account or nonce manager");
+
+		this.accountManager = accountManager;
+		this.nonceManager = nonceManager;
+		this.credentialHashCache = new CredentialHashCache(cacheSize, cacheTimeToLive);
+	}
+
+	public DigestNonceManager getNonceManager() {
+		return nonceManager;
+	}
+
+	/**
+	 * Sets the algorithms offered in the challenges, in the order of
+	 * preference, for example SHA-256 then MD5 for the clients that only know
+	 * MD5. MD5 by default.
+	 */
+	public void setAlgorithms(String... algorithms) {
+		if (algorithms == null || algorithms.length == 0)
+			throw new IllegalArgumentException("No algorithm");
+		for (String algorithm : algorithms) {
+			if (getBaseAlgorithm(algorithm) == null)
+				throw new IllegalArgumentException("Unsupported algorithm " + algorithm);
+		}
+		this.algorithms = algorithms.clone();
+	}
+
+	public String[] getAlgorithms() {
+		return algorithms.clone();
+	}
+
+	/**
+	 * Allows the answers without qop, as defined by RFC 2069. These carry no
+	 * nonce count, so a replay is not detected until the nonce goes stale.
+	 * Off by default.
+	 */
+	public void setLegacyDigestAllowed(boolean legacyDigestAllowed) {
+		this.legacyDigestAllowed = legacyDigestAllowed;
+	}
+
+	public boolean isLegacyDigestAllowed() {
+		return legacyDigestAllowed;
+	}
+
+	/**
+	 * Drops the cached HA1 values of a user, to be called when the password
+	 * changes.
+	 */
+	public void invalidateCredentials(String username, String realm) {
+		credentialHashCache.invalidate(username, realm);
+	}
+
+	public void clearCredentials() {
+		credentialHashCache.clear();
+	}
+
+	/**
+	 * Adds the challenges for the realm to a 401 or 407 response, one per
+	 * algorithm, sharing the same nonce.
+	 *
+	 * @param stale true if the request was refused with STALE_NONCE
+	 */
+	public void generateChallenge(HeaderFactory headerFactory, Response response, String realm, boolean stale)
+			throws ParseException {
+		String nonce = nonceManager.generateNonce(realm);
+		for (String algorithm : algorithms) {
+			WWWAuthenticateHeader challenge;
+			if (response.getStatusCode() == Response.PROXY_AUTHENTICATION_REQUIRED)
+				challenge = headerFactory.createProxyAuthenticateHeader(DEFAULT_SCHEME);
+			else
+				challenge = headerFactory.createWWWAuthenticateHeader(DEFAULT_SCHEME);
+
+			challenge.setRealm(realm);
+			challenge.setNonce(nonce);
+			challenge.setQop(QOP_AUTH);
+			challenge.setAlgorithm(algorithm);
+			if (stale)
+				challenge.setParameter(ParameterNames.STALE, "TRUE");
+			response.addHeader(challenge);
+		}
+	}
+
+	/**
+	 * Authenticates the request with its Authorization or Proxy-Authorization
+	 * credentials for the realm.
+	 */
+	public DigestAuthenticationResult authenticate(Request request, String realm) {
+		AuthenticationHeader credentials = getCredentials(request, AuthorizationHeader.NAME, realm);
+		if (credentials == null)
+			credentials = getCredentials(request, ProxyAuthorizationHeader.NAME, realm);
+		if (credentials == null)
+			return DigestAuthenticationResult.MISSING_CREDENTIALS;
+
+		String username = credentials.getParameter(ParameterNames.USERNAME);
+		String nonce = credentials.getParameter(ParameterNames.NONCE);
+		String uri = credentials.getParameter(ParameterNames.URI);
+		String response = credentials.getParameter(ParameterNames.RESPONSE);
+		if (username == null || nonce == null || uri == null || response == null)
+			return DigestAuthenticationResult.MISSING_CREDENTIALS;
+
+		DigestAuthenticationResult nonceResult = nonceManager.verifyNonce(nonce, realm);
+		if (nonceResult != DigestAuthenticationResult.SUCCESS)
+			return nonceResult;
+
+		String algorithm = credentials.getParameter(ParameterNames.ALGORITHM);
+		if (algorithm == null)
+			algorithm = MD5;
+		String baseAlgorithm = getBaseAlgorithm(algorithm);
+		boolean session = algorithm.regionMatches(true, algorithm.length() - SESSION_SUFFIX.length(),
+				SESSION_SUFFIX, 0, SESSION_SUFFIX.length());
+
+		String qop = credentials.getParameter(ParameterNames.QOP);
+		String nc = credentials.getParameter(ParameterNames.NC);
+		String cnonce = credentials.getParameter(ParameterNames.CNONCE);
+		long nonceCount = -1;
+		if (qop == null) {
+			if (!legacyDigestAllowed || session)
+				return DigestAuthenticationResult.UNSUPPORTED;
+		} else {
+			if (!qop.equalsIgnoreCase(QOP_AUTH) && !qop.equalsIgnoreCase(QOP_AUTH_INT))
+				return DigestAuthenticationResult.UNSUPPORTED;
+			if (nc == null || cnonce == null)
+				return DigestAuthenticationResult.MISSING_CREDENTIALS;
+
+			nonceCount = parseNonceCount(nc);
+			if (nonceCount <= 0)
+				return DigestAuthenticationResult.FAILED;
+		}
+		if (baseAlgorithm == null)
+			return DigestAuthenticationResult.UNSUPPORTED;
+
+		String credentialHash = getCredentialHash(username, realm, baseAlgorithm);
+		if (credentialHash == null)
+			return DigestAuthenticationResult.UNKNOWN_USER;
+
+		DigestContext context = contexts.get();
+		MessageDigest messageDigest = context.getMessageDigest(baseAlgorithm);
+		byte[] ha1;
+		if (session) {
+			context.reset();
+			context.append(credentialHash).append(':').append(nonce).append(':').append(cnonce);
+			ha1 = context.digestToHex(messageDigest);
+		} else {
+			ha1 = credentialHash.getBytes(StandardCharsets.US_ASCII);
+		}
+
+		context.reset();
+		context.append(request.getMethod()).append(':').append(uri);
+		if (qop != null && qop.equalsIgnoreCase(QOP_AUTH_INT)) {
+			byte[] body = request.getRawContent();
+			messageDigest.reset();
+			if (body != null)
+				messageDigest.update(body);
+			context.append(':').appendHex(messageDigest.digest());
+		}
+		byte[] ha2 = context.digestToHex(messageDigest);
+
+		context.reset();
+		context.append(ha1).append(':').append(nonce).append(':');
+		if (qop != null)
+			context.append(nc).append(':').append(cnonce).append(':').append(qop).append(':');
+		context.append(ha2);
+		messageDigest.reset();
+		messageDigest.update(context.buffer, 0, context.length);
+		byte[] expected = messageDigest.digest();
+
+		if (!matches(expected, response)) {
+			if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
+				logger.logDebug("Digest response of " + username + "@" + realm + " does not match");
+			return DigestAuthenticationResult.FAILED;
+		}
+
+		// checked once the response is known to be genuine, so that forged
+		// requests do not use up the counts
+		if (nonceCount > 0 && !nonceManager.acceptNonceCount(nonce, nonceCount)) {
+			if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
+				logger.logDebug("Nonce count " + nc + " of " + username + "@" + realm + " was already used");
+			return DigestAuthenticationResult.REPLAYED;
+		}
+
+		return DigestAuthenticationResult.SUCCESS;
+	}
+
+	/**
+	 * Computes the lowercase hex HA1 of a plain text password, for a
+	 * {@link ServerAccountManager} provisioning the accounts.
+	 */
+	public static String computeCredentialHash(String username, String realm, String password, String algorithm) {
+		String baseAlgorithm = getBaseAlgorithm(algorithm);
+		if (baseAlgorithm == null)
+			throw new IllegalArgumentException("Unsupported algorithm " + algorithm);
+
+		DigestContext context = contexts.get();
+		context.reset();
+		context.append(username).append(':').append(realm).append(':').append(password);
+		return new String(context.digestToHex(context.getMessageDigest(baseAlgorithm)), StandardCharsets.US_ASCII);
+	}
+
+	private String getCredentialHash(String username, String realm, String algorithm) {
+		String credentialHash = credentialHashCache.get(username, realm, algorithm);
+		if (credentialHash == null) {
+			credentialHash = accountManager.getCredentialHash(username, realm, algorithm);
+			if (credentialHash != null)
+				credentialHashCache.put(username, realm, algorithm, credentialHash);
+		}
+		return credentialHash;
+	}
+
+	private static AuthenticationHeader getCredentials(Request request, String name, String realm) {
+		ListIterator<?> headers = request.getHeaders(name);
+		if (headers == null)
+			return null;
+
+		while (headers.hasNext()) {
+			Object header = headers.next();
+			if (!(header instanceof AuthenticationHeader))
+				continue;
+
+			AuthenticationHeader credentials = (AuthenticationHeader) header;
+			if (DEFAULT_SCHEME.equalsIgnoreCase(credentials.getScheme())
+					&& realm.equals(credentials.getParameter(ParameterNames.REALM)))
+				return credentials;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns MD5 or SHA-256 for the algorithm and its -sess variant, null if
+	 * not supported.
+	 */
+	private static String getBaseAlgorithm(String algorithm) {
+		if (algorithm == null)
+			return null;
+		if (algorithm.equalsIgnoreCase(MD5) || algorithm.equalsIgnoreCase(MD5 + SESSION_SUFFIX))
+			return MD5;
+		if (algorithm.equalsIgnoreCase(SHA_256) || algorithm.equalsIgnoreCase(SHA_256 + SESSION_SUFFIX))
+			return SHA_256;
+		return null;
+	}
+
+	private static long parseNonceCount(String nc) {
+		if (nc.length() == 0 || nc.length() > 8)
+			return -1;
+
+		long value = 0;
+		for (int i = 0; i < nc.length(); i++) {
+			int digit = Character.digit(nc.charAt(i), 16);
+			if (digit < 0)
+				return -1;
+			value = (value << 4) | digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Compares the digest with the hex response in constant time, ignoring
+	 * the case of the hex digits.
+	 */
+	private static boolean matches(byte[] digest, String response) {
+		if (response.length() != digest.length * 2)
+			return false;
+
+		int difference = 0;
+		for (int i = 0; i < digest.length; i++) {
+			int high = Character.digit(response.charAt(i * 2), 16);
+			int low = Character.digit(response.charAt(i * 2 + 1), 16);
+			difference |= (high | low) >>> 31;
+			difference |= ((high << 4) | low) ^ (digest[i] & 0xFF);
+		}
+		return difference == 0;
+	}
+
+	/**
+	 * Per thread digests and buffer in which the digest inputs are assembled.
+	 */
+	private static class DigestContext {
+		private final MessageDigest md5;
+
+		private final MessageDigest sha256;
+
+		private byte[] buffer = new byte[512];
+
+		private int length;
+
+		private DigestContext() {
+			try {
+				md5 = MessageDigest.getInstance(MD5);
+				sha256 = MessageDigest.getInstance(SHA_256);
+			} catch (NoSuchAlgorithmException ex) {
+				throw new IllegalStateException("Can not create the digests", ex);
+			}
+		}
+
+		private MessageDigest getMessageDigest(String algorithm) {
+			MessageDigest messageDigest = SHA_256.equals(algorithm) ? sha256 : md5;
+			messageDigest.reset();
+			return messageDigest;
+		}
+
+		private void reset() {
+			length = 0;
+		}
+
+		private DigestContext append(char value) {
+			ensureCapacity(1);
+			buffer[length++] = (byte) value;
+			return this;
+		}
+
+		private DigestContext append(String value) {
+			int count = value.length();
+			ensureCapacity(count);
+			for (int i = 0; i < count; i++) {
+				char c = value.charAt(i);
+				if (c >= 0x80)
+					return append(value.substring(i).getBytes(StandardCharsets.UTF_8));
+				buffer[length++] = (byte) c;
+			}
+			return this;
+		}
+
+		private DigestContext append(byte[] value) {
+			ensureCapacity(value.length);
+			System.arraycopy(value, 0, buffer, length, value.length);
+			length += value.length;
+			return this;
+		}
+
+		private DigestContext appendHex(byte[] value) {
+			ensureCapacity(value.length * 2);
+			for (int i = 0; i < value.length; i++) {
+				buffer[length++] = HEX[(value[i] >> 4) & 0x0F];
+				buffer[length++] = HEX[value[i] & 0x0F];
+			}
+			return this;
+		}
+
+		/**
+		 * Digests the buffer and returns the lowercase hex of the digest.
+		 */
+		private byte[] digestToHex(MessageDigest messageDigest) {
+			messageDigest.reset();
+			messageDigest.update(buffer, 0, length);
+			byte[] digest = messageDigest.digest();
+			byte[] hex = new byte[digest.length * 2];
+			for (int i = 0; i < digest.length; i++) {
+				hex[i * 2] = HEX[(digest[i] >> 4) & 0x0F];
+				hex[i * 2 + 1] = HEX[digest[i] & 0x0F];
+			}
+			return hex;
+		}
+
+		private void ensureCapacity(int count) {
+			if (length + count > buffer.length) {
+				byte[] newBuffer = new byte[Math.max(buffer.length * 2, length + count)];
+				System.arraycopy(buffer, 0, newBuffer, 0, length);
+				buffer = newBuffer;
+			}
+		}
+	}
+}
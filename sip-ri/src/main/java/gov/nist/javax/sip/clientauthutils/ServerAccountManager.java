@@ -0,0 +1,34 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.clientauthutils;
+
+/**
+ * Source of the credentials of a {@link DigestServerAuthenticator}. Only the
+ * hash of username:realm:password (HA1) is asked for, so that the accounts
+ * may be provisioned without plain text passwords, see
+ * {@link DigestServerAuthenticator#computeCredentialHash(String, String, String, String)}.
+ */
+public interface ServerAccountManager {
+	/**
+	 * Returns the lowercase hex HA1 of the user for the algorithm, MD5 or
+	 * SHA-256, or null if the user is not known in the realm. The values are
+	 * cached by the authenticator, so this may be a remote lookup.
+	 */
+	String getCredentialHash(String username, String realm, String algorithm);
+}
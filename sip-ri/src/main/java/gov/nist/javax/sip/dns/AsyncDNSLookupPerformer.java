@@ -0,0 +1,62 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.dns;
+
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+import javax.sip.address.Hop;
+
+import org.xbill.DNS.NAPTRRecord;
+import org.xbill.DNS.SRVRecord;
+
+/**
+ * DNS Lookup Performer able to run the lookups without blocking the calling
+ * thread. The returned stages never complete exceptionally, a failed lookup
+ * completes with an empty list as the blocking methods return.
+ */
+public interface AsyncDNSLookupPerformer extends DNSLookupPerformer {
+
+	/**
+	 * Performing the DNS SRV Lookup for a given Name
+	 * @param replacement the replacement for which to perform the SRV lookup
+	 * @return a stage completed with an unsorted list of SRV records
+	 */
+	CompletionStage<List<SRVRecord>> performSRVLookupAsync(String replacement);
+
+	/**
+	 * Performing the DNS NAPTR Lookup for a given domain, whether or not it is secure and the supported transports
+	 * @param domain the domain to resolve
+	 * @param isSecure whether or not it is secure
+	 * @param supportedTransport the transports supported locally
+	 * @return a stage completed with an unsorted list of NAPTR Records
+	 */
+	CompletionStage<List<NAPTRRecord>> performNAPTRLookupAsync(String domain,
+			boolean isSecure, String supportedTransport);
+
+	/**
+	 * Perform the A and AAAA lookups for a given host, port and transport
+	 * @param host the host
+	 * @param port the port
+	 * @param transport the transport
+	 * @return a stage completed with the Hops corresponding to the merge of A and AAAA lookup records found
+	 */
+	CompletionStage<List<Hop>> locateHopsForNonNumericAddressWithPortAsync(
+			String host, int port, String transport);
+}
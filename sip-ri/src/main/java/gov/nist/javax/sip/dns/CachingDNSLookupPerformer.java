@@ -0,0 +1,353 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.dns;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sip.address.Hop;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.xbill.DNS.AAAARecord;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.NAPTRRecord;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SRVRecord;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Type;
+import org.xbill.DNS.lookup.LookupResult;
+import org.xbill.DNS.lookup.LookupSession;
+import org.xbill.DNS.lookup.NoSuchDomainException;
+import org.xbill.DNS.lookup.NoSuchRRSetException;
+
+import gov.nist.javax.sip.stack.HopImpl;
+
+/**
+ * DNS Lookup Performer sending the queries asynchronously through a dnsjava
+ * LookupSession and caching their results.
+ *
+ * Answers are kept for the lowest TTL of their records, capped by the maximum
+ * cache TTL and raised to the minimum cache TTL, so that an answer with a TTL
+ * of 0 is still found by the getNextHop following an asynchronous
+ * resolution. Names or record types that do not exist are cached for the
+ * negative cache TTL. The cache is bounded and evicts the least recently used
+ * entries. Concurrent lookups of the same name and type share a single query,
+ * while failures such as timeouts are not cached.
+ *
+ * The blocking methods of DNSLookupPerformer wait for the asynchronous ones,
+ * so they benefit from the cache as well.
+ */
+public class CachingDNSLookupPerformer extends DefaultDNSLookupPerformer implements AsyncDNSLookupPerformer {
+	private static final Logger logger = LogManager.getLogger(CachingDNSLookupPerformer.class);
+
+	public static final int DEFAULT_MAX_CACHE_ENTRIES = 10000;
+	public static final int DEFAULT_NEGATIVE_CACHE_TTL_SECONDS = 30;
+	public static final int DEFAULT_MAX_CACHE_TTL_SECONDS = 3600;
+	public static final int DEFAULT_MIN_CACHE_TTL_SECONDS = 1;
+
+	private final LookupSession lookupSession;
+
+	private final Map<CacheKey, CacheEntry> cache;
+	private final ConcurrentHashMap<CacheKey, CompletableFuture<List<Record>>> pendingLookups = new ConcurrentHashMap<CacheKey, CompletableFuture<List<Record>>>();
+
+	private volatile int maxCacheEntries = DEFAULT_MAX_CACHE_ENTRIES;
+	private volatile int negativeCacheTtl = DEFAULT_NEGATIVE_CACHE_TTL_SECONDS;
+	private volatile int maxCacheTtl = DEFAULT_MAX_CACHE_TTL_SECONDS;
+	private volatile int minCacheTtl = DEFAULT_MIN_CACHE_TTL_SECONDS;
+
+	private final AtomicLong cacheHits = new AtomicLong();
+	private final AtomicLong cacheMisses = new AtomicLong();
+	private final AtomicLong coalescedLookups = new AtomicLong();
+
+	public CachingDNSLookupPerformer() {
+		// the default resolver, search path and hosts file, without the dnsjava
+		// cache since the answers are cached here
+		this(LookupSession.defaultBuilder().clearCaches().build());
+	}
+
+	public CachingDNSLookupPerformer(LookupSession lookupSession) {
+		this.lookupSession = lookupSession;
+		this.cache = new LinkedHashMap<CacheKey, CacheEntry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<CacheKey, CacheEntry> eldest) {
+				return size() > maxCacheEntries;
+			}
+		};
+	}
+
+	@Override
+	public List<SRVRecord> performSRVLookup(String replacement) {
+		return performSRVLookupAsync(replacement).toCompletableFuture().join();
+	}
+
+	@Override
+	public List<NAPTRRecord> performNAPTRLookup(String domain, boolean isSecure, String transport) {
+		return performNAPTRLookupAsync(domain, isSecure, transport).toCompletableFuture().join();
+	}
+
+	@Override
+	public List<Hop> locateHopsForNonNumericAddressWithPort(String host, int port, String transport) {
+		return locateHopsForNonNumericAddressWithPortAsync(host, port, transport).toCompletableFuture().join();
+	}
+
+	@Override
+	public CompletionStage<List<SRVRecord>> performSRVLookupAsync(String replacement) {
+		if(logger.isDebugEnabled()) {
+			logger.debug("doing SRV lookup for replacement " + replacement);
+		}
+		return lookup(replacement, Type.SRV).thenApply(records -> {
+			// the hoppers consume the lists they are given
+			List<SRVRecord> srvRecords = new ArrayList<SRVRecord>(records.size());
+			for (Record record : records) {
+				srvRecords.add((SRVRecord) record);
+			}
+			return srvRecords;
+		});
+	}
+
+	@Override
+	public CompletionStage<List<NAPTRRecord>> performNAPTRLookupAsync(String domain, boolean isSecure,
+			String transport) {
+		if(logger.isDebugEnabled()) {
+			logger.debug("doing NAPTR lookup for domain " + domain + ", isSecure " + isSecure + ", transport " + transport);
+		}
+		return lookup(domain, Type.NAPTR).thenApply(records -> filterNAPTRRecords(records, isSecure, transport));
+	}
+
+	@Override
+	public CompletionStage<List<Hop>> locateHopsForNonNumericAddressWithPortAsync(String host, int port,
+			String transport) {
+		if(logger.isDebugEnabled()) {
+			logger.debug("doing A and AAAA lookups for host:port/transport = " + host + ":" + port + "/" + transport);
+		}
+		return lookup(host, Type.A).thenCombine(lookup(host, Type.AAAA), (aRecords, aaaaRecords) -> {
+			List<Hop> priorityQueue = new LinkedList<Hop>();
+			for (Record aRecord : aRecords) {
+				priorityQueue.add(new HopImpl(((ARecord) aRecord).getAddress().getHostAddress(), port, transport));
+			}
+			for (Record aaaaRecord : aaaaRecords) {
+				priorityQueue.add(new HopImpl(((AAAARecord) aaaaRecord).getAddress().getHostAddress(), port, transport));
+			}
+			return priorityQueue;
+		});
+	}
+
+	/**
+	 * Looks up the records of the given type for a name, from the cache if
+	 * still valid, otherwise joining the pending query for them or sending a
+	 * new one.
+	 */
+	protected CompletionStage<List<Record>> lookup(String name, int type) {
+		final CacheKey key = new CacheKey(toCacheName(name), type);
+		CacheEntry entry;
+		synchronized (cache) {
+			entry = cache.get(key);
+			if (entry != null && entry.expirationTime <= System.currentTimeMillis()) {
+				cache.remove(key);
+				entry = null;
+			}
+		}
+		if (entry != null) {
+			cacheHits.incrementAndGet();
+			return CompletableFuture.completedFuture(entry.records);
+		}
+
+		final CompletableFuture<List<Record>> lookupFuture = new CompletableFuture<List<Record>>();
+		CompletableFuture<List<Record>> pendingLookup = pendingLookups.putIfAbsent(key, lookupFuture);
+		if (pendingLookup != null) {
+			coalescedLookups.incrementAndGet();
+			return pendingLookup;
+		}
+		cacheMisses.incrementAndGet();
+
+		Name queryName;
+		try {
+			queryName = Name.fromString(name);
+		} catch (TextParseException e) {
+			logger.warn("Couldn't parse domain " + name, e);
+			complete(key, lookupFuture, Collections.<Record>emptyList(), 0);
+			return lookupFuture;
+		}
+
+		lookupSession.lookupAsync(queryName, type).whenComplete((LookupResult result, Throwable error) -> {
+			if (error == null) {
+				List<Record> records = Collections.unmodifiableList(new ArrayList<Record>(result.getRecords()));
+				long ttl = maxCacheTtl;
+				for (Record record : records) {
+					ttl = Math.min(ttl, record.getTTL());
+				}
+				if (!records.isEmpty()) {
+					ttl = Math.max(ttl, minCacheTtl);
+				}
+				complete(key, lookupFuture, records, ttl);
+				return;
+			}
+
+			Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+			if (cause instanceof NoSuchDomainException || cause instanceof NoSuchRRSetException) {
+				if(logger.isDebugEnabled()) {
+					logger.debug("No " + Type.string(type) + " records for " + name);
+				}
+				complete(key, lookupFuture, Collections.<Record>emptyList(), negativeCacheTtl);
+			} else {
+				logger.warn("DNS " + Type.string(type) + " lookup for " + name + " failed", cause);
+				complete(key, lookupFuture, Collections.<Record>emptyList(), 0);
+			}
+		});
+		return lookupFuture;
+	}
+
+	/**
+	 * @return the name as cached, in lower case and without the trailing dot
+	 * of a fully qualified name, which is the same domain
+	 */
+	private static String toCacheName(String name) {
+		String cacheName = name.toLowerCase();
+		if (cacheName.length() > 1 && cacheName.endsWith(".")) {
+			cacheName = cacheName.substring(0, cacheName.length() - 1);
+		}
+		return cacheName;
+	}
+
+	private void complete(CacheKey key, CompletableFuture<List<Record>> lookupFuture, List<Record> records, long ttl) {
+		// cached before the pending lookup is removed so that no query is sent twice
+		if (ttl > 0) {
+			synchronized (cache) {
+				cache.put(key, new CacheEntry(records, System.currentTimeMillis() + ttl * 1000));
+			}
+		}
+		pendingLookups.remove(key, lookupFuture);
+		lookupFuture.complete(records);
+	}
+
+	public void clearCache() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	public int getCacheSize() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	public long getCacheHits() {
+		return cacheHits.get();
+	}
+
+	public long getCacheMisses() {
+		return cacheMisses.get();
+	}
+
+	/**
+	 * @return the number of lookups answered by a query already in progress for the same name and type
+	 */
+	public long getCoalescedLookups() {
+		return coalescedLookups.get();
+	}
+
+	public int getMaxCacheEntries() {
+		return maxCacheEntries;
+	}
+
+	public void setMaxCacheEntries(int maxCacheEntries) {
+		this.maxCacheEntries = maxCacheEntries;
+	}
+
+	public int getNegativeCacheTtl() {
+		return negativeCacheTtl;
+	}
+
+	/**
+	 * @param negativeCacheTtl seconds during which a name or record type found not to exist is not queried again, 0 disables the negative caching
+	 */
+	public void setNegativeCacheTtl(int negativeCacheTtl) {
+		this.negativeCacheTtl = negativeCacheTtl;
+	}
+
+	public int getMaxCacheTtl() {
+		return maxCacheTtl;
+	}
+
+	/**
+	 * @param maxCacheTtl maximum number of seconds an answer is cached, whatever the TTL of its records
+	 */
+	public void setMaxCacheTtl(int maxCacheTtl) {
+		this.maxCacheTtl = maxCacheTtl;
+	}
+
+	public int getMinCacheTtl() {
+		return minCacheTtl;
+	}
+
+	/**
+	 * @param minCacheTtl minimum number of seconds an answer is cached, even when the TTL of its records is lower
+	 */
+	public void setMinCacheTtl(int minCacheTtl) {
+		this.minCacheTtl = minCacheTtl;
+	}
+
+	private static final class CacheKey {
+		private final String name;
+		private final int type;
+
+		private CacheKey(String name, int type) {
+			this.name = name;
+			this.type = type;
+		}
+
+		@Override
+		public int hashCode() {
+			return name.hashCode() * 31 + type;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof CacheKey)) {
+				return false;
+			}
+			CacheKey other = (CacheKey) obj;
+			return type == other.type && name.equals(other.name);
+		}
+	}
+
+	private static final class CacheEntry {
+		private final List<Record> records;
+		private final long expirationTime;
+
+		private CacheEntry(List<Record> records, long expirationTime) {
+			this.records = records;
+			this.expirationTime = expirationTime;
+		}
+	}
+}
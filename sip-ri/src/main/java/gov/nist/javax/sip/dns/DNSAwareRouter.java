@@ -18,6 +18,9 @@
  */
 package gov.nist.javax.sip.dns;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 import javax.sip.SipException;
 import javax.sip.SipStack;
 import javax.sip.address.Hop;
@@ -30,12 +33,15 @@ import gov.nist.core.CommonLogger;
 import gov.nist.core.InternalErrorHandler;
 import gov.nist.core.LogWriter;
 import gov.nist.core.StackLogger;
+import gov.nist.core.executor.SIPTask;
+import gov.nist.core.executor.StackExecutor;
 import gov.nist.javax.sip.SipStackExt;
 import gov.nist.javax.sip.header.RequestLine;
 import gov.nist.javax.sip.header.Route;
 import gov.nist.javax.sip.header.RouteList;
 import gov.nist.javax.sip.message.SIPRequest;
 import gov.nist.javax.sip.stack.DefaultRouter;
+import gov.nist.javax.sip.stack.SIPTransactionStack;
 
 /**
  * This custom router is the same as the DefaultRouter from jain sip except that it remove the first route if it contains
@@ -154,6 +160,103 @@ public class DNSAwareRouter extends DefaultRouter {
         }
 	}
 	
+	/**
+	 * Same as getNextHop without blocking the calling thread on DNS : the
+	 * lookups for the target URI are first run asynchronously by the hopper
+	 * factory, then getNextHop is called from the stack executor queue of the
+	 * Call-ID of the request and finds their answers in the cache. This is how
+	 * SipProviderImpl.sendRequest routes the requests sent statelessly, while
+	 * a client transaction needs its hop when it is created.
+	 *
+	 * @param request the request to route
+	 * @return a stage completed with the next hop, or exceptionally with the error getNextHop raised
+	 */
+	public CompletionStage<Hop> getNextHopAsync(final Request request) {
+		SipURI target = findDnsTarget((SIPRequest) request);
+		CompletionStage<Void> resolution;
+		if(target != null && sipStack instanceof SipStackExt) {
+			resolution = ((SipStackExt)sipStack).getHopperFactory().resolve(target);
+		} else {
+			resolution = CompletableFuture.completedFuture(null);
+		}
+
+		final CompletableFuture<Hop> nextHopFuture = new CompletableFuture<Hop>();
+		resolution.whenComplete((result, error) -> {
+			StackExecutor executor = null;
+			if(sipStack instanceof SIPTransactionStack) {
+				executor = ((SIPTransactionStack)sipStack).getMessageProcessorExecutor();
+			}
+			if(executor == null) {
+				completeNextHop(request, nextHopFuture);
+				return;
+			}
+
+			if(((SIPRequest) request).isNullRequest()) {
+				completeNextHop(request, nextHopFuture);
+				return;
+			}
+			final String callId = ((SIPRequest) request).getCallId().getCallId();
+			executor.addTaskLast(new SIPTask() {
+				private final long startTime = System.currentTimeMillis();
+
+				@Override
+				public void execute() {
+					completeNextHop(request, nextHopFuture);
+				}
+
+				@Override
+				public long getStartTime() {
+					return startTime;
+				}
+
+				@Override
+				public String getId() {
+					return callId;
+				}
+
+				@Override
+				public String printTaskDetails() {
+					return "Task name: DNSAwareRouterNextHop, id: " + callId;
+				}
+			});
+		});
+		return nextHopFuture;
+	}
+
+	private void completeNextHop(Request request, CompletableFuture<Hop> nextHopFuture) {
+		try {
+			nextHopFuture.complete(getNextHop(request));
+		} catch (Exception e) {
+			nextHopFuture.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * @return the URI getNextHop will resolve through DNS for the request,
+	 * null when it routes to the outbound proxy or to a non SIP URI
+	 */
+	private SipURI findDnsTarget(SIPRequest sipRequest) {
+		RequestLine requestLine = sipRequest.getRequestLine();
+		if (requestLine == null) {
+			return null;
+		}
+
+		RouteList routes = sipRequest.getRouteHeaders();
+		if (routes != null) {
+			// the first Route is resolved whether or not it is a strict router
+			URI uri = ((Route) routes.getFirst()).getAddress().getURI();
+			return uri.isSipURI() ? (SipURI) uri : null;
+		}
+
+		URI requestURI = requestLine.getUri();
+		if (requestURI == null || !requestURI.isSipURI()) {
+			return null;
+		} else if (((SipURI) requestURI).getMAddrParam() == null && getOutboundProxy() != null) {
+			return null;
+		}
+		return (SipURI) requestURI;
+	}
+
 	//for dns aware router we will try to resolve based on DNS
 	protected final Hop createDnsHop(SipURI sipUri, Request request) {
 		if(sipStack instanceof SipStackExt)
@@ -81,7 +81,6 @@ public class DefaultDNSLookupPerformer implements DNSLookupPerformer {
 	 * @see org.restcomm.ext.javax.sip.dns.DNSLookupPerformer#performNAPTRLookup(java.lang.String, boolean, java.util.Set)
 	 */
 	public List<NAPTRRecord> performNAPTRLookup(String domain, boolean isSecure, String transport) {
-		List<NAPTRRecord> records = new ArrayList<NAPTRRecord>();
 		if(logger.isDebugEnabled()) {
 			logger.debug("doing NAPTR lookup for domain " + domain + ", isSecure " + isSecure + ", transport " + transport);
 		}
@@ -94,36 +93,49 @@ public class DefaultDNSLookupPerformer implements DNSLookupPerformer {
 			logger.warn("Couldn't parse domain " + domain, e);
 		}	
 		if(naptrRecords != null) {
-			for (Record record : naptrRecords) {
-				NAPTRRecord naptrRecord = (NAPTRRecord) record;
-				// https://github.com/restcomm/jain-sip.ext/issues/1
-				// Compare with uppercase to achieve case-insensitive match
-				String service = naptrRecord.getService().toUpperCase();
-				if(isSecure) {
-					// First, a client resolving a SIPS URI MUST discard any services that
-					// do not contain "SIPS" as the protocol in the service field.
-					if(service.startsWith(SERVICE_SIPS)) {
+			return filterNAPTRRecords(Arrays.asList(naptrRecords), isSecure, transport);
+		}			
+		return new ArrayList<NAPTRRecord>();
+	}
+
+	/**
+	 * Keeps the NAPTR records usable for the given transport, as per RFC 3263 section 4.1
+	 * @param naptrRecords the records returned by the NAPTR lookup
+	 * @param isSecure whether or not it is secure
+	 * @param transport the transport supported locally
+	 * @return the records to hop through
+	 */
+	protected List<NAPTRRecord> filterNAPTRRecords(List<Record> naptrRecords, boolean isSecure, String transport) {
+		List<NAPTRRecord> records = new ArrayList<NAPTRRecord>();
+		for (Record record : naptrRecords) {
+			NAPTRRecord naptrRecord = (NAPTRRecord) record;
+			// https://github.com/restcomm/jain-sip.ext/issues/1
+			// Compare with uppercase to achieve case-insensitive match
+			String service = naptrRecord.getService().toUpperCase();
+			if(isSecure) {
+				// First, a client resolving a SIPS URI MUST discard any services that
+				// do not contain "SIPS" as the protocol in the service field.
+				if(service.startsWith(SERVICE_SIPS)) {
+					records.add(naptrRecord);
+				}
+			} else {	
+				// The converse is not true, however.
+				if(!service.startsWith(SERVICE_SIPS) || 
+						(service.startsWith(SERVICE_SIPS) && transport.equalsIgnoreCase(ListeningPoint.TLS))) {
+					//A client resolving a SIP URI SHOULD retain records with "SIPS" as the protocol, if the client supports TLS
+					if((service.contains(SERVICE_D2U) && transport.equalsIgnoreCase(ListeningPoint.UDP)) ||
+							service.contains(SERVICE_D2T) && (transport.equalsIgnoreCase(ListeningPoint.TCP) || transport.equalsIgnoreCase(ListeningPoint.TLS))) {
+						// Second, a client MUST discard any service fields that identify
+						// a resolution service whose value is not "D2X", for values of X that
+						// indicate transport protocols supported by the client.
+						records.add(naptrRecord);
+					} else if(service.equals(SERVICE_E2U)) {
+						// ENUM support
 						records.add(naptrRecord);
 					}
-				} else {	
-					// The converse is not true, however.
-					if(!service.startsWith(SERVICE_SIPS) || 
-							(service.startsWith(SERVICE_SIPS) && transport.equalsIgnoreCase(ListeningPoint.TLS))) {
-						//A client resolving a SIP URI SHOULD retain records with "SIPS" as the protocol, if the client supports TLS
-						if((service.contains(SERVICE_D2U) && transport.equalsIgnoreCase(ListeningPoint.UDP)) ||
-								service.contains(SERVICE_D2T) && (transport.equalsIgnoreCase(ListeningPoint.TCP) || transport.equalsIgnoreCase(ListeningPoint.TLS))) {
-							// Second, a client MUST discard any service fields that identify
-							// a resolution service whose value is not "D2X", for values of X that
-							// indicate transport protocols supported by the client.
-							records.add(naptrRecord);
-						} else if(service.equals(SERVICE_E2U)) {
-							// ENUM support
-							records.add(naptrRecord);
-						}
-					} 
-				}				
-			}
-		}			
+				} 
+			}				
+		}
 		return records;
 	}
 
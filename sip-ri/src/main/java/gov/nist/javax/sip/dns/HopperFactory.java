@@ -18,6 +18,9 @@
  */
 package gov.nist.javax.sip.dns;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 import javax.sip.address.SipURI;
 
 /**
@@ -27,5 +30,17 @@ public interface HopperFactory {
 	
 	void setLookupPerformer(DNSLookupPerformer perfomer, String defaultTransport, String defaultSecureTransport);
     Hopper build(SipURI requestURI);
+
+    /**
+     * Runs ahead of build the DNS lookups it needs for the given URI, so that
+     * the hopper is then built from cached answers without blocking. Factories
+     * without asynchronous lookups complete immediately.
+     *
+     * @param requestURI the URI a hopper will be built for
+     * @return a stage completed once the lookups are done, never exceptionally
+     */
+    default CompletionStage<Void> resolve(SipURI requestURI) {
+        return CompletableFuture.completedFuture(null);
+    }
     
 }
\ No newline at end of file
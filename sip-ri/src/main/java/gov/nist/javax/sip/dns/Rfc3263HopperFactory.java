@@ -24,8 +24,17 @@ import static javax.sip.ListeningPoint.TCP;
 import static javax.sip.ListeningPoint.TLS;
 import static javax.sip.ListeningPoint.UDP;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import javax.sip.address.Hop;
 import javax.sip.address.SipURI;
 
+import org.xbill.DNS.NAPTRRecord;
+import org.xbill.DNS.SRVRecord;
+
 import gov.nist.javax.sip.util.UtilsExtension;
 
 /**
@@ -86,6 +95,72 @@ public class Rfc3263HopperFactory implements HopperFactory {
         }
     }
 
+    /**
+     * Follows the same decision tree as build, running the NAPTR, SRV and A/AAAA
+     * lookups asynchronously so that the hoppers then find them in the cache of
+     * the lookup performer.
+     */
+    @Override
+    public CompletionStage<Void> resolve(SipURI requestURI) {
+        if (!(this.dnsLookupPerformer instanceof AsyncDNSLookupPerformer)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final AsyncDNSLookupPerformer asyncLookupPerformer = (AsyncDNSLookupPerformer) this.dnsLookupPerformer;
+        final String host = requestURI.getHost();
+
+        String transport = findTransport(requestURI);
+        if (transport!=null) {
+            final Integer port = findPort(requestURI, transport);
+            if (port!=null) {
+                if (UtilsExtension.isIpAddress(host)) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                return asyncLookupPerformer.locateHopsForNonNumericAddressWithPortAsync(host, port, transport).thenApply(hops -> null);
+            }
+        } else {
+            transport = requestURI.isSecure() ? defaultSecureTransport : defaultTransport;
+        }
+
+        final String naptrTransport = transport;
+        return asyncLookupPerformer.performNAPTRLookupAsync(host, requestURI.isSecure(), naptrTransport).thenCompose(naptrRecords -> {
+            if (naptrRecords.isEmpty()) {
+                // as DnsSrvBatchHopper, SRV query for the transport then A records on its default port
+                final String srvHost = host.endsWith(".") ? host.substring(0, host.length() - 1) : host;
+                final String query = "_" + (requestURI.isSecure() ? "sips" : "sip") + "._" + naptrTransport.toLowerCase() + "." + srvHost + ".";
+                return resolveSrv(asyncLookupPerformer, query).thenCompose(found -> {
+                    if (found) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    return asyncLookupPerformer.locateHopsForNonNumericAddressWithPortAsync(host, getDefaultPort(naptrTransport), naptrTransport).thenApply(hops -> null);
+                });
+            }
+
+            List<CompletableFuture<Boolean>> srvLookups = new ArrayList<>(naptrRecords.size());
+            for (NAPTRRecord record : naptrRecords) {
+                if (record.getFlags().toLowerCase().contains("s") && record.getService().toLowerCase().startsWith("sip")) {
+                    srvLookups.add(resolveSrv(asyncLookupPerformer, record.getAdditionalName().toString()).toCompletableFuture());
+                }
+            }
+            return CompletableFuture.allOf(srvLookups.toArray(new CompletableFuture[srvLookups.size()]));
+        });
+    }
+
+    private CompletionStage<Boolean> resolveSrv(AsyncDNSLookupPerformer asyncLookupPerformer, String query) {
+        final String srvQuery = query.endsWith(".") ? query : query.concat(".");
+        final String transport = srvQuery.substring(srvQuery.lastIndexOf("_") + 1, srvQuery.indexOf(".", srvQuery.lastIndexOf("_") + 1));
+        return asyncLookupPerformer.performSRVLookupAsync(srvQuery).thenCompose(srvRecords -> {
+            List<CompletableFuture<List<Hop>>> aLookups = new ArrayList<>(srvRecords.size());
+            for (SRVRecord record : srvRecords) {
+                // DnsSrvHopper resolves the targets which are not IP addresses
+                final String target = record.getTarget().toString(true);
+                if (!UtilsExtension.isIpAddress(target)) {
+                    aLookups.add(asyncLookupPerformer.locateHopsForNonNumericAddressWithPortAsync(target, record.getPort(), transport).toCompletableFuture());
+                }
+            }
+            return CompletableFuture.allOf(aLookups.toArray(new CompletableFuture[aLookups.size()])).thenApply(v -> !srvRecords.isEmpty());
+        });
+    }
+
     private String findTransport(SipURI requestURI) {
         final String transport;
 
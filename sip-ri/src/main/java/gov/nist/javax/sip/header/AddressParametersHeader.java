@@ -106,4 +106,11 @@ public abstract class AddressParametersHeader extends ParametersHeader {
         return false;
     }
 
+    /**
+     * Also match the address.
+     */
+    protected boolean matchFields(SIPHeader template) {
+        return super.matchFields(template) && matchValues(address, ((AddressParametersHeader) template).address);
+    }
+
 }
@@ -88,4 +88,16 @@ public final class Allow extends
     protected StringBuilder encodeBody(StringBuilder buffer) {
         return buffer.append(method);
     }
+
+    /**
+     * Two Allow headers are equal if they carry the same method.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final Allow o = (Allow) other;
+        return equalFields(o) && equalValues(method, o.method);
+    }
 }
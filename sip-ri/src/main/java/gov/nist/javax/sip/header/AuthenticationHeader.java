@@ -556,4 +556,15 @@ public abstract class AuthenticationHeader extends ParametersHeader {
         return getParameter(ParameterNamesIms.INTEGRITY_PROTECTED);
     }
 
+    /**
+     * Compare the scheme and the parameters of the challenge or credentials.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final AuthenticationHeader o = (AuthenticationHeader) other;
+        return equalFields(o) && equalValues(scheme, o.scheme);
+    }
 }
@@ -179,6 +179,17 @@ public class CSeq extends SIPHeader implements javax.sip.header.CSeqHeader {
         return this.seqno.longValue();
     }
 
-
+    /**
+     * Match the method with a template, the sequence number only has to be
+     * present when the template has one.
+     */
+    public boolean match(Object other) {
+        if (other == null)
+            return true;
+        if (other.getClass() != this.getClass())
+            return false;
+        final CSeq o = (CSeq) other;
+        return matchFields(o) && matchValues(seqno, o.seqno) && matchValues(method, o.method);
+    }
 }
 
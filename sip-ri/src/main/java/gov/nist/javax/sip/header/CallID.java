@@ -148,4 +148,16 @@ public class CallID
             retval.callIdentifier = (CallIdentifier) this.callIdentifier.clone();
         return retval;
     }
+
+    /**
+     * Match the call identifier with a template.
+     */
+    public boolean match(Object other) {
+        if (other == null)
+            return true;
+        if (other.getClass() != this.getClass())
+            return false;
+        final CallID o = (CallID) other;
+        return matchFields(o) && matchValues(callIdentifier, o.callIdentifier);
+    }
 }
@@ -180,4 +180,16 @@ public final class CallIdentifier extends SIPObject {
     public void setHost(String host) {
         this.host = host;
     }
+
+    /**
+     * Match the local id and the host with a template.
+     */
+    public boolean match(Object other) {
+        if (other == null)
+            return true;
+        if (other.getClass() != this.getClass())
+            return false;
+        final CallIdentifier o = (CallIdentifier) other;
+        return matchValues(localId, o.localId) && matchValues(host, o.host);
+    }
 }
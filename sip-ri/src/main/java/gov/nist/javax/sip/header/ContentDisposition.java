@@ -121,6 +121,18 @@ public final class ContentDisposition
     public String getContentDisposition() {
         return this.encodeBody(new StringBuilder()).toString();
     }
+
+    /**
+     * Compare the disposition type and its parameters.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final ContentDisposition o = (ContentDisposition) other;
+        return equalFields(o) && equalValues(dispositionType, o.dispositionType);
+    }
 }
 /*
  * $Log: not supported by cvs2svn $
@@ -142,4 +142,16 @@ public class Event extends ParametersHeader implements EventHeader {
             && ((this.getEventId() == matchTarget.getEventId())
                 || this.getEventId().equalsIgnoreCase(matchTarget.getEventId()));
     }
+
+    /**
+     * Compare the event package and its parameters, such as the id.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final Event o = (Event) other;
+        return equalFields(o) && equalValues(eventType, o.eventType);
+    }
 }
@@ -102,4 +102,16 @@ public class Expires
             throw new InvalidArgumentException("bad argument " + expires);
         this.expires = expires;
     }
+
+    /**
+     * Two Expires headers are equal if they give the same number of seconds.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final Expires o = (Expires) other;
+        return equalFields(o) && expires == o.expires;
+    }
 }
@@ -127,4 +127,17 @@ public class ExtensionHeaderImpl
     public String encodeBody() {
         return this.getHeaderValue();
     }
+
+    /**
+     * Compare the raw value of this extension header, its name being checked
+     * by SIPHeader.equalFields.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final ExtensionHeaderImpl o = (ExtensionHeaderImpl) other;
+        return equalFields(o) && equalValues(value, o.value);
+    }
 }
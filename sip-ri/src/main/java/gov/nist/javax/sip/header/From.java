@@ -161,4 +161,15 @@ public final class From
         return (other instanceof FromHeader) && super.equals(other);
     }
 
+    /**
+     * Match the address and the parameters, such as the tag, with a template.
+     */
+    public boolean match(Object other) {
+        if (other == null)
+            return true;
+        if (other.getClass() != this.getClass())
+            return false;
+        final From o = (From) other;
+        return matchFields(o);
+    }
 }
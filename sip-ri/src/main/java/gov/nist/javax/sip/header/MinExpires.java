@@ -96,6 +96,17 @@ public class MinExpires extends SIPHeader implements MinExpiresHeader {
         this.expires = expires;
     }
 
+    /**
+     * Two Min-Expires headers are equal if they give the same minimum interval.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final MinExpires o = (MinExpires) other;
+        return equalFields(o) && expires == o.expires;
+    }
 }
 /*
  * $Log: not supported by cvs2svn $
@@ -89,6 +89,18 @@ public class Organization extends SIPHeader implements OrganizationHeader {
                     + " Organization, setOrganization(), the organization parameter is null");
         organization = o;
     }
+
+    /**
+     * Compare the organization name.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final Organization o = (Organization) other;
+        return equalFields(o) && equalValues(organization, o.organization);
+    }
 }
 /*
  * $Log: not supported by cvs2svn $
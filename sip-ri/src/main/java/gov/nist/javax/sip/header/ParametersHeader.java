@@ -577,6 +577,23 @@ public abstract class ParametersHeader
     }
 
     //-------------------------------
+
+    /**
+     * Also compare the parameters, including the duplicated ones.
+     */
+    protected boolean equalFields(SIPHeader other) {
+        final ParametersHeader o = (ParametersHeader) other;
+        return super.equalFields(o) && equalParameters(o) && equalValues(duplicates, o.duplicates);
+    }
+
+    /**
+     * Also match the parameters, which only have to be present when the
+     * template has them.
+     */
+    protected boolean matchFields(SIPHeader template) {
+        final ParametersHeader o = (ParametersHeader) template;
+        return super.matchFields(o) && matchValues(parameters, o.parameters) && matchValues(duplicates, o.duplicates);
+    }
     
     protected final boolean equalParameters( Parameters other ) {
         if (this==other) return true;
@@ -100,4 +100,16 @@ public class Priority extends SIPHeader implements PriorityHeader {
                     + "Priority, setPriority(), the priority parameter is null");
         priority = p;
     }
+
+    /**
+     * Compare the priority value, e.g. urgent or emergency.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final Priority o = (Priority) other;
+        return equalFields(o) && equalValues(priority, o.priority);
+    }
 }
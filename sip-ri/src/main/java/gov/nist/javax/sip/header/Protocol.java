@@ -150,6 +150,32 @@ public class Protocol extends SIPObject {
         protocolVersion = "2.0";
         transport = "UDP";
     }
+
+    /**
+     * Compare the protocol name, version and transport.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final Protocol o = (Protocol) other;
+        return equalValues(protocolName, o.protocolName) && equalValues(protocolVersion, o.protocolVersion)
+                && equalValues(transport, o.transport);
+    }
+
+    /**
+     * Match the protocol name, version and transport with a template.
+     */
+    public boolean match(Object other) {
+        if (other == null)
+            return true;
+        if (other.getClass() != this.getClass())
+            return false;
+        final Protocol o = (Protocol) other;
+        return matchValues(protocolName, o.protocolName) && matchValues(protocolVersion, o.protocolVersion)
+                && matchValues(transport, o.transport);
+    }
 }
 /*
  * $Log: not supported by cvs2svn $
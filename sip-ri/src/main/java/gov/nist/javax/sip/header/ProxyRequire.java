@@ -98,6 +98,18 @@ public class ProxyRequire extends SIPHeader implements ProxyRequireHeader {
     public String getOptionTag() {
         return optionTag;
     }
+
+    /**
+     * Compare the option tag required from the proxies.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final ProxyRequire o = (ProxyRequire) other;
+        return equalFields(o) && equalValues(optionTag, o.optionTag);
+    }
 }
 /*
  * $Log: not supported by cvs2svn $
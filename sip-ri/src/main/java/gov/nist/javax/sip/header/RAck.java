@@ -153,4 +153,17 @@ public class RAck extends SIPHeader implements javax.sip.header.RAckHeader {
             throw new InvalidArgumentException("Bad rSeq # " + rSeqNumber);
         this.rSeqNumber = rSeqNumber;
     }
+
+    /**
+     * Compare the RSeq and CSeq numbers and the method acknowledged by this PRACK.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final RAck o = (RAck) other;
+        return equalFields(o) && cSeqNumber == o.cSeqNumber && rSeqNumber == o.rSeqNumber
+                && equalValues(method, o.method);
+    }
 }
@@ -87,4 +87,15 @@ public class RSeq extends SIPHeader implements javax.sip.header.RSeqHeader {
 
 
 
+    /**
+     * Compare the sequence number of the reliable provisional response.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final RSeq o = (RSeq) other;
+        return equalFields(o) && sequenceNumber == o.sequenceNumber;
+    }
 }
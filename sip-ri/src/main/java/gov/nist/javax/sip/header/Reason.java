@@ -151,6 +151,17 @@ public class Reason
         return buffer;
     }
 
+    /**
+     * Compare the protocol and the cause and text parameters.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final Reason o = (Reason) other;
+        return equalFields(o) && equalValues(protocol, o.protocol);
+    }
 }
 /*
  * $Log: not supported by cvs2svn $
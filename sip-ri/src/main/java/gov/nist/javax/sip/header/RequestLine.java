@@ -220,6 +220,18 @@ public class RequestLine extends SIPObject implements SipRequestLine {
             retval.uri = (GenericURI) this.uri.clone();
         return retval;
     }
+
+    /**
+     * Match the request URI, the method and the version with a template.
+     */
+    public boolean match(Object other) {
+        if (other == null)
+            return true;
+        if (other.getClass() != this.getClass())
+            return false;
+        final RequestLine o = (RequestLine) other;
+        return matchValues(uri, o.uri) && matchValues(method, o.method) && matchValues(sipVersion, o.sipVersion);
+    }
 }
 
 
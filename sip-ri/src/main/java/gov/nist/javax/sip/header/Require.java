@@ -98,6 +98,18 @@ public class Require extends SIPHeader implements RequireHeader {
     public String getOptionTag() {
         return optionTag;
     }
+
+    /**
+     * Compare the option tag required from the UAS.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final Require o = (Require) other;
+        return equalFields(o) && equalValues(optionTag, o.optionTag);
+    }
 }
 /*
  * $Log: not supported by cvs2svn $
@@ -189,4 +189,16 @@ public class RetryAfter extends ParametersHeader implements RetryAfterHeader {
       if (this.getParameter(DURATION) == null) return -1;
       else return super.getParameterAsInt(DURATION);
     }
+
+    /**
+     * Compare the delay, the comment and the duration parameter.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final RetryAfter o = (RetryAfter) other;
+        return equalFields(o) && equalValues(retryAfter, o.retryAfter) && equalValues(comment, o.comment);
+    }
 }
@@ -98,4 +98,16 @@ public class SIPETag extends SIPHeader implements SIPETagHeader , ExtensionHeade
         this.setETag(value);
 
     }
+
+    /**
+     * Compare the entity tag assigned by the event state compositor.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final SIPETag o = (SIPETag) other;
+        return equalFields(o) && equalValues(entityTag, o.entityTag);
+    }
 }
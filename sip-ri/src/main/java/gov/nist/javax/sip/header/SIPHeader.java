@@ -67,6 +67,24 @@ public abstract class SIPHeader
         return headerName;
     }
 
+    /**
+     * Compare the fields declared up to this class with the ones of a header
+     * of the same class. The equals methods written for the common headers
+     * chain to this for the fields of their superclasses.
+     */
+    protected boolean equalFields(SIPHeader other) {
+        return equalValues(headerName, other.headerName);
+    }
+
+    /**
+     * Match the fields declared up to this class with the ones of a template
+     * of the same class. The match methods written for the common headers
+     * chain to this for the fields of their superclasses.
+     */
+    protected boolean matchFields(SIPHeader template) {
+        return matchValues(headerName, template.headerName);
+    }
+
     /** Alias for getHaderName above.
     *
     *@return String headerName
@@ -33,7 +33,6 @@ import gov.nist.core.Separators;
 import gov.nist.javax.sip.header.ims.PrivacyHeader;
 
 import javax.sip.header.Header;
-import java.lang.reflect.Constructor;
 import java.util.*;
 
 /**
@@ -64,7 +63,8 @@ public abstract class SIPHeaderList<HDR extends SIPHeader> extends SIPHeader imp
 
 
     private SIPHeaderList() {
-        hlist = new LinkedList<HDR>();
+        // most lists only hold one or two headers
+        hlist = new ArrayList<HDR>(2);
     }
 
     /**
@@ -447,19 +447,11 @@ public abstract class SIPHeaderList<HDR extends SIPHeader> extends SIPHeader imp
      *
      * @return clone of this Header.
      */
+    @SuppressWarnings("unchecked")
     public Object clone() {
-        try {
-            Class<?> clazz = this.getClass();
-
-            Constructor<?> cons = clazz.getConstructor((Class[])null);
-            @SuppressWarnings("unchecked")
-			SIPHeaderList<HDR> retval = (SIPHeaderList<HDR>) cons.newInstance((Object[])null);
-            retval.headerName = this.headerName;
-            retval.myClass  = this.myClass;
-            return retval.clonehlist(this.hlist);
-        } catch (Exception ex) {
-            throw new RuntimeException("Could not clone!", ex);
-        }
+        SIPHeaderList<HDR> retval = (SIPHeaderList<HDR>) super.clone();
+        retval.hlist = new ArrayList<HDR>(Math.max(this.hlist.size(), 2));
+        return retval.clonehlist(this.hlist);
     }
 
     @SuppressWarnings("unchecked")
@@ -19,7 +19,7 @@ public abstract class SIPHeaderNamesCache
             if (field.getType().equals(String.class) && Modifier.isStatic(field.getModifiers())) {
                 try {
                     String value = (String) field.get(null);
-                    String lowerCase = value.toLowerCase();
+                    String lowerCase = value.toLowerCase().intern();
                     lowercaseMap.put(value, lowerCase);
                     lowercaseMap.put(lowerCase, lowerCase);
                 } catch (IllegalAccessException e) {
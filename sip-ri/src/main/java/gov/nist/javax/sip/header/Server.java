@@ -123,6 +123,18 @@ public class Server extends SIPHeader implements ServerHeader {
         
         productTokens = (List<String>)product;
     }
+
+    /**
+     * Compare the product tokens of the server software.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final Server o = (Server) other;
+        return equalFields(o) && equalValues(productTokens, o.productTokens);
+    }
 }
 /*
  * $Log: not supported by cvs2svn $
@@ -92,6 +92,20 @@ public final class StatusLine extends SIPObject implements SipStatusLine {
 
     }
 
+    /**
+     * Compare the version, the status code and the reason phrase of this
+     * status line, and whether it matches on the class of the status only.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final StatusLine o = (StatusLine) other;
+        return statusCode == o.statusCode && matchStatusClass == o.matchStatusClass
+                && equalValues(sipVersion, o.sipVersion) && equalValues(reasonPhrase, o.reasonPhrase);
+    }
+
     /** set the flag on a match template.
      *If this set to true, then the whole status code is matched (default
      * behavior) else only the class of the response is matched.
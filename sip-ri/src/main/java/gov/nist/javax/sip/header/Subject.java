@@ -98,6 +98,17 @@ public class Subject extends SIPHeader implements SubjectHeader {
         return subject;
     }
 
+    /**
+     * Compare the subject of the call.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final Subject o = (Subject) other;
+        return equalFields(o) && equalValues(subject, o.subject);
+    }
 }
 /*
  * $Log: not supported by cvs2svn $
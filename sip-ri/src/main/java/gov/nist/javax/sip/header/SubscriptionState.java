@@ -183,5 +183,19 @@ public class SubscriptionState
         }
         return buffer;
     }
+
+    /**
+     * Compare the state of the subscription, its reason, the expires and
+     * retry-after values and the other parameters.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final SubscriptionState o = (SubscriptionState) other;
+        return equalFields(o) && expires == o.expires && retryAfter == o.retryAfter
+                && equalValues(reasonCode, o.reasonCode) && equalValues(state, o.state);
+    }
 }
 
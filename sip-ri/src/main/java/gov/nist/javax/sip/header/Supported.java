@@ -113,6 +113,18 @@ public class Supported extends SIPHeader implements SupportedHeader {
     public String getOptionTag() {
         return optionTag;
     }
+
+    /**
+     * Compare the option tag supported by the UA.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final Supported o = (Supported) other;
+        return equalFields(o) && equalValues(optionTag, o.optionTag);
+    }
 }
 /*
  * $Log: not supported by cvs2svn $
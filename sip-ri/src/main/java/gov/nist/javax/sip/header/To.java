@@ -188,4 +188,16 @@ public final class To extends AddressParametersHeader implements
     public boolean equals(Object other) {
         return (other instanceof ToHeader) && super.equals(other);
     }
+
+    /**
+     * Match the address and the parameters, such as the tag, with a template.
+     */
+    public boolean match(Object other) {
+        if (other == null)
+            return true;
+        if (other.getClass() != this.getClass())
+            return false;
+        final To o = (To) other;
+        return matchFields(o);
+    }
 }
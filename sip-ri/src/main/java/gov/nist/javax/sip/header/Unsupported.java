@@ -91,6 +91,18 @@ public class Unsupported
                     + " Unsupported, setOptionTag(), The option tag parameter is null");
         optionTag = o;
     }
+
+    /**
+     * Compare the option tag that the UAS does not support.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final Unsupported o = (Unsupported) other;
+        return equalFields(o) && equalValues(optionTag, o.optionTag);
+    }
 }
 /*
  * $Log: not supported by cvs2svn $
@@ -126,6 +126,17 @@ public class UserAgent extends SIPHeader implements UserAgentHeader {
         return retval;
     }
 
+    /**
+     * Compare the product tokens of the user agent.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final UserAgent o = (UserAgent) other;
+        return equalFields(o) && equalValues(productTokens, o.productTokens);
+    }
 }
 /*
  * $Log: not supported by cvs2svn $
@@ -520,4 +520,15 @@ public class Via
         return null;
     }
 
+    /**
+     * Match the sent protocol, the sent-by and the parameters with a template.
+     */
+    public boolean match(Object other) {
+        if (other == null)
+            return true;
+        if (other.getClass() != this.getClass())
+            return false;
+        final Via o = (Via) other;
+        return matchFields(o) && matchValues(sentProtocol, o.sentProtocol) && matchValues(sentBy, o.sentBy);
+    }
 }
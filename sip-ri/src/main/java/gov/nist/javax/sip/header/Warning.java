@@ -148,6 +148,18 @@ public class Warning extends SIPHeader implements WarningHeader {
         } else
             this.text = text;
     }
+
+    /**
+     * Compare the warning code, the agent and the warning text.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        final Warning o = (Warning) other;
+        return equalFields(o) && code == o.code && equalValues(agent, o.agent) && equalValues(text, o.text);
+    }
 }
 /*
  * $Log: not supported by cvs2svn $
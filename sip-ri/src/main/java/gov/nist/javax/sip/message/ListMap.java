@@ -105,6 +105,7 @@ import gov.nist.javax.sip.header.ims.ServiceRouteList;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A map of which of the standard headers may appear as a list
@@ -121,6 +122,10 @@ public class ListMap {
     // we are not using java 5.
     private static Map<Class<?>,Class<?>> headerListTable;
 
+    // Empty list of each list class, cloned to make the list of a header.
+    private static Map<Class<?>,SIPHeaderList<SIPHeader>> headerListPrototypes =
+        new ConcurrentHashMap<Class<?>,SIPHeaderList<SIPHeader>>();
+
     private static boolean initialized;
     static {
         initializeListMap();
@@ -241,6 +246,7 @@ public class ListMap {
                                      Class<? extends SIPHeaderList<? extends SIPHeader>> sipHeaderListClass)
     {
       headerListTable.put(sipHeaderClass, sipHeaderListClass);
+      headerListPrototypes.remove(sipHeaderClass);
     }
 
     /**
@@ -261,8 +267,15 @@ public class ListMap {
             initializeListMap();
         try {
             Class<?> headerClass = sipHeader.getClass();
-            Class<?> listClass =  headerListTable.get(headerClass);
-            SIPHeaderList<SIPHeader> shl = (SIPHeaderList<SIPHeader>) listClass.newInstance();
+            // the list is cloned from an empty instance made once per class
+            // rather than instantiated through reflection for every header
+            SIPHeaderList<SIPHeader> prototype = headerListPrototypes.get(headerClass);
+            if (prototype == null) {
+                Class<?> listClass =  headerListTable.get(headerClass);
+                prototype = (SIPHeaderList<SIPHeader>) listClass.newInstance();
+                headerListPrototypes.put(headerClass, prototype);
+            }
+            SIPHeaderList<SIPHeader> shl = (SIPHeaderList<SIPHeader>) prototype.clone();
             shl.setHeaderName(sipHeader.getName());
             return shl;
         } catch (InstantiationException ex) {
@@ -0,0 +1,300 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.message;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import gov.nist.javax.sip.header.SIPHeader;
+
+/**
+ * Headers of a SIPMessage, one header or header list per name, kept in two
+ * parallel arrays in the order the names were first attached.
+ *
+ * The names are the lower case names returned by SIPHeaderNamesCache, which
+ * are interned, so a lookup compares the references of the few names of the
+ * message before comparing their content. This replaces an ordered queue and
+ * a hash table per message, and their entry per header, with two small arrays.
+ *
+ * The methods are synchronized so that a message can still be read while
+ * another thread modifies it; the lock is taken by a single thread in the
+ * common case.
+ *
+ * A copy made for a copy on write clone of the message shares the headers
+ * with the original table. Both tables then hand out a shared header through
+ * {@link #getUnshared(String)} only after replacing it with a clone of its
+ * own, while encoding and comparing the message read it in place.
+ *
+ * The position of a header received but not parsed yet is reserved under its
+ * name, with no header, so that the header keeps its place among the others
+ * once it is parsed and attached.
+ */
+public final class MessageHeaders implements Iterable<SIPHeader> {
+	private static final int INITIAL_CAPACITY = 12;
+
+	private String[] names;
+	private SIPHeader[] headers;
+	// which headers are also referenced by a copy on write copy of the table,
+	// only allocated once the table is copied
+	private boolean[] shared;
+	private int size;
+
+	public MessageHeaders() {
+		this(INITIAL_CAPACITY);
+	}
+
+	public MessageHeaders(int capacity) {
+		names = new String[capacity];
+		headers = new SIPHeader[capacity];
+	}
+
+	private int indexOf(String lowerCaseName) {
+		for (int i = 0; i < size; i++) {
+			if (names[i] == lowerCaseName) {
+				return i;
+			}
+		}
+		// names that were not obtained from SIPHeaderNamesCache
+		for (int i = 0; i < size; i++) {
+			if (names[i].equals(lowerCaseName)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the header or header list of the given name, null if there is none
+	 */
+	public synchronized SIPHeader get(String lowerCaseName) {
+		int index = indexOf(lowerCaseName);
+		return index < 0 ? null : headers[index];
+	}
+
+	/**
+	 * Get the header or header list of the given name so that it can be
+	 * modified, that is after replacing it with a clone if it is shared with
+	 * another table.
+	 *
+	 * @return the header or header list of the given name, null if there is none
+	 */
+	public synchronized SIPHeader getUnshared(String lowerCaseName) {
+		int index = indexOf(lowerCaseName);
+		if (index < 0) {
+			return null;
+		}
+		unshare(index);
+		return headers[index];
+	}
+
+	private void unshare(int index) {
+		if (shared != null && shared[index]) {
+			headers[index] = (SIPHeader) headers[index].clone();
+			shared[index] = false;
+		}
+	}
+
+	public synchronized boolean contains(String lowerCaseName) {
+		int index = indexOf(lowerCaseName);
+		return index >= 0 && headers[index] != null;
+	}
+
+	/**
+	 * Reserve the position of a header attached later, after the other headers,
+	 * unless there already is a header or a reserved position of that name.
+	 */
+	public synchronized void reserve(String lowerCaseName) {
+		if (indexOf(lowerCaseName) < 0) {
+			put(lowerCaseName, null);
+		}
+	}
+
+	/**
+	 * Removes the position reserved for a header of the given name, if no
+	 * header was attached there.
+	 */
+	public synchronized void removeReserved(String lowerCaseName) {
+		int index = indexOf(lowerCaseName);
+		if (index >= 0 && headers[index] == null) {
+			remove(lowerCaseName);
+		}
+	}
+
+	/**
+	 * Sets the header or header list of the given name, in place of the
+	 * existing one or after the other headers if there is none.
+	 */
+	public synchronized void put(String lowerCaseName, SIPHeader header) {
+		int index = indexOf(lowerCaseName);
+		if (index >= 0) {
+			headers[index] = header;
+			if (shared != null) {
+				shared[index] = false;
+			}
+			return;
+		}
+		if (size == headers.length) {
+			int capacity = size + (size >> 1) + 1;
+			names = Arrays.copyOf(names, capacity);
+			headers = Arrays.copyOf(headers, capacity);
+			if (shared != null) {
+				shared = Arrays.copyOf(shared, capacity);
+			}
+		}
+		names[size] = lowerCaseName;
+		headers[size] = header;
+		size++;
+	}
+
+	/**
+	 * Removes the header or header list of the given name.
+	 *
+	 * @return the removed header, null if there was none
+	 */
+	public synchronized SIPHeader remove(String lowerCaseName) {
+		int index = indexOf(lowerCaseName);
+		if (index < 0) {
+			return null;
+		}
+		SIPHeader removed = headers[index];
+		int moved = size - index - 1;
+		if (moved > 0) {
+			System.arraycopy(names, index + 1, names, index, moved);
+			System.arraycopy(headers, index + 1, headers, index, moved);
+			if (shared != null) {
+				System.arraycopy(shared, index + 1, shared, index, moved);
+			}
+		}
+		size--;
+		names[size] = null;
+		headers[size] = null;
+		if (shared != null) {
+			shared[size] = false;
+		}
+		return removed;
+	}
+
+	/**
+	 * @return the number of headers, the reserved positions excluded
+	 */
+	public synchronized int size() {
+		int retval = 0;
+		for (int i = 0; i < size; i++) {
+			if (headers[i] != null) {
+				retval++;
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * @return a copy of the headers, in order, the reserved positions excluded
+	 */
+	public synchronized SIPHeader[] toArray() {
+		SIPHeader[] retval = new SIPHeader[size];
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			if (headers[i] != null) {
+				retval[count++] = headers[i];
+			}
+		}
+		return count == size ? retval : Arrays.copyOf(retval, count);
+	}
+
+	/**
+	 * @return a copy of the names, in order, those of the reserved positions
+	 *         included
+	 */
+	public synchronized String[] toNameArray() {
+		return Arrays.copyOf(names, size);
+	}
+
+	/**
+	 * @return a copy of the headers, in order, after replacing the shared ones
+	 *         with clones so that they can be modified
+	 */
+	public synchronized SIPHeader[] toUnsharedArray() {
+		if (shared != null) {
+			for (int i = 0; i < size; i++) {
+				unshare(i);
+			}
+		}
+		return toArray();
+	}
+
+	/**
+	 * Copy this table for a copy on write clone of its message. The headers of
+	 * the given names are cloned right away, the other ones are shared by both
+	 * tables until either of them hands them out for modification.
+	 *
+	 * @param clonedNames lower case names of the headers to clone right away
+	 * @return the copy of the table
+	 */
+	public synchronized MessageHeaders copyOnWrite(String[] clonedNames) {
+		MessageHeaders retval = new MessageHeaders(Math.max(size, 4));
+		retval.shared = new boolean[retval.headers.length];
+		if (shared == null) {
+			shared = new boolean[headers.length];
+		}
+		for (int i = 0; i < size; i++) {
+			retval.names[i] = names[i];
+			if (headers[i] == null) {
+				// a reserved position
+				continue;
+			} else if (contains(clonedNames, names[i])) {
+				retval.headers[i] = (SIPHeader) headers[i].clone();
+			} else {
+				retval.headers[i] = headers[i];
+				retval.shared[i] = true;
+				shared[i] = true;
+			}
+		}
+		retval.size = size;
+		return retval;
+	}
+
+	private static boolean contains(String[] lowerCaseNames, String lowerCaseName) {
+		for (String name : lowerCaseNames) {
+			if (name == lowerCaseName || name.equals(lowerCaseName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return an iterator over a copy of the headers, which can not remove them
+	 */
+	@Override
+	public Iterator<SIPHeader> iterator() {
+		return Arrays.asList(toArray()).iterator();
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder retval = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				retval.append(", ");
+			}
+			retval.append(headers[i]);
+		}
+		return retval.append(']').toString();
+	}
+}
@@ -32,15 +32,13 @@ import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Field;
 import java.net.InetAddress;
 import java.text.ParseException;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.sip.InvalidArgumentException;
 import javax.sip.SipException;
@@ -138,6 +136,24 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
     public static final String DOUBLE_CRLF = "\r\n\r\n";
     public static final String SINGLE_CRLF = "\r\n";
 
+    /*
+     * True if clone() shares the headers of the message with the clone until
+     * either of them hands them out, see setCopyOnWriteClone.
+     */
+    private static boolean copyOnWriteClone = false;
+
+    /*
+     * Lower case names of the headers referenced by the direct accessor
+     * fields, which are cloned right away by a copy on write clone.
+     */
+    private static final String[] DIRECT_ACCESSOR_HEADERS = new String[] {
+            SIPHeaderNamesCache.toLowerCase(FromHeader.NAME),
+            SIPHeaderNamesCache.toLowerCase(ToHeader.NAME),
+            SIPHeaderNamesCache.toLowerCase(CSeqHeader.NAME),
+            SIPHeaderNamesCache.toLowerCase(CallIdHeader.NAME),
+            SIPHeaderNamesCache.toLowerCase(ContentLengthHeader.NAME),
+            SIPHeaderNamesCache.toLowerCase(MaxForwardsHeader.NAME) };
+
 	// JvB: use static here?
     private String contentEncodingCharset = MessageFactoryImpl.getDefaultContentEncodingCharset();
 
@@ -152,9 +168,10 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
     protected LinkedList<String> unrecognizedHeaders;
 
     /**
-     * List of parsed headers (in the order they were added)
+     * Parsed headers, one header or header list per name, in the order they
+     * were added and indexed by lower case name.
      */
-    protected ConcurrentLinkedQueue<SIPHeader> headers;
+    protected MessageHeaders headers;
 
     /**
      * Direct accessors for frequently accessed headers
@@ -181,8 +198,15 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
 
     protected Object messageContentObject;
 
-    // Table of headers indexed by name.
-    protected Map<String, SIPHeader> headerTable;
+    /**
+     * Raw header lines received from the network that were not parsed yet,
+     * indexed by lower case header name. They are parsed and moved to the
+     * header table the first time a header of that name is accessed, untouched
+     * ones are encoded back verbatim at the position reserved for them in the
+     * header table. Only allocated when the message was parsed in lazy header
+     * parsing mode.
+     */
+    protected volatile Map<String, List<String>> lazyHeaders;
 
     /**
      * The application data pointer. This is un-interpreted by the stack. This
@@ -219,6 +243,34 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
 
     private int peerPacketSourcePort;
 
+    /**
+     * The last transaction identifier computed from a branch, with the branch
+     * and method it was computed from, to not build it again for every lookup.
+     */
+    private transient TransactionIdCache transactionIdCache;
+
+    /**
+     * Set the clone mode of the messages. In copy on write mode clone() only
+     * clones the From, To, CSeq, Call-ID, Content-Length and Max-Forwards
+     * headers right away. The other headers are shared by the message and its
+     * clone, and cloned by either of them the first time it hands one out, so
+     * that forwarding a request does not copy the headers nobody looks at.
+     * Headers obtained from a message before it is cloned must then not be
+     * modified afterwards, since the clone may still share them.
+     *
+     * @param copyOnWrite true to share the headers until they are handed out
+     */
+    public static void setCopyOnWriteClone(boolean copyOnWrite) {
+        copyOnWriteClone = copyOnWrite;
+    }
+
+    /**
+     * @return true if clone() shares the headers until they are handed out
+     */
+    public static boolean isCopyOnWriteClone() {
+        return copyOnWriteClone;
+    }
+
     /**
      * Return true if the header belongs only in a Request.
      *
@@ -255,10 +307,9 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
      * encoded header in canonical form.
      */
     public LinkedList<String> getMessageAsEncodedStrings() {
+        parseLazyHeaders();
         LinkedList<String> retval = new LinkedList<String>();
-        Iterator<SIPHeader> li = headers.iterator();
-        while (li.hasNext()) {
-            SIPHeader sipHeader = (SIPHeader) li.next();
+        for (SIPHeader sipHeader : headers.toArray()) {
             if (sipHeader instanceof SIPHeaderList) {
                 SIPHeaderList< ?> shl = (SIPHeaderList< ?>) sipHeader;
                 retval.addAll(shl.getHeadersAsEncodedStrings());
@@ -277,14 +328,7 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
      */
     protected StringBuilder encodeSIPHeaders(StringBuilder encoding) {
 //        StringBuilder encoding = new StringBuilder();
-        Iterator<SIPHeader> it = this.headers.iterator();
-
-        while (it.hasNext()) {
-            SIPHeader siphdr = (SIPHeader) it.next();
-            if (!(siphdr instanceof ContentLength)) {
-                siphdr.encode(encoding);
-            }
-        }
+        encodeHeaderFields(encoding);
 
         return contentLengthHeader.encode(encoding).append(NEWLINE);
     }
@@ -417,9 +461,10 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
             throw new IllegalArgumentException("Bad class " + template.getClass());
         }
         SIPMessage templateMessage = (SIPMessage) template;
-        Object[] templateHeaders = templateMessage.headers.toArray();
+        templateMessage.parseLazyHeaders();
+        SIPHeader[] templateHeaders = templateMessage.headers.toArray();
         for (int i = 0; i < templateHeaders.length; i++) {
-            SIPHeader hdr = (SIPHeader) templateHeaders[i];
+            SIPHeader hdr = templateHeaders[i];
             String hdrName = hdr.getHeaderName();
             List<SIPHeader> myHdrs = this.getHeaderList(hdrName);
             if (myHdrs == null) {
@@ -446,14 +491,7 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
      */
     public String encode() {
         StringBuilder encoding = new StringBuilder();
-        Iterator<SIPHeader> it = this.headers.iterator();
-
-        while (it.hasNext()) {
-            SIPHeader siphdr = (SIPHeader) it.next();
-            if (!(siphdr instanceof ContentLength)) {
-                siphdr.encode(encoding);
-            }
-        }
+        encodeHeaderFields(encoding);
         // Append the unrecognized headers. Headers that are not
         // recognized are passed through unchanged.
         if (unrecognizedHeaders != null) {
@@ -498,26 +536,7 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
         if (this instanceof SIPRequest && ((SIPRequest) this).isNullRequest()) {
             return DOUBLE_CRLF.getBytes();
         }
-        // JvB: added to fix case where application provides the wrong transport
-        // in the topmost Via header
-        ViaHeader topVia = (ViaHeader) this.getHeader(ViaHeader.NAME);
-        try {
-        	if(topVia!=null)
-        		topVia.setTransport(transport);
-        } catch (ParseException e) {
-            InternalErrorHandler.handleException(e);
-        }
-
-        StringBuilder encoding = new StringBuilder();
-        CopyOnWriteArrayList<SIPHeader> headersCopy = new CopyOnWriteArrayList<>(this.headers);
-
-        for (SIPHeader siphdr : headersCopy) {
-            if (!(siphdr instanceof ContentLength)) {
-                siphdr.encode(encoding);
-            }
-        }
-        contentLengthHeader.encode(encoding);
-        encoding.append(NEWLINE);
+        StringBuilder encoding = encodeHeaders(transport, new StringBuilder());
 
         byte[] retval = null;
         byte[] content = this.getRawContent();
@@ -546,6 +565,33 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
         return retval;
     }
 
+    /**
+     * Encode the headers of the message for transmission over the given
+     * transport, followed by the empty line separating them from the body.
+     * The start line is not part of the encoding. This is the part of
+     * {@link #encodeAsBytes(String)} converted through the message charset.
+     *
+     * @param transport -- the transport to set in the topmost Via header.
+     * @param encoding -- the builder to append the headers to.
+     * @return the builder passed in.
+     */
+    public StringBuilder encodeHeaders(String transport, StringBuilder encoding) {
+        // JvB: added to fix case where application provides the wrong transport
+        // in the topmost Via header
+        ViaHeader topVia = (ViaHeader) this.getHeader(ViaHeader.NAME);
+        try {
+        	if(topVia!=null)
+        		topVia.setTransport(transport);
+        } catch (ParseException e) {
+            InternalErrorHandler.handleException(e);
+        }
+
+        encodeHeaderFields(encoding);
+        contentLengthHeader.encode(encoding);
+        encoding.append(NEWLINE);
+        return encoding;
+    }
+
     /**
      * clone this message (create a new deep physical copy). All headers in the
      * message are cloned. You can modify the cloned copy without affecting the
@@ -554,12 +600,16 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
      * If the content is an Object that supports the clone method, then the
      * clone method is invoked and the cloned content is the new content.
      * Otherwise, the content of the new message is set equal to the old one.
+     * In copy on write clone mode (see setCopyOnWriteClone) the headers other
+     * than From, To, CSeq, Call-ID, Content-Length and Max-Forwards are only
+     * cloned when either message hands them out.
      *
      * @return A cloned copy of this object.
      */
     public Object clone() {
         SIPMessage retval = (SIPMessage) super.clone();
-        retval.headerTable = new ConcurrentHashMap<String, SIPHeader>();
+        // the raw lines are copied below, not shared with the clone
+        retval.lazyHeaders = null;
         retval.fromHeader = null;
         retval.toHeader = null;
         retval.cSeqHeader = null;
@@ -567,11 +617,22 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
         retval.contentLengthHeader = null;
         retval.maxForwardsHeader = null;
         retval.forkId = null;
-        if (this.headers != null) {
-            retval.headers = new ConcurrentLinkedQueue<SIPHeader>();
-            for (Iterator<SIPHeader> iter = headers.iterator(); iter.hasNext();) {
-                SIPHeader hdr = (SIPHeader) iter.next();
-                retval.attachHeader((SIPHeader) hdr.clone());
+        if (this.headers != null && copyOnWriteClone) {
+            retval.headers = this.headers.copyOnWrite(DIRECT_ACCESSOR_HEADERS);
+            for (SIPHeader hdr : retval.headers.toArray()) {
+                retval.setDirectAccessor(hdr);
+            }
+        } else if (this.headers != null) {
+            // the headers not parsed yet keep their reserved position
+            String[] namesToClone = this.headers.toNameArray();
+            retval.headers = new MessageHeaders(Math.max(namesToClone.length, 4));
+            for (String name : namesToClone) {
+                SIPHeader hdr = this.headers.get(name);
+                if (hdr == null) {
+                    retval.headers.reserve(name);
+                } else {
+                    retval.attachHeader((SIPHeader) hdr.clone());
+                }
             }
 
         }
@@ -581,7 +642,20 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
         if (this.messageContentObject != null) {
             retval.messageContentObject = makeClone(messageContentObject);
         }
-        retval.unrecognizedHeaders = this.unrecognizedHeaders;
+        Map<String, List<String>> lazy = this.lazyHeaders;
+        if (lazy != null) {
+            // raw lines are immutable, only the structure needs to be copied
+            synchronized (lazy) {
+                for (Map.Entry<String, List<String>> entry : lazy.entrySet()) {
+                    for (String line : entry.getValue()) {
+                        retval.addLazyHeader(entry.getKey(), line);
+                    }
+                }
+            }
+        }
+        if (this.unrecognizedHeaders != null) {
+            retval.unrecognizedHeaders = new LinkedList<String>(this.unrecognizedHeaders);
+        }
         retval.remoteAddress = this.remoteAddress;
         retval.remotePort = this.remotePort;
         return retval;
@@ -635,9 +709,8 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
      * class.
      */
     public SIPMessage() {
-        this.unrecognizedHeaders = new LinkedList<String>();
-        this.headers = new ConcurrentLinkedQueue<SIPHeader>();
-        headerTable = new ConcurrentHashMap<String, SIPHeader>();
+        // the unrecognized headers are only allocated when there are some
+        this.headers = new MessageHeaders();
         try {
             this.attachHeader(new ContentLength(0), false);
         } catch (Exception ex) {
@@ -754,8 +827,14 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
 
         String headerNameLowerCase = SIPHeaderNamesCache.toLowerCase(h.getName());
         if (replaceFlag) {
-            headerTable.remove(headerNameLowerCase);
-        } else if (headerTable.containsKey(headerNameLowerCase) && !(h instanceof SIPHeaderList)) {
+            discardLazyHeader(headerNameLowerCase);
+            headers.remove(headerNameLowerCase);
+        } else {
+            // headers received before this one keep their position
+            parseLazyHeader(headerNameLowerCase);
+        }
+        SIPHeader existingHeader = headers.get(headerNameLowerCase);
+        if (!replaceFlag && existingHeader != null && !(h instanceof SIPHeaderList)) {
             if (h instanceof ContentLength) {
                 try {
                     ContentLength cl = (ContentLength) h;
@@ -767,38 +846,21 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
             return;
         }
 
-        SIPHeader originalHeader = (SIPHeader) getHeader(header.getName());
-
-        // Delete the original header from our list structure.
-        if (originalHeader != null) {
-            Iterator<SIPHeader> li = headers.iterator();
-            while (li.hasNext()) {
-                SIPHeader next = (SIPHeader) li.next();
-                if (next.equals(originalHeader)) {
-                    li.remove();
-                }
-            }
-        }
-
-        if (!headerTable.containsKey(headerNameLowerCase)) {
-            headerTable.put(headerNameLowerCase, h);
-            headers.add(h);
+        if (existingHeader instanceof SIPHeaderList && h instanceof SIPHeaderList) {
+            ((SIPHeaderList) headers.getUnshared(headerNameLowerCase)).concatenate((SIPHeaderList) h, top);
         } else {
-            if (h instanceof SIPHeaderList) {
-                SIPHeaderList<?> hdrlist = (SIPHeaderList<?>) headerTable
-                        .get(headerNameLowerCase);
-                
-                if (hdrlist != null) {
-                	hdrlist.concatenate((SIPHeaderList)h, top);
-                } else {
-                    headerTable.put(headerNameLowerCase, h);
-                }
-            } else {
-                headerTable.put(headerNameLowerCase, h);
-            }
+            // a header of that name has either been removed above or is
+            // replaced in place
+            headers.put(headerNameLowerCase, h);
         }
 
-        // Direct accessor fields for frequently accessed headers.
+        setDirectAccessor(h);
+    }
+
+    /**
+     * Direct accessor fields for frequently accessed headers.
+     */
+    private void setDirectAccessor(SIPHeader h) {
         if (h instanceof From) {
             this.fromHeader = (From) h;
         } else if (h instanceof ContentLength) {
@@ -812,7 +874,6 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
         } else if (h instanceof MaxForwards) {
             this.maxForwardsHeader = (MaxForwards) h;
         }
-
     }
 
     /**
@@ -825,7 +886,8 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
     public void removeHeader(String headerName, boolean top) {
 
         String headerNameLowerCase = SIPHeaderNamesCache.toLowerCase(headerName);
-        SIPHeader toRemove = (SIPHeader) headerTable.get(headerNameLowerCase);
+        parseLazyHeader(headerNameLowerCase);
+        SIPHeader toRemove = headers.getUnshared(headerNameLowerCase);
         // nothing to do then we are done.
         if (toRemove == null) {
             return;
@@ -839,20 +901,12 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
             }
             // Clean up empty list
             if (hdrList.isEmpty()) {
-                Iterator<SIPHeader> li = this.headers.iterator();
-                while (li.hasNext()) {
-                    SIPHeader sipHeader = (SIPHeader) li.next();
-                    if (sipHeader.getName().equalsIgnoreCase(headerNameLowerCase)) {
-                        li.remove();
-                    }
-                }
-
                 // JvB: also remove it from the nameTable! Else NPE in
                 // DefaultRouter
-                headerTable.remove(headerNameLowerCase);
+                headers.remove(headerNameLowerCase);
             }
         } else {
-            this.headerTable.remove(headerNameLowerCase);
+            this.headers.remove(headerNameLowerCase);
             if (toRemove instanceof From) {
                 this.fromHeader = null;
             } else if (toRemove instanceof To) {
@@ -866,13 +920,6 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
             } else if (toRemove instanceof ContentLength) {
                 this.contentLengthHeader = null;
             }
-            Iterator<SIPHeader> li = this.headers.iterator();
-            while (li.hasNext()) {
-                SIPHeader sipHeader = (SIPHeader) li.next();
-                if (sipHeader.getName().equalsIgnoreCase(headerName)) {
-                    li.remove();
-                }
-            }
         }
 
     }
@@ -888,7 +935,8 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
             throw new NullPointerException("null arg");
         }
         String headerNameLowerCase = SIPHeaderNamesCache.toLowerCase(headerName);
-        SIPHeader removed = (SIPHeader) headerTable.remove(headerNameLowerCase);
+        discardLazyHeader(headerNameLowerCase);
+        SIPHeader removed = headers.remove(headerNameLowerCase);
         // nothing to do then we are done.
         if (removed == null) {
             return;
@@ -908,15 +956,6 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
         } else if (removed instanceof ContentLength) {
             this.contentLengthHeader = null;
         }
-
-        Iterator<SIPHeader> li = this.headers.iterator();
-        while (li.hasNext()) {
-            SIPHeader sipHeader = (SIPHeader) li.next();
-            if (sipHeader.getName().equalsIgnoreCase(headerNameLowerCase)) {
-                li.remove();
-            }
-
-        }
     }
 
     /**
@@ -938,25 +977,35 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
      * transaction identifier).
      */
     public String getTransactionId() {
-        Via topVia = getTopmostVia();
+        Via topVia = getTopmostViaForReading();
 //        if (!this.getViaHeaders().isEmpty()) {
 //            topVia = (Via) this.getViaHeaders().getFirst();
 //        }
         // Have specified a branch Identifier so we can use it to identify
         // the transaction. BranchId is not case sensitive.
         // Branch Id prefix is not case sensitive.
-        if (topVia != null
-                && topVia.getBranch() != null
-                && topVia.getBranch().toUpperCase().startsWith(
-                        SIPConstants.BRANCH_MAGIC_COOKIE_UPPER_CASE)) {
+        String branch = topVia != null ? topVia.getBranch() : null;
+        if (branch != null
+                && branch.regionMatches(true, 0, SIPConstants.BRANCH_MAGIC_COOKIE_UPPER_CASE, 0,
+                        SIPConstants.BRANCH_MAGIC_COOKIE_UPPER_CASE.length())) {
             // Bis 09 compatible branch assignment algorithm.
             // implies that the branch id can be used as a transaction
             // identifier.
-            if (this.getCSeq().getMethod().equals(Request.CANCEL)) {
-                return (topVia.getBranch() + ":" + this.getCSeq().getMethod()).toLowerCase();
+            String method = this.getCSeq().getMethod();
+            // the branch or the CSeq may have been changed since the identifier
+            // was computed, in which case they are not the same instances
+            TransactionIdCache cache = this.transactionIdCache;
+            if (cache != null && cache.branch == branch && cache.method == method) {
+                return cache.transactionId;
+            }
+            String transactionId;
+            if (method.equals(Request.CANCEL)) {
+                transactionId = (branch + ":" + method).toLowerCase();
             } else {
-                return topVia.getBranch().toLowerCase();
+                transactionId = branch.toLowerCase();
             }
+            this.transactionIdCache = new TransactionIdCache(branch, method, transactionId);
+            return transactionId;
         } else {
             // Old style client so construct the transaction identifier
             // from various fields of the request.
@@ -1018,7 +1067,8 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
      * @return an Iterator for the headers of this message.
      */
     public Iterator<SIPHeader> getHeaders() {
-        return headers.iterator();
+        parseLazyHeaders();
+        return Arrays.asList(headers.toUnsharedArray()).iterator();
     }
 
     /**
@@ -1034,7 +1084,8 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
         if (lowerCaseHeaderName == null) {
             throw new NullPointerException("bad name");
         }
-        SIPHeader sipHeader = (SIPHeader) headerTable.get(lowerCaseHeaderName);
+        parseLazyHeader(lowerCaseHeaderName);
+        SIPHeader sipHeader = headers.getUnshared(lowerCaseHeaderName);
         if (sipHeader instanceof SIPHeaderList) {
             return (Header) ((SIPHeaderList<?>) sipHeader).getFirst();
         } else {
@@ -1156,6 +1207,19 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
         }
     }
 
+    /**
+     * Get the topmost via header to compute an identifier of this message.
+     * Unlike getTopmostVia, a via list shared with a copy on write clone is
+     * not replaced with a clone, so the header must not be modified.
+     *
+     * @return the topmost via header, null if there is none
+     */
+    protected Via getTopmostViaForReading() {
+        parseLazyHeader(VIA_LOWERCASE);
+        SIPHeaderList<?> viaList = (SIPHeaderList<?>) headers.get(VIA_LOWERCASE);
+        return viaList == null ? null : (Via) viaList.getFirst();
+    }
+
     /**
      * Get the CSeq list of header (null if one does not exist).
      *
@@ -1524,8 +1588,9 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
         if (headerName == null) {
             throw new NullPointerException("null headerName");
         }
-        SIPHeader sipHeader = (SIPHeader) headerTable.get(SIPHeaderNamesCache
-                .toLowerCase(headerName));
+        String lowerCaseHeaderName = SIPHeaderNamesCache.toLowerCase(headerName);
+        parseLazyHeader(lowerCaseHeaderName);
+        SIPHeader sipHeader = headers.getUnshared(lowerCaseHeaderName);
         // empty iterator
         if (sipHeader == null) {
             return new LinkedList<SIPHeader>().listIterator();
@@ -1547,15 +1612,18 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
      */
     public String getHeaderAsFormattedString(String name) {
         String lowerCaseName = SIPHeaderNamesCache.toLowerCase(name);
-        if (this.headerTable.containsKey(lowerCaseName)) {
-            return this.headerTable.get(lowerCaseName).toString();
+        parseLazyHeader(lowerCaseName);
+        SIPHeader sipHeader = this.headers.get(lowerCaseName);
+        if (sipHeader != null) {
+            return sipHeader.toString();
         } else {
             return this.getHeader(name).toString();
         }
     }
 
     public SIPHeader getSIPHeaderListLowerCase(String lowerCaseHeaderName) {
-        return headerTable.get(lowerCaseHeaderName);
+        parseLazyHeader(lowerCaseHeaderName);
+        return headers.getUnshared(lowerCaseHeaderName);
     }
 
     /**
@@ -1567,8 +1635,9 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
      */
     @SuppressWarnings("unchecked")
     private List<SIPHeader> getHeaderList(String headerName) {
-        SIPHeader sipHeader = (SIPHeader) headerTable.get(SIPHeaderNamesCache
-                .toLowerCase(headerName));
+        String lowerCaseHeaderName = SIPHeaderNamesCache.toLowerCase(headerName);
+        parseLazyHeader(lowerCaseHeaderName);
+        SIPHeader sipHeader = headers.getUnshared(lowerCaseHeaderName);
         if (sipHeader == null) {
             return null;
         } else if (sipHeader instanceof SIPHeaderList) {
@@ -1587,7 +1656,9 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
      * @return true if the header is present in the message
      */
     public boolean hasHeader(String headerName) {
-        return headerTable.containsKey(SIPHeaderNamesCache.toLowerCase(headerName));
+        String lowerCaseHeaderName = SIPHeaderNamesCache.toLowerCase(headerName);
+        parseLazyHeader(lowerCaseHeaderName);
+        return headers.contains(lowerCaseHeaderName);
     }
 
     /**
@@ -1688,6 +1759,112 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
         this.getUnrecognizedHeadersList().add(unparsed);
     }
 
+    /**
+     * Add a raw header line received from the network without parsing it. The
+     * line is parsed the first time a header of that name is accessed and is
+     * encoded back as is if it never was.
+     *
+     * @param lowerCaseHeaderName -- lower case long form name of the header.
+     * @param header -- the header line, without the line terminator.
+     */
+    public void addLazyHeader(String lowerCaseHeaderName, String header) {
+        Map<String, List<String>> lazy = this.lazyHeaders;
+        if (lazy == null) {
+            lazy = new LinkedHashMap<String, List<String>>();
+            this.lazyHeaders = lazy;
+        }
+        synchronized (lazy) {
+            List<String> lines = lazy.get(lowerCaseHeaderName);
+            if (lines == null) {
+                lines = new LinkedList<String>();
+                lazy.put(lowerCaseHeaderName, lines);
+            }
+            lines.add(header);
+            headers.reserve(lowerCaseHeaderName);
+        }
+    }
+
+    /**
+     * Parse the pending raw lines of the given header name and attach them to
+     * the message. Lines that can not be parsed end up in the unrecognized
+     * headers, as for {@link #addHeader(String)}.
+     */
+    private void parseLazyHeader(String lowerCaseHeaderName) {
+        Map<String, List<String>> lazy = this.lazyHeaders;
+        if (lazy == null) {
+            return;
+        }
+        synchronized (lazy) {
+            List<String> lines = lazy.remove(lowerCaseHeaderName);
+            if (lines != null) {
+                for (String line : lines) {
+                    addHeader(line);
+                }
+                // none of the lines could be parsed
+                headers.removeReserved(lowerCaseHeaderName);
+            }
+        }
+    }
+
+    /**
+     * Parse all the pending raw lines, for the operations working on the whole
+     * list of headers.
+     */
+    protected void parseLazyHeaders() {
+        Map<String, List<String>> lazy = this.lazyHeaders;
+        if (lazy == null) {
+            return;
+        }
+        synchronized (lazy) {
+            while (!lazy.isEmpty()) {
+                parseLazyHeader(lazy.keySet().iterator().next());
+            }
+        }
+    }
+
+    private void discardLazyHeader(String lowerCaseHeaderName) {
+        Map<String, List<String>> lazy = this.lazyHeaders;
+        if (lazy == null) {
+            return;
+        }
+        synchronized (lazy) {
+            if (lazy.remove(lowerCaseHeaderName) != null) {
+                headers.removeReserved(lowerCaseHeaderName);
+            }
+        }
+    }
+
+    /**
+     * Encode the headers other than Content-Length in their order. The raw
+     * lines of the headers not parsed yet are encoded at their position.
+     */
+    private void encodeHeaderFields(StringBuilder encoding) {
+        Map<String, List<String>> lazy = this.lazyHeaders;
+        if (lazy == null) {
+            for (SIPHeader siphdr : this.headers.toArray()) {
+                if (!(siphdr instanceof ContentLength)) {
+                    siphdr.encode(encoding);
+                }
+            }
+            return;
+        }
+        synchronized (lazy) {
+            for (String name : this.headers.toNameArray()) {
+                SIPHeader siphdr = this.headers.get(name);
+                if (siphdr == null) {
+                    List<String> lines = lazy.get(name);
+                    if (lines != null) {
+                        for (String line : lines) {
+                            encoding.append(line).append(NEWLINE);
+                        }
+                    }
+                } else if (!(siphdr instanceof ContentLength)) {
+                    siphdr.encode(encoding);
+                }
+            }
+        }
+    }
+
     /**
      * Add a SIP header.
      *
@@ -1719,10 +1896,9 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
      * the same order as are present in the message.
      */
     public ListIterator<String> getHeaderNames() {
-        Iterator<SIPHeader> li = this.headers.iterator();
+        parseLazyHeaders();
         LinkedList<String> retval = new LinkedList<String>();
-        while (li.hasNext()) {
-            SIPHeader sipHeader = (SIPHeader) li.next();
+        for (SIPHeader sipHeader : this.headers.toArray()) {
             String name = sipHeader.getName();
             retval.add(name);
         }
@@ -1739,16 +1915,16 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
             return false;
         }
         SIPMessage otherMessage = (SIPMessage) other;
-        Collection<SIPHeader> values = this.headerTable.values();
-        Iterator<SIPHeader> it = values.iterator();
-        if (headerTable.size() != otherMessage.headerTable.size()) {
+        parseLazyHeaders();
+        otherMessage.parseLazyHeaders();
+        SIPHeader[] values = this.headers.toArray();
+        if (values.length != otherMessage.headers.size()) {
             return false;
         }
 
-        while (it.hasNext()) {
-            SIPHeader mine = (SIPHeader) it.next();
-            SIPHeader his = (SIPHeader) (otherMessage.headerTable.get(SIPHeaderNamesCache
-                    .toLowerCase(mine.getName())));
+        for (SIPHeader mine : values) {
+            SIPHeader his = otherMessage.headers.get(SIPHeaderNamesCache
+                    .toLowerCase(mine.getName()));
             if (his == null) {
                 return false;
             } else if (!his.equals(mine)) {
@@ -2135,4 +2311,16 @@ public abstract class SIPMessage extends MessageObject implements MessageExt {
     public int getPeerPacketSourcePort() {
         return this.peerPacketSourcePort;
     }
+
+    private static final class TransactionIdCache {
+        private final String branch;
+        private final String method;
+        private final String transactionId;
+
+        private TransactionIdCache(String branch, String method, String transactionId) {
+            this.branch = branch;
+            this.method = method;
+            this.transactionId = transactionId;
+        }
+    }
 }
@@ -28,7 +28,9 @@
  *******************************************************************************/
 package gov.nist.javax.sip.message;
 
+import gov.nist.core.HostPort;
 import gov.nist.core.InternalErrorHandler;
+import gov.nist.javax.sip.SIPConstants;
 import gov.nist.javax.sip.address.GenericURI;
 import gov.nist.javax.sip.address.SipUri;
 import gov.nist.javax.sip.header.CSeq;
@@ -272,7 +274,7 @@ public class SIPRequest extends SIPMessage implements RequestExt {
             throw new ParseException(prefix + MaxForwardsHeader.NAME, 0);
         }
 
-        if (getTopmostVia() == null)
+        if (getTopmostViaForReading() == null)
             throw new ParseException("No via header in request! ", 0);
 
         if (getMethod().equals(Request.NOTIFY)) {
@@ -708,7 +710,7 @@ Caused by: java.text.ParseException: Scheme for contact should be sips:sip:proxy
         // no need to iterate through all headers to create the response since we know which headers
         // we only want to keep and helps the lazy parsing to avoid going through all headers
         for(String headerName : headersToIncludeInResponse) {                	
-        	SIPHeader nextHeader = headerTable.get(headerName);
+        	SIPHeader nextHeader = getSIPHeaderListLowerCase(headerName);
         	if(nextHeader != null) {
         		if(!(nextHeader instanceof RecordRouteList) || (nextHeader instanceof RecordRouteList && mustCopyRR(statusCode))) {
         			try {
@@ -790,7 +792,7 @@ Caused by: java.text.ParseException: Scheme for contact should be sips:sip:proxy
         }
         cancel.setHeader((Header) this.fromHeader.clone());
 
-        cancel.addFirst((Header) this.getTopmostVia().clone());
+        cancel.addFirst((Header) this.getTopmostViaForReading().clone());
         cancel.setHeader((Header) this.maxForwardsHeader.clone());
 
         /*
@@ -908,7 +910,7 @@ Caused by: java.text.ParseException: Scheme for contact should be sips:sip:proxy
         // fix
         newRequest.setHeader((Header) this.fromHeader.clone());
         newRequest.setHeader((Header) responseToHeader.clone());
-        newRequest.addFirst((Header) this.getTopmostVia().clone());
+        newRequest.addFirst((Header) this.getTopmostViaForReading().clone());
         newRequest.setHeader((Header) cSeqHeader.clone());
         newRequest.getCSeq().setMethod(Request.ACK);
 
@@ -933,7 +935,7 @@ Caused by: java.text.ParseException: Scheme for contact should be sips:sip:proxy
      * @return the string representation of the host from the topmost via header.
      */
     public String getViaHost() {
-        Via via = (Via) this.getViaHeaders().getFirst();
+        Via via = this.getTopmostViaForReading();
         return via.getHost();
 
     }
@@ -944,7 +946,7 @@ Caused by: java.text.ParseException: Scheme for contact should be sips:sip:proxy
      * @return the port from the topmost via header (5060 if there is no port indicated).
      */
     public int getViaPort() {
-        Via via = (Via) this.getViaHeaders().getFirst();
+        Via via = this.getTopmostViaForReading();
         if (via.hasPort())
             return via.getPort();
         else
@@ -1051,6 +1053,41 @@ Caused by: java.text.ParseException: Scheme for contact should be sips:sip:proxy
 
     }
 
+    /**
+     * Generates an Id shared by a CANCEL and the request it cancels, for the
+     * lookup of the transaction to cancel. This is what
+     * SIPTransaction.doesCancelMatchTransaction compares : the branch of the
+     * topmost Via, whatever its case, and its sent-by host and port. Without
+     * the RFC 3261 magic cookie in the branch, the Request-URI, To tag, From
+     * tag, Call-ID and CSeq number are added, as RFC 3261 section 9.2 matches
+     * the CANCEL of a RFC 2543 client.
+     *
+     * @return the id, or null if the request has no Via or CSeq
+     */
+    public String getCancelMatchId() {
+        Via topVia = this.getTopmostViaForReading();
+        if (topVia == null || topVia.getSentBy() == null)
+            return null;
+
+        HostPort sentBy = topVia.getSentBy();
+        String branch = topVia.getBranch();
+        StringBuilder cancelMatchId = new StringBuilder();
+        if (branch != null)
+            cancelMatchId.append(branch.toLowerCase());
+        cancelMatchId.append(":").append(sentBy.getHost().getHostname()).append(":").append(sentBy.getPort());
+        if (branch == null
+                || !branch.regionMatches(true, 0, SIPConstants.BRANCH_MAGIC_COOKIE, 0,
+                        SIPConstants.BRANCH_MAGIC_COOKIE.length())) {
+            if (this.cSeqHeader == null)
+                return null;
+            cancelMatchId.append(":").append(this.getRequestURI()).append(":").append(this.getToTag()).append(":")
+                    .append(this.getFromTag()).append(":")
+                    .append(this.callIdHeader == null ? null : this.callIdHeader.getCallId()).append(":")
+                    .append(this.cSeqHeader.getSeqNumber());
+        }
+        return cancelMatchId.toString();
+    }
+
     /**
      * @param inviteTransaction the inviteTransaction to set
      */
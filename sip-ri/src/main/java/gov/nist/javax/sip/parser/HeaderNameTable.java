@@ -0,0 +1,246 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.parser;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sip.header.ReferToHeader;
+
+import gov.nist.javax.sip.header.SIPHeaderNames;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Precomputed table of the well known SIP header names, allowing a header name
+ * to be resolved to a small integer id straight from the bytes of a
+ * {@link ByteBuf} without building an intermediate String. Compact forms
+ * (RFC 3261 section 7.3.3) resolve to the id of their long form.
+ *
+ * The table is immutable once the class is initialized and can be safely
+ * shared between threads.
+ */
+public final class HeaderNameTable {
+	public static final int UNKNOWN = -1;
+
+	private static final int SLOTS = 256;
+	private static final int SLOTS_MASK = SLOTS - 1;
+
+	// canonical names (as defined in SIPHeaderNames) indexed by id
+	private static final String[] names;
+	// lower case names indexed by id
+	private static final String[] lowerCaseNames;
+	// lower case ascii bytes of the names indexed by id
+	private static final byte[][] lowerCaseBytes;
+	// open addressing hash table, holds id + 1 and 0 for an empty slot
+	private static final int[] slots = new int[SLOTS];
+	// compact form letter -> id
+	private static final int[] compactForms = new int[26];
+	// headers always parsed when receiving a message, indexed by id
+	private static final boolean[] eager;
+
+	static {
+		List<String> headerNames = new ArrayList<String>();
+		Field[] fields = SIPHeaderNames.class.getFields();
+		for (int i = 0; i < fields.length; i++) {
+			Field field = fields[i];
+			if (field.getType().equals(String.class) && Modifier.isStatic(field.getModifiers())) {
+				try {
+					String value = (String) field.get(null);
+					if (!headerNames.contains(value))
+						headerNames.add(value);
+				} catch (IllegalAccessException e) {
+				}
+			}
+		}
+		// Refer-To has a compact form but is not part of SIPHeaderNames
+		if (!headerNames.contains(ReferToHeader.NAME))
+			headerNames.add(ReferToHeader.NAME);
+
+		names = headerNames.toArray(new String[headerNames.size()]);
+		lowerCaseNames = new String[names.length];
+		lowerCaseBytes = new byte[names.length][];
+		for (int id = 0; id < names.length; id++) {
+			lowerCaseNames[id] = names[id].toLowerCase().intern();
+			lowerCaseBytes[id] = lowerCaseNames[id].getBytes();
+			int slot = hash(lowerCaseBytes[id], lowerCaseBytes[id].length) & SLOTS_MASK;
+			while (slots[slot] != 0)
+				slot = (slot + 1) & SLOTS_MASK;
+			slots[slot] = id + 1;
+		}
+
+		for (int i = 0; i < compactForms.length; i++)
+			compactForms[i] = UNKNOWN;
+		addCompactForm('i', SIPHeaderNames.CALL_ID);
+		addCompactForm('m', SIPHeaderNames.CONTACT);
+		addCompactForm('e', SIPHeaderNames.CONTENT_ENCODING);
+		addCompactForm('l', SIPHeaderNames.CONTENT_LENGTH);
+		addCompactForm('c', SIPHeaderNames.CONTENT_TYPE);
+		addCompactForm('f', SIPHeaderNames.FROM);
+		addCompactForm('s', SIPHeaderNames.SUBJECT);
+		addCompactForm('k', SIPHeaderNames.SUPPORTED);
+		addCompactForm('t', SIPHeaderNames.TO);
+		addCompactForm('v', SIPHeaderNames.VIA);
+		addCompactForm('o', SIPHeaderNames.EVENT);
+		addCompactForm('u', SIPHeaderNames.ALLOW_EVENTS);
+		addCompactForm('r', ReferToHeader.NAME);
+		addCompactForm('b', SIPHeaderNames.REFERRED_BY);
+		addCompactForm('x', SIPHeaderNames.SESSION_EXPIRES);
+
+		// headers the stack reads for every message through the direct accessors
+		// of SIPMessage or to match transactions
+		eager = new boolean[names.length];
+		eager[idOf(SIPHeaderNames.VIA)] = true;
+		eager[idOf(SIPHeaderNames.FROM)] = true;
+		eager[idOf(SIPHeaderNames.TO)] = true;
+		eager[idOf(SIPHeaderNames.CALL_ID)] = true;
+		eager[idOf(SIPHeaderNames.CSEQ)] = true;
+		eager[idOf(SIPHeaderNames.MAX_FORWARDS)] = true;
+		eager[idOf(SIPHeaderNames.CONTENT_LENGTH)] = true;
+	}
+
+	public static final int CONTENT_LENGTH = idOf(SIPHeaderNames.CONTENT_LENGTH);
+
+	private HeaderNameTable() {
+	}
+
+	private static void addCompactForm(char compactForm, String name) {
+		compactForms[compactForm - 'a'] = idOf(name);
+	}
+
+	private static int hash(byte[] lowerCaseName, int length) {
+		int h = 0;
+		for (int i = 0; i < length; i++)
+			h = 31 * h + lowerCaseName[i];
+		return h ^ (h >>> 16);
+	}
+
+	private static byte toLowerCase(byte b) {
+		if (b >= 'A' && b <= 'Z')
+			return (byte) (b + ('a' - 'A'));
+		return b;
+	}
+
+	/**
+	 * @return the number of header names known by the table, ids are in the
+	 *         range [0, size())
+	 */
+	public static int size() {
+		return names.length;
+	}
+
+	/**
+	 * @return the canonical name for the given id, as defined in
+	 *         {@link SIPHeaderNames}
+	 */
+	public static String getName(int id) {
+		return names[id];
+	}
+
+	/**
+	 * @return the interned lower case name for the given id
+	 */
+	public static String getLowerCaseName(int id) {
+		return lowerCaseNames[id];
+	}
+
+	/**
+	 * @return true if the header for the given id is needed by the stack for
+	 *         every message and is never parsed lazily
+	 */
+	public static boolean isEager(int id) {
+		return eager[id];
+	}
+
+	/**
+	 * Resolves a header name (long or compact form, any case) to its id.
+	 *
+	 * @return the id of the header name or {@link #UNKNOWN}
+	 */
+	public static int idOf(String headerName) {
+		int length = headerName.length();
+		if (length == 0)
+			return UNKNOWN;
+		if (length == 1)
+			return compactFormOf((byte) headerName.charAt(0));
+
+		byte[] lowerCaseName = new byte[length];
+		for (int i = 0; i < length; i++) {
+			char c = headerName.charAt(i);
+			if (c > 0x7F)
+				return UNKNOWN;
+			lowerCaseName[i] = toLowerCase((byte) c);
+		}
+		int slot = hash(lowerCaseName, length) & SLOTS_MASK;
+		while (slots[slot] != 0) {
+			int id = slots[slot] - 1;
+			byte[] candidate = lowerCaseBytes[id];
+			if (candidate.length == length) {
+				int i = 0;
+				while (i < length && candidate[i] == lowerCaseName[i])
+					i++;
+				if (i == length)
+					return id;
+			}
+			slot = (slot + 1) & SLOTS_MASK;
+		}
+		return UNKNOWN;
+	}
+
+	/**
+	 * Resolves the header name located between start (inclusive) and end
+	 * (exclusive) in the buffer to its id, comparing bytes in place and ignoring
+	 * case. The reader index of the buffer is not modified.
+	 *
+	 * @return the id of the header name or {@link #UNKNOWN}
+	 */
+	public static int lookup(ByteBuf byteBuf, int start, int end) {
+		int length = end - start;
+		if (length <= 0)
+			return UNKNOWN;
+		if (length == 1)
+			return compactFormOf(byteBuf.getByte(start));
+
+		int h = 0;
+		for (int i = start; i < end; i++)
+			h = 31 * h + toLowerCase(byteBuf.getByte(i));
+		int slot = (h ^ (h >>> 16)) & SLOTS_MASK;
+		while (slots[slot] != 0) {
+			int id = slots[slot] - 1;
+			byte[] candidate = lowerCaseBytes[id];
+			if (candidate.length == length) {
+				int i = 0;
+				while (i < length && candidate[i] == toLowerCase(byteBuf.getByte(start + i)))
+					i++;
+				if (i == length)
+					return id;
+			}
+			slot = (slot + 1) & SLOTS_MASK;
+		}
+		return UNKNOWN;
+	}
+
+	private static int compactFormOf(byte b) {
+		b = toLowerCase(b);
+		if (b < 'a' || b > 'z')
+			return UNKNOWN;
+		return compactForms[b - 'a'];
+	}
+}
@@ -29,6 +29,7 @@ import gov.nist.javax.sip.SIPConstants;
 import gov.nist.javax.sip.header.ContentLength;
 import gov.nist.javax.sip.header.RequestLine;
 import gov.nist.javax.sip.header.SIPHeader;
+import gov.nist.javax.sip.header.SIPHeaderNamesCache;
 import gov.nist.javax.sip.header.StatusLine;
 import gov.nist.javax.sip.message.SIPMessage;
 import gov.nist.javax.sip.message.SIPRequest;
@@ -37,6 +38,11 @@ import io.netty.buffer.ByteBuf;
 
 /**
  * SIP Message Parser based on Netty ByteBuf
+ * 
+ * When byte scanning is enabled the header lines are scanned in place in the
+ * ByteBuf : header names are resolved against the {@link HeaderNameTable},
+ * Content-Length is read as ASCII digits and a String is only built for the
+ * lines that are handed over to a header parser.
  *  
  * @author Jean Deruelle
  */
@@ -48,6 +54,11 @@ public class NettyMessageParser {
 
 	private static final byte CR = (byte)'\r';	
 	private static final byte LF = (byte)'\n';	
+	private static final byte COLON = (byte)':';
+	private static final byte SP = (byte)' ';
+	private static final byte HT = (byte)'\t';
+
+	private static final Charset CHARSET = Charset.forName(ENCODING);
 
 	private enum ParsingState {	
 		INIT,
@@ -68,11 +79,34 @@ public class NettyMessageParser {
 	private int contentLength = -1;	
 	private int maxMessageSize = -1;        
 	private boolean computeContentLengthFromMessage = false;   		
+	private boolean byteScanning = false;
+	private boolean lazyHeaderParsing = false;
 	private SIPMessage sipMessage = null;	
+	// scratch buffer used to materialize ASCII lines without intermediate copies
+	private char[] lineBuffer;
 
     public NettyMessageParser(int maxMessageSize, boolean computeContentLengthFromMessage) {
+		this(maxMessageSize, computeContentLengthFromMessage, false);
+	}
+
+    public NettyMessageParser(int maxMessageSize, boolean computeContentLengthFromMessage, boolean byteScanning) {
+		this(maxMessageSize, computeContentLengthFromMessage, byteScanning, false);
+	}
+
+	/**
+	 * @param lazyHeaderParsing if true only the headers needed by the stack to route
+	 * the message are parsed, the other lines are attached unparsed to the message
+	 * and parsed on first access. Lazy parsing relies on byte scanning and enables it.
+	 */
+    public NettyMessageParser(int maxMessageSize, boolean computeContentLengthFromMessage, boolean byteScanning,
+			boolean lazyHeaderParsing) {
 		this.maxMessageSize = maxMessageSize;
 		this.computeContentLengthFromMessage = computeContentLengthFromMessage;
+		this.byteScanning = byteScanning || lazyHeaderParsing;
+		this.lazyHeaderParsing = lazyHeaderParsing;
+		if(this.byteScanning) {
+			lineBuffer = new char[256];
+		}
 		sipMessage = null;
 		parsingState = ParsingState.INIT;
 		parsingPartialState = ParsingState.INIT;
@@ -138,7 +172,107 @@ public class NettyMessageParser {
 		return this;		
 	}
 
+	/**
+	 * Parses a datagram, which always holds a complete message, without going
+	 * through the streaming parsing states. No state is kept between calls so a
+	 * single parser can be reused for all the datagrams read by a channel.
+	 *
+	 * As allowed by RFC 3261 section 18.3 the body is the rest of the datagram
+	 * when there is no Content-Length header, and the bytes beyond the
+	 * Content-Length are discarded.
+	 *
+	 * @param byteBuf the datagram content, fully consumed by the call
+	 * @return the parsed message, or a null request for a keep alive made of CRLFs
+	 * @throws ParseException if the message can not be parsed
+	 */
+	public SIPMessage parseDatagram(ByteBuf byteBuf) throws ParseException {
+		reset();
+		int start = byteBuf.readerIndex();
+		int end = byteBuf.writerIndex();
+		byteBuf.skipBytes(end - start);
+		if(maxMessageSize > 0 && end - start > maxMessageSize) {
+			throw new ParseException("Max size exceeded!", maxMessageSize);
+		}
+
+		int index = start;
+		while(index < end && (byteBuf.getByte(index) == CR || byteBuf.getByte(index) == LF)) {
+			index++;
+		}
+		if(index == end) {
+			return createNullRequest(end - start);
+		}
+
+		try {
+			boolean contentLengthFound = false;
+			boolean firstLine = true;
+			while(true) {
+				int lfIndex = byteBuf.indexOf(index, end, LF);
+				if(lfIndex < 0) {
+					throw new ParseException("Message headers are not terminated by an empty line", index - start);
+				}
+				int lineEnd = lfIndex > index && byteBuf.getByte(lfIndex - 1) == CR ? lfIndex - 1 : lfIndex;
+				if(lineEnd == index) {
+					index = lfIndex + 1;
+					break;
+				}
+
+				if(firstLine) {
+					if(byteScanning) {
+						parseFirstLine(materializeLine(byteBuf, index, lineEnd, true));
+					} else {
+						processFirstLine(byteBuf.toString(index, lineEnd - index, CHARSET));
+					}
+					firstLine = false;
+				} else if(byteScanning) {
+					scanHeader(byteBuf, index, lineEnd);
+				} else {
+					String line = byteBuf.toString(index, lineEnd - index, CHARSET);
+					processHeader(line);
+					contentLengthFound |= isContentLengthLine(line);
+				}
+				if(parseException != null) {
+					throw parseException;
+				}
+				index = lfIndex + 1;
+			}
+
+			if(byteScanning) {
+				contentLengthFound = contentLength >= 0;
+			} else if(contentLengthFound) {
+				contentLength = sipMessage.getContentLength().getContentLength();
+			}
+			int available = end - index;
+			if(!contentLengthFound) {
+				contentLength = available;
+				sipMessage.attachHeader(new ContentLength(contentLength), true);
+			} else if(contentLength > available) {
+				throw new ParseException("Content-Length " + contentLength + " exceeds the " + available + " bytes of body", index - start);
+			}
+			if(contentLength > 0) {
+				byte[] body = new byte[contentLength];
+				byteBuf.getBytes(index, body);
+				sipMessage.setMessageContent(body, false, computeContentLengthFromMessage, contentLength);
+			}
+			return sipMessage;
+		} finally {
+			reset();
+		}
+	}
+
+	private static boolean isContentLengthLine(String line) {
+		int colonIndex = line.indexOf(':');
+		if(colonIndex <= 0) {
+			return false;
+		}
+		String name = line.substring(0, colonIndex).trim();
+		return name.equalsIgnoreCase(ContentLength.NAME) || name.equalsIgnoreCase(CONTENT_LENGTH_COMPACT_NAME);
+	}
+
 	public void readSIPMessageHeader(ByteBuf byteBuf, int readableBytes) {		
+		if(byteScanning) {
+			scanSIPMessageHeader(byteBuf, readableBytes);
+			return;
+		}
 		// Read Message Headers
 		int readerIndex = byteBuf.readerIndex();
 		int lfIndex = byteBuf.indexOf(readerIndex, readerIndex + readableBytes, LF);				
@@ -150,7 +284,7 @@ public class NettyMessageParser {
 		// check if we have a full header line with \r\n at the end
 		if(crIndex != -1 && lfIndex != -1 && lfIndex - crIndex == 1) { 			
 			int length = lfIndex - readerIndex +1;
-			String line = byteBuf.toString(readerIndex, length, Charset.forName(ENCODING));
+			String line = byteBuf.toString(readerIndex, length, CHARSET);
 			
 			// if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {   
 			// 	logger.logDebug("Read temp Partial line:" + line);
@@ -223,6 +357,170 @@ public class NettyMessageParser {
 		return;	
 	}
 
+	/**
+	 * Byte scanning counterpart of {@link #readSIPMessageHeader(ByteBuf, int)}.
+	 * It goes through the same parsing states but works directly on the bytes of
+	 * the buffer instead of converting and lower casing each line.
+	 */
+	private void scanSIPMessageHeader(ByteBuf byteBuf, int readableBytes) {
+		int readerIndex = byteBuf.readerIndex();
+		int lfIndex = byteBuf.indexOf(readerIndex, readerIndex + readableBytes, LF);
+		if(lfIndex <= readerIndex || byteBuf.getByte(lfIndex - 1) != CR) {
+			// case of split message in the middle of a SIP Message Header line or first line or empty line
+			// where we can find a CRLF
+			parsingPartialState = parsingState;
+			parsingState = ParsingState.READING_PARTIAL;
+			return;
+		}
+
+		int crIndex = lfIndex - 1;
+		boolean emptyLine = crIndex == readerIndex;
+		if(parsingState == ParsingState.CRLF && !emptyLine) {
+			// if we are in a SINGLE CRLF case and the byte buffer contain a message after that
+			// we need to return a null message
+			parsingState = ParsingState.DOUBLE_CRLF;
+			return;
+		}
+		byteBuf.skipBytes(lfIndex - readerIndex + 1);
+
+		if(emptyLine) {
+			if(parsingState == ParsingState.INIT) {
+				// in case of single CLRF we continue the processing as we may be in a double CRLF Situation
+				parsingState = ParsingState.CRLF;
+				return;
+			}
+			if(parsingState == ParsingState.CRLF) {
+				// in case of double CLRF we stop the processing and will return a null request
+				parsingState = ParsingState.DOUBLE_CRLF;
+				return;
+			}
+			if(parsingState == ParsingState.READING_HEADER_LINES || parsingState == ParsingState.READING_EMPTY_LINE) {
+				if(contentLength >= 0) {
+					// if we saw a Content-Length header we can stop processing headers
+					parsingState = ParsingState.READING_EMPTY_LINE;
+				} else if(parseException == null) {
+					parseException = new ParseException("Content-Length header is missing", readerIndex);
+				}
+			}
+		} else if(parsingState == ParsingState.INIT) {
+			parseFirstLine(materializeLine(byteBuf, readerIndex, crIndex, true));
+			parsingState = ParsingState.READING_HEADER_LINES;
+		} else if(parsingState == ParsingState.READING_HEADER_LINES) {
+			scanHeader(byteBuf, readerIndex, crIndex);
+		}
+
+		checkContentLength();
+		//checking for max message size
+		if(maxMessageSize > 0 && byteBuf.readerIndex() > maxMessageSize) {
+			parseException = new ParseException("Max size exceeded!", byteBuf.readerIndex());
+		}
+	}
+
+	/**
+	 * Scans a header line located between start (inclusive) and end (exclusive, the CR index).
+	 * Content-Length is read directly from the bytes, any other header is materialized and 
+	 * handed over to its header parser.
+	 */
+	private void scanHeader(ByteBuf byteBuf, int start, int end) {
+		if(sipMessage == null) {
+			// the first line could not be parsed, the parse exception is already set
+			return;
+		}
+		int colonIndex = byteBuf.indexOf(start, end, COLON);
+		if(colonIndex > start) {
+			int nameEnd = colonIndex;
+			while(nameEnd > start && isWhitespace(byteBuf.getByte(nameEnd - 1))) {
+				nameEnd--;
+			}
+			int id = HeaderNameTable.lookup(byteBuf, start, nameEnd);
+			if(id == HeaderNameTable.CONTENT_LENGTH) {
+				int length = readContentLength(byteBuf, colonIndex + 1, end);
+				if(length < 0) {
+					if(parseException == null) {
+						parseException = new ParseException("Invalid Content-Length header", colonIndex + 1);
+					}
+					return;
+				}
+				contentLength = length;
+				try {
+					sipMessage.attachHeader(new ContentLength(length), false);
+				} catch (ParseException ex) {
+					parseException = ex;
+				}
+				return;
+			}
+			if(lazyHeaderParsing && (id == HeaderNameTable.UNKNOWN || !HeaderNameTable.isEager(id))) {
+				String lowerCaseName;
+				if(id == HeaderNameTable.UNKNOWN) {
+					lowerCaseName = SIPHeaderNamesCache.toLowerCase(byteBuf.toString(start, nameEnd - start, CHARSET));
+				} else {
+					lowerCaseName = HeaderNameTable.getLowerCaseName(id);
+				}
+				sipMessage.addLazyHeader(lowerCaseName, materializeLine(byteBuf, start, end, false));
+				return;
+			}
+		}
+		parseHeader(materializeLine(byteBuf, start, end, true));
+	}
+
+	/**
+	 * Reads the Content-Length value as ASCII digits, surrounding whitespaces are ignored.
+	 * @return the content length or -1 if the value is not a valid non negative integer
+	 */
+	private static int readContentLength(ByteBuf byteBuf, int start, int end) {
+		while(start < end && isWhitespace(byteBuf.getByte(start))) {
+			start++;
+		}
+		while(end > start && isWhitespace(byteBuf.getByte(end - 1))) {
+			end--;
+		}
+		if(start == end) {
+			return -1;
+		}
+		int value = 0;
+		for(int i = start; i < end; i++) {
+			int digit = byteBuf.getByte(i) - '0';
+			if(digit < 0 || digit > 9 || value > (Integer.MAX_VALUE - digit) / 10) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Builds the String of the line located between start (inclusive) and end (exclusive),
+	 * with trailing whitespaces removed and if lineFeed is set a LF appended as expected by 
+	 * the header parsers. Pure ASCII lines are copied through the reusable line buffer.
+	 */
+	private String materializeLine(ByteBuf byteBuf, int start, int end, boolean lineFeed) {
+		while(end > start && (byteBuf.getByte(end - 1) & 0xFF) <= 0x20) {
+			end--;
+		}
+		int length = end - start;
+		if(lineBuffer.length <= length) {
+			lineBuffer = new char[Math.max(lineBuffer.length * 2, length + 1)];
+		}
+		for(int i = 0; i < length; i++) {
+			byte b = byteBuf.getByte(start + i);
+			if(b < 0) {
+				// non ASCII content, let the charset decoder deal with it
+				String line = byteBuf.toString(start, length, CHARSET);
+				return lineFeed ? line + "\n" : line;
+			}
+			lineBuffer[i] = (char) b;
+		}
+		if(!lineFeed) {
+			return new String(lineBuffer, 0, length);
+		}
+		lineBuffer[length] = '\n';
+		return new String(lineBuffer, 0, length + 1);
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == SP || b == HT;
+	}
+
 	private void checkContentLength() {
 		if(contentLength == 0) {
 			if(parsingState == ParsingState.READING_EMPTY_LINE) {
@@ -328,22 +626,30 @@ public class NettyMessageParser {
 	 */
 	protected void processFirstLine(String firstLine) {        
 		firstLine = StringMsgParser.trimEndOfLine(firstLine);
+		parseFirstLine(firstLine + "\n");
+    }
+
+	/**
+	 * Parses the first line of a SIP message.
+	 * @param firstLine the trimmed first line of the SIP message, terminated by a LF.
+	 */
+	private void parseFirstLine(String firstLine) {
 		try {
 			if (!firstLine.startsWith(SIPConstants.SIP_VERSION_STRING)) {
 				sipMessage = new SIPRequest();
 				
-				RequestLine requestLine = new RequestLineParser(firstLine + "\n")
+				RequestLine requestLine = new RequestLineParser(firstLine)
 						.parse();
 				((SIPRequest) sipMessage).setRequestLine(requestLine);
 			} else {
 				sipMessage = new SIPResponse();
-				StatusLine sl = new StatusLineParser(firstLine + "\n").parse();
+				StatusLine sl = new StatusLineParser(firstLine).parse();
 				((SIPResponse) sipMessage).setStatusLine(sl);
 			}   
 		} catch (ParseException ex) {
 			parseException = ex;
 		}
-    }
+	}
 
 	/**
 	 * Processes a SIP header.
@@ -352,9 +658,17 @@ public class NettyMessageParser {
 	 */
 	protected void processHeader(String header) {
 		header = StringMsgParser.trimEndOfLine(header);
+		parseHeader(header + "\n");
+	}
+
+	/**
+	 * Parses a SIP header and attaches it to the message being parsed.
+	 * @param header the trimmed SIP header line, terminated by a LF.
+	 */
+	private void parseHeader(String header) {
         HeaderParser headerParser = null;
         try {
-            headerParser = ParserFactory.createParser(header + "\n");
+            headerParser = ParserFactory.createParser(header);
 			SIPHeader sipHeader = headerParser.parse();
             sipMessage.attachHeader(sipHeader, false);
         } catch (ParseException ex) {
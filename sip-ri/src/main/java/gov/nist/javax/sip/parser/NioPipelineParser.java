@@ -31,6 +31,7 @@ package gov.nist.javax.sip.parser;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 
 import gov.nist.core.CommonLogger;
@@ -42,6 +43,8 @@ import gov.nist.javax.sip.header.CallID;
 import gov.nist.javax.sip.header.ContentLength;
 import gov.nist.javax.sip.message.SIPMessage;
 import gov.nist.javax.sip.stack.SIPTransactionStack;
+import gov.nist.javax.sip.stack.metrics.MetricStage;
+import gov.nist.javax.sip.stack.metrics.StackMetrics;
 import gov.nist.javax.sip.stack.transports.processors.ConnectionOrientedMessageChannel;
 import gov.nist.javax.sip.stack.transports.processors.nio.QueuedMessageDispatchBase;
 
@@ -114,13 +117,21 @@ public class NioPipelineParser {
             	logger.logDebug("serving msg on call id " + callId);
 			}
             SIPMessage parsedSIPMessage = null;
+            StackMetrics stackMetrics = sipStack.getStackMetrics();
+            if (stackMetrics != null) {
+            	stackMetrics.recordQueueDelay(time);
+            }
             try {
 
             		if (logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
             			logger.logDebug( "\nUnparsed message before parser is:\n" + unparsedMessage);
             		}
+                    long decodeStart = stackMetrics != null ? System.nanoTime() : 0;
                     byte[] lineBytes = unparsedMessage.lines.getBytes("UTF-8");
                     parsedSIPMessage = smp.parseSIPMessage(lineBytes, false, false, null);        		
+                    if (stackMetrics != null) {
+                    	stackMetrics.record(MetricStage.DECODE, decodeStart);
+                    }
         			if(parsedSIPMessage == null) {
         				// https://java.net/jira/browse/JSIP-503
         				if (logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
@@ -193,6 +204,8 @@ public class NioPipelineParser {
 		
 	}
 	
+	private final ByteBufferInputStream bufferInputStream = new ByteBufferInputStream();
+
 	StringBuilder message = new StringBuilder();
 	byte[] messageBody = null;
 	int contentLength = 0;
@@ -347,6 +360,20 @@ public class NioPipelineParser {
 		readStream(inputStream);
 	}
 
+	/*
+	 * Reads the remaining bytes of the buffer in place, without copying them to an array first,
+	 * the buffer may be reused by the caller once this returns
+	 */
+	public synchronized void addBytes(ByteBuffer buffer)  throws Exception{
+		currentStreamEnded = false;
+		bufferInputStream.setBuffer(buffer);
+		try {
+			readStream(bufferInputStream);
+		} finally {
+			bufferInputStream.setBuffer(null);
+		}
+	}
+
 
     
     /**
@@ -481,4 +508,41 @@ public class NioPipelineParser {
     }
     
 
-}
\ No newline at end of file
+
+	private static class ByteBufferInputStream extends InputStream {
+		private ByteBuffer buffer;
+
+		private void setBuffer(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			if (!buffer.hasRemaining())
+				return -1;
+
+			return buffer.get() & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0)
+				return 0;
+
+			int remaining = buffer.remaining();
+			if (remaining == 0)
+				return -1;
+
+			if (len > remaining)
+				len = remaining;
+
+			buffer.get(b, off, len);
+			return len;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+}
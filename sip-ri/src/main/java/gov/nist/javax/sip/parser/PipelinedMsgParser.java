@@ -54,6 +54,7 @@ import gov.nist.core.executor.SIPTask;
 import gov.nist.javax.sip.header.ContentLength;
 import gov.nist.javax.sip.message.SIPMessage;
 import gov.nist.javax.sip.stack.SIPTransactionStack;
+import gov.nist.javax.sip.stack.metrics.StackMetrics;
 import gov.nist.javax.sip.stack.transports.processors.ConnectionOrientedMessageChannel;
 
 /**
@@ -267,6 +268,10 @@ public final class PipelinedMsgParser implements Runnable {
             // that could be processed in parallel                                    
             Semaphore semaphore = callIDOrderingStructure.getSemaphore();
             final Queue<SIPMessage> messagesForCallID = callIDOrderingStructure.getMessagesForCallID();
+            StackMetrics stackMetrics = sipStack.getStackMetrics();
+            if (stackMetrics != null) {
+            	stackMetrics.recordQueueDelay(time);
+            }
             if(sipStack.sipEventInterceptor != null) {
             	sipStack.sipEventInterceptor.beforeMessage(messagesForCallID.peek());
             }
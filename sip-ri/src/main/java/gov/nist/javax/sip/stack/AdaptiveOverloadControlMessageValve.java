@@ -0,0 +1,327 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.stack;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sip.InvalidArgumentException;
+import javax.sip.SipStack;
+import javax.sip.message.Response;
+
+import gov.nist.core.CommonLogger;
+import gov.nist.core.StackLogger;
+import gov.nist.core.executor.SIPTask;
+import gov.nist.core.executor.StackExecutor;
+import gov.nist.javax.sip.ListenerMailboxDispatcher;
+import gov.nist.javax.sip.SipStackImpl;
+import gov.nist.javax.sip.header.RetryAfter;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import gov.nist.javax.sip.stack.transports.processors.MessageChannel;
+
+/**
+ * Congestion control valve admitting the new dialog creating requests
+ * according to the measured load of the stack executor workers, instead of a
+ * fixed number of server transactions.
+ *
+ * For each worker the valve measures the queueing delay of the tasks, by
+ * queueing a probe task behind the requests at most once per interval and
+ * taking the time between its start time and its execution, and the number of
+ * tasks waiting in its queue. A probe still waiting counts with its current
+ * age, so a worker falling behind is seen before its probe comes back.
+ *
+ * As for CoDel a worker is congested once its queueing delay stayed above the
+ * target delay (or its queue above the maximum queue size, or the listener
+ * mailboxes above LISTENER_MAX_PENDING_EVENTS events with
+ * ASYNC_LISTENER_DISPATCH) for a whole interval. Every interval the admission
+ * rate of the worker is then lowered multiplicatively while congested and
+ * raised additively otherwise, and only this share of the new INVITE,
+ * SUBSCRIBE and REFER requests is processed.
+ * Requests within a dialog and the other methods are always processed, since
+ * they complete the calls already admitted.
+ *
+ * Rejected requests are answered with the DROP_RESPONSE_STATUS status, 503 by
+ * default, and a Retry-After set to the time the worker needs to drain its
+ * queue and admit all requests again, or silently dropped when it is 0.
+ *
+ * To enable this in your application you must specify this property:
+ * gov.nist.javax.sip.SIP_MESSAGE_VALVE=gov.nist.javax.sip.stack.AdaptiveOverloadControlMessageValve
+ *
+ * The valve is configured through the following properties:
+ * <ul>
+ * <li>gov.nist.javax.sip.OVERLOAD_TARGET_DELAY: the acceptable queueing delay in milliseconds, 20 by default</li>
+ * <li>gov.nist.javax.sip.OVERLOAD_INTERVAL: the measurement and adjustment interval in milliseconds, 100 by default</li>
+ * <li>gov.nist.javax.sip.OVERLOAD_MAX_QUEUE_SIZE: the number of queued tasks above which a worker is congested, 0 (the default) only uses the delay</li>
+ * <li>gov.nist.javax.sip.OVERLOAD_MAX_RETRY_AFTER: the highest Retry-After in seconds, 32 by default</li>
+ * </ul>
+ */
+public class AdaptiveOverloadControlMessageValve implements SIPMessageValve {
+	private static StackLogger logger = CommonLogger.getLogger(AdaptiveOverloadControlMessageValve.class);
+
+	// the admission rate is halved while congested, and recovers in 2 seconds
+	// with the default interval
+	private static final double RATE_DECREASE_FACTOR = 0.5;
+	private static final double RATE_INCREASE_STEP = 0.05;
+	private static final double MIN_ADMISSION_RATE = 0.01;
+
+	protected SipStackImpl sipStack;
+	protected StackExecutor executor;
+	protected long targetDelay;
+	protected long interval;
+	protected int maxQueueSize;
+	protected int maxRetryAfter;
+	protected int dropResponseStatus;
+
+	private final ConcurrentHashMap<Integer, WorkerLoad> workerLoads = new ConcurrentHashMap<Integer, WorkerLoad>();
+	private final AtomicLong admittedRequests = new AtomicLong();
+	private final AtomicLong rejectedRequests = new AtomicLong();
+
+	public void init(SipStack stack) {
+		sipStack = (SipStackImpl) stack;
+		executor = sipStack.getMessageProcessorExecutor();
+		logger.logInfo("Initializing adaptive overload control valve");
+		Properties properties = sipStack.getConfigurationProperties();
+		targetDelay = Long.parseLong(properties.getProperty("gov.nist.javax.sip.OVERLOAD_TARGET_DELAY", "20"));
+		interval = Long.parseLong(properties.getProperty("gov.nist.javax.sip.OVERLOAD_INTERVAL", "100"));
+		maxQueueSize = Integer.parseInt(properties.getProperty("gov.nist.javax.sip.OVERLOAD_MAX_QUEUE_SIZE", "0"));
+		maxRetryAfter = Integer.parseInt(properties.getProperty("gov.nist.javax.sip.OVERLOAD_MAX_RETRY_AFTER", "32"));
+		dropResponseStatus = Integer.parseInt(properties.getProperty("DROP_RESPONSE_STATUS", "503"));
+	}
+
+	public boolean processRequest(SIPRequest request, MessageChannel messageChannel) {
+		String callId = request.getCallId().getCallId();
+		int index = executor.findQueueIndex(callId);
+		WorkerLoad workerLoad = workerLoads.get(index);
+		if (workerLoad == null) {
+			workerLoad = new WorkerLoad();
+			WorkerLoad existing = workerLoads.putIfAbsent(index, workerLoad);
+			if (existing != null) {
+				workerLoad = existing;
+			}
+		}
+
+		ListenerMailboxDispatcher mailboxDispatcher = sipStack.getListenerMailboxDispatcher();
+		boolean listenerSaturated = mailboxDispatcher != null && mailboxDispatcher.isSaturated();
+
+		long now = currentTimeMillis();
+		boolean admitted;
+		int retryAfter;
+		synchronized (workerLoad) {
+			if (workerLoad.probeStartTime == 0 && now - workerLoad.lastProbeTime >= interval) {
+				workerLoad.probeStartTime = now;
+				workerLoad.lastProbeTime = now;
+				executor.addTaskLast(new QueueingDelayProbe(callId, workerLoad, now));
+			}
+			workerLoad.update(now, executor.getQueueSize(index), listenerSaturated);
+
+			if (request.getToTag() != null || !SIPTransactionStack.isDialogCreatingMethod(request.getMethod())) {
+				return true;
+			}
+			admitted = workerLoad.admit();
+			retryAfter = workerLoad.getRetryAfter();
+		}
+
+		if (admitted) {
+			admittedRequests.incrementAndGet();
+			return true;
+		}
+
+		rejectedRequests.incrementAndGet();
+		if (logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
+			logger.logDebug("Rejecting " + request.getMethod() + " " + callId + " due to overload on worker " + index
+					+ ", queueing delay " + workerLoad.queueingDelay + " ms, queue size " + workerLoad.queueSize
+					+ ", admission rate " + workerLoad.admissionRate);
+		}
+		if (dropResponseStatus > 0) {
+			SIPResponse response = request.createResponse(dropResponseStatus);
+			try {
+				if (dropResponseStatus == Response.SERVICE_UNAVAILABLE) {
+					RetryAfter retryAfterHeader = new RetryAfter();
+					retryAfterHeader.setRetryAfter(retryAfter);
+					response.setHeader(retryAfterHeader);
+				}
+				messageChannel.sendMessage(response);
+			} catch (IOException e) {
+				logger.logError("Failed to send overload control error response" + response, e);
+			} catch (MessageTooLongException e) {
+				logger.logError("Failed to send overload control error response" + response, e);
+			} catch (InvalidArgumentException e) {
+				logger.logError("Failed to set the Retry-After of the overload control error response" + response, e);
+			}
+		}
+		return false;
+	}
+
+	public boolean processResponse(Response response, MessageChannel messageChannel) {
+		return true;
+	}
+
+	public void destroy() {
+		logger.logInfo("Destroying the adaptive overload control valve " + this);
+		workerLoads.clear();
+	}
+
+	/**
+	 * @return the current time in milliseconds, the requests and the probes
+	 *         being timed with it
+	 */
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * @return the number of dialog creating requests processed
+	 */
+	public long getAdmittedRequests() {
+		return admittedRequests.get();
+	}
+
+	/**
+	 * @return the number of dialog creating requests rejected or dropped
+	 */
+	public long getRejectedRequests() {
+		return rejectedRequests.get();
+	}
+
+	/**
+	 * @return the last queueing delay measured on the worker running the given Call-ID, in milliseconds
+	 */
+	public long getQueueingDelay(String callId) {
+		WorkerLoad workerLoad = workerLoads.get(executor.findQueueIndex(callId));
+		return workerLoad == null ? 0 : workerLoad.queueingDelay;
+	}
+
+	/**
+	 * @return the share of the dialog creating requests admitted on the worker running the given Call-ID
+	 */
+	public double getAdmissionRate(String callId) {
+		WorkerLoad workerLoad = workerLoads.get(executor.findQueueIndex(callId));
+		return workerLoad == null ? 1.0 : workerLoad.admissionRate;
+	}
+
+	/**
+	 * Load of a worker and its admission controller, guarded by its own lock.
+	 */
+	private class WorkerLoad {
+		private long probeStartTime;
+		private long lastProbeTime;
+		private volatile long queueingDelay;
+		private volatile int queueSize;
+		private long firstAboveTime;
+		private boolean congested;
+		private long lastAdjustTime;
+		private volatile double admissionRate = 1.0;
+		private double credit;
+
+		private void probed(long startTime, long now) {
+			queueingDelay = now - startTime;
+			probeStartTime = 0;
+		}
+
+		private void update(long now, int queueSize, boolean listenerSaturated) {
+			this.queueSize = queueSize;
+			long delay = queueingDelay;
+			if (probeStartTime != 0 && now - probeStartTime > delay) {
+				delay = now - probeStartTime;
+			}
+
+			if (delay > targetDelay || (maxQueueSize > 0 && queueSize > maxQueueSize) || listenerSaturated) {
+				if (firstAboveTime == 0) {
+					firstAboveTime = now;
+				} else if (now - firstAboveTime >= interval) {
+					congested = true;
+				}
+			} else {
+				firstAboveTime = 0;
+				congested = false;
+			}
+
+			if (now - lastAdjustTime >= interval) {
+				lastAdjustTime = now;
+				if (congested) {
+					admissionRate = Math.max(MIN_ADMISSION_RATE, admissionRate * RATE_DECREASE_FACTOR);
+				} else if (admissionRate < 1.0) {
+					admissionRate = Math.min(1.0, admissionRate + RATE_INCREASE_STEP);
+				}
+			}
+		}
+
+		private boolean admit() {
+			if (admissionRate >= 1.0) {
+				credit = 0;
+				return true;
+			}
+			// spreads the admitted requests evenly instead of drawing them at random
+			credit += admissionRate;
+			if (credit >= 1.0) {
+				credit -= 1.0;
+				return true;
+			}
+			return false;
+		}
+
+		private int getRetryAfter() {
+			// the time to drain the queue, then to raise the admission rate back to 1
+			long recoveryTime = queueingDelay + (long) Math.ceil((1.0 - admissionRate) / RATE_INCREASE_STEP) * interval;
+			int retryAfter = (int) ((recoveryTime + 999) / 1000);
+			return Math.max(1, Math.min(maxRetryAfter, retryAfter));
+		}
+	}
+
+	/**
+	 * Task queued behind the requests of a worker, measuring how long it waited.
+	 */
+	private class QueueingDelayProbe implements SIPTask {
+		private final String id;
+		private final WorkerLoad workerLoad;
+		private final long startTime;
+
+		private QueueingDelayProbe(String id, WorkerLoad workerLoad, long startTime) {
+			this.id = id;
+			this.workerLoad = workerLoad;
+			this.startTime = startTime;
+		}
+
+		@Override
+		public void execute() {
+			long now = currentTimeMillis();
+			synchronized (workerLoad) {
+				workerLoad.probed(startTime, now);
+			}
+		}
+
+		@Override
+		public long getStartTime() {
+			return startTime;
+		}
+
+		@Override
+		public String getId() {
+			return id;
+		}
+
+		@Override
+		public String printTaskDetails() {
+			return "Task name: QueueingDelayProbe, id: " + id;
+		}
+	}
+}
@@ -35,6 +35,9 @@ import java.nio.ByteBuffer;
  * Contributed by Alexander Saveliev, Avistar Communications for Issue http://java.net/jira/browse/JSIP-430
  * Allows to choose between direct vs non direct buffers
  * 
+ * The buffers taken with {@link #acquire(int)} come from a {@link ByteBufferPool}
+ * and should be given back with {@link #release(ByteBuffer)} once they are not
+ * used anymore.
  */
 public class ByteBufferFactory {
 
@@ -44,6 +47,8 @@ public class ByteBufferFactory {
 
     private boolean useDirect = true;
 
+    private final ByteBufferPool pool = new ByteBufferPool();
+
     public static ByteBufferFactory getInstance() {
         return instance;
     }
@@ -61,9 +66,29 @@ public class ByteBufferFactory {
     }
 
 
+    /**
+     * Takes a cleared buffer of at least the given capacity from the pool,
+     * direct or not as allocateDirect would.
+     */
+    public ByteBuffer acquire(int capacity) {
+        return pool.acquire(capacity);
+    }
+
+    /**
+     * Gives a buffer taken with acquire back to the pool.
+     */
+    public void release(ByteBuffer buffer) {
+        pool.release(buffer);
+    }
+
+    public ByteBufferPool getPool() {
+        return pool;
+    }
+
     public void setUseDirect(boolean useDirect) {
         if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
             logger.logTrace("Direct buffers are " + (useDirect ? "enabled" : "disabled"));
         this.useDirect = useDirect;
+        pool.setUseDirect(useDirect);
     }
 }
@@ -0,0 +1,261 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.stack;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size classed pool of the byte buffers used by the NIO transports, taken
+ * through {@link ByteBufferFactory#acquire(int)} and given back with
+ * {@link ByteBufferFactory#release(ByteBuffer)}.
+ *
+ * The classes are powers of two from {@link #MIN_SIZE} to {@link #MAX_SIZE},
+ * a request is served by the smallest class that fits it, larger requests are
+ * allocated outside of the pool. Every thread keeps a few buffers of each
+ * class for itself, so a selector thread that takes and gives back the same
+ * buffer does not touch any shared state, what does not fit there goes to a
+ * bounded queue shared by all the threads.
+ *
+ * A released buffer must not be used anymore by the caller.
+ */
+public class ByteBufferPool {
+	public static final int MIN_SIZE = 512;
+	public static final int MAX_SIZE = 65536;
+
+	private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_SIZE);
+	private static final int CLASSES = Integer.numberOfTrailingZeros(MAX_SIZE) - MIN_SHIFT + 1;
+
+	public static final int DEFAULT_THREAD_CAPACITY = 4;
+	public static final int DEFAULT_SHARED_CAPACITY = 256;
+
+	private final int threadCapacity;
+	private final int sharedCapacity;
+
+	private final Queue<ByteBuffer>[] shared;
+	private final AtomicInteger[] sharedSizes;
+
+	private final ThreadLocal<LocalCache> localCaches = new ThreadLocal<LocalCache>() {
+		@Override
+		protected LocalCache initialValue() {
+			return new LocalCache(threadCapacity);
+		}
+	};
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong unpooled = new AtomicLong();
+	private final AtomicLong releases = new AtomicLong();
+	private final AtomicLong discards = new AtomicLong();
+
+	private volatile boolean useDirect = true;
+
+	public ByteBufferPool() {
+		this(DEFAULT_THREAD_CAPACITY, DEFAULT_SHARED_CAPACITY);
+	}
+
+	/**
+	 * @param threadCapacity buffers of each class kept by every thread
+	 * @param sharedCapacity buffers of each class kept in the shared queue
+	 */
+	@SuppressWarnings("unchecked")
+	public ByteBufferPool(int threadCapacity, int sharedCapacity) {
+		if (threadCapacity < 0 || sharedCapacity < 0)
+			throw new IllegalArgumentException("Negative pool capacity");
+
+		this.threadCapacity = threadCapacity;
+		this.sharedCapacity = sharedCapacity;
+		this.shared = new Queue[CLASSES];
+		this.sharedSizes = new AtomicInteger[CLASSES];
+		for (int i = 0; i < CLASSES; i++) {
+			shared[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+			sharedSizes[i] = new AtomicInteger();
+		}
+	}
+
+	/**
+	 * @return a cleared buffer with at least the given capacity, its limit set
+	 *         to its capacity
+	 */
+	public ByteBuffer acquire(int capacity) {
+		int sizeClass = getSizeClass(capacity);
+		if (sizeClass < 0) {
+			unpooled.incrementAndGet();
+			return allocate(capacity);
+		}
+
+		ByteBuffer buffer = localCaches.get().poll(sizeClass);
+		if (buffer == null) {
+			buffer = shared[sizeClass].poll();
+			if (buffer != null)
+				sharedSizes[sizeClass].decrementAndGet();
+		}
+
+		if (buffer == null || buffer.isDirect() != useDirect) {
+			misses.incrementAndGet();
+			return allocate(MIN_SIZE << sizeClass);
+		}
+
+		hits.incrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Gives the buffer back to the pool, buffers that do not belong to any
+	 * class or that do not fit in the pool are left to the garbage collector.
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer == null)
+			return;
+
+		int capacity = buffer.capacity();
+		int sizeClass = getSizeClass(capacity);
+		if (sizeClass < 0 || (MIN_SIZE << sizeClass) != capacity || buffer.isReadOnly()
+				|| buffer.isDirect() != useDirect) {
+			discards.incrementAndGet();
+			return;
+		}
+
+		releases.incrementAndGet();
+		if (localCaches.get().offer(sizeClass, buffer))
+			return;
+
+		if (sharedSizes[sizeClass].incrementAndGet() <= sharedCapacity) {
+			shared[sizeClass].offer(buffer);
+		} else {
+			sharedSizes[sizeClass].decrementAndGet();
+			discards.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Switches between direct and heap buffers, the shared queues are emptied
+	 * and the buffers of the other kind left in the thread caches are dropped
+	 * when they are acquired.
+	 */
+	public void setUseDirect(boolean useDirect) {
+		this.useDirect = useDirect;
+		for (int i = 0; i < CLASSES; i++) {
+			while (shared[i].poll() != null)
+				sharedSizes[i].decrementAndGet();
+		}
+	}
+
+	private ByteBuffer allocate(int capacity) {
+		return useDirect ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+	}
+
+	/**
+	 * @return index of the smallest class fitting the capacity, -1 when it is
+	 *         larger than {@link #MAX_SIZE}
+	 */
+	static int getSizeClass(int capacity) {
+		if (capacity > MAX_SIZE)
+			return -1;
+		if (capacity <= MIN_SIZE)
+			return 0;
+
+		return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SHIFT;
+	}
+
+	/**
+	 * @return acquires served from a thread cache or from the shared queue
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return acquires that had to allocate a buffer of a pooled class
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return acquires larger than {@link #MAX_SIZE}
+	 */
+	public long getUnpooled() {
+		return unpooled.get();
+	}
+
+	public long getReleases() {
+		return releases.get();
+	}
+
+	/**
+	 * @return released buffers left to the garbage collector
+	 */
+	public long getDiscards() {
+		return discards.get();
+	}
+
+	/**
+	 * @return buffers in the shared queues, the thread caches are not counted
+	 */
+	public int getSharedCount() {
+		int count = 0;
+		for (int i = 0; i < CLASSES; i++)
+			count += sharedSizes[i].get();
+
+		return count;
+	}
+
+	@Override
+	public String toString() {
+		return "ByteBufferPool [hits=" + getHits() + ", misses=" + getMisses() + ", unpooled=" + getUnpooled()
+				+ ", releases=" + getReleases() + ", discards=" + getDiscards() + ", shared=" + getSharedCount() + "]";
+	}
+
+	private static class LocalCache {
+		private final ByteBuffer[][] buffers;
+		private final int[] sizes;
+
+		private LocalCache(int capacity) {
+			buffers = new ByteBuffer[CLASSES][capacity];
+			sizes = new int[CLASSES];
+		}
+
+		private ByteBuffer poll(int sizeClass) {
+			int size = sizes[sizeClass];
+			if (size == 0)
+				return null;
+
+			size--;
+			ByteBuffer buffer = buffers[sizeClass][size];
+			buffers[sizeClass][size] = null;
+			sizes[sizeClass] = size;
+			return buffer;
+		}
+
+		private boolean offer(int sizeClass, ByteBuffer buffer) {
+			int size = sizes[sizeClass];
+			if (size == buffers[sizeClass].length)
+				return false;
+
+			buffers[sizeClass][size] = buffer;
+			sizes[sizeClass] = size + 1;
+			return true;
+		}
+	}
+}
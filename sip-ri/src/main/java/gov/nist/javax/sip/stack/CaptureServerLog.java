@@ -0,0 +1,518 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.stack;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sip.SipStack;
+
+import gov.nist.core.CommonLogger;
+import gov.nist.core.LogWriter;
+import gov.nist.core.ServerLogger;
+import gov.nist.core.StackLogger;
+import gov.nist.javax.sip.header.CallID;
+import gov.nist.javax.sip.header.Via;
+import gov.nist.javax.sip.message.SIPMessage;
+
+/**
+ * ServerLogger that captures the sent and received messages in binary form
+ * instead of formatting them synchronously on the transport threads. The
+ * bytes of the message, as handed over by the transport, are copied into a
+ * {@link MessageCaptureRingBuffer} and a
+ * daemon writer thread drains the ring into rotating capture files. When the
+ * writer can not keep up, messages are dropped and counted.
+ *
+ * Enabled with gov.nist.javax.sip.SERVER_LOGGER =
+ * gov.nist.javax.sip.stack.CaptureServerLog and configured with the
+ * following stack properties:
+ * <ul>
+ * <li>gov.nist.javax.sip.CAPTURE_FILE - base name of the capture files,
+ * default is the stack name followed by -capture. Files are named
+ * base.N.pcap or base.N.cap</li>
+ * <li>gov.nist.javax.sip.CAPTURE_FORMAT - PCAP (default) writes every message
+ * as an UDP datagram of a raw IP capture, whatever the transport it used.
+ * LENGTH_PREFIXED writes records of the length, time, direction, transport,
+ * addresses and message bytes</li>
+ * <li>gov.nist.javax.sip.CAPTURE_BUFFER_SLOTS - number of messages the ring
+ * can hold, default 4096</li>
+ * <li>gov.nist.javax.sip.CAPTURE_SNAPLEN - bytes kept per message, default
+ * 4096</li>
+ * <li>gov.nist.javax.sip.CAPTURE_FILE_SIZE - size in bytes after which a new
+ * file is started, default 100MB</li>
+ * <li>gov.nist.javax.sip.CAPTURE_FILES - number of files kept, default 10</li>
+ * <li>gov.nist.javax.sip.CAPTURE_SAMPLING_RATE - fraction of the calls
+ * captured, from 0 to 1, selected by Call-ID so that a call is either
+ * captured entirely or not at all. Default 1</li>
+ * <li>gov.nist.javax.sip.CAPTURE_CALL_IDS - comma separated Call-IDs. When
+ * set, only the messages of these calls are captured. The filter can be
+ * changed at runtime with addCallIdFilter and removeCallIdFilter</li>
+ * </ul>
+ */
+public class CaptureServerLog implements ServerLogger, Runnable {
+	private static StackLogger logger = CommonLogger.getLogger(CaptureServerLog.class);
+
+	public static final String FORMAT_PCAP = "PCAP";
+
+	public static final String FORMAT_LENGTH_PREFIXED = "LENGTH_PREFIXED";
+
+	public static final int LENGTH_PREFIXED_MAGIC = 0x53495043;
+
+	public static final short LENGTH_PREFIXED_VERSION = 1;
+
+	private static final int PCAP_MAGIC = 0xa1b2c3d4;
+
+	private static final int LINKTYPE_RAW = 101;
+
+	private static final int IPV4_HEADER_SIZE = 20;
+
+	private static final int IPV6_HEADER_SIZE = 40;
+
+	private static final int UDP_HEADER_SIZE = 8;
+
+	private static final int DRAIN_BATCH = 256;
+
+	private static final int SAMPLING_SCALE = 10000;
+
+	private SIPTransactionStack sipStack;
+
+	private MessageCaptureRingBuffer ringBuffer;
+
+	private final Set<String> callIdFilter = ConcurrentHashMap.newKeySet();
+
+	private int samplingThreshold = SAMPLING_SCALE;
+
+	private final AtomicLong capturedMessages = new AtomicLong();
+
+	private final AtomicLong filteredMessages = new AtomicLong();
+
+	private String fileName;
+
+	private boolean pcap = true;
+
+	private long maxFileSize = 100L * 1024 * 1024;
+
+	private int maxFiles = 10;
+
+	private volatile boolean running;
+
+	private Thread writerThread;
+
+	private DataOutputStream output;
+
+	private long fileIndex = -1;
+
+	private long fileSize;
+
+	private byte[] scratch;
+
+	private final MessageCaptureRingBuffer.RecordHandler recordHandler = new MessageCaptureRingBuffer.RecordHandler() {
+		@Override
+		public void onRecord(long time, boolean sent, String transport, String from, String to,
+				int originalLength, ByteBuffer payload) throws IOException {
+			writeRecord(time, sent, transport, from, to, originalLength, payload);
+		}
+	};
+
+	public CaptureServerLog() {
+	}
+
+	@Override
+	public void setSipStack(SipStack sipStack) {
+		this.sipStack = (SIPTransactionStack) sipStack;
+	}
+
+	@Override
+	public void setStackProperties(Properties stackProperties) {
+		String stackName = stackProperties.getProperty("javax.sip.STACK_NAME", "sipstack");
+		fileName = stackProperties.getProperty("gov.nist.javax.sip.CAPTURE_FILE", stackName + "-capture");
+		pcap = !FORMAT_LENGTH_PREFIXED
+				.equalsIgnoreCase(stackProperties.getProperty("gov.nist.javax.sip.CAPTURE_FORMAT", FORMAT_PCAP));
+		int slots = Integer.parseInt(stackProperties.getProperty("gov.nist.javax.sip.CAPTURE_BUFFER_SLOTS", "4096"));
+		int snapLength = Integer.parseInt(stackProperties.getProperty("gov.nist.javax.sip.CAPTURE_SNAPLEN", "4096"));
+		maxFileSize = Long.parseLong(
+				stackProperties.getProperty("gov.nist.javax.sip.CAPTURE_FILE_SIZE", String.valueOf(maxFileSize)));
+		maxFiles = Integer.parseInt(stackProperties.getProperty("gov.nist.javax.sip.CAPTURE_FILES", "10"));
+		setSamplingRate(
+				Double.parseDouble(stackProperties.getProperty("gov.nist.javax.sip.CAPTURE_SAMPLING_RATE", "1")));
+
+		String callIds = stackProperties.getProperty("gov.nist.javax.sip.CAPTURE_CALL_IDS");
+		if (callIds != null) {
+			for (String callId : callIds.split(",")) {
+				if (callId.trim().length() > 0)
+					callIdFilter.add(callId.trim());
+			}
+		}
+
+		ringBuffer = new MessageCaptureRingBuffer(slots, snapLength);
+		scratch = new byte[ringBuffer.getSnapLength()];
+		running = true;
+		writerThread = new Thread(this, "CaptureServerLog-" + stackName);
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	@Override
+	public boolean isCapturingMessages() {
+		return running;
+	}
+
+	@Override
+	public void logMessage(SIPMessage message, String from, String to, boolean sender, long time) {
+		logMessage(message, (byte[]) null, from, to, sender, time);
+	}
+
+	/**
+	 * Captures the bytes handed over by the transport, the message is only
+	 * encoded when the transport did not have them.
+	 */
+	@Override
+	public void logMessage(SIPMessage message, byte[] bytes, String from, String to, boolean sender, long time) {
+		if (!running)
+			return;
+
+		CallID callId = (CallID) message.getCallId();
+		if (!accept(callId == null ? null : callId.getCallId())) {
+			filteredMessages.incrementAndGet();
+			return;
+		}
+
+		Via via = message.getTopmostVia();
+		String transport = via == null ? null : via.getTransport();
+		if (bytes == null)
+			bytes = message.encodeAsBytes(transport);
+		if (ringBuffer.offer(time, sender, transport, from, to, bytes))
+			capturedMessages.incrementAndGet();
+	}
+
+	@Override
+	public void logMessage(SIPMessage message, String from, String to, String status, boolean sender, long time) {
+		logMessage(message, from, to, sender, time);
+	}
+
+	@Override
+	public void logMessage(SIPMessage message, String from, String to, String status, boolean sender) {
+		logMessage(message, from, to, sender, System.currentTimeMillis());
+	}
+
+	@Override
+	public void logException(Exception ex) {
+		if (logger.isLoggingEnabled(LogWriter.TRACE_ERROR))
+			logger.logException(ex);
+	}
+
+	/**
+	 * Stops the writer thread once it has written what is left in the ring and
+	 * closes the current file.
+	 */
+	@Override
+	public void closeLogFile() {
+		if (!running)
+			return;
+
+		running = false;
+		LockSupport.unpark(writerThread);
+		try {
+			writerThread.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (running) {
+				if (ringBuffer.drain(recordHandler, DRAIN_BATCH) == 0) {
+					if (output != null)
+						output.flush();
+					LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+				}
+			}
+			while (ringBuffer.drain(recordHandler, DRAIN_BATCH) > 0)
+				;
+		} catch (IOException e) {
+			running = false;
+			logger.logError("Message capture stopped", e);
+		} finally {
+			closeOutput();
+		}
+	}
+
+	public void addCallIdFilter(String callId) {
+		callIdFilter.add(callId);
+	}
+
+	public void removeCallIdFilter(String callId) {
+		callIdFilter.remove(callId);
+	}
+
+	public void setSamplingRate(double samplingRate) {
+		this.samplingThreshold = (int) Math.round(Math.max(0, Math.min(1, samplingRate)) * SAMPLING_SCALE);
+	}
+
+	public long getCapturedMessages() {
+		return capturedMessages.get();
+	}
+
+	public long getDroppedMessages() {
+		return ringBuffer == null ? 0 : ringBuffer.getDroppedMessages();
+	}
+
+	public long getFilteredMessages() {
+		return filteredMessages.get();
+	}
+
+	/**
+	 * @return the file the writer thread appends to, null before the first
+	 *         message is written
+	 */
+	public File getCurrentFile() {
+		return fileIndex < 0 ? null : getFile(fileIndex);
+	}
+
+	private boolean accept(String callId) {
+		if (!callIdFilter.isEmpty())
+			return callId != null && callIdFilter.contains(callId);
+
+		if (samplingThreshold >= SAMPLING_SCALE)
+			return true;
+
+		if (callId == null)
+			return false;
+
+		return ((callId.hashCode() & 0x7FFFFFFF) % SAMPLING_SCALE) < samplingThreshold;
+	}
+
+	private File getFile(long index) {
+		return new File(fileName + "." + index + (pcap ? ".pcap" : ".cap"));
+	}
+
+	private void rotate() throws IOException {
+		closeOutput();
+		fileIndex++;
+		if (fileIndex >= maxFiles) {
+			File oldest = getFile(fileIndex - maxFiles);
+			if (oldest.exists() && !oldest.delete() && logger.isLoggingEnabled(LogWriter.TRACE_WARN))
+				logger.logWarning("Could not delete old capture file " + oldest);
+		}
+
+		File file = getFile(fileIndex);
+		if (file.getParentFile() != null)
+			file.getParentFile().mkdirs();
+
+		output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+		if (pcap) {
+			output.writeInt(PCAP_MAGIC);
+			output.writeShort(2);
+			output.writeShort(4);
+			output.writeInt(0);
+			output.writeInt(0);
+			output.writeInt(ringBuffer.getSnapLength() + IPV6_HEADER_SIZE + UDP_HEADER_SIZE);
+			output.writeInt(LINKTYPE_RAW);
+			fileSize = 24;
+		} else {
+			output.writeInt(LENGTH_PREFIXED_MAGIC);
+			output.writeShort(LENGTH_PREFIXED_VERSION);
+			fileSize = 6;
+		}
+	}
+
+	private void closeOutput() {
+		if (output == null)
+			return;
+
+		try {
+			output.close();
+		} catch (IOException e) {
+			logger.logError("Could not close capture file", e);
+		}
+		output = null;
+	}
+
+	private void writeRecord(long time, boolean sent, String transport, String from, String to, int originalLength,
+			ByteBuffer payload) throws IOException {
+		if (output == null || fileSize >= maxFileSize)
+			rotate();
+
+		int capturedLength = payload.remaining();
+		payload.get(scratch, 0, capturedLength);
+		if (pcap)
+			fileSize += writePcapRecord(time, from, to, originalLength, capturedLength);
+		else
+			fileSize += writeLengthPrefixedRecord(time, sent, transport, from, to, originalLength, capturedLength);
+	}
+
+	private int writeLengthPrefixedRecord(long time, boolean sent, String transport, String from, String to,
+			int originalLength, int capturedLength) throws IOException {
+		byte[] transportBytes = bytes(transport);
+		byte[] fromBytes = bytes(from);
+		byte[] toBytes = bytes(to);
+		int recordLength = 8 + 1 + 6 + transportBytes.length + fromBytes.length + toBytes.length + 4 + capturedLength;
+		output.writeInt(recordLength);
+		output.writeLong(time);
+		output.writeByte(sent ? 1 : 0);
+		output.writeShort(transportBytes.length);
+		output.write(transportBytes);
+		output.writeShort(fromBytes.length);
+		output.write(fromBytes);
+		output.writeShort(toBytes.length);
+		output.write(toBytes);
+		output.writeInt(originalLength);
+		output.write(scratch, 0, capturedLength);
+		return 4 + recordLength;
+	}
+
+	private int writePcapRecord(long time, String from, String to, int originalLength, int capturedLength)
+			throws IOException {
+		byte[] source = address(from);
+		byte[] destination = address(to);
+		boolean ipv6 = source.length == 16 || destination.length == 16;
+		if (ipv6) {
+			source = toIpv6(source);
+			destination = toIpv6(destination);
+		}
+
+		int ipHeaderSize = ipv6 ? IPV6_HEADER_SIZE : IPV4_HEADER_SIZE;
+		int udpLength = Math.min(UDP_HEADER_SIZE + originalLength, 0xFFFF);
+		output.writeInt((int) (time / 1000));
+		output.writeInt((int) (time % 1000) * 1000);
+		output.writeInt(ipHeaderSize + UDP_HEADER_SIZE + capturedLength);
+		output.writeInt(ipHeaderSize + UDP_HEADER_SIZE + originalLength);
+
+		if (ipv6) {
+			output.writeInt(0x60000000);
+			output.writeShort(udpLength);
+			output.writeByte(17);
+			output.writeByte(64);
+			output.write(source);
+			output.write(destination);
+		} else {
+			byte[] header = new byte[IPV4_HEADER_SIZE];
+			int totalLength = Math.min(IPV4_HEADER_SIZE + udpLength, 0xFFFF);
+			header[0] = 0x45;
+			header[2] = (byte) (totalLength >> 8);
+			header[3] = (byte) totalLength;
+			header[8] = 64;
+			header[9] = 17;
+			System.arraycopy(source, 0, header, 12, 4);
+			System.arraycopy(destination, 0, header, 16, 4);
+			int checksum = 0;
+			for (int i = 0; i < IPV4_HEADER_SIZE; i += 2)
+				checksum += ((header[i] & 0xFF) << 8) | (header[i + 1] & 0xFF);
+			while ((checksum >> 16) != 0)
+				checksum = (checksum & 0xFFFF) + (checksum >> 16);
+			checksum = ~checksum & 0xFFFF;
+			header[10] = (byte) (checksum >> 8);
+			header[11] = (byte) checksum;
+			output.write(header);
+		}
+
+		output.writeShort(port(from));
+		output.writeShort(port(to));
+		output.writeShort(udpLength);
+		output.writeShort(0);
+		output.write(scratch, 0, capturedLength);
+		return 16 + ipHeaderSize + UDP_HEADER_SIZE + capturedLength;
+	}
+
+	private static byte[] bytes(String value) {
+		return value == null ? new byte[0] : value.getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Parses the host of a host:port, [ipv6]:port or bare address into its raw
+	 * address. Host names are not resolved, they are written as 0.0.0.0.
+	 */
+	static byte[] address(String hostPort) {
+		if (hostPort == null)
+			return new byte[4];
+
+		String host = hostPort;
+		if (host.startsWith("[")) {
+			int end = host.indexOf(']');
+			host = end > 0 ? host.substring(1, end) : host.substring(1);
+		} else if (host.indexOf(':') == host.lastIndexOf(':') && host.indexOf(':') > 0) {
+			host = host.substring(0, host.indexOf(':'));
+		}
+
+		if (host.indexOf(':') >= 0) {
+			try {
+				return InetAddress.getByName(host).getAddress();
+			} catch (IOException e) {
+				return new byte[16];
+			}
+		}
+
+		byte[] result = new byte[4];
+		String[] parts = host.split("\\.");
+		if (parts.length != 4)
+			return result;
+
+		try {
+			for (int i = 0; i < 4; i++) {
+				int value = Integer.parseInt(parts[i]);
+				if (value < 0 || value > 255)
+					return new byte[4];
+				result[i] = (byte) value;
+			}
+		} catch (NumberFormatException e) {
+			return new byte[4];
+		}
+		return result;
+	}
+
+	static int port(String hostPort) {
+		if (hostPort == null)
+			return 0;
+
+		int index = hostPort.lastIndexOf(':');
+		if (index < 0 || (hostPort.indexOf(']') < 0 && hostPort.indexOf(':') != index))
+			return 0;
+
+		try {
+			return Integer.parseInt(hostPort.substring(index + 1)) & 0xFFFF;
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private static byte[] toIpv6(byte[] address) {
+		if (address.length == 16)
+			return address;
+
+		byte[] mapped = new byte[16];
+		mapped[10] = (byte) 0xFF;
+		mapped[11] = (byte) 0xFF;
+		System.arraycopy(address, 0, mapped, 12, 4);
+		return mapped;
+	}
+}
@@ -0,0 +1,328 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.stack;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Iterator;
+
+import javax.sip.ListeningPoint;
+
+import gov.nist.core.Separators;
+import gov.nist.javax.sip.SipProviderImpl;
+import gov.nist.javax.sip.SipStackImpl;
+import gov.nist.javax.sip.header.CallID;
+import gov.nist.javax.sip.header.Contact;
+import gov.nist.javax.sip.header.ContactList;
+import gov.nist.javax.sip.header.Event;
+import gov.nist.javax.sip.header.RouteList;
+import gov.nist.javax.sip.header.Via;
+import gov.nist.javax.sip.header.ViaList;
+import gov.nist.javax.sip.parser.AddressParser;
+import gov.nist.javax.sip.parser.ContactParser;
+import gov.nist.javax.sip.parser.EventParser;
+import gov.nist.javax.sip.parser.RouteParser;
+import gov.nist.javax.sip.parser.ViaParser;
+
+/**
+ * Versioned binary encoding of the state of a dialog, used by the DialogStore
+ * instead of the Java serialization of the SIPDialog, which is slow and
+ * carries the transactions and requests of the dialog.
+ *
+ * A snapshot only keeps what a confirmed dialog needs to send and accept the
+ * requests within the dialog: its ids, tags and parties, the route set, the
+ * CSeq counters, the remote target, the state and flags, the data of the first
+ * transaction and of the last response used to build ACK, BYE and NOTIFY,
+ * and the listening point of its provider. The transactions, timers and
+ * application data of the dialog are not kept.
+ *
+ * The snapshot starts with its version. Numbers are written big endian,
+ * strings as their length in UTF-8 bytes followed by the bytes, -1 standing
+ * for null, and headers as their encoded text without the trailing CRLF.
+ */
+public class DialogSnapshotCodec {
+	public static final int VERSION = 1;
+
+	private static final int SERVER_TRANSACTION = 1;
+	private static final int FIRST_TRANSACTION_SEEN = 1 << 1;
+	private static final int FIRST_TRANSACTION_SERVER = 1 << 2;
+	private static final int FIRST_TRANSACTION_SECURE = 1 << 3;
+	private static final int TERMINATE_ON_BYE = 1 << 4;
+	private static final int BACK_TO_BACK_USER_AGENT = 1 << 5;
+	private static final int SEQUENCE_NUMBER_VALIDATION = 1 << 6;
+	private static final int RE_INVITE = 1 << 7;
+	private static final int ACKNOWLEDGED = 1 << 8;
+	private static final int ACK_RECEIVED = 1 << 9;
+	private static final int LAST_RESPONSE = 1 << 10;
+
+	private DialogSnapshotCodec() {
+	}
+
+	/**
+	 * @param dialog the dialog to encode
+	 * @return the snapshot of the dialog
+	 */
+	public static byte[] encode(SIPDialog dialog) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeByte(VERSION);
+			int flags = 0;
+			if (dialog.serverTransactionFlag)
+				flags |= SERVER_TRANSACTION;
+			if (dialog.firstTransactionSeen)
+				flags |= FIRST_TRANSACTION_SEEN;
+			if (dialog.firstTransactionIsServerTransaction)
+				flags |= FIRST_TRANSACTION_SERVER;
+			if (dialog.firstTransactionSecure)
+				flags |= FIRST_TRANSACTION_SECURE;
+			if (dialog.terminateOnBye)
+				flags |= TERMINATE_ON_BYE;
+			if (dialog.isBackToBackUserAgent)
+				flags |= BACK_TO_BACK_USER_AGENT;
+			if (dialog.sequenceNumberValidation)
+				flags |= SEQUENCE_NUMBER_VALIDATION;
+			if (dialog.reInviteFlag)
+				flags |= RE_INVITE;
+			if (dialog.isAcknowledged)
+				flags |= ACKNOWLEDGED;
+			Long lastAckReceivedCSeqNumber = dialog.lastAckReceivedCSeqNumber;
+			if (lastAckReceivedCSeqNumber != null)
+				flags |= ACK_RECEIVED;
+			Integer lastResponseStatusCode = dialog.lastResponseStatusCode;
+			if (lastResponseStatusCode != null)
+				flags |= LAST_RESPONSE;
+			out.writeShort(flags);
+			out.writeByte(dialog.dialogState.get());
+
+			writeString(out, dialog.getDialogId());
+			writeString(out, dialog.getCallId().getCallId());
+			writeString(out, dialog.myTag);
+			writeString(out, dialog.hisTag);
+			writeString(out, dialog.method);
+			out.writeLong(dialog.localSequenceNumber);
+			out.writeLong(dialog.remoteSequenceNumber);
+			out.writeLong(dialog.originalLocalSequenceNumber);
+			if (lastAckReceivedCSeqNumber != null)
+				out.writeLong(lastAckReceivedCSeqNumber.longValue());
+
+			writeString(out, dialog.localParty != null ? dialog.localParty.toString() : dialog.localPartyStringified);
+			writeString(out, dialog.remoteParty != null ? dialog.remoteParty.toString() : dialog.remotePartyStringified);
+			writeString(out, dialog.remoteTarget != null ? dialog.remoteTarget.toString() : dialog.remoteTargetStringified);
+			RouteList routeList = dialog.routeList;
+			writeHeader(out, routeList != null && !routeList.isEmpty() ? routeList.encode() : null);
+			writeHeader(out, dialog.contactHeader != null ? dialog.contactHeader.encode() : dialog.contactHeaderStringified);
+			writeHeader(out, dialog.eventHeader != null ? dialog.eventHeader.encode() : null);
+
+			writeString(out, dialog.firstTransactionMethod);
+			writeString(out, dialog.firstTransactionId);
+			writeString(out, dialog.firstTransactionMergeId);
+			out.writeInt(dialog.firstTransactionPort);
+
+			if (lastResponseStatusCode != null) {
+				out.writeShort(lastResponseStatusCode.intValue());
+				out.writeLong(dialog.lastResponseCSeqNumber);
+				writeString(out, dialog.lastResponseMethod);
+				writeString(out, dialog.lastResponseDialogId);
+				writeString(out, dialog.lastResponseFromTag);
+				writeString(out, dialog.lastResponseToTag);
+				writeHeader(out, dialog.lastResponseTopMostVia != null ? dialog.lastResponseTopMostVia.encode() : null);
+			}
+			out.writeLong(dialog.lastInviteResponseCSeqNumber);
+			out.writeShort(dialog.lastInviteResponseCode);
+			out.writeInt(dialog.earlyDialogTimeout);
+
+			ListeningPoint listeningPoint = dialog.getSipProvider() != null ? dialog.getSipProvider().getListeningPoint() : null;
+			writeString(out, listeningPoint != null ? listeningPoint.getIPAddress() : null);
+			out.writeInt(listeningPoint != null ? listeningPoint.getPort() : -1);
+			out.flush();
+		} catch (IOException e) {
+			// not thrown by a ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Creates a dialog from its snapshot, on the provider listening on the
+	 * address and port the dialog was created on, or on the first provider of
+	 * the stack when none does.
+	 *
+	 * @param snapshot the snapshot of the dialog
+	 * @param sipStack the stack of the dialog
+	 * @return the dialog, not put into the dialog table
+	 * @throws IOException if the snapshot is truncated, of an unknown version,
+	 *             or the stack has no provider
+	 * @throws ParseException if a header of the snapshot cannot be parsed
+	 */
+	public static SIPDialog decode(byte[] snapshot, SIPTransactionStack sipStack) throws IOException, ParseException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot));
+		int version = in.readUnsignedByte();
+		if (version != VERSION)
+			throw new IOException("Unsupported dialog snapshot version " + version);
+		int flags = in.readUnsignedShort();
+		int state = in.readByte();
+		String dialogId = readString(in);
+		String callId = readString(in);
+		String myTag = readString(in);
+		String hisTag = readString(in);
+		String method = readString(in);
+		long localSequenceNumber = in.readLong();
+		long remoteSequenceNumber = in.readLong();
+		long originalLocalSequenceNumber = in.readLong();
+		Long lastAckReceivedCSeqNumber = (flags & ACK_RECEIVED) != 0 ? Long.valueOf(in.readLong()) : null;
+
+		String localParty = readString(in);
+		String remoteParty = readString(in);
+		String remoteTarget = readString(in);
+		String routes = readString(in);
+		String contact = readString(in);
+		String event = readString(in);
+
+		String firstTransactionMethod = readString(in);
+		String firstTransactionId = readString(in);
+		String firstTransactionMergeId = readString(in);
+		int firstTransactionPort = in.readInt();
+
+		Integer lastResponseStatusCode = null;
+		long lastResponseCSeqNumber = 0;
+		String lastResponseMethod = null;
+		String lastResponseDialogId = null;
+		String lastResponseFromTag = null;
+		String lastResponseToTag = null;
+		String lastResponseTopMostVia = null;
+		if ((flags & LAST_RESPONSE) != 0) {
+			lastResponseStatusCode = Integer.valueOf(in.readUnsignedShort());
+			lastResponseCSeqNumber = in.readLong();
+			lastResponseMethod = readString(in);
+			lastResponseDialogId = readString(in);
+			lastResponseFromTag = readString(in);
+			lastResponseToTag = readString(in);
+			lastResponseTopMostVia = readString(in);
+		}
+		long lastInviteResponseCSeqNumber = in.readLong();
+		int lastInviteResponseCode = in.readShort();
+		int earlyDialogTimeout = in.readInt();
+		String providerAddress = readString(in);
+		int providerPort = in.readInt();
+
+		SIPDialog dialog = new SIPDialog(findProvider(sipStack, providerAddress, providerPort));
+		dialog.setStack(sipStack);
+		dialog.releaseReferencesStrategy = sipStack.getReleaseReferencesStrategy();
+		dialog.serverTransactionFlag = (flags & SERVER_TRANSACTION) != 0;
+		dialog.firstTransactionSeen = (flags & FIRST_TRANSACTION_SEEN) != 0;
+		dialog.firstTransactionIsServerTransaction = (flags & FIRST_TRANSACTION_SERVER) != 0;
+		dialog.firstTransactionSecure = (flags & FIRST_TRANSACTION_SECURE) != 0;
+		dialog.terminateOnBye = (flags & TERMINATE_ON_BYE) != 0;
+		dialog.isBackToBackUserAgent = (flags & BACK_TO_BACK_USER_AGENT) != 0;
+		dialog.sequenceNumberValidation = (flags & SEQUENCE_NUMBER_VALIDATION) != 0;
+		dialog.reInviteFlag = (flags & RE_INVITE) != 0;
+		dialog.isAcknowledged = (flags & ACKNOWLEDGED) != 0;
+		dialog.dialogState.set(state);
+
+		dialog.dialogId = dialogId;
+		dialog.callIdHeader = new CallID(callId);
+		dialog.myTag = myTag;
+		dialog.hisTag = hisTag;
+		dialog.method = method;
+		dialog.localSequenceNumber = localSequenceNumber;
+		dialog.remoteSequenceNumber = remoteSequenceNumber;
+		dialog.originalLocalSequenceNumber = originalLocalSequenceNumber;
+		dialog.lastAckReceivedCSeqNumber = lastAckReceivedCSeqNumber;
+
+		if (localParty != null)
+			dialog.localParty = new AddressParser(localParty).address(true);
+		if (remoteParty != null)
+			dialog.remoteParty = new AddressParser(remoteParty).address(true);
+		if (remoteTarget != null)
+			dialog.remoteTarget = new AddressParser(remoteTarget).address(true);
+		// the header parsers expect the line to end with a line feed
+		if (routes != null)
+			dialog.routeList = (RouteList) new RouteParser(routes + "\n").parse();
+		if (contact != null)
+			dialog.contactHeader = (Contact) ((ContactList) new ContactParser(contact + "\n").parse()).getFirst();
+		if (event != null)
+			dialog.eventHeader = (Event) new EventParser(event + "\n").parse();
+
+		dialog.firstTransactionMethod = firstTransactionMethod;
+		dialog.firstTransactionId = firstTransactionId;
+		dialog.firstTransactionMergeId = firstTransactionMergeId;
+		dialog.firstTransactionPort = firstTransactionPort;
+
+		dialog.lastResponseStatusCode = lastResponseStatusCode;
+		dialog.lastResponseCSeqNumber = lastResponseCSeqNumber;
+		dialog.lastResponseMethod = lastResponseMethod;
+		dialog.lastResponseDialogId = lastResponseDialogId;
+		dialog.lastResponseFromTag = lastResponseFromTag;
+		dialog.lastResponseToTag = lastResponseToTag;
+		if (lastResponseTopMostVia != null)
+			dialog.lastResponseTopMostVia = (Via) ((ViaList) new ViaParser(lastResponseTopMostVia + "\n").parse()).getFirst();
+		dialog.lastInviteResponseCSeqNumber = lastInviteResponseCSeqNumber;
+		dialog.lastInviteResponseCode = lastInviteResponseCode;
+		dialog.earlyDialogTimeout = earlyDialogTimeout;
+		return dialog;
+	}
+
+	private static SipProviderImpl findProvider(SIPTransactionStack sipStack, String address, int port) throws IOException {
+		SipProviderImpl first = null;
+		Iterator<SipProviderImpl> providers = ((SipStackImpl) sipStack).getSipProviders();
+		while (providers.hasNext()) {
+			SipProviderImpl provider = providers.next();
+			ListeningPoint listeningPoint = provider.getListeningPoint();
+			if (listeningPoint != null && listeningPoint.getPort() == port
+					&& listeningPoint.getIPAddress().equals(address))
+				return provider;
+			if (first == null)
+				first = provider;
+		}
+		if (first == null)
+			throw new IOException("No provider to restore the dialog on");
+		return first;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static void writeHeader(DataOutputStream out, String header) throws IOException {
+		if (header != null && header.endsWith(Separators.NEWLINE))
+			header = header.substring(0, header.length() - Separators.NEWLINE.length());
+		writeString(out, header);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
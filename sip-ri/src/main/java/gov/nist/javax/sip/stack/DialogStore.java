@@ -0,0 +1,84 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.stack;
+
+import java.io.IOException;
+
+import javax.sip.SipStack;
+
+/**
+ * Store of the confirmed dialogs of the stack, kept as the binary snapshots of
+ * the DialogSnapshotCodec.
+ *
+ * Once a store is configured the stack writes the snapshot of a dialog through
+ * every time it is confirmed, acknowledged, its CSeq counters or its remote
+ * target change, and removes it when the dialog is removed. A dialog
+ * passivated by SIPTransactionStack.passivateDialog is only kept by the store,
+ * and is decoded again the first time it is looked up, so that a long-lived
+ * dialog costs its snapshot instead of its objects, and another stack sharing
+ * the store can take the dialogs over.
+ *
+ * To enable this in your application you must specify this property:
+ * gov.nist.javax.sip.DIALOG_STORE=gov.nist.javax.sip.stack.InMemoryDialogStore
+ * or gov.nist.javax.sip.stack.MappedFileDialogStore
+ *
+ * The methods are called concurrently, from any stack thread.
+ */
+public interface DialogStore {
+	/**
+	 * This method is called when the store is initialized, before any dialog
+	 * is written.
+	 *
+	 * @param stack
+	 * @throws IOException if the store could not be opened
+	 */
+	public void init(SipStack stack) throws IOException;
+
+	/**
+	 * Writes the snapshot of a dialog, replacing the previous one.
+	 *
+	 * @param dialogId the id of the dialog
+	 * @param snapshot the snapshot of the dialog, the store may keep the array
+	 */
+	public void put(String dialogId, byte[] snapshot);
+
+	/**
+	 * @param dialogId the id of the dialog
+	 * @return the last snapshot written for the dialog, null if none
+	 */
+	public byte[] get(String dialogId);
+
+	/**
+	 * Removes the snapshot of a dialog, if any.
+	 *
+	 * @param dialogId the id of the dialog
+	 */
+	public void remove(String dialogId);
+
+	/**
+	 * @return the number of dialogs in the store
+	 */
+	public int size();
+
+	/**
+	 * This method is called when the stack stops. You can release the
+	 * resources of the store here.
+	 */
+	public void destroy();
+}
@@ -0,0 +1,55 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.stack;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sip.SipStack;
+
+/**
+ * DialogStore keeping the snapshots in the heap of the stack, where a
+ * passivated dialog only costs its snapshot. It does not survive the stack,
+ * and is mostly meant for tests and as a base for replicated stores.
+ */
+public class InMemoryDialogStore implements DialogStore {
+	private final ConcurrentHashMap<String, byte[]> snapshots = new ConcurrentHashMap<String, byte[]>();
+
+	public void init(SipStack stack) {
+	}
+
+	public void put(String dialogId, byte[] snapshot) {
+		snapshots.put(dialogId, snapshot);
+	}
+
+	public byte[] get(String dialogId) {
+		return snapshots.get(dialogId);
+	}
+
+	public void remove(String dialogId) {
+		snapshots.remove(dialogId);
+	}
+
+	public int size() {
+		return snapshots.size();
+	}
+
+	public void destroy() {
+		snapshots.clear();
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.stack;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sip.SipStack;
+
+import gov.nist.core.CommonLogger;
+import gov.nist.core.StackLogger;
+import gov.nist.javax.sip.SipStackImpl;
+
+/**
+ * DialogStore keeping the snapshots in a memory-mapped file, outside of the
+ * heap of the stack. The snapshots written before the stack or its process
+ * stopped are found again when the file is opened, so that a restarted stack,
+ * or a standby one opening the same file, takes the dialogs over.
+ *
+ * The file is split into slots of a fixed size, one per dialog, each holding
+ * the length of its record, 0 for a free slot, then the length and the UTF-8
+ * bytes of the dialog id, then the snapshot. A snapshot larger than a slot is
+ * not stored, and counted as rejected.
+ *
+ * The store is configured through the following properties:
+ * <ul>
+ * <li>gov.nist.javax.sip.DIALOG_STORE_FILE: the path of the file, the stack name followed by .dialogs by default</li>
+ * <li>gov.nist.javax.sip.DIALOG_STORE_SLOT_SIZE: the size of a slot in bytes, 2048 by default</li>
+ * <li>gov.nist.javax.sip.DIALOG_STORE_SLOTS: the number of slots, which is the most dialogs the store keeps, 16384 by default</li>
+ * </ul>
+ */
+public class MappedFileDialogStore implements DialogStore {
+	private static StackLogger logger = CommonLogger.getLogger(MappedFileDialogStore.class);
+
+	private static final int LOCK_STRIPES = 64;
+
+	protected int slotSize;
+	protected int slots;
+
+	private RandomAccessFile file;
+	private MappedByteBuffer buffer;
+	private final Object[] locks = new Object[LOCK_STRIPES];
+	private final ConcurrentHashMap<String, Integer> index = new ConcurrentHashMap<String, Integer>();
+	private final ConcurrentLinkedQueue<Integer> freeSlots = new ConcurrentLinkedQueue<Integer>();
+	private final AtomicLong rejectedSnapshots = new AtomicLong();
+
+	public MappedFileDialogStore() {
+		for (int i = 0; i < LOCK_STRIPES; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+	public void init(SipStack stack) throws IOException {
+		Properties properties = ((SipStackImpl) stack).getConfigurationProperties();
+		String path = properties.getProperty("gov.nist.javax.sip.DIALOG_STORE_FILE", stack.getStackName() + ".dialogs");
+		slotSize = Integer.parseInt(properties.getProperty("gov.nist.javax.sip.DIALOG_STORE_SLOT_SIZE", "2048"));
+		slots = Integer.parseInt(properties.getProperty("gov.nist.javax.sip.DIALOG_STORE_SLOTS", "16384"));
+		open(new File(path));
+	}
+
+	/**
+	 * Maps the file, creating it if needed, and indexes the dialogs it holds.
+	 *
+	 * @param path the file of the store
+	 * @throws IOException if the file cannot be mapped
+	 */
+	protected void open(File path) throws IOException {
+		long length = (long) slotSize * slots;
+		if (slotSize < 64 || slots <= 0 || length > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Invalid dialog store size of " + slots + " slots of " + slotSize + " bytes");
+		file = new RandomAccessFile(path, "rw");
+		buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+		for (int slot = 0; slot < slots; slot++) {
+			int offset = slot * slotSize;
+			int recordLength = buffer.getInt(offset);
+			if (recordLength <= 0 || recordLength > slotSize - 4) {
+				freeSlots.add(slot);
+				continue;
+			}
+			byte[] id = new byte[buffer.getShort(offset + 4)];
+			ByteBuffer view = buffer.duplicate();
+			view.position(offset + 6);
+			view.get(id);
+			index.put(new String(id, StandardCharsets.UTF_8), slot);
+		}
+		if (logger.isLoggingEnabled(StackLogger.TRACE_INFO)) {
+			logger.logInfo("Opened dialog store " + path + " holding " + index.size() + " dialogs");
+		}
+	}
+
+	public void put(String dialogId, byte[] snapshot) {
+		byte[] id = dialogId.getBytes(StandardCharsets.UTF_8);
+		int recordLength = 2 + id.length + snapshot.length;
+		if (recordLength > slotSize - 4) {
+			rejectedSnapshots.incrementAndGet();
+			if (logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
+				logger.logDebug("Snapshot of " + snapshot.length + " bytes of dialog " + dialogId + " does not fit a slot");
+			}
+			return;
+		}
+		Integer slot = index.get(dialogId);
+		if (slot == null) {
+			Integer freeSlot = freeSlots.poll();
+			if (freeSlot == null) {
+				rejectedSnapshots.incrementAndGet();
+				if (logger.isLoggingEnabled(StackLogger.TRACE_WARN)) {
+					logger.logWarning("Dialog store is full, dialog " + dialogId + " is not stored");
+				}
+				return;
+			}
+			slot = index.putIfAbsent(dialogId, freeSlot);
+			if (slot == null) {
+				slot = freeSlot;
+			} else {
+				freeSlots.add(freeSlot);
+			}
+		}
+		int offset = slot.intValue() * slotSize;
+		synchronized (locks[slot.intValue() % LOCK_STRIPES]) {
+			// removed meanwhile, the slot may already be reused
+			if (!slot.equals(index.get(dialogId)))
+				return;
+			ByteBuffer view = buffer.duplicate();
+			view.position(offset + 4);
+			view.putShort((short) id.length);
+			view.put(id);
+			view.put(snapshot);
+			buffer.putInt(offset, recordLength);
+		}
+	}
+
+	public byte[] get(String dialogId) {
+		Integer slot = index.get(dialogId);
+		if (slot == null)
+			return null;
+		int offset = slot.intValue() * slotSize;
+		synchronized (locks[slot.intValue() % LOCK_STRIPES]) {
+			if (!slot.equals(index.get(dialogId)))
+				return null;
+			int recordLength = buffer.getInt(offset);
+			if (recordLength <= 0)
+				return null;
+			int idLength = buffer.getShort(offset + 4);
+			byte[] snapshot = new byte[recordLength - 2 - idLength];
+			ByteBuffer view = buffer.duplicate();
+			view.position(offset + 6 + idLength);
+			view.get(snapshot);
+			return snapshot;
+		}
+	}
+
+	public void remove(String dialogId) {
+		Integer slot = index.remove(dialogId);
+		if (slot == null)
+			return;
+		synchronized (locks[slot.intValue() % LOCK_STRIPES]) {
+			buffer.putInt(slot.intValue() * slotSize, 0);
+		}
+		freeSlots.add(slot);
+	}
+
+	public int size() {
+		return index.size();
+	}
+
+	/**
+	 * @return the number of snapshots not stored, being larger than a slot or
+	 *         the store being full
+	 */
+	public long getRejectedSnapshots() {
+		return rejectedSnapshots.get();
+	}
+
+	public void destroy() {
+		if (buffer != null) {
+			buffer.force();
+		}
+		if (file != null) {
+			try {
+				file.close();
+			} catch (IOException e) {
+				logger.logError("Error closing the dialog store", e);
+			}
+		}
+		index.clear();
+		freeSlots.clear();
+	}
+}
@@ -0,0 +1,206 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.stack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded multi producer / single consumer ring of captured messages kept in
+ * off heap memory. Each slot has a fixed size: the record metadata, the
+ * transport and address strings and at most snapLength bytes of the message.
+ * Producers claim a slot with a CAS on the producer sequence and publish it
+ * with an ordered write of the slot sequence, so a transport thread never
+ * takes a lock. When the consumer falls a whole ring behind, the message is
+ * dropped and counted instead of blocking the producer.
+ */
+public class MessageCaptureRingBuffer {
+	/**
+	 * time(8) sent(1) transport length(1) from length(1) to length(1) original
+	 * length(4) captured length(4)
+	 */
+	public static final int HEADER_SIZE = 20;
+
+	public static final int MAX_STRING_LENGTH = 64;
+
+	public interface RecordHandler {
+		void onRecord(long time, boolean sent, String transport, String from, String to, int originalLength,
+				ByteBuffer payload) throws IOException;
+	}
+
+	private final ByteBuffer buffer;
+
+	private final AtomicLongArray published;
+
+	private final AtomicLong producerSequence = new AtomicLong();
+
+	private volatile long consumerSequence;
+
+	private final AtomicLong droppedMessages = new AtomicLong();
+
+	private final int capacity;
+
+	private final int mask;
+
+	private final int slotSize;
+
+	private final int snapLength;
+
+	/**
+	 * @param slots number of slots, rounded up to the next power of two
+	 * @param snapLength maximum number of message bytes kept per record
+	 */
+	public MessageCaptureRingBuffer(int slots, int snapLength) {
+		if (slots <= 0 || snapLength <= 0)
+			throw new IllegalArgumentException("slots and snapLength must be positive");
+
+		int capacity = Integer.highestOneBit(slots);
+		if (capacity < slots)
+			capacity <<= 1;
+
+		this.capacity = capacity;
+		this.mask = capacity - 1;
+		this.snapLength = snapLength;
+		long size = (long) capacity * ((long) HEADER_SIZE + 3 * MAX_STRING_LENGTH + snapLength);
+		if (size > Integer.MAX_VALUE)
+			throw new IllegalArgumentException(
+					"slots " + slots + " of snapLength " + snapLength + " do not fit in a buffer of 2GB");
+
+		this.slotSize = HEADER_SIZE + 3 * MAX_STRING_LENGTH + snapLength;
+		this.buffer = ByteBuffer.allocateDirect((int) size);
+		this.published = new AtomicLongArray(capacity);
+	}
+
+	/**
+	 * Copies the message into the next free slot.
+	 *
+	 * @return false if the ring was full and the message has been dropped
+	 */
+	public boolean offer(long time, boolean sent, String transport, String from, String to, byte[] data) {
+		long sequence;
+		do {
+			sequence = producerSequence.get();
+			if (sequence - consumerSequence >= capacity) {
+				droppedMessages.incrementAndGet();
+				return false;
+			}
+		} while (!producerSequence.compareAndSet(sequence, sequence + 1));
+
+		int index = (int) (sequence & mask);
+		ByteBuffer slot = buffer.duplicate();
+		slot.position(index * slotSize);
+
+		byte[] transportBytes = toBytes(transport);
+		byte[] fromBytes = toBytes(from);
+		byte[] toBytes = toBytes(to);
+		int capturedLength = Math.min(data.length, snapLength);
+
+		slot.putLong(time);
+		slot.put(sent ? (byte) 1 : (byte) 0);
+		slot.put((byte) transportBytes.length);
+		slot.put((byte) fromBytes.length);
+		slot.put((byte) toBytes.length);
+		slot.putInt(data.length);
+		slot.putInt(capturedLength);
+		slot.put(transportBytes);
+		slot.put(fromBytes);
+		slot.put(toBytes);
+		slot.put(data, 0, capturedLength);
+
+		published.lazySet(index, sequence + 1);
+		return true;
+	}
+
+	/**
+	 * Hands at most limit published records to the handler, in the order they
+	 * were claimed. Must only be called from a single consumer thread.
+	 *
+	 * @return the number of records consumed
+	 */
+	public int drain(RecordHandler handler, int limit) throws IOException {
+		int count = 0;
+		long sequence = consumerSequence;
+		while (count < limit) {
+			int index = (int) (sequence & mask);
+			if (published.get(index) != sequence + 1)
+				break;
+
+			ByteBuffer slot = buffer.duplicate();
+			slot.position(index * slotSize);
+			long time = slot.getLong();
+			boolean sent = slot.get() != 0;
+			int transportLength = slot.get() & 0xFF;
+			int fromLength = slot.get() & 0xFF;
+			int toLength = slot.get() & 0xFF;
+			int originalLength = slot.getInt();
+			int capturedLength = slot.getInt();
+			String transport = readString(slot, transportLength);
+			String from = readString(slot, fromLength);
+			String to = readString(slot, toLength);
+			slot.limit(slot.position() + capturedLength);
+
+			try {
+				handler.onRecord(time, sent, transport, from, to, originalLength, slot);
+			} finally {
+				sequence++;
+				count++;
+				consumerSequence = sequence;
+			}
+		}
+		return count;
+	}
+
+	public int size() {
+		return (int) (producerSequence.get() - consumerSequence);
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int getSnapLength() {
+		return snapLength;
+	}
+
+	public long getDroppedMessages() {
+		return droppedMessages.get();
+	}
+
+	private static byte[] toBytes(String value) {
+		if (value == null)
+			return new byte[0];
+
+		byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+		if (bytes.length <= MAX_STRING_LENGTH)
+			return bytes;
+
+		byte[] truncated = new byte[MAX_STRING_LENGTH];
+		System.arraycopy(bytes, 0, truncated, 0, MAX_STRING_LENGTH);
+		return truncated;
+	}
+
+	private static String readString(ByteBuffer slot, int length) {
+		byte[] bytes = new byte[length];
+		slot.get(bytes);
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+}
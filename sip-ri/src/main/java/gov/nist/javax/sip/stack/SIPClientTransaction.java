@@ -223,6 +223,19 @@ public interface SIPClientTransaction extends ClientTransactionExt, SIPTransacti
    */
   public abstract Contact getOriginalRequestContact();
 
+  /**
+   * @return the id under which the stack indexes this SUBSCRIBE transaction for
+   *         matching the NOTIFY requests, null for other methods. See
+   *         SIPTransactionStack.getSubscribeMatchId.
+   */
+  public abstract String getSubscribeMatchId();
+
+  /**
+   * Computes the subscribe match id again from the request about to be sent,
+   * and indexes the transaction under it if it changed.
+   */
+  public abstract void updateSubscribeMatchId();
+
   /**
    * @return the originalRequestFromTag
    */
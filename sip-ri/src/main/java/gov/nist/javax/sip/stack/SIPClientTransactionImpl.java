@@ -65,6 +65,7 @@ import gov.nist.javax.sip.message.SIPMessage;
 import gov.nist.javax.sip.message.SIPRequest;
 import gov.nist.javax.sip.message.SIPResponse;
 import gov.nist.javax.sip.stack.IllegalTransactionStateException.Reason;
+import gov.nist.javax.sip.stack.metrics.StackMetrics;
 import gov.nist.javax.sip.stack.timers.SIPStackTimerTask;
 import gov.nist.javax.sip.stack.transports.processors.MessageChannel;
 
@@ -197,6 +198,9 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
 
   protected SIPRequest lastRequest;
 
+  // wire bytes of the last request, written again by the retransmissions
+  protected byte[] lastRequestBytes;
+
   protected int viaPort;
 
   protected String viaHost;
@@ -223,6 +227,7 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
   protected Event originalRequestEventHeader;
   protected Contact originalRequestContact;
   protected String originalRequestScheme;
+  protected String subscribeMatchId;
 
   // private transient Object transactionTimerLock = new Object();
   protected AtomicBoolean timerKStarted = new AtomicBoolean(false);
@@ -424,7 +429,12 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
         // BUGBUG This supresses sending ACKS -- uncomment to test
         // 4xx retransmission.
         // if (transactionRequest.getMethod() != Request.ACK)
-        super.sendMessage(transactionRequest);
+        if (isReliable()) {
+          super.sendMessage(transactionRequest);
+        } else {
+          // keep the encoded request for the retransmissions
+          lastRequestBytes = sendEncodedMessage(transactionRequest, null);
+        }
 
       } catch (IOException e) {
 
@@ -968,6 +978,9 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
       throw new IllegalTransactionStateException(ex.getMessage(), Reason.MissingRequiredHeader);
     }
 
+    // the Event header may have been set after the transaction was created
+    updateSubscribeMatchId();
+
     if (getMethod().equals(Request.SUBSCRIBE) && sipRequest.getHeader(ExpiresHeader.NAME) == null) {
       /*
        * If no "Expires" header is present in a SUBSCRIBE request, the implied default
@@ -1043,6 +1056,10 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
         // responsibility.
 
         if (lastRequest != null) {
+          StackMetrics stackMetrics = sipStack.getStackMetrics();
+          if (stackMetrics != null) {
+            stackMetrics.countRetransmission();
+          }
           if (sipStack.generateTimeStampHeader
               && lastRequest.getHeader(TimeStampHeader.NAME) != null) {
             long milisec = System.currentTimeMillis();
@@ -1053,8 +1070,11 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
               InternalErrorHandler.handleException(ex);
             }
             lastRequest.setHeader(timeStamp);
+            // the request changed, it has to be encoded again
+            super.sendMessage(lastRequest);
+          } else {
+            sendEncodedMessage(lastRequest, lastRequestBytes);
           }
-          super.sendMessage(lastRequest);
           if (this.notifyOnRetransmit) {
             TimeoutEvent txTimeout = new TimeoutEvent(this.getSipProvider(),
                 this,
@@ -1354,6 +1374,11 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
         && (newState == TransactionState._COMPLETED || newState == TransactionState._TERMINATED)) {
       sipStack.decrementActiveClientTransactionCount();
     }
+    // no more retransmissions, release the encoded request
+    if (newState == TransactionState._COMPLETED || newState == TransactionState._TERMINATED
+        || (newState == TransactionState._PROCEEDING && isInviteTransaction())) {
+      lastRequestBytes = null;
+    }
     super.setState(newState);
     
     if(newState == TransactionState._TERMINATED) {
@@ -1796,6 +1821,7 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
         lastResponse = null;
       }
       lastRequest = null;
+      lastRequestBytes = null;
     }
   }
 
@@ -1982,6 +2008,45 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
     return (Event) getOriginalRequest().getHeader(EventHeader.NAME);
   }
 
+  /**
+   * @see gov.nist.javax.sip.stack.SIPClientTransaction#getSubscribeMatchId()
+   */
+  @Override
+  public String getSubscribeMatchId() {
+    return subscribeMatchId;
+  }
+
+  /**
+   * @see gov.nist.javax.sip.stack.SIPTransaction#setOriginalRequest(gov.nist.javax.sip.message.SIPRequest)
+   */
+  @Override
+  public void setOriginalRequest(SIPRequest newOriginalRequest) {
+    super.setOriginalRequest(newOriginalRequest);
+    subscribeMatchId = computeSubscribeMatchId(newOriginalRequest);
+  }
+
+  private String computeSubscribeMatchId(SIPRequest request) {
+    if (request == null || !Request.SUBSCRIBE.equals(getMethod())) {
+      return null;
+    }
+    return SIPTransactionStack.getSubscribeMatchId(request.getCallId().getCallId(), request.getFromTag(),
+        (Event) request.getHeader(EventHeader.NAME));
+  }
+
+  /**
+   * @see gov.nist.javax.sip.stack.SIPClientTransaction#updateSubscribeMatchId()
+   */
+  @Override
+  public void updateSubscribeMatchId() {
+    String oldSubscribeMatchId = subscribeMatchId;
+    String newSubscribeMatchId = computeSubscribeMatchId(getOriginalRequest());
+    if (newSubscribeMatchId == null ? oldSubscribeMatchId == null : newSubscribeMatchId.equals(oldSubscribeMatchId)) {
+      return;
+    }
+    subscribeMatchId = newSubscribeMatchId;
+    sipStack.subscribeMatchIdChanged(this, oldSubscribeMatchId);
+  }
+
   /**
    * @see gov.nist.javax.sip.stack.SIPClientTransaction#getOriginalRequestContact()
    */
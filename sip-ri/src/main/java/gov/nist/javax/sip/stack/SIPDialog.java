@@ -144,6 +144,9 @@ public class SIPDialog implements DialogExt {
     // delivery of the event
     protected transient boolean isAssigned;
 
+    // set while the dialog waits for its snapshot to be written to the DialogStore
+    protected transient volatile boolean snapshotDirty;
+
     protected boolean reInviteFlag;
 
     protected transient Object applicationData; // Opaque pointer to application
@@ -745,6 +748,8 @@ public class SIPDialog implements DialogExt {
                     "Dialog.setRemoteTarget: " + this.remoteTarget);
             logger.logStackTrace();
         }
+        if (sipStack != null)
+            sipStack.markDialogDirty(this);
 
     }
 
@@ -1187,6 +1192,7 @@ public class SIPDialog implements DialogExt {
         	int oldState = this.dialogState.getAndSet(state);        	
         	// Dialog is in terminated state set it up for GC.
             if (oldState!=TERMINATED_STATE) {
+            	sipStack.dialogStateChanged(this, oldState, state);
             	if (sipStack.getTimer() != null && sipStack.getTimer().isStarted() ) { // may be null after shutdown
             		String dialogId = getDialogId();
             		if(dialogId == null)
@@ -1204,8 +1210,13 @@ public class SIPDialog implements DialogExt {
                 this.stopTimer();
             }
         }
-        else
-        	this.dialogState.set(state);        
+        else {
+        	int oldState = this.dialogState.getAndSet(state);
+        	if (oldState != state && sipStack != null)
+        		sipStack.dialogStateChanged(this, oldState, state);
+        	if (state == CONFIRMED_STATE && sipStack != null)
+        		sipStack.writeDialog(this);
+        }
     }
 
     /**
@@ -1747,6 +1758,8 @@ public class SIPDialog implements DialogExt {
         if (lCseq <= this.localSequenceNumber)
             throw new RuntimeException("Sequence number should not decrease !");
         this.localSequenceNumber = lCseq;
+        if (sipStack != null)
+            sipStack.markDialogDirty(this);
     }
 
     /**
@@ -1761,6 +1774,8 @@ public class SIPDialog implements DialogExt {
             logger.logDebug(
                     "setRemoteSeqno " + this + "/" + rCseq);
         this.remoteSequenceNumber = rCseq;
+        if (sipStack != null)
+            sipStack.markDialogDirty(this);
     }
 
     /**
@@ -1770,6 +1785,8 @@ public class SIPDialog implements DialogExt {
      */
     public void incrementLocalSequenceNumber() {
         ++this.localSequenceNumber;
+        if (sipStack != null)
+            sipStack.markDialogDirty(this);
     }
 
     /**
@@ -2299,6 +2316,8 @@ public class SIPDialog implements DialogExt {
 
         SIPRequest dialogRequest = ((SIPClientTransaction) clientTransaction)
                 .getOriginalRequest();
+        // the Event header may have been set after the transaction was created
+        ((SIPClientTransaction) clientTransaction).updateSubscribeMatchId();
 
         this.proxyAuthorizationHeader = (ProxyAuthorization) dialogRequest
                 .getHeader(ProxyAuthorizationHeader.NAME);
@@ -43,7 +43,6 @@ import gov.nist.core.CommonLogger;
 import gov.nist.core.HostPort;
 import gov.nist.core.LogLevels;
 import gov.nist.core.LogWriter;
-import gov.nist.core.ServerLogger;
 import gov.nist.core.StackLogger;
 import gov.nist.javax.sip.ReleaseReferencesStrategy;
 import gov.nist.javax.sip.SipProviderImpl;
@@ -56,6 +55,7 @@ import gov.nist.javax.sip.message.SIPMessage;
 import gov.nist.javax.sip.message.SIPRequest;
 import gov.nist.javax.sip.message.SIPResponse;
 import gov.nist.javax.sip.stack.IllegalTransactionStateException.Reason;
+import gov.nist.javax.sip.stack.metrics.StackMetrics;
 import gov.nist.javax.sip.stack.timers.SIPStackTimerTask;
 import gov.nist.javax.sip.stack.transports.processors.MessageChannel;
 
@@ -998,12 +998,17 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
     @Override
     public void resendLastResponse() throws IOException, MessageTooLongException {
 
+        StackMetrics stackMetrics = sipStack.getStackMetrics();
+        if (stackMetrics != null && (lastResponse != null || lastResponseAsBytes != null)) {
+            stackMetrics.countRetransmission();
+        }
         if (lastResponse != null) {
             if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
                 logger.logDebug("resend last response " + lastResponse);
             }
             sendMessage(lastResponse);
         } else if (lastResponseAsBytes != null) {
+            sipStack.incrementCachedRetransmissions(lastResponseAsBytes.length);
             resendLastResponseAsBytes(lastResponseAsBytes);
         }
     }
@@ -1018,7 +1023,7 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
         }
 
         if (isReliable()) {
-            if (logger.isLoggingEnabled(ServerLogger.TRACE_MESSAGES)) {
+            if (getMessageChannel().isLoggingMessages()) {
                 // Issue 343 : we have to log the retransmission
                 try {
                     SIPResponse lastReparsedResponse = (SIPResponse) sipStack.getMessageParserFactory()
@@ -1033,7 +1038,7 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
                             getMessageChannel()
                                     .getMessageProcessor().getIpAddress());
 
-                    getMessageChannel().logMessage(lastReparsedResponse, this.getPeerInetAddress(),
+                    getMessageChannel().logMessage(lastReparsedResponse, lastResponseAsBytes, this.getPeerInetAddress(),
                             this.getPeerPort(), System.currentTimeMillis());
                 } catch (ParseException e) {
                     if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
@@ -1051,7 +1056,7 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
                     .createRawMessageChannel(this.getSipProvider().getListeningPoint(
                             hop.getTransport()).getIPAddress(), this.getPort(), hop);
             if (messageChannel != null) {
-                if (logger.isLoggingEnabled(ServerLogger.TRACE_MESSAGES)) {
+                if (messageChannel.isLoggingMessages()) {
                     // Issue 343 : we have to log the retransmission
                     try {
                         SIPResponse lastReparsedResponse = (SIPResponse) sipStack.getMessageParserFactory()
@@ -1063,7 +1068,7 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
                         lastReparsedResponse.setLocalPort(messageChannel.getPort());
                         lastReparsedResponse.setLocalAddress(messageChannel.getMessageProcessor().getIpAddress());
 
-                        messageChannel.logMessage(lastReparsedResponse, messageChannel.getPeerInetAddress(),
+                        messageChannel.logMessage(lastReparsedResponse, lastResponseAsBytes, messageChannel.getPeerInetAddress(),
                                 messageChannel.getPeerPort(), System.currentTimeMillis());
                     } catch (ParseException e) {
                         if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
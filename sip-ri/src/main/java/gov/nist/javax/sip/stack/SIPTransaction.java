@@ -337,6 +337,13 @@ public interface SIPTransaction extends TransactionExt {
    */
   public boolean doesCancelMatchTransaction(SIPRequest requestToTest);
 
+  /**
+   * Returns the id under which the stack indexes this transaction for the
+   * CANCEL matching, see SIPRequest.getCancelMatchId(). Null unless this is
+   * an INVITE transaction, the only one a CANCEL applies to.
+   */
+  public String getCancelMatchId();
+
   /**
    * Sets the value of the retransmit timer to the newly supplied timer value.
    * The retransmit timer is expressed in milliseconds and its default value
@@ -47,6 +47,7 @@ import gov.nist.core.StackLogger;
 import gov.nist.javax.sip.IOExceptionEventExt;
 import gov.nist.javax.sip.IOExceptionEventExt.Reason;
 import gov.nist.javax.sip.ReleaseReferencesStrategy;
+import gov.nist.javax.sip.SIPConstants;
 import gov.nist.javax.sip.SipProviderImpl;
 import gov.nist.javax.sip.address.AddressFactoryImpl;
 import gov.nist.javax.sip.header.Via;
@@ -139,6 +140,7 @@ public abstract class SIPTransactionImpl implements SIPTransaction {
     protected String originalRequestCallId;
     protected String originalRequestBranch;
     protected boolean originalRequestHasPort;
+    protected String cancelMatchId;
 
 
     // Underlying channel being used to send messages for this transaction
@@ -412,6 +414,8 @@ public abstract class SIPTransactionImpl implements SIPTransaction {
         this.method = newOriginalRequest.getMethod();
 
         this.transactionId = newTransactionId;
+        // only an INVITE can be cancelled
+        this.cancelMatchId = Request.INVITE.equals(this.method) ? newOriginalRequest.getCancelMatchId() : null;
 
         originalRequest.setTransaction(this);
 
@@ -827,8 +831,40 @@ public abstract class SIPTransactionImpl implements SIPTransaction {
         } else {
             encapsulatedChannel.sendMessage(messageToSend,
                 this.getPeerInetAddress(), this.getPeerPort());
-        } 
-    }    
+        }
+    }
+
+    /**
+     * Send a message to the peer reusing its wire bytes when they were already
+     * encoded by a previous transmission, so that the retransmissions write the
+     * cached bytes instead of encoding the message again.
+     *
+     * @param messageToSend
+     *            the message to send.
+     * @param encodedMessage
+     *            the bytes of the message encoded for the transaction channel, or
+     *            null if not encoded yet.
+     * @return the encoded message to keep for the next retransmission, or null if
+     *         the message was self routed.
+     */
+    protected byte[] sendEncodedMessage(final SIPMessage messageToSend, byte[] encodedMessage)
+            throws IOException, MessageTooLongException {
+        this.setTimeoutTimerActive();
+        //check for self routing
+        MessageProcessor messageProcessor = sipStack.findMessageProcessor(this.getPeerAddress(), this.getPeerPort(), this.getPeerProtocol());
+        if(messageProcessor != null) {
+            sipStack.selfRouteMessage((RawMessageChannel) encapsulatedChannel, messageToSend);
+            return null;
+        }
+        if (encodedMessage == null) {
+            encodedMessage = encapsulatedChannel.encodeMessage(messageToSend);
+        } else {
+            sipStack.incrementCachedRetransmissions(encodedMessage.length);
+        }
+        encapsulatedChannel.sendMessage(messageToSend, encodedMessage,
+            this.getPeerInetAddress(), this.getPeerPort());
+        return encodedMessage;
+    }
 
     /**
      * Parse the byte array as a message, process it through the transaction,
@@ -988,7 +1024,9 @@ public abstract class SIPTransactionImpl implements SIPTransaction {
             messageBranch = topViaHeader.getBranch();
             
             // If a new branch parameter exists,
-            if (messageBranch != null && this.getBranch() != null) {
+            if (messageBranch != null && this.getBranch() != null
+                    && messageBranch.regionMatches(true, 0, SIPConstants.BRANCH_MAGIC_COOKIE, 0,
+                            SIPConstants.BRANCH_MAGIC_COOKIE.length())) {
 
                 // If the branch equals the branch in
                 // this message,
@@ -1000,12 +1038,26 @@ public abstract class SIPTransactionImpl implements SIPTransaction {
                         logger.logDebug("returning  true");
                 }
 
+            } else {
+                // RFC 2543 client, the Request-URI, tags, Call-ID, CSeq
+                // number and topmost Via are compared through the match id
+                String cancelMatchId = origRequest.getCancelMatchId();
+                transactionMatches = cancelMatchId != null
+                        && cancelMatchId.equals(requestToTest.getCancelMatchId());
             }
         }
 
         return transactionMatches;
     }
 
+    /**
+     * @see gov.nist.javax.sip.stack.SIPTransaction#getCancelMatchId()
+     */
+    @Override
+    public String getCancelMatchId() {
+        return this.cancelMatchId;
+    }
+
     /**
      * @see gov.nist.javax.sip.stack.SIPTransaction#setRetransmitTimer(int)
      */
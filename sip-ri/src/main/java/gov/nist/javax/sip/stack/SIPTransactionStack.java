@@ -29,7 +29,9 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sip.ClientTransaction;
 import javax.sip.Dialog;
@@ -79,10 +81,13 @@ import gov.nist.javax.sip.message.SIPMessage;
 import gov.nist.javax.sip.message.SIPRequest;
 import gov.nist.javax.sip.message.SIPResponse;
 import gov.nist.javax.sip.parser.MessageParserFactory;
+import gov.nist.javax.sip.stack.metrics.MetricStage;
+import gov.nist.javax.sip.stack.metrics.StackMetrics;
 import gov.nist.javax.sip.stack.timers.SIPStackTimerTask;
 import gov.nist.javax.sip.stack.timers.SipTimer;
 import gov.nist.javax.sip.stack.transports.processors.ClientAuthType;
 import gov.nist.javax.sip.stack.transports.processors.ConnectionOrientedMessageProcessor;
+import gov.nist.javax.sip.stack.transports.processors.IdleConnectionReaper;
 import gov.nist.javax.sip.stack.transports.processors.MessageChannel;
 import gov.nist.javax.sip.stack.transports.processors.MessageProcessor;
 import gov.nist.javax.sip.stack.transports.processors.MessageProcessorFactory;
@@ -90,6 +95,7 @@ import gov.nist.javax.sip.stack.transports.processors.RawMessageChannel;
 import gov.nist.javax.sip.stack.transports.processors.netty.IncomingMessageProcessingTask;
 import gov.nist.javax.sip.stack.transports.processors.netty.NettyStreamMessageProcessor;
 import gov.nist.javax.sip.stack.transports.processors.nio.NIOMode;
+import gov.nist.javax.sip.stack.transports.processors.nio.NIOSelectorAssignment;
 import gov.nist.javax.sip.stack.transports.processors.nio.NioTcpMessageProcessor;
 import gov.nist.javax.sip.stack.transports.processors.nio.NioTlsMessageProcessor;
 import gov.nist.javax.sip.stack.transports.processors.oio.TCPMessageProcessor;
@@ -147,6 +153,24 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 	// Table of dialogs.
 	protected ConcurrentHashMap<String, SIPDialog> dialogTable;
 
+	// The dialogs of the dialog table by state, indexed by the DialogState value,
+	// for getDialogs(DialogState) and getDialogCount(DialogState)
+	protected Set<SIPDialog>[] stateDialogSets;
+
+	// Store of the snapshots of the confirmed dialogs, null if none is configured.
+	protected DialogStore dialogStore;
+
+	// Milliseconds between two writes of the dialogs whose CSeq counters or remote target changed
+	protected long dialogStoreWriteInterval = 1000;
+
+	// Dialogs changed since their last snapshot, written by the dialogStoreWriter
+	private final Set<SIPDialog> dirtyDialogs = ConcurrentHashMap.newKeySet();
+
+	private volatile DialogStoreWriter dialogStoreWriter;
+
+	// Latency and message metrics, null unless they are enabled.
+	protected StackMetrics stackMetrics;
+
 	// Table of server dialogs ( for loop detection)
 	protected ConcurrentHashMap<String, SIPDialog> serverDialogMergeTestTable;
 
@@ -188,9 +212,25 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 
 	private AtomicInteger activeClientTransactionCount = new AtomicInteger(0);
 
+	// Retransmissions written from the bytes cached by the transactions
+	private AtomicLong cachedRetransmissionCount = new AtomicLong(0);
+
+	private AtomicLong cachedRetransmissionBytes = new AtomicLong(0);
+
 	// Hashtable for server transactions.
 	protected ConcurrentHashMap<String, SIPServerTransaction> serverTransactionTable;
 
+	// The transactions that a CANCEL may target, indexed by
+	// SIPRequest.getCancelMatchId() so that a CANCEL does not scan the tables
+	protected ConcurrentHashMap<String, SIPServerTransaction> serverCancelTable;
+
+	protected ConcurrentHashMap<String, SIPClientTransaction> clientCancelTable;
+
+	// The client SUBSCRIBE transactions indexed by their subscribe match id for
+	// findSubscribeTransaction. Chained applications may send several SUBSCRIBEs
+	// sharing an id, hence the lists.
+	protected ConcurrentHashMap<String, List<SIPClientTransaction>> subscribeTransactionTable;
+
 	// A table of ongoing transactions indexed by mergeId ( for detecting merged
 	// requests.
 	private ConcurrentHashMap<String, SIPServerTransaction> mergeTable;
@@ -441,6 +481,10 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 
 	public NIOMode nioMode = NIOMode.BLOCKING;
 
+	public int nioSelectorThreads = 1;
+
+	public NIOSelectorAssignment nioSelectorAssignment = NIOSelectorAssignment.ROUND_ROBIN;
+
 	private ReleaseReferencesStrategy releaseReferencesStrategy = ReleaseReferencesStrategy.None;
 
 	public List<SIPMessageValve> sipMessageValves;
@@ -467,6 +511,15 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 	 */
 	protected int reliableConnectionKeepAliveTimeout = -1;
 
+	/*
+	 * RFC 5626 CRLF ping sent over a reliable connection without activity for
+	 * this many milliseconds, a value <= 0 disables the pings.
+	 */
+	protected long reliableConnectionKeepAlivePingInterval = -1;
+
+	// Sweeps the keep alive and idle deadlines of the reliable connections, created on first use
+	private volatile IdleConnectionReaper idleConnectionReaper;
+
 	private long sslHandshakeTimeout = -1;
 
 	private boolean allowDialogOnDifferentProvider = false;
@@ -522,6 +575,15 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 
 	protected boolean computeContentLengthFromMessage = false;
 
+	// scan incoming header lines in place in the netty buffers
+	protected boolean nettyParserByteScanning = false;
+
+	// keep the headers not needed by the stack unparsed until accessed
+	protected boolean lazyHeaderParsing = false;
+
+	// encode outgoing messages in direct buffers for the netty transports
+	protected boolean nettyDirectBuffers = false;
+
 	public StackExecutor getMessageProcessorExecutor() {
 		return messageProcessorExecutor;
 	}
@@ -598,6 +660,23 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 		}
 	}
 
+	class DialogStoreWriter extends SIPStackTimerTask {
+
+		public DialogStoreWriter() {
+			super(DialogStoreWriter.class.getSimpleName());
+		}
+
+		@Override
+		public String getId() {
+			return toString();
+		}
+
+		@Override
+		public void runTask() {
+			flushDialogs();
+		}
+	}
+
 	static {
 		// Standard set of methods that create dialogs.
 		dialogCreatingMethods.add(Request.REFER);
@@ -644,11 +723,15 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 
 		// Dialog dable.
 		this.dialogTable = new ConcurrentHashMap<String, SIPDialog>();
+		this.stateDialogSets = createStateDialogSets();
 		this.earlyDialogTable = new ConcurrentHashMap<String, SIPDialog>();
 		this.serverDialogMergeTestTable = new ConcurrentHashMap<String, SIPDialog>();
 
 		clientTransactionTable = new ConcurrentHashMap<String, SIPClientTransaction>();
 		serverTransactionTable = new ConcurrentHashMap<String, SIPServerTransaction>();
+		clientCancelTable = new ConcurrentHashMap<String, SIPClientTransaction>();
+		serverCancelTable = new ConcurrentHashMap<String, SIPServerTransaction>();
+		subscribeTransactionTable = new ConcurrentHashMap<String, List<SIPClientTransaction>>();
 		this.terminatedServerTransactionsPendingAck = new ConcurrentHashMap<String, SIPServerTransaction>();
 		mergeTable = new ConcurrentHashMap<String, SIPServerTransaction>();
 		retransmissionAlertTransactions = new ConcurrentHashMap<String, SIPServerTransaction>();
@@ -675,10 +758,14 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 		pendingTransactions = new ConcurrentHashMap<String, SIPServerTransaction>();
 		clientTransactionTable = new ConcurrentHashMap<String, SIPClientTransaction>();
 		serverTransactionTable = new ConcurrentHashMap<String, SIPServerTransaction>();
+		clientCancelTable = new ConcurrentHashMap<String, SIPClientTransaction>();
+		serverCancelTable = new ConcurrentHashMap<String, SIPServerTransaction>();
+		subscribeTransactionTable = new ConcurrentHashMap<String, List<SIPClientTransaction>>();
 		retransmissionAlertTransactions = new ConcurrentHashMap<String, SIPServerTransaction>();
 		mergeTable = new ConcurrentHashMap<String, SIPServerTransaction>();
 		// Dialog dable.
 		this.dialogTable = new ConcurrentHashMap<String, SIPDialog>();
+		this.stateDialogSets = createStateDialogSets();
 		this.earlyDialogTable = new ConcurrentHashMap<String, SIPDialog>();
 		this.serverDialogMergeTestTable = new ConcurrentHashMap<String, SIPDialog>();
 		this.terminatedServerTransactionsPendingAck = new ConcurrentHashMap<String, SIPServerTransaction>();
@@ -856,7 +943,186 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 	}
 
 	protected void storeDialog(String dialogId, SIPDialog dialog) {
-		dialogTable.put(dialogId, dialog);
+		SIPDialog replaced = dialogTable.put(dialogId, dialog);
+		if (replaced != null && replaced != dialog) {
+			removeStateDialog(replaced);
+		}
+		addStateDialog(dialogId, dialog, dialog.dialogState.get());
+		if (dialogStore != null) {
+			writeDialog(dialog);
+		}
+	}
+
+	/**
+	 * Write the snapshot of a confirmed dialog of the dialog table to the dialog
+	 * store, if any.
+	 *
+	 * @param dialog -- dialog whose state changed.
+	 */
+	protected void writeDialog(SIPDialog dialog) {
+		if (dialogStore == null || dialog.dialogState.get() != SIPDialog.CONFIRMED_STATE) {
+			return;
+		}
+		String dialogId = dialog.getDialogId();
+		// a passivated or removed dialog must not overwrite the stored one
+		if (dialogId == null || dialogTable.get(dialogId) != dialog) {
+			return;
+		}
+		try {
+			dialogStore.put(dialogId, DialogSnapshotCodec.encode(dialog));
+		} catch (Exception ex) {
+			logger.logError("Could not store dialog " + dialogId, ex);
+		}
+	}
+
+	/**
+	 * Mark a dialog whose CSeq counters or remote target changed, its snapshot
+	 * is written with the other changed dialogs by the next flushDialogs
+	 * instead of on the message path.
+	 *
+	 * @param dialog -- dialog whose state changed.
+	 */
+	protected void markDialogDirty(SIPDialog dialog) {
+		if (dialogStore == null || dialog.snapshotDirty) {
+			return;
+		}
+		dialog.snapshotDirty = true;
+		dirtyDialogs.add(dialog);
+		if (dialogStoreWriter == null) {
+			startDialogStoreWriter();
+		}
+	}
+
+	private synchronized void startDialogStoreWriter() {
+		if (dialogStoreWriter == null) {
+			DialogStoreWriter writer = new DialogStoreWriter();
+			getTimer().scheduleWithFixedDelay(writer, dialogStoreWriteInterval, dialogStoreWriteInterval);
+			dialogStoreWriter = writer;
+		}
+	}
+
+	/**
+	 * Write the snapshots of the dialogs changed since their last write, run
+	 * every dialogStoreWriteInterval milliseconds and when the stack stops.
+	 */
+	public void flushDialogs() {
+		Iterator<SIPDialog> dialogs = dirtyDialogs.iterator();
+		while (dialogs.hasNext()) {
+			SIPDialog dialog = dialogs.next();
+			dialogs.remove();
+			// cleared before the encoding so that a change meanwhile marks it again
+			dialog.snapshotDirty = false;
+			writeDialog(dialog);
+		}
+	}
+
+	public long getDialogStoreWriteInterval() {
+		return dialogStoreWriteInterval;
+	}
+
+	/**
+	 * Set the milliseconds between two writes of the changed dialogs, before
+	 * the stack starts.
+	 */
+	public void setDialogStoreWriteInterval(long dialogStoreWriteInterval) {
+		this.dialogStoreWriteInterval = dialogStoreWriteInterval;
+	}
+
+	/**
+	 * Remove a confirmed dialog from the memory of the stack, leaving only its
+	 * snapshot in the dialog store. The dialog is decoded again the first time
+	 * it is looked up, as another instance, so the application must not keep
+	 * references to the dialogs it passivates. A dialog still retransmitting its
+	 * 2xx or waiting for its ACK is not passivated.
+	 *
+	 * @param dialog -- dialog to passivate.
+	 * @return true if the dialog was passivated.
+	 */
+	public boolean passivateDialog(SIPDialog dialog) {
+		String dialogId = dialog.getDialogId();
+		if (dialogStore == null || dialogId == null || dialog.dialogState.get() != SIPDialog.CONFIRMED_STATE
+				|| dialog.timerTask.get() != null || (dialog.isServer() && Request.INVITE.equals(dialog.getMethod())
+						&& !dialog.isAckSeen())) {
+			return false;
+		}
+		byte[] snapshot;
+		try {
+			snapshot = DialogSnapshotCodec.encode(dialog);
+		} catch (Exception ex) {
+			logger.logError("Could not passivate dialog " + dialogId, ex);
+			return false;
+		}
+		dialogStore.put(dialogId, snapshot);
+		if (dialogStore.get(dialogId) == null || !dialogTable.remove(dialogId, dialog)) {
+			// not stored, or replaced meanwhile
+			return false;
+		}
+		removeStateDialog(dialog);
+		removeMergeDialog(dialog.getMergeId());
+		dialog.stopTimer();
+		if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
+			logger.logDebug("passivated dialog " + dialogId);
+		}
+		return true;
+	}
+
+	/**
+	 * Decode a passivated dialog from the dialog store and put it back into the
+	 * dialog table.
+	 */
+	private SIPDialog activateDialog(String dialogId) {
+		byte[] snapshot = dialogStore.get(dialogId);
+		if (snapshot == null) {
+			return null;
+		}
+		SIPDialog sipDialog;
+		try {
+			sipDialog = DialogSnapshotCodec.decode(snapshot, this);
+		} catch (Exception ex) {
+			logger.logError("Could not activate dialog " + dialogId, ex);
+			return null;
+		}
+		SIPDialog existingDialog = dialogTable.putIfAbsent(dialogId, sipDialog);
+		if (existingDialog != null) {
+			return existingDialog;
+		}
+		addStateDialog(dialogId, sipDialog, sipDialog.dialogState.get());
+		if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
+			logger.logDebug("activated dialog " + dialogId);
+		}
+		return sipDialog;
+	}
+
+	/**
+	 * @return the store of the confirmed dialogs, null if none is configured.
+	 */
+	public DialogStore getDialogStore() {
+		return dialogStore;
+	}
+
+	/**
+	 * Set the store of the confirmed dialogs, before the stack starts.
+	 *
+	 * @param dialogStore -- the store, null to disable it.
+	 */
+	public void setDialogStore(DialogStore dialogStore) {
+		this.dialogStore = dialogStore;
+	}
+
+	/**
+	 * @return the latency and message metrics, null if they are not enabled.
+	 */
+	public StackMetrics getStackMetrics() {
+		return stackMetrics;
+	}
+
+	/**
+	 * Set the latency and message metrics, before the stack starts.
+	 *
+	 * @param stackMetrics -- the metrics, null to disable them.
+	 */
+	public void setStackMetrics(StackMetrics stackMetrics) {
+		this.stackMetrics = stackMetrics;
 	}
 
 	/**
@@ -1137,6 +1403,9 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 	public SIPDialog getDialog(String dialogId) {
 
 		SIPDialog sipDialog = (SIPDialog) dialogTable.get(dialogId);
+		if (sipDialog == null && dialogStore != null) {
+			sipDialog = activateDialog(dialogId);
+		}
 		if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
 			logger.logDebug("getDialog(" + dialogId + ") : returning " + sipDialog);
 		}
@@ -1154,7 +1423,62 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 		if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
 			logger.logDebug("Silently removing dialog from table");
 		}
-		dialogTable.remove(dialogId);
+		SIPDialog removed = dialogTable.remove(dialogId);
+		if (removed != null) {
+			removeStateDialog(removed);
+		}
+		if (dialogStore != null) {
+			dialogStore.remove(dialogId);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Set<SIPDialog>[] createStateDialogSets() {
+		Set<SIPDialog>[] stateDialogSets = new Set[DialogState._TERMINATED + 1];
+		for (int i = 0; i < stateDialogSets.length; i++) {
+			stateDialogSets[i] = ConcurrentHashMap.<SIPDialog>newKeySet();
+		}
+		return stateDialogSets;
+	}
+
+	/**
+	 * Add a dialog of the dialog table to the set of its state. The dialog is
+	 * taken out again if it left the table or changed state meanwhile, the thread
+	 * doing so then files it properly.
+	 */
+	private void addStateDialog(String dialogId, SIPDialog dialog, int state) {
+		if (state < 0 || state >= stateDialogSets.length) {
+			return;
+		}
+		Set<SIPDialog> stateDialogSet = stateDialogSets[state];
+		stateDialogSet.add(dialog);
+		if (dialogTable.get(dialogId) != dialog || dialog.dialogState.get() != state) {
+			stateDialogSet.remove(dialog);
+		}
+	}
+
+	private void removeStateDialog(SIPDialog dialog) {
+		for (Set<SIPDialog> stateDialogSet : stateDialogSets) {
+			stateDialogSet.remove(dialog);
+		}
+	}
+
+	/**
+	 * Move a dialog of the dialog table to the set of its new state.
+	 *
+	 * @param dialog   -- the dialog whose state changed.
+	 * @param oldState -- the previous state.
+	 * @param newState -- the current state.
+	 */
+	protected void dialogStateChanged(SIPDialog dialog, int oldState, int newState) {
+		String dialogId = dialog.getDialogId();
+		if (dialogId == null || dialogTable.get(dialogId) != dialog) {
+			return;
+		}
+		if (oldState >= 0 && oldState < stateDialogSets.length) {
+			stateDialogSets[oldState].remove(dialog);
+		}
+		addStateDialog(dialogId, dialog, newState);
 	}
 
 	/**
@@ -1176,8 +1500,8 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 	 * conditions are to match notMsg.reqURI with ct.origReq.contact, and prefer
 	 * transactions with dialogs. See https://github.com/RestComm/jain-sip/issues/60
 	 * for more info. Complementary are also used to stop the searching, and return
-	 * the matched tx. This is because we are iterating the whole client transaction
-	 * table, which may be big effort.
+	 * the matched tx. The candidates are the client SUBSCRIBE transactions indexed
+	 * under the subscribe match id of the NOTIFY, see getSubscribeMatchId.
 	 *
 	 * @param notifyMessage
 	 * @return -- the matching ClientTransaction with semaphore aquired or null if
@@ -1189,10 +1513,6 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 			// https://github.com/RestComm/jain-sip/issues/60
 			// take into account dialogId, so we can try and match the proper TX
 			String dialogId = notifyMessage.getDialogId(true);
-			Iterator<SIPClientTransaction> it = getAllClientTransactions().iterator();
-			if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
-				logger.logDebug("ct table size = " + getClientTransactionTableSize());
-			}
 
 			String thisToTag = notifyMessage.getTo().getTag();
 			if (thisToTag == null) {
@@ -1206,52 +1526,38 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 
 				return retval;
 			}
-			while (it.hasNext()) {
-				SIPClientTransaction ct = (SIPClientTransaction) it.next();
-				if (!ct.getMethod().equals(Request.SUBSCRIBE))
-					continue;
-
-				// if ( sipProvider.getListeningPoint(transport) == null)
-				String fromTag = ct.getOriginalRequestFromTag();
-				Event hisEvent = (Event) ct.getOriginalRequestEvent();
-				// Event header is mandatory but some slopply clients
-				// dont include it.
-				if (hisEvent == null)
-					continue;
+			String subscribeMatchId = getSubscribeMatchId(notifyMessage.getCallId().getCallId(), thisToTag, eventHdr);
+			List<SIPClientTransaction> transactions = subscribeMatchId == null ? null
+					: subscribeTransactionTable.get(subscribeMatchId);
+			if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
+				logger.logDebug("subscribe transactions for " + subscribeMatchId + " = " + transactions);
+			}
+			if (transactions == null) {
+				return retval;
+			}
+			for (SIPClientTransaction ct : transactions) {
 				if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
-					logger.logDebug("ct.fromTag = " + fromTag);
-					logger.logDebug("thisToTag = " + thisToTag);
-					logger.logDebug("hisEvent = " + hisEvent);
-					logger.logDebug("eventHdr " + eventHdr);
 					logger.logDebug("ct.req.contact = " + ct.getOriginalRequestContact());
 					if (ct.getOriginalRequest() != null)
 						logger.logDebug("ct.req.reqURI = " + ct.getOriginalRequest().getRequestURI());
 					logger.logDebug("msg.Contact= " + notifyMessage.getContactHeader());
 					logger.logDebug("msg.reqURI " + notifyMessage.getRequestURI());
-
 				}
 
-				if (fromTag.equalsIgnoreCase(thisToTag) && hisEvent != null && eventHdr.match(hisEvent)
-						&& notifyMessage.getCallId().getCallId().equalsIgnoreCase(ct.getOriginalRequestCallId())) {
-					// if (!this.isDeliverUnsolicitedNotify() ) {
-					// ct.acquireSem();
-					// }
-					if (retval == null) {
-						// take first matching tx, just in case
-						retval = ct;
-					}
-					// https://github.com/RestComm/jain-sip/issues/60
-					// Now check complementary conditions, to override selected ct, and break
-					if ((ct.getOriginalRequest() != null && notifyMessage.getRequestURI()
-							.equals(ct.getOriginalRequest().getContactHeader().getAddress().getURI()))
-							&& (ct.getDefaultDialog() != null || ct.getDialog(dialogId) != null)) {
-						if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
-							logger.logDebug("Tx compl conditions met." + ct);
-						}
-						retval = ct;
-						break;
+				if (retval == null) {
+					// take first matching tx, just in case
+					retval = ct;
+				}
+				// https://github.com/RestComm/jain-sip/issues/60
+				// Now check complementary conditions, to override selected ct, and break
+				if ((ct.getOriginalRequest() != null && notifyMessage.getRequestURI()
+						.equals(ct.getOriginalRequest().getContactHeader().getAddress().getURI()))
+						&& (ct.getDefaultDialog() != null || ct.getDialog(dialogId) != null)) {
+					if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
+						logger.logDebug("Tx compl conditions met." + ct);
 					}
-
+					retval = ct;
+					break;
 				}
 			}
 
@@ -1390,8 +1696,8 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 	}
 
 	/**
-	 * Get the transaction to cancel. Search the server transaction table for a
-	 * transaction that matches the given transaction.
+	 * Get the transaction to cancel. Look up the server or client transaction
+	 * indexed under the cancel match id of the given CANCEL.
 	 */
 	public SIPTransaction findCancelTransaction(SIPRequest cancelRequest, boolean isServer) {
 
@@ -1400,27 +1706,16 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 					"findCancelTransaction request= \n" + cancelRequest + "\nfindCancelRequest isServer=" + isServer);
 		}
 
-		if (isServer) {
-			Iterator<SIPServerTransaction> li = getAllServerTransactions().iterator();
-			while (li.hasNext()) {
-				SIPTransaction transaction = (SIPTransaction) li.next();
-
-				SIPServerTransaction sipServerTransaction = (SIPServerTransaction) transaction;
-				if (sipServerTransaction.doesCancelMatchTransaction(cancelRequest))
-					return sipServerTransaction;
-			}
-
-		} else {
-			Iterator<SIPClientTransaction> li = getAllClientTransactions().iterator();
-			while (li.hasNext()) {
-				SIPTransaction transaction = (SIPTransaction) li.next();
-
-				SIPClientTransaction sipClientTransaction = (SIPClientTransaction) transaction;
-				if (sipClientTransaction.doesCancelMatchTransaction(cancelRequest))
-					return sipClientTransaction;
-
-			}
+		String cancelMatchId = cancelRequest.getCancelMatchId();
+		if (cancelMatchId != null) {
+			SIPTransaction transaction;
+			if (isServer)
+				transaction = serverCancelTable.get(cancelMatchId);
+			else
+				transaction = clientCancelTable.get(cancelMatchId);
 
+			if (transaction != null)
+				return transaction;
 		}
 		if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
 			logger.logDebug("Could not find transaction for cancel request");
@@ -1588,9 +1883,15 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 
 		requestReceived.setMessageChannel(requestMessageChannel);
 
+		final StackMetrics stackMetrics = this.stackMetrics;
+		if (stackMetrics != null) {
+			stackMetrics.countMessage(requestReceived, false);
+		}
+
 		if (sipMessageValves.size() != 0) {
 			// https://java.net/jira/browse/JSIP-511
 			// catching all exceptions so it doesn't make JAIN SIP to fail
+			long valveStart = stackMetrics != null ? System.nanoTime() : 0;
 			try {
 				for (SIPMessageValve sipMessageValve : this.sipMessageValves) {
 					if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
@@ -1610,9 +1911,14 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 							+ " thus the message will not be processed further", e);
 				}
 				return null;
+			} finally {
+				if (stackMetrics != null) {
+					stackMetrics.record(MetricStage.VALVE, valveStart);
+				}
 			}
 		}
 
+		long matchStart = stackMetrics != null ? System.nanoTime() : 0;
 		// Transaction to handle this request
 		SIPServerTransaction currentTransaction = (SIPServerTransaction) findTransaction(key, true);
 
@@ -1642,6 +1948,9 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 				if (currentTransaction != null) {
 					// Associate the tx with the received request.
 					requestReceived.setTransaction(currentTransaction);
+					if (stackMetrics != null) {
+						stackMetrics.record(MetricStage.TRANSACTION_MATCH, matchStart);
+					}
 					// if (currentTransaction.acquireSem())
 					return currentTransaction;
 					// else
@@ -1664,6 +1973,9 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 			}
 
 		}
+		if (stackMetrics != null) {
+			stackMetrics.record(MetricStage.TRANSACTION_MATCH, matchStart);
+		}
 
 		// Set ths transaction's encapsulated request
 		// interface from the superclass
@@ -1725,9 +2037,15 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 		// Transaction to handle this request
 		SIPClientTransaction currentTransaction;
 
+		final StackMetrics stackMetrics = this.stackMetrics;
+		if (stackMetrics != null) {
+			stackMetrics.countMessage(responseReceived, false);
+		}
+
 		if (sipMessageValves.size() != 0) {
 			// https://java.net/jira/browse/JSIP-511
 			// catching all exceptions so it doesn't make JAIN SIP to fail
+			long valveStart = stackMetrics != null ? System.nanoTime() : 0;
 			try {
 				for (SIPMessageValve sipMessageValve : this.sipMessageValves) {
 					if (!sipMessageValve.processResponse(responseReceived, responseMessageChannel)) {
@@ -1744,9 +2062,14 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 							+ " thus the message will not be processed further", e);
 				}
 				return null;
+			} finally {
+				if (stackMetrics != null) {
+					stackMetrics.record(MetricStage.VALVE, valveStart);
+				}
 			}
 		}
 
+		long matchStart = stackMetrics != null ? System.nanoTime() : 0;
 		String key = responseReceived.getTransactionId();
 
 		// Note that for RFC 3261 compliant operation, this lookup will
@@ -1775,6 +2098,9 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 
 			}
 
+			if (stackMetrics != null) {
+				stackMetrics.record(MetricStage.TRANSACTION_MATCH, matchStart);
+			}
 			// If no transaction exists to handle this message,
 			if (currentTransaction == null) {
 				// JvB: Need to log before passing the response to the client
@@ -1789,6 +2115,8 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 				return sipMessageFactory.newSIPServerResponse(responseReceived, responseMessageChannel);
 
 			}
+		} else if (stackMetrics != null) {
+			stackMetrics.record(MetricStage.TRANSACTION_MATCH, matchStart);
 		}
 
 		if (currentTransaction != null && currentTransaction.getMessageChannel() == null) {
@@ -2108,10 +2436,118 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 		// http://java.net/jira/browse/JSIP-420
 		if (existingTx == null) {
 			sipTransaction.scheduleMaxTxLifeTimeTimer();
+			addTransactionIndexes(sipTransaction);
 		}
 		return existingTx;
 	}
 
+	/**
+	 * Indexes the transaction for findCancelTransaction and, for a client
+	 * SUBSCRIBE, findSubscribeTransaction. The first transaction stored under a
+	 * cancel match id is kept, as for the transaction tables.
+	 */
+	private void addTransactionIndexes(SIPTransaction sipTransaction) {
+		String cancelMatchId = sipTransaction.getCancelMatchId();
+		if (sipTransaction instanceof SIPServerTransaction) {
+			if (cancelMatchId != null)
+				serverCancelTable.putIfAbsent(cancelMatchId, (SIPServerTransaction) sipTransaction);
+			return;
+		}
+
+		SIPClientTransaction clientTransaction = (SIPClientTransaction) sipTransaction;
+		if (cancelMatchId != null)
+			clientCancelTable.putIfAbsent(cancelMatchId, clientTransaction);
+
+		addSubscribeIndex(clientTransaction, clientTransaction.getSubscribeMatchId());
+	}
+
+	private void addSubscribeIndex(SIPClientTransaction clientTransaction, String subscribeMatchId) {
+		while (subscribeMatchId != null) {
+			List<SIPClientTransaction> transactions = subscribeTransactionTable.get(subscribeMatchId);
+			if (transactions == null) {
+				transactions = new CopyOnWriteArrayList<SIPClientTransaction>();
+				List<SIPClientTransaction> existing = subscribeTransactionTable.putIfAbsent(subscribeMatchId,
+						transactions);
+				if (existing != null)
+					transactions = existing;
+			}
+			synchronized (transactions) {
+				// retry if the list was emptied and dropped meanwhile
+				if (subscribeTransactionTable.get(subscribeMatchId) == transactions) {
+					if (!transactions.contains(clientTransaction))
+						transactions.add(clientTransaction);
+					return;
+				}
+			}
+		}
+	}
+
+	private void removeTransactionIndexes(SIPTransaction sipTransaction) {
+		String cancelMatchId = sipTransaction.getCancelMatchId();
+		if (sipTransaction instanceof SIPServerTransaction) {
+			if (cancelMatchId != null)
+				serverCancelTable.remove(cancelMatchId, sipTransaction);
+			return;
+		}
+
+		SIPClientTransaction clientTransaction = (SIPClientTransaction) sipTransaction;
+		if (cancelMatchId != null)
+			clientCancelTable.remove(cancelMatchId, clientTransaction);
+
+		removeSubscribeIndex(clientTransaction, clientTransaction.getSubscribeMatchId());
+	}
+
+	private void removeSubscribeIndex(SIPClientTransaction clientTransaction, String subscribeMatchId) {
+		if (subscribeMatchId == null)
+			return;
+
+		List<SIPClientTransaction> transactions = subscribeTransactionTable.get(subscribeMatchId);
+		if (transactions == null)
+			return;
+
+		synchronized (transactions) {
+			transactions.remove(clientTransaction);
+			if (transactions.isEmpty())
+				subscribeTransactionTable.remove(subscribeMatchId, transactions);
+		}
+	}
+
+	/**
+	 * Moves a client SUBSCRIBE transaction of the transaction table to its new
+	 * subscribe match id. The application may set or change the Event header
+	 * after the transaction was created, the transaction calls this once the
+	 * request is about to be sent.
+	 *
+	 * @param clientTransaction     -- the transaction whose match id changed.
+	 * @param oldSubscribeMatchId   -- the id it was indexed under, if any.
+	 */
+	protected void subscribeMatchIdChanged(SIPClientTransaction clientTransaction, String oldSubscribeMatchId) {
+		removeSubscribeIndex(clientTransaction, oldSubscribeMatchId);
+		if (clientTransactionTable.get(clientTransaction.getTransactionId()) == clientTransaction)
+			addSubscribeIndex(clientTransaction, clientTransaction.getSubscribeMatchId());
+	}
+
+	/**
+	 * Generates the id matching a NOTIFY to the client SUBSCRIBE transaction that
+	 * created the subscription: the Call-ID, the From tag of the SUBSCRIBE which
+	 * is the To tag of the NOTIFY, and the Event type and id, all compared
+	 * ignoring case as Event.match does.
+	 *
+	 * @return the id, or null if a part is missing.
+	 */
+	public static String getSubscribeMatchId(String callId, String tag, Event event) {
+		if (callId == null || tag == null || event == null || event.getEventType() == null) {
+			return null;
+		}
+		StringBuilder subscribeMatchId = new StringBuilder(callId.toLowerCase()).append(":")
+				.append(tag.toLowerCase()).append(":").append(event.getEventType().toLowerCase());
+		String eventId = event.getEventId();
+		if (eventId != null) {
+			subscribeMatchId.append(";id=").append(eventId.toLowerCase());
+		}
+		return subscribeMatchId.toString();
+	}
+
 	protected SIPTransaction storeTransaction(String key, SIPTransaction sipTransaction, boolean isServer) {
 		try {
 			if (isServer) {
@@ -2182,6 +2618,9 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 		} else {
 			sipTransaction = clientTransactionTable.remove(transactionId);
 		}
+		if (sipTransaction != null) {
+			removeTransactionIndexes(sipTransaction);
+		}
 		if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
 			logger.logDebug("REMOVED tx " + sipTransaction + " KEY = " + transactionId + " isServer = " + isServer);
 		}
@@ -2257,6 +2696,17 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 		closeAllSockets();
 		// Let the processing complete.
 
+		DialogStoreWriter writer = this.dialogStoreWriter;
+		this.dialogStoreWriter = null;
+		if (writer != null && this.timer != null) {
+			this.timer.cancel(writer);
+		}
+		flushDialogs();
+		IdleConnectionReaper reaper = this.idleConnectionReaper;
+		this.idleConnectionReaper = null;
+		if (reaper != null && this.timer != null) {
+			this.timer.cancel(reaper);
+		}
 		if (this.timer != null) {
 			this.timer.stop();
 		}
@@ -2266,8 +2716,20 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 		}
 		this.clientTransactionTable.clear();
 		this.serverTransactionTable.clear();
+		this.clientCancelTable.clear();
+		this.serverCancelTable.clear();
+		this.subscribeTransactionTable.clear();
 
 		this.dialogTable.clear();
+		for (Set<SIPDialog> stateDialogSet : this.stateDialogSets) {
+			stateDialogSet.clear();
+		}
+		if (this.dialogStore != null) {
+			this.dialogStore.destroy();
+		}
+		if (this.stackMetrics != null) {
+			this.stackMetrics.unregister();
+		}
 		this.serverLogger.closeLogFile();
 	}
 
@@ -2905,6 +3367,36 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 		return activeClientTransactionCount.get();
 	}
 
+	/**
+	 * This method is called when a transaction retransmits the encoded bytes of
+	 * its last message instead of encoding it again.
+	 *
+	 */
+	protected void incrementCachedRetransmissions(int length) {
+		this.cachedRetransmissionCount.incrementAndGet();
+		this.cachedRetransmissionBytes.addAndGet(length);
+	}
+
+	/**
+	 * Get the count of retransmissions written from the encoded bytes cached by
+	 * the transactions.
+	 *
+	 * @return the cachedRetransmissionCount
+	 */
+	public long getCachedRetransmissionCount() {
+		return cachedRetransmissionCount.get();
+	}
+
+	/**
+	 * Get the amount of bytes retransmitted from the encoded messages cached by
+	 * the transactions.
+	 *
+	 * @return the cachedRetransmissionBytes
+	 */
+	public long getCachedRetransmissionBytes() {
+		return cachedRetransmissionBytes.get();
+	}
+
 	public boolean isCancelClientTransactionChecked() {
 		return this.cancelClientTransactionChecked;
 	}
@@ -2935,17 +3427,26 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 		HashSet<Dialog> matchingDialogs = new HashSet<Dialog>();
 		if (DialogState.EARLY.equals(state)) {
 			matchingDialogs.addAll(this.earlyDialogTable.values());
-		} else {
-			Collection<SIPDialog> dialogs = dialogTable.values();
-			for (SIPDialog dialog : dialogs) {
-				if (dialog.getState() != null && dialog.getState().equals(state)) {
-					matchingDialogs.add(dialog);
-				}
-			}
+		} else if (state != null) {
+			matchingDialogs.addAll(stateDialogSets[state.getValue()]);
 		}
 		return matchingDialogs;
 	}
 
+	/**
+	 *
+	 * @return -- the number of dialogs matching the state that is being managed
+	 *         by the stack, without copying them.
+	 */
+	public int getDialogCount(DialogState state) {
+		if (DialogState.EARLY.equals(state)) {
+			return this.earlyDialogTable.size();
+		} else if (state != null) {
+			return stateDialogSets[state.getValue()].size();
+		}
+		return 0;
+	}
+
 	/**
 	 * Get the Replaced Dialog from the stack.
 	 *
@@ -2957,32 +3458,13 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 		String fromTag = replacesHeader.getFromTag();
 		String toTag = replacesHeader.getToTag();
 
-		for (SIPDialog dialog : this.dialogTable.values()) {
-			if (dialog.getCallId().getCallId().equals(cid) && fromTag.equalsIgnoreCase(dialog.lastResponseFromTag)
-					&& toTag.equalsIgnoreCase(dialog.lastResponseToTag)) {
-				return dialog;
-			}
-		}
-
-		StringBuilder dialogId = new StringBuilder(cid);
-
-		// retval.append(COLON).append(to.getUserAtHostPort());
-		if (toTag != null) {
-			dialogId.append(":");
-			dialogId.append(toTag);
-		}
-		// retval.append(COLON).append(from.getUserAtHostPort());
-		if (fromTag != null) {
-			dialogId.append(":");
-			dialogId.append(fromTag);
-		}
-		String did = dialogId.toString().toLowerCase();
+		String did = getDialogId(cid, toTag, fromTag);
 		if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
 			logger.logDebug("Looking for dialog " + did);
 		/*
 		 * Check if we can find this dialog in our dialog table.
 		 */
-		Dialog replacesDialog = getDialog(did);
+		Dialog replacesDialog = findDialog(cid, fromTag, toTag);
 		/*
 		 * This could be a forked dialog. Search for it.
 		 */
@@ -3004,23 +3486,39 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 	 * @param joinHeader -- the header that references the dialog being joined.
 	 */
 	public Dialog getJoinDialog(JoinHeader joinHeader) {
-		String cid = joinHeader.getCallId();
-		String fromTag = joinHeader.getFromTag();
-		String toTag = joinHeader.getToTag();
+		return findDialog(joinHeader.getCallId(), joinHeader.getFromTag(), joinHeader.getToTag());
+	}
 
-		StringBuilder retval = new StringBuilder(cid);
+	/**
+	 * Find the dialog referenced by the Call-ID, from-tag and to-tag of a
+	 * Replaces or Join header. The dialog table is keyed by Call-ID, local tag
+	 * and remote tag, so the to-tag is first looked up as the local tag, as the
+	 * RFCs define it, then as the remote tag for the dialogs whose last response
+	 * carries the tags the other way round.
+	 */
+	private SIPDialog findDialog(String cid, String fromTag, String toTag) {
+		SIPDialog dialog = getDialog(getDialogId(cid, toTag, fromTag));
+		if (dialog == null && fromTag != null && toTag != null) {
+			dialog = getDialog(getDialogId(cid, fromTag, toTag));
+			if (dialog != null && !(fromTag.equalsIgnoreCase(dialog.lastResponseFromTag)
+					&& toTag.equalsIgnoreCase(dialog.lastResponseToTag))) {
+				dialog = null;
+			}
+		}
+		return dialog;
+	}
 
-		// retval.append(COLON).append(to.getUserAtHostPort());
-		if (toTag != null) {
-			retval.append(":");
-			retval.append(toTag);
+	private static String getDialogId(String cid, String localTag, String remoteTag) {
+		StringBuilder dialogId = new StringBuilder(cid);
+		if (localTag != null) {
+			dialogId.append(":");
+			dialogId.append(localTag);
 		}
-		// retval.append(COLON).append(from.getUserAtHostPort());
-		if (fromTag != null) {
-			retval.append(":");
-			retval.append(fromTag);
+		if (remoteTag != null) {
+			dialogId.append(":");
+			dialogId.append(remoteTag);
 		}
-		return getDialog(retval.toString().toLowerCase());
+		return dialogId.toString().toLowerCase();
 	}
 
 	/**
@@ -3407,6 +3905,37 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 		this.reliableConnectionKeepAliveTimeout = reliableConnectionKeepAliveTimeout;
 	}
 
+	public long getReliableConnectionKeepAlivePingInterval() {
+		return reliableConnectionKeepAlivePingInterval;
+	}
+
+	public void setReliableConnectionKeepAlivePingInterval(long reliableConnectionKeepAlivePingInterval) {
+		if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
+			logger.logDebug("value " + reliableConnectionKeepAlivePingInterval
+					+ " will be used for reliableConnectionKeepAlivePingInterval stack property");
+		}
+		this.reliableConnectionKeepAlivePingInterval = reliableConnectionKeepAlivePingInterval;
+	}
+
+	/**
+	 * @return the reaper of the reliable connections, scheduled on the stack
+	 *         timer the first time a connection asks to be tracked
+	 */
+	public IdleConnectionReaper getIdleConnectionReaper() {
+		IdleConnectionReaper reaper = idleConnectionReaper;
+		if (reaper == null) {
+			synchronized (this) {
+				reaper = idleConnectionReaper;
+				if (reaper == null) {
+					reaper = new IdleConnectionReaper(this);
+					getTimer().scheduleWithFixedDelay(reaper, reaper.getTick(), reaper.getTick());
+					idleConnectionReaper = reaper;
+				}
+			}
+		}
+		return reaper;
+	}
+
 	public MessageProcessor findMessageProcessor(String address, int port, String transport) {
 		String key = address.concat(":").concat("" + port).concat("/").concat(transport).toLowerCase();
 		return messageProcessors.get(key);
@@ -3628,6 +4157,18 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 		return computeContentLengthFromMessage;
 	}
 
+	public boolean isNettyParserByteScanning() {
+		return nettyParserByteScanning;
+	}
+
+	public boolean isLazyHeaderParsing() {
+		return lazyHeaderParsing;
+	}
+
+	public boolean isNettyDirectBuffers() {
+		return nettyDirectBuffers;
+	}
+
 	public SecurityManagerProvider getSecurityManagerProvider() {
 		return securityManagerProvider;
 	}
@@ -0,0 +1,88 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.stack.metrics;
+
+/**
+ * Latencies of a stage merged from the histograms of all the threads that
+ * recorded it, at the time the snapshot was taken.
+ */
+public class LatencySnapshot {
+	private final long[] buckets = new long[StageHistogram.BUCKETS];
+
+	private long count;
+
+	private long sum;
+
+	private long max;
+
+	void add(StageHistogram histogram) {
+		long[] totals = new long[] { count, sum, max };
+		histogram.addTo(buckets, totals);
+		count = totals[0];
+		sum = totals[1];
+		max = totals[2];
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the highest latency recorded, in nanoseconds
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * @return the mean latency in nanoseconds, 0 if none was recorded
+	 */
+	public double getMean() {
+		return count == 0 ? 0 : (double) sum / count;
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the latency in nanoseconds below which the given percentage of
+	 *         the recorded latencies are, 0 if none was recorded
+	 */
+	public long getPercentile(double percentile) {
+		long total = 0;
+		for (long bucket : buckets)
+			total += bucket;
+
+		if (total == 0)
+			return 0;
+
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < buckets.length; i++) {
+			seen += buckets[i];
+			if (seen >= rank)
+				return Math.min(StageHistogram.getHighestValue(i), max);
+		}
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + count + " mean=" + (long) getMean() + "ns p50=" + getPercentile(50) + "ns p99="
+				+ getPercentile(99) + "ns p99.9=" + getPercentile(99.9) + "ns max=" + max + "ns";
+	}
+}
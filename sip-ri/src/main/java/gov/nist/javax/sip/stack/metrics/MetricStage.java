@@ -0,0 +1,61 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.stack.metrics;
+
+/**
+ * The stages of the message pipeline timed by {@link StackMetrics}.
+ */
+public enum MetricStage {
+	/**
+	 * Time a received message waited in the executor queue before a worker
+	 * picked it up, measured from the reception time of the task with a
+	 * millisecond resolution.
+	 */
+	QUEUE_DELAY,
+	/**
+	 * Parsing of the received bytes into a message.
+	 */
+	DECODE,
+	/**
+	 * The configured SIP message valves.
+	 */
+	VALVE,
+	/**
+	 * Lookup, or creation, of the transaction a received message belongs to.
+	 */
+	TRANSACTION_MATCH,
+	/**
+	 * Transaction and dialog layer processing of a received message. When the
+	 * listener is called on the same thread its time is included, see
+	 * {@link #LISTENER}.
+	 */
+	DIALOG,
+	/**
+	 * Time spent in the application SipListener for requests and responses.
+	 */
+	LISTENER,
+	/**
+	 * Encoding of an outgoing message.
+	 */
+	ENCODE,
+	/**
+	 * Handing the encoded message to the transport.
+	 */
+	SEND
+}
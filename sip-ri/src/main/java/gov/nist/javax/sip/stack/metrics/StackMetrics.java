@@ -0,0 +1,389 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.stack.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.sip.message.Request;
+
+import gov.nist.core.CommonLogger;
+import gov.nist.core.LogWriter;
+import gov.nist.core.StackLogger;
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import gov.nist.javax.sip.stack.ByteBufferFactory;
+import gov.nist.javax.sip.stack.ByteBufferPool;
+
+/**
+ * Latency histograms of the pipeline stages and message counters of a stack,
+ * enabled with gov.nist.javax.sip.STACK_METRICS=true. It replaces the
+ * CallAnalyzer, which kept boxed values in maps shared by all the threads.
+ *
+ * The histograms and counters are striped over a fixed number of recorders,
+ * twice the number of processors rounded up to a power of two and at most 64,
+ * and a thread records into the stripe picked by its id. Recording only
+ * contends with the other threads of the same stripe, and the memory does not
+ * grow with the number of threads, which may be a virtual thread per event.
+ * The stripes are merged when they are read, from this class or through JMX,
+ * see {@link StackMetricsMBean}.
+ *
+ * Callers take the start of a stage from System.nanoTime() and hand it to
+ * {@link #record(MetricStage, long)} once the stage is done.
+ */
+public class StackMetrics implements StackMetricsMBean {
+	private static StackLogger logger = CommonLogger.getLogger(StackMetrics.class);
+
+	public static final String OTHER_METHOD = "OTHER";
+
+	public static final String[] METHODS = { Request.INVITE, Request.ACK, Request.BYE, Request.CANCEL,
+			Request.OPTIONS, Request.REGISTER, Request.PRACK, Request.SUBSCRIBE, Request.NOTIFY, Request.PUBLISH,
+			Request.INFO, Request.REFER, Request.MESSAGE, Request.UPDATE, OTHER_METHOD };
+
+	private static final int MIN_STATUS_CODE = 100;
+
+	private static final int STATUS_CODES = 600;
+
+	private static final int RECEIVED_REQUESTS = 0;
+
+	private static final int SENT_REQUESTS = RECEIVED_REQUESTS + METHODS.length;
+
+	private static final int RECEIVED_RESPONSES = SENT_REQUESTS + METHODS.length;
+
+	private static final int SENT_RESPONSES = RECEIVED_RESPONSES + STATUS_CODES;
+
+	private static final int RETRANSMISSIONS = SENT_RESPONSES + STATUS_CODES;
+
+	private static final int TIMER_FIRES = RETRANSMISSIONS + 1;
+
+	private static final int IDLE_CLOSES = TIMER_FIRES + 1;
+
+	private static final int KEEPALIVE_TIMEOUTS = IDLE_CLOSES + 1;
+
+	private static final int COUNTERS = KEEPALIVE_TIMEOUTS + 1;
+
+	private static final MetricStage[] STAGES = MetricStage.values();
+
+	private static final class Recorder {
+		private final StageHistogram[] histograms = new StageHistogram[STAGES.length];
+
+		private final AtomicLongArray counters = new AtomicLongArray(COUNTERS);
+
+		private Recorder() {
+			for (int i = 0; i < histograms.length; i++)
+				histograms[i] = new StageHistogram();
+		}
+
+		private void increment(int index) {
+			counters.incrementAndGet(index);
+		}
+	}
+
+	// a recorder takes about 80KB
+	private static final int MAX_STRIPES = 64;
+
+	private final Recorder[] recorders;
+
+	private final int stripeMask;
+
+	public StackMetrics() {
+		int stripes = 1;
+		while (stripes < 2 * Runtime.getRuntime().availableProcessors() && stripes < MAX_STRIPES)
+			stripes <<= 1;
+
+		recorders = new Recorder[stripes];
+		for (int i = 0; i < stripes; i++)
+			recorders[i] = new Recorder();
+
+		stripeMask = stripes - 1;
+	}
+
+	int getStripeCount() {
+		return recorders.length;
+	}
+
+	private Recorder recorder() {
+		// thread ids are handed out in sequence, so the threads spread evenly
+		return recorders[(int) Thread.currentThread().getId() & stripeMask];
+	}
+
+	private ObjectName objectName;
+
+	/**
+	 * Records the time elapsed since the start of the stage.
+	 *
+	 * @param startNanos the value of System.nanoTime() when the stage started
+	 */
+	public void record(MetricStage stage, long startNanos) {
+		recordValue(stage, System.nanoTime() - startNanos);
+	}
+
+	public void recordValue(MetricStage stage, long nanos) {
+		recorder().histograms[stage.ordinal()].record(nanos);
+	}
+
+	/**
+	 * Records the time a task waited in an executor queue.
+	 *
+	 * @param receptionTime the time in milliseconds the task was created at
+	 */
+	public void recordQueueDelay(long receptionTime) {
+		recordValue(MetricStage.QUEUE_DELAY,
+				TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - receptionTime));
+	}
+
+	/**
+	 * Counts a request by method or a response by status code.
+	 *
+	 * @param sent true for an outgoing message, false for a received one
+	 */
+	public void countMessage(SIPMessage message, boolean sent) {
+		if (message instanceof SIPRequest) {
+			String method = ((SIPRequest) message).getMethod();
+			if (method != null)
+				recorder().increment((sent ? SENT_REQUESTS : RECEIVED_REQUESTS) + getMethodIndex(method));
+		} else if (message instanceof SIPResponse) {
+			int index = ((SIPResponse) message).getStatusCode() - MIN_STATUS_CODE;
+			if (index >= 0 && index < STATUS_CODES)
+				recorder().increment((sent ? SENT_RESPONSES : RECEIVED_RESPONSES) + index);
+		}
+	}
+
+	public void countRetransmission() {
+		recorder().increment(RETRANSMISSIONS);
+	}
+
+	public void countTimerFire() {
+		recorder().increment(TIMER_FIRES);
+	}
+
+	public void countIdleClose() {
+		recorder().increment(IDLE_CLOSES);
+	}
+
+	public void countKeepAliveTimeout() {
+		recorder().increment(KEEPALIVE_TIMEOUTS);
+	}
+
+	/**
+	 * @return the latencies of the stage merged over all the threads
+	 */
+	public LatencySnapshot getLatencies(MetricStage stage) {
+		LatencySnapshot snapshot = new LatencySnapshot();
+		for (Recorder recorder : recorders)
+			snapshot.add(recorder.histograms[stage.ordinal()]);
+
+		return snapshot;
+	}
+
+	private long getCounter(int index) {
+		long total = 0;
+		for (Recorder recorder : recorders)
+			total += recorder.counters.get(index);
+
+		return total;
+	}
+
+	private static int getMethodIndex(String method) {
+		switch (method) {
+		case Request.INVITE:
+			return 0;
+		case Request.ACK:
+			return 1;
+		case Request.BYE:
+			return 2;
+		case Request.CANCEL:
+			return 3;
+		case Request.OPTIONS:
+			return 4;
+		case Request.REGISTER:
+			return 5;
+		case Request.PRACK:
+			return 6;
+		case Request.SUBSCRIBE:
+			return 7;
+		case Request.NOTIFY:
+			return 8;
+		case Request.PUBLISH:
+			return 9;
+		case Request.INFO:
+			return 10;
+		case Request.REFER:
+			return 11;
+		case Request.MESSAGE:
+			return 12;
+		case Request.UPDATE:
+			return 13;
+		default:
+			return METHODS.length - 1;
+		}
+	}
+
+	private static int getStatusIndex(int statusCode) {
+		int index = statusCode - MIN_STATUS_CODE;
+		if (index < 0 || index >= STATUS_CODES)
+			throw new IllegalArgumentException("Invalid status code " + statusCode);
+
+		return index;
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server.
+	 */
+	public void register(String stackName) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(
+					"gov.nist.javax.sip:type=StackMetrics,name=" + ObjectName.quote(String.valueOf(stackName)));
+			if (server.isRegistered(name))
+				server.unregisterMBean(name);
+
+			server.registerMBean(this, name);
+			objectName = name;
+		} catch (Exception e) {
+			if (logger.isLoggingEnabled(LogWriter.TRACE_WARN))
+				logger.logWarning("Could not register the stack metrics MBean " + e.getMessage());
+		}
+	}
+
+	public void unregister() {
+		if (objectName == null)
+			return;
+
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (Exception e) {
+			if (logger.isLoggingEnabled(LogWriter.TRACE_WARN))
+				logger.logWarning("Could not unregister the stack metrics MBean " + e.getMessage());
+		}
+		objectName = null;
+	}
+
+	@Override
+	public String[] getStages() {
+		String[] stages = new String[STAGES.length];
+		for (int i = 0; i < STAGES.length; i++)
+			stages[i] = STAGES[i].name();
+
+		return stages;
+	}
+
+	@Override
+	public long getStageCount(String stage) {
+		return getLatencies(MetricStage.valueOf(stage)).getCount();
+	}
+
+	@Override
+	public double getStageMean(String stage) {
+		return getLatencies(MetricStage.valueOf(stage)).getMean();
+	}
+
+	@Override
+	public long getStageMax(String stage) {
+		return getLatencies(MetricStage.valueOf(stage)).getMax();
+	}
+
+	@Override
+	public long getStagePercentile(String stage, double percentile) {
+		return getLatencies(MetricStage.valueOf(stage)).getPercentile(percentile);
+	}
+
+	@Override
+	public long getReceivedRequests(String method) {
+		return getCounter(RECEIVED_REQUESTS + getMethodIndex(method));
+	}
+
+	@Override
+	public long getSentRequests(String method) {
+		return getCounter(SENT_REQUESTS + getMethodIndex(method));
+	}
+
+	@Override
+	public long getReceivedResponses(int statusCode) {
+		return getCounter(RECEIVED_RESPONSES + getStatusIndex(statusCode));
+	}
+
+	@Override
+	public long getSentResponses(int statusCode) {
+		return getCounter(SENT_RESPONSES + getStatusIndex(statusCode));
+	}
+
+	@Override
+	public long getRetransmissions() {
+		return getCounter(RETRANSMISSIONS);
+	}
+
+	@Override
+	public long getTimerFires() {
+		return getCounter(TIMER_FIRES);
+	}
+
+	@Override
+	public long getIdleClosedConnections() {
+		return getCounter(IDLE_CLOSES);
+	}
+
+	@Override
+	public long getKeepAliveTimeouts() {
+		return getCounter(KEEPALIVE_TIMEOUTS);
+	}
+
+	@Override
+	public long getBufferPoolHits() {
+		return ByteBufferFactory.getInstance().getPool().getHits();
+	}
+
+	@Override
+	public long getBufferPoolMisses() {
+		ByteBufferPool pool = ByteBufferFactory.getInstance().getPool();
+		return pool.getMisses() + pool.getUnpooled();
+	}
+
+	@Override
+	public String printMetrics() {
+		StringBuilder builder = new StringBuilder();
+		for (MetricStage stage : STAGES)
+			builder.append(stage.name()).append(": ").append(getLatencies(stage)).append('\n');
+
+		for (String method : METHODS) {
+			long received = getReceivedRequests(method);
+			long sent = getSentRequests(method);
+			if (received > 0 || sent > 0)
+				builder.append(method).append(": received=").append(received).append(" sent=").append(sent)
+						.append('\n');
+		}
+		for (int statusCode = MIN_STATUS_CODE; statusCode < MIN_STATUS_CODE + STATUS_CODES; statusCode++) {
+			long received = getReceivedResponses(statusCode);
+			long sent = getSentResponses(statusCode);
+			if (received > 0 || sent > 0)
+				builder.append(statusCode).append(": received=").append(received).append(" sent=").append(sent)
+						.append('\n');
+		}
+		builder.append("retransmissions: ").append(getRetransmissions()).append('\n');
+		builder.append("timer fires: ").append(getTimerFires()).append('\n');
+		builder.append("idle closed connections: ").append(getIdleClosedConnections()).append('\n');
+		builder.append("keep alive timeouts: ").append(getKeepAliveTimeouts()).append('\n');
+		builder.append("buffer pool: ").append(ByteBufferFactory.getInstance().getPool()).append('\n');
+		return builder.toString();
+	}
+}
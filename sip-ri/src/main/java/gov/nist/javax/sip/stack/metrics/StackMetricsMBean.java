@@ -0,0 +1,76 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.stack.metrics;
+
+/**
+ * JMX view of the {@link StackMetrics} of a stack, registered as
+ * gov.nist.javax.sip:type=StackMetrics,name=&lt;stack name&gt;. Latencies
+ * are in nanoseconds.
+ */
+public interface StackMetricsMBean {
+	String[] getStages();
+
+	long getStageCount(String stage);
+
+	double getStageMean(String stage);
+
+	long getStageMax(String stage);
+
+	long getStagePercentile(String stage, double percentile);
+
+	long getReceivedRequests(String method);
+
+	long getSentRequests(String method);
+
+	long getReceivedResponses(int statusCode);
+
+	long getSentResponses(int statusCode);
+
+	long getRetransmissions();
+
+	long getTimerFires();
+
+	/**
+	 * @return reliable connections closed after the max idle time without
+	 *         activity
+	 */
+	long getIdleClosedConnections();
+
+	/**
+	 * @return reliable connections closed because the RFC 5626 keep alive was
+	 *         not received in time
+	 */
+	long getKeepAliveTimeouts();
+
+	/**
+	 * @return buffers of the transports served by the pool, shared by all the
+	 *         stacks of the JVM
+	 */
+	long getBufferPoolHits();
+
+	/**
+	 * @return buffers of the transports allocated because the pool had none
+	 */
+	long getBufferPoolMisses();
+
+	/**
+	 * @return a line per stage and per non zero counter
+	 */
+	String printMetrics();
+}
@@ -0,0 +1,103 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.stack.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear latency histogram in nanoseconds, written by the threads of a
+ * stripe of the StackMetrics.
+ * Values below 64 are counted exactly, larger ones in buckets of 32 per power
+ * of two, so that any value is known within about 3%. Values above about 137
+ * seconds are counted in the last bucket.
+ *
+ * Writers update the counts atomically, readers see them without locking and
+ * merge the histograms of all the stripes through {@link LatencySnapshot}.
+ */
+public class StageHistogram {
+	static final int SUB_BUCKET_BITS = 5;
+
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	static final int LINEAR_BUCKETS = 2 * SUB_BUCKETS;
+
+	static final int MAX_MAGNITUDE = 36;
+
+	static final int BUCKETS = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	static final int SUM = BUCKETS;
+
+	static final int MAX = BUCKETS + 1;
+
+	static final int COUNT = BUCKETS + 2;
+
+	// buckets followed by the sum, max and count
+	private final AtomicLongArray values = new AtomicLongArray(BUCKETS + 3);
+
+	/**
+	 * Records a latency.
+	 *
+	 * @param nanos the latency, negative values are recorded as 0
+	 */
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+
+		values.incrementAndGet(getIndex(nanos));
+		values.addAndGet(SUM, nanos);
+		long max = values.get(MAX);
+		while (nanos > max && !values.compareAndSet(MAX, max, nanos))
+			max = values.get(MAX);
+
+		values.incrementAndGet(COUNT);
+	}
+
+	public long getCount() {
+		return values.get(COUNT);
+	}
+
+	void addTo(long[] buckets, long[] totals) {
+		for (int i = 0; i < BUCKETS; i++)
+			buckets[i] += values.get(i);
+
+		totals[0] += values.get(COUNT);
+		totals[1] += values.get(SUM);
+		totals[2] = Math.max(totals[2], values.get(MAX));
+	}
+
+	static int getIndex(long value) {
+		if (value < LINEAR_BUCKETS)
+			return (int) value;
+
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		if (shift > MAX_MAGNITUDE - SUB_BUCKET_BITS)
+			return BUCKETS - 1;
+
+		return shift * SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+	static long getHighestValue(int index) {
+		if (index < LINEAR_BUCKETS)
+			return index;
+
+		int shift = index / SUB_BUCKETS - 1;
+		long mantissa = index - shift * SUB_BUCKETS;
+		return ((mantissa + 1) << shift) - 1;
+	}
+}
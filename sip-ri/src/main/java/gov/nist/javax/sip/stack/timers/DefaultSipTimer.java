@@ -32,6 +32,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import gov.nist.core.CommonLogger;
 import gov.nist.core.StackLogger;
 import gov.nist.javax.sip.SipStackImpl;
+import gov.nist.javax.sip.stack.metrics.StackMetrics;
 
 /**
  * Default SIP Timer implementation based on java.util.Timer 
@@ -62,6 +63,10 @@ public class DefaultSipTimer extends Timer implements SipTimer {
 				 // task can be null if it has been cancelled
 				 if(task != null) {
 					 Thread.currentThread().setName(((SIPStackTimerTask)task).getTaskName());
+					 StackMetrics stackMetrics = sipStackImpl.getStackMetrics();
+					 if (stackMetrics != null) {
+						 stackMetrics.countTimerFire();
+					 }
 					 task.runTask();					 
 				 }
 	        } catch (Exception e) {
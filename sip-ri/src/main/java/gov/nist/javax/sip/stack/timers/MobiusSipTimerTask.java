@@ -24,6 +24,7 @@ import gov.nist.core.CommonLogger;
 import gov.nist.core.StackLogger;
 import gov.nist.core.executor.MessageProcessorExecutor;
 import gov.nist.core.executor.SIPTimer;
+import gov.nist.javax.sip.stack.metrics.StackMetrics;
 
 public class MobiusSipTimerTask implements SIPTimer {
     private static StackLogger logger = CommonLogger.getLogger(MobiusSipTimerTask.class);
@@ -59,6 +60,10 @@ public class MobiusSipTimerTask implements SIPTimer {
                 // task can be null if it has been cancelled
                 if (task != null) {
                     Thread.currentThread().setName(task.getClass().getName());
+                    StackMetrics stackMetrics = timer.sipStackImpl.getStackMetrics();
+                    if (stackMetrics != null) {
+                        stackMetrics.countTimerFire();
+                    }
                     task.runTask();
                 }
             } catch (Exception e) {
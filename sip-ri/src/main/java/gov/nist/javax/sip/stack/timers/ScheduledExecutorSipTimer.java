@@ -33,6 +33,7 @@ import gov.nist.core.CommonLogger;
 import gov.nist.core.NamingThreadFactory;
 import gov.nist.core.StackLogger;
 import gov.nist.javax.sip.SipStackImpl;
+import gov.nist.javax.sip.stack.metrics.StackMetrics;
 
 /**
  * Implementation of the SIP Timer based on java.util.concurrent.ScheduledThreadPoolExecutor
@@ -153,6 +154,10 @@ public class ScheduledExecutorSipTimer implements SipTimer {
 				 // task can be null if it has been cancelled
 				 if(task != null) {
 					 Thread.currentThread().setName(task.getClass().getName());
+					 StackMetrics stackMetrics = sipStackImpl.getStackMetrics();
+					 if (stackMetrics != null) {
+						 stackMetrics.countTimerFire();
+					 }
 					 task.runTask();
 				 }
 	        } catch (Throwable e) {
@@ -0,0 +1,423 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.stack.timers;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import gov.nist.core.CommonLogger;
+import gov.nist.core.NamingThreadFactory;
+import gov.nist.core.StackLogger;
+import gov.nist.core.executor.SIPTask;
+import gov.nist.core.executor.StackExecutor;
+import gov.nist.javax.sip.SipStackImpl;
+import gov.nist.javax.sip.stack.metrics.StackMetrics;
+
+/**
+ * Implementation of the SIP Timer based on a hierarchical timing wheel.
+ *
+ * The wheel has 4 levels of 512 slots, level 0 slots last one tick and each
+ * level covers 512 times the span of the one below, so 10 ms ticks cover more
+ * than 2 years. Every slot is a doubly linked list of timers, scheduling and
+ * cancelling a timer are O(1) and a cancelled timer is unlinked right away
+ * instead of staying in the timer store until its expiration.
+ *
+ * A single thread advances the wheel every tick, moving the timers of the
+ * upper level slot reached down the wheel, and dispatches the timers expired
+ * during the tick as one batch to the stack executor, each one on the queue of
+ * its id (the Call-ID), so that it runs serialized with the messages of its
+ * call. It works with any StackExecutor.
+ *
+ * The tick duration in milliseconds is read from the
+ * gov.nist.javax.sip.timers.TIMING_WHEEL_TICK property, 10 by default. A timer
+ * never fires before its delay and at most one tick after it.
+ */
+public class TimingWheelSipTimer implements SipTimer {
+	private static StackLogger logger = CommonLogger.getLogger(TimingWheelSipTimer.class);
+
+	public static final long DEFAULT_TICK = 10L;
+
+	private static final int LEVELS = 4;
+	private static final int SLOT_BITS = 9;
+	private static final int SLOTS = 1 << SLOT_BITS;
+	private static final int SLOT_MASK = SLOTS - 1;
+
+	protected SipStackImpl sipStackImpl;
+	private StackExecutor stackExecutor;
+
+	private final WheelTimerTask[][] wheel = new WheelTimerTask[LEVELS][SLOTS];
+	private final Object lock = new Object();
+	// ticks elapsed since the start of the wheel, guarded by the lock
+	private long currentTick;
+	private long startTime;
+	private long tick = DEFAULT_TICK;
+
+	private volatile boolean started = false;
+	private Thread tickThread;
+
+	private final AtomicLong liveTimers = new AtomicLong();
+	private final AtomicLong cancelledTimers = new AtomicLong();
+	private final AtomicLong firedTimers = new AtomicLong();
+
+	public TimingWheelSipTimer() {
+		for (int level = 0; level < LEVELS; level++) {
+			for (int slot = 0; slot < SLOTS; slot++) {
+				// sentinel of the circular list of the slot
+				WheelTimerTask head = new WheelTimerTask(null, 0, -1, null);
+				head.previous = head;
+				head.next = head;
+				wheel[level][slot] = head;
+			}
+		}
+	}
+
+	/**
+	 * Sets the tick duration in milliseconds, has to be called before the timer is started
+	 */
+	public void setTick(long tick) {
+		if (tick <= 0) {
+			throw new IllegalArgumentException("The tick must be positive");
+		}
+		this.tick = tick;
+	}
+
+	public long getTick() {
+		return tick;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.stack.timers.SipTimer#start(gov.nist.javax.sip.SipStackImpl)
+	 */
+	public void start(SipStackImpl sipStack) {
+		sipStackImpl = sipStack;
+		stackExecutor = sipStack.getMessageProcessorExecutor();
+		String tickProperty = sipStack.getConfigurationProperties().getProperty("gov.nist.javax.sip.timers.TIMING_WHEEL_TICK");
+		if (tickProperty != null) {
+			setTick(Long.parseLong(tickProperty));
+		}
+		synchronized (lock) {
+			startTime = System.currentTimeMillis();
+			currentTick = 0;
+		}
+		started = true;
+		tickThread = new NamingThreadFactory("sip_timing_wheel_timer").newThread(new Runnable() {
+			public void run() {
+				runWheel();
+			}
+		});
+		tickThread.start();
+		if(logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
+			logger.logDebug("the sip stack timer " + this.getClass().getName() + " has been started with a tick of " + tick + " ms");
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see gov.nist.javax.sip.stack.timers.SipTimer#stop()
+	 */
+	public void stop() {
+		started = false;
+		if (tickThread != null) {
+			LockSupport.unpark(tickThread);
+		}
+		synchronized (lock) {
+			for (int level = 0; level < LEVELS; level++) {
+				for (int slot = 0; slot < SLOTS; slot++) {
+					WheelTimerTask head = wheel[level][slot];
+					while (head.next != head) {
+						WheelTimerTask timerTask = head.next;
+						timerTask.unlink();
+						timerTask.cancelled = true;
+					}
+				}
+			}
+			liveTimers.set(0);
+		}
+		if(logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
+			logger.logDebug("the sip stack timer " + this.getClass().getName() + " has been stopped");
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see gov.nist.javax.sip.stack.timers.SipTimer#schedule(gov.nist.javax.sip.stack.SIPStackTimerTask, long)
+	 */
+	@Override
+	public boolean schedule(SIPStackTimerTask task, long delay) {
+		return schedule(task, delay, -1);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.stack.timers.SipTimer#scheduleWithFixedDelay(gov.nist.javax.sip.stack.SIPStackTimerTask, long, long)
+	 */
+	@Override
+	public boolean scheduleWithFixedDelay(SIPStackTimerTask task, long delay, long period) {
+		return schedule(task, delay, period);
+	}
+
+	private boolean schedule(SIPStackTimerTask task, long delay, long period) {
+		if (!started) {
+			throw new IllegalStateException("The SIP Stack Timer has been stopped, no new tasks can be scheduled !");
+		}
+		WheelTimerTask timerTask = new WheelTimerTask(task, System.currentTimeMillis() + Math.max(delay, 0), period, task.getTaskName());
+		task.setSipTimerTask(timerTask);
+		if(logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
+			logger.logDebug("Scheduling timer  " + task + " with delay " + delay + " and period " + period);
+		}
+		synchronized (lock) {
+			insert(timerTask, currentTick + 1);
+			liveTimers.incrementAndGet();
+		}
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.stack.timers.SipTimer#cancel(gov.nist.javax.sip.stack.SIPStackTimerTask)
+	 */
+	@Override
+	public boolean cancel(SIPStackTimerTask task) {
+		Object sipTimerTask = task.getSipTimerTask();
+		if (!(sipTimerTask instanceof WheelTimerTask)) {
+			return false;
+		}
+		task.cleanUpBeforeCancel();
+		task.setSipTimerTask(null);
+		WheelTimerTask timerTask = (WheelTimerTask) sipTimerTask;
+		// stops a timer already handed over to the executor as well
+		timerTask.cancelled = true;
+		boolean removed;
+		synchronized (lock) {
+			removed = timerTask.unlink();
+			if (removed) {
+				liveTimers.decrementAndGet();
+			}
+		}
+		if (removed) {
+			cancelledTimers.incrementAndGet();
+		}
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.stack.timers.SipTimer#isStarted()
+	 */
+	public boolean isStarted() {
+		return started;
+	}
+
+	/**
+	 * @return the number of timers waiting in the wheel
+	 */
+	public long getLiveTimers() {
+		return liveTimers.get();
+	}
+
+	/**
+	 * @return the number of timers removed from the wheel by a cancel before they expired
+	 */
+	public long getCancelledTimers() {
+		return cancelledTimers.get();
+	}
+
+	/**
+	 * @return the number of timer executions, each run of a periodic timer counting once
+	 */
+	public long getFiredTimers() {
+		return firedTimers.get();
+	}
+
+	/**
+	 * Links the timer in the slot of its expiration tick, at the lowest level whose span
+	 * still covers it. Has to be called with the lock held.
+	 *
+	 * @param minimumTick the earliest tick whose level 0 slot is still to be collected
+	 */
+	private void insert(WheelTimerTask timerTask, long minimumTick) {
+		// rounded up so that a timer never fires before its expiration time
+		long expirationTick = (timerTask.expirationTime - startTime + tick - 1) / tick;
+		if (expirationTick < minimumTick) {
+			expirationTick = minimumTick;
+		}
+		long remainingTicks = expirationTick - currentTick;
+		int level = 0;
+		while (level < LEVELS - 1 && remainingTicks >= 1L << (SLOT_BITS * (level + 1))) {
+			level++;
+		}
+		int slot = (int) ((expirationTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+		timerTask.linkBefore(wheel[level][slot]);
+	}
+
+	private void runWheel() {
+		ArrayList<WheelTimerTask> expired = new ArrayList<WheelTimerTask>();
+		while (started) {
+			long nextTickTime;
+			synchronized (lock) {
+				nextTickTime = startTime + (currentTick + 1) * tick;
+			}
+			long waitTime = nextTickTime - System.currentTimeMillis();
+			if (waitTime > 0) {
+				LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(waitTime));
+				continue;
+			}
+
+			synchronized (lock) {
+				// catches up with the ticks missed if the thread was late
+				long now = System.currentTimeMillis();
+				while (startTime + (currentTick + 1) * tick <= now) {
+					currentTick++;
+					advance(expired);
+				}
+				liveTimers.addAndGet(-expired.size());
+			}
+
+			if (!expired.isEmpty()) {
+				for (int i = 0; i < expired.size(); i++) {
+					dispatch(expired.get(i));
+				}
+				expired.clear();
+			}
+		}
+	}
+
+	/**
+	 * Cascades the upper level slots reached by the current tick down the wheel,
+	 * from the top level so that timers moved to a lower level slot being cascaded
+	 * are moved again, then collects the timers of the level 0 slot.
+	 */
+	private void advance(ArrayList<WheelTimerTask> expired) {
+		for (int level = LEVELS - 1; level > 0; level--) {
+			if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+				WheelTimerTask head = wheel[level][(int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK)];
+				WheelTimerTask timerTask = head.next;
+				// detached first, insert may link timers back into this slot
+				head.next = head;
+				head.previous = head;
+				while (timerTask != head) {
+					WheelTimerTask next = timerTask.next;
+					timerTask.next = null;
+					timerTask.previous = null;
+					// the current level 0 slot is collected right after the cascade
+					insert(timerTask, currentTick);
+					timerTask = next;
+				}
+			}
+		}
+
+		WheelTimerTask head = wheel[0][(int) (currentTick & SLOT_MASK)];
+		while (head.next != head) {
+			WheelTimerTask timerTask = head.next;
+			timerTask.unlink();
+			expired.add(timerTask);
+		}
+	}
+
+	private void dispatch(WheelTimerTask timerTask) {
+		if (stackExecutor != null) {
+			stackExecutor.addTaskLast(timerTask);
+		} else {
+			timerTask.execute();
+		}
+	}
+
+	private class WheelTimerTask implements SIPTask {
+		private final SIPTimerTask task;
+		private final long period;
+		private final String taskName;
+		private long expirationTime;
+		private long startTime;
+		private volatile boolean cancelled;
+		// links of the slot list, guarded by the lock of the timer
+		private WheelTimerTask previous;
+		private WheelTimerTask next;
+
+		private WheelTimerTask(SIPTimerTask task, long expirationTime, long period, String taskName) {
+			this.task = task;
+			this.expirationTime = expirationTime;
+			this.period = period;
+			this.taskName = taskName;
+			this.startTime = System.currentTimeMillis();
+		}
+
+		private void linkBefore(WheelTimerTask head) {
+			previous = head.previous;
+			next = head;
+			head.previous.next = this;
+			head.previous = this;
+		}
+
+		private boolean unlink() {
+			if (previous == null) {
+				return false;
+			}
+			previous.next = next;
+			next.previous = previous;
+			previous = null;
+			next = null;
+			return true;
+		}
+
+		@Override
+		public void execute() {
+			if (cancelled) {
+				return;
+			}
+			firedTimers.incrementAndGet();
+			StackMetrics stackMetrics = sipStackImpl.getStackMetrics();
+			if (stackMetrics != null) {
+				stackMetrics.countTimerFire();
+			}
+			try {
+				task.runTask();
+			} catch (Exception e) {
+				logger.logError("SIP stack timer task failed due to exception:", e);
+			}
+			if (period > 0 && !cancelled && started) {
+				startTime = System.currentTimeMillis();
+				expirationTime = startTime + period;
+				synchronized (lock) {
+					// cancel may have run while the task was running
+					if (cancelled) {
+						return;
+					}
+					insert(this, currentTick + 1);
+					liveTimers.incrementAndGet();
+				}
+			}
+		}
+
+		@Override
+		public long getStartTime() {
+			return startTime;
+		}
+
+		@Override
+		public String getId() {
+			return task.getId();
+		}
+
+		@Override
+		public String printTaskDetails() {
+			return "Task name: " + taskName + ", id: " + task.getId();
+		}
+	}
+}
@@ -31,7 +31,6 @@ import java.net.InetAddress;
 import java.net.Socket;
 import java.text.ParseException;
 import java.util.Iterator;
-import java.util.concurrent.Semaphore;
 
 import javax.sip.ListeningPoint;
 import javax.sip.SipListener;
@@ -41,7 +40,6 @@ import javax.sip.message.Response;
 import gov.nist.core.CommonLogger;
 import gov.nist.core.InternalErrorHandler;
 import gov.nist.core.LogWriter;
-import gov.nist.core.ServerLogger;
 import gov.nist.core.StackLogger;
 import gov.nist.javax.sip.IOExceptionEventExt;
 import gov.nist.javax.sip.IOExceptionEventExt.Reason;
@@ -62,7 +60,8 @@ import gov.nist.javax.sip.stack.SIPTransactionStack;
 import gov.nist.javax.sip.stack.ServerLog;
 import gov.nist.javax.sip.stack.ServerRequestInterface;
 import gov.nist.javax.sip.stack.ServerResponseInterface;
-import gov.nist.javax.sip.stack.timers.SIPStackTimerTask;
+import gov.nist.javax.sip.stack.metrics.MetricStage;
+import gov.nist.javax.sip.stack.metrics.StackMetrics;
 import gov.nist.javax.sip.stack.transports.processors.nio.NioTcpMessageProcessor;
 import gov.nist.javax.sip.stack.transports.processors.oio.TCPMessageProcessor;
 
@@ -104,17 +103,22 @@ public abstract class ConnectionOrientedMessageChannel extends MessageChannel im
     protected int peerPort;    
     protected String peerProtocol;
 	
-	private SIPStackTimerTask pingKeepAliveTimeoutTask;
-    private Semaphore keepAliveSemaphore;
-    
+	// RFC 5626 keep alive expected before this time, 0 when none is awaited
+    private volatile long keepAliveDeadline;
+
     private long keepAliveTimeout;    
+
+    // deadline the IdleConnectionReaper tracks the channel for, 0 when it is not tracked
+    volatile long livenessDeadline;
+
+    // tick of the IdleConnectionReaper slot holding the channel, only used by the timer thread
+    long livenessTick = -1;
+
+    private volatile boolean livenessStopped;
     
     public ConnectionOrientedMessageChannel(SIPTransactionStack sipStack) {
     	this.sipStack = sipStack;
     	this.keepAliveTimeout = sipStack.getReliableConnectionKeepAliveTimeout();
-    	if(keepAliveTimeout > 0) {
-    		keepAliveSemaphore = new Semaphore(1);
-    	}
 	}
     
     /**
@@ -184,6 +188,8 @@ public abstract class ConnectionOrientedMessageChannel extends MessageChannel im
             return;            
         }        
 
+        StackMetrics stackMetrics = sipStack.getStackMetrics();
+        long encodeStart = stackMetrics != null ? System.nanoTime() : 0;
         byte[] msg = sipMessage.encodeAsBytes(this.getTransport());
 
         long time = System.currentTimeMillis();
@@ -210,7 +216,10 @@ public abstract class ConnectionOrientedMessageChannel extends MessageChannel im
 
         // JvB: also retry for responses, if the connection is gone we should
         // try to reconnect
+        long sendStart = stackMetrics != null ? System.nanoTime() : 0;
         this.sendMessage(msg, sipMessage instanceof SIPRequest);
+        if (stackMetrics != null)
+            recordSentMessage(stackMetrics, sipMessage, encodeStart, sendStart);
 
         // message was sent without any exception so let's set set port and
         // address before we feed it to the logger
@@ -219,9 +228,8 @@ public abstract class ConnectionOrientedMessageChannel extends MessageChannel im
         sipMessage.setLocalAddress(this.getMessageProcessor().getIpAddress());
         sipMessage.setLocalPort(this.getPort());
 
-        if (logger.isLoggingEnabled(
-                ServerLogger.TRACE_MESSAGES))
-            logMessage(sipMessage, peerAddress, peerPort, time);
+        if (isLoggingMessages())
+            logMessage(sipMessage, msg, peerAddress, peerPort, time);
     }
 
 	protected abstract void sendMessage(byte[] msg, boolean b) throws IOException;
@@ -390,8 +398,7 @@ public abstract class ConnectionOrientedMessageChannel extends MessageChannel im
                     logger.logDebug(
                             "----Processing Message---");
                 }
-                if (logger.isLoggingEnabled(
-                        ServerLogger.TRACE_MESSAGES)) {
+                if (isLoggingMessages()) {
 
                     sipStack.getServerLogger().logMessage(sipMessage, this
                             .getPeerHostPort().toString(),
@@ -448,7 +455,11 @@ public abstract class ConnectionOrientedMessageChannel extends MessageChannel im
                 
                 if (sipServerRequest != null) {
                     // try {
+                        StackMetrics stackMetrics = getSIPStack().getStackMetrics();
+                        long dialogStart = stackMetrics != null ? System.nanoTime() : 0;
                         sipServerRequest.processRequest(sipRequest, this);
+                        if (stackMetrics != null)
+                            stackMetrics.record(MetricStage.DIALOG, dialogStart);
                     // } finally {
                     //     if (sipServerRequest instanceof SIPTransaction) {
                     //         SIPServerTransaction sipServerTx = (SIPServerTransaction) sipServerRequest;
@@ -522,7 +533,11 @@ public abstract class ConnectionOrientedMessageChannel extends MessageChannel im
                             return;
                         }
 
+                        StackMetrics stackMetrics = getSIPStack().getStackMetrics();
+                        long dialogStart = stackMetrics != null ? System.nanoTime() : 0;
                         sipServerResponse.processResponse(sipResponse, this);
+                        if (stackMetrics != null)
+                            stackMetrics.record(MetricStage.DIALOG, dialogStart);
                     // } finally {
                     //     if (sipServerResponse instanceof SIPTransaction
                     //             && !((SIPTransaction) sipServerResponse)
@@ -723,23 +738,12 @@ public abstract class ConnectionOrientedMessageChannel extends MessageChannel im
     }
 
     public void cancelPingKeepAliveTimeoutTaskIfStarted() {
-    	if (pingKeepAliveTimeoutTask != null) {			 
-			// && pingKeepAliveTimeoutTask.getSipTimerTask() != null
-    		try {
-				keepAliveSemaphore.acquire();
-			} catch (InterruptedException e) {
-				logger.logError("Couldn't acquire keepAliveSemaphore");
-				return;
-			}
-	    	try {
-	    		if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
-	                logger.logDebug("~~~ cancelPingKeepAliveTimeoutTaskIfStarted for MessageChannel(key=" + key + "), clientAddress=" + peerAddress
-	                        +  ", clientPort=" + peerPort+ ", timeout="+ keepAliveTimeout + ")");
-	            }
-	    		sipStack.getTimer().cancel(pingKeepAliveTimeoutTask);
-	    	} finally {
-	    		keepAliveSemaphore.release();
-	    	}
+    	if (keepAliveDeadline != 0) {
+    		if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
+                logger.logDebug("~~~ cancelPingKeepAliveTimeoutTaskIfStarted for MessageChannel(key=" + key + "), clientAddress=" + peerAddress
+                        +  ", clientPort=" + peerPort+ ", timeout="+ keepAliveTimeout + ")");
+            }
+    		keepAliveDeadline = 0;
     	}
     }
 
@@ -757,11 +761,8 @@ public abstract class ConnectionOrientedMessageChannel extends MessageChannel im
         }
 
         this.keepAliveTimeout = keepAliveTimeout;
-        if(keepAliveSemaphore == null) {
-        	keepAliveSemaphore = new Semaphore(1);
-        }
 
-        boolean isKeepAliveTimeoutTaskScheduled = pingKeepAliveTimeoutTask != null;
+        boolean isKeepAliveTimeoutTaskScheduled = keepAliveDeadline != 0;
         if (isKeepAliveTimeoutTaskScheduled && keepAliveTimeout > 0){
             rescheduleKeepAliveTimeout(keepAliveTimeout);
         }
@@ -771,15 +772,16 @@ public abstract class ConnectionOrientedMessageChannel extends MessageChannel im
     	return keepAliveTimeout;
     }
 
+    /**
+     * Expects a keep alive within the keep alive timeout. Only the deadline is
+     * moved, the IdleConnectionReaper of the stack finds out once it passes.
+     */
     public void rescheduleKeepAliveTimeout(long newKeepAliveTimeout) {
-//        long now = System.currentTimeMillis();
-//        long lastKeepAliveReceivedTimeOrNow = lastKeepAliveReceivedTime == 0 ? now : lastKeepAliveReceivedTime;
-//
-//        long newScheduledTime =  lastKeepAliveReceivedTimeOrNow + newKeepAliveTimeout;
-
-        StringBuilder methodLog = new StringBuilder();
+        long now = System.currentTimeMillis();
+        keepAliveDeadline = keepAliveTimeout < Long.MAX_VALUE - now ? now + keepAliveTimeout : Long.MAX_VALUE;
 
         if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
+            StringBuilder methodLog = new StringBuilder();
             methodLog.append("~~~ rescheduleKeepAliveTimeout for MessageChannel(key=" + key + "), clientAddress=" + peerAddress
                     +  ", clientPort=" + peerPort+ ", timeout="+ keepAliveTimeout + "): newKeepAliveTimeout=");
             if (newKeepAliveTimeout == Long.MAX_VALUE) {
@@ -787,84 +789,139 @@ public abstract class ConnectionOrientedMessageChannel extends MessageChannel im
             } else {
                 methodLog.append(newKeepAliveTimeout);
             }
-//            methodLog.append(", lastKeepAliveReceivedTimeOrNow=");
-//            methodLog.append(lastKeepAliveReceivedTimeOrNow);
-//            methodLog.append(", newScheduledTime=");
-//            methodLog.append(newScheduledTime);
+            methodLog.append(", keep alive expected within ");
+            methodLog.append(keepAliveTimeout / 1000);
+            methodLog.append(" seconds");
+            logger.logDebug(methodLog.toString());
         }
 
-//        long delay = newScheduledTime > now ? newScheduledTime - now : 1;
-        try {
-			keepAliveSemaphore.acquire();
-		} catch (InterruptedException e) {
-			logger.logWarning("Couldn't acquire keepAliveSemaphore");
-			return;
-		}
-		try{
-	        if(pingKeepAliveTimeoutTask == null) {
-	        	pingKeepAliveTimeoutTask = new KeepAliveTimeoutTimerTask();	  	        	
-	        	if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
-	                methodLog.append(", scheduling pingKeepAliveTimeoutTask to execute after ");
-	                methodLog.append(keepAliveTimeout / 1000);
-	                methodLog.append(" seconds");
-	                logger.logDebug(methodLog.toString());
-	            }
-	    	    sipStack.getTimer().schedule(pingKeepAliveTimeoutTask, keepAliveTimeout);
-	        } else {
-	        	if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
-	                logger.logDebug("~~~ cancelPingKeepAliveTimeout for MessageChannel(key=" + key + "), clientAddress=" + peerAddress
-	                        +  ", clientPort=" + peerPort+ ", timeout="+ keepAliveTimeout + ")");
-	        	}
-        		sipStack.getTimer().cancel(pingKeepAliveTimeoutTask);        	
-        		pingKeepAliveTimeoutTask = new KeepAliveTimeoutTimerTask();
-        		if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
-	                methodLog.append(", scheduling pingKeepAliveTimeoutTask to execute after ");
-	                methodLog.append(keepAliveTimeout / 1000);
-	                methodLog.append(" seconds");
-	                logger.logDebug(methodLog.toString());
-	            }
-        		sipStack.getTimer().schedule(pingKeepAliveTimeoutTask, keepAliveTimeout);
-	        }
-		} finally {
-        	keepAliveSemaphore.release();
-        }
+        trackLiveness();
     }
-    class KeepAliveTimeoutTimerTask extends SIPStackTimerTask {
-    	KeepAliveTimeoutTimerTask () { 
-    		super(KeepAliveTimeoutTimerTask.class.getSimpleName());
+
+    /**
+     * @return the time of the last read or write, 0 when the channel does not keep it
+     */
+    public long getLastActivityTimestamp() {
+    	return 0;
+    }
+
+    /**
+     * @return the time without activity after which the channel is closed, 0 to keep it open
+     */
+    protected long getMaxIdleTime() {
+    	return 0;
+    }
+
+    long getKeepAliveDeadline() {
+    	return keepAliveDeadline;
+    }
+
+    /**
+     * @return the earliest of the keep alive, idle and ping deadlines, 0 when none applies
+     */
+    long getNextLivenessDeadline() {
+    	if (livenessStopped) {
+    		return 0;
     	}
-        @Override
-        public String getId() {
-            return ConnectionOrientedMessageChannel.this.toString();
-        } 
-        
-        public void runTask() {
-            if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
-                logger.logDebug(
-                        "~~~ Starting processing of KeepAliveTimeoutEvent( " + peerAddress.getHostAddress() + "," + peerPort + ")...");
-            }
-            close(true, true);
-            if(sipStack instanceof SipStackImpl) {
-	            for (Iterator<SipProviderImpl> it = ((SipStackImpl)sipStack).getSipProviders(); it.hasNext();) {
-	                SipProviderImpl nextProvider = (SipProviderImpl) it.next();
-	                SipListener sipListener= nextProvider.getSipListener();
-	                ListeningPoint[] listeningPoints = nextProvider.getListeningPoints();
-	                for(ListeningPoint listeningPoint : listeningPoints) {
-		            	if(sipListener!= null && sipListener instanceof SipListenerExt
-		            			// making sure that we don't notify each listening point but only the one on which the timeout happened  
-		            			&& listeningPoint.getIPAddress().equalsIgnoreCase(myAddress) && listeningPoint.getPort() == myPort && 
-		            				listeningPoint.getTransport().equalsIgnoreCase(getTransport())) {
-		            		((SipListenerExt)sipListener).processIOException(new IOExceptionEventExt(null, nextProvider, Reason.KeepAliveTimeout, myAddress, myPort,
-		            				peerAddress.getHostAddress(), peerPort, getTransport()));
-		                }
+    	long deadline = keepAliveDeadline;
+    	long lastActivity = getLastActivityTimestamp();
+    	if (lastActivity > 0) {
+    		long maxIdleTime = getMaxIdleTime();
+    		if (maxIdleTime > 0) {
+    			deadline = earliest(deadline, lastActivity + maxIdleTime);
+    		}
+    		long pingInterval = sipStack.getReliableConnectionKeepAlivePingInterval();
+    		if (pingInterval > 0 && isKeepAlivePingSupported()) {
+    			deadline = earliest(deadline, lastActivity + pingInterval);
+    		}
+    	}
+    	return deadline;
+    }
+
+    private static long earliest(long deadline, long candidate) {
+    	return deadline == 0 || candidate < deadline ? candidate : deadline;
+    }
+
+    /**
+     * The RFC 5626 CRLF ping is only sent over plain streams, WebSocket
+     * channels would wrap it into a frame which RFC 7118 does not define as
+     * a keep alive.
+     */
+    boolean isKeepAlivePingSupported() {
+    	String transport = getTransport();
+    	return ListeningPoint.TCP.equalsIgnoreCase(transport) || ListeningPoint.TLS.equalsIgnoreCase(transport);
+    }
+
+    /**
+     * Hands the channel to the IdleConnectionReaper unless it is already
+     * tracked for an earlier deadline, activity alone never gets here.
+     */
+    protected void trackLiveness() {
+    	long deadline = getNextLivenessDeadline();
+    	if (deadline == 0) {
+    		return;
+    	}
+    	long tracked = livenessDeadline;
+    	if (tracked != 0 && tracked <= deadline) {
+    		return;
+    	}
+    	livenessDeadline = deadline;
+    	sipStack.getIdleConnectionReaper().track(this);
+    }
+
+    /**
+     * Called once the channel is closed for good so that the reaper drops it.
+     */
+    protected void stopLivenessTracking() {
+    	livenessStopped = true;
+    	keepAliveDeadline = 0;
+    }
+
+    /**
+     * Sends a RFC 5626 CRLF ping over an idle channel and expects the pong
+     * within the keep alive timeout.
+     */
+    void sendKeepAlivePing(byte[] ping) throws IOException {
+    	if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
+            logger.logDebug("~~~ sending keep alive ping for MessageChannel(key=" + key + "), clientAddress=" + peerAddress
+                    +  ", clientPort=" + peerPort + ")");
+        }
+    	sendMessage(ping, false);
+    	if (keepAliveTimeout > 0 && keepAliveDeadline == 0) {
+    		rescheduleKeepAliveTimeout(keepAliveTimeout);
+    	}
+    }
+
+    /**
+     * Closes the channel once the keep alive timeout expired and notifies the
+     * listener of the listening point it was received on.
+     */
+    protected void processKeepAliveTimeout() {
+        if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
+            logger.logDebug(
+                    "~~~ Starting processing of KeepAliveTimeoutEvent( " + peerAddress.getHostAddress() + "," + peerPort + ")...");
+        }
+        close(true, true);
+        if(sipStack instanceof SipStackImpl) {
+            for (Iterator<SipProviderImpl> it = ((SipStackImpl)sipStack).getSipProviders(); it.hasNext();) {
+                SipProviderImpl nextProvider = (SipProviderImpl) it.next();
+                SipListener sipListener= nextProvider.getSipListener();
+                ListeningPoint[] listeningPoints = nextProvider.getListeningPoints();
+                for(ListeningPoint listeningPoint : listeningPoints) {
+	            	if(sipListener!= null && sipListener instanceof SipListenerExt
+	            			// making sure that we don't notify each listening point but only the one on which the timeout happened  
+	            			&& listeningPoint.getIPAddress().equalsIgnoreCase(myAddress) && listeningPoint.getPort() == myPort && 
+	            				listeningPoint.getTransport().equalsIgnoreCase(getTransport())) {
+	            		((SipListenerExt)sipListener).processIOException(new IOExceptionEventExt(null, nextProvider, Reason.KeepAliveTimeout, myAddress, myPort,
+	            				peerAddress.getHostAddress(), peerPort, getTransport()));
 	                }
-	            }  
-            } else {
-	            SipListener sipListener = sipStack.getSipListener();	            
-	            if(sipListener instanceof SipListenerExt) {
-	            	((SipListenerExt)sipListener).processIOException(new IOExceptionEventExt(null, this, Reason.KeepAliveTimeout, myAddress, myPort,
-	                    peerAddress.getHostAddress(), peerPort, getTransport()));
-	            }
+                }
+            }  
+        } else {
+            SipListener sipListener = sipStack.getSipListener();	            
+            if(sipListener instanceof SipListenerExt) {
+            	((SipListenerExt)sipListener).processIOException(new IOExceptionEventExt(null, this, Reason.KeepAliveTimeout, myAddress, myPort,
+                    peerAddress.getHostAddress(), peerPort, getTransport()));
             }
         }
     }
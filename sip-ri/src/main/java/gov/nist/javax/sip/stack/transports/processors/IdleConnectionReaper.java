@@ -0,0 +1,325 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.stack.transports.processors;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import gov.nist.core.CommonLogger;
+import gov.nist.core.LogWriter;
+import gov.nist.core.StackLogger;
+import gov.nist.core.executor.SIPTask;
+import gov.nist.core.executor.StackExecutor;
+import gov.nist.javax.sip.stack.SIPTransactionStack;
+import gov.nist.javax.sip.stack.metrics.StackMetrics;
+import gov.nist.javax.sip.stack.timers.SIPStackTimerTask;
+
+/**
+ * Tracks the liveness of the connection oriented channels of a stack with a
+ * single hashed timing wheel instead of a timer task per channel.
+ * <p>
+ * A channel asks to be tracked once for its earliest deadline, the RFC 5626
+ * keep alive timeout or the end of its idle period. Later activity only moves
+ * the timestamps kept by the channel, the wheel finds out when it reaches the
+ * slot and either acts on the channel or puts it back into the slot of its new
+ * deadline. A channel tracked for a later deadline which asks for an earlier
+ * one is placed again, the older entry is dropped when its slot is swept. A
+ * deadline beyond the range of the wheel stays in its slot for as many
+ * revolutions as it needs.
+ * <p>
+ * The wheel is only touched by the timer thread running the sweep. Due
+ * channels are handed to the message processor executor, keyed by the channel,
+ * so that closing them and notifying the listeners of a keep alive timeout
+ * never runs on the timer thread. At most batchSize due channels are handed
+ * off per tick, the others wait for the next tick.
+ */
+public class IdleConnectionReaper extends SIPStackTimerTask {
+	private static StackLogger logger = CommonLogger.getLogger(IdleConnectionReaper.class);
+
+	public static final long DEFAULT_TICK = 1000;
+
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	// power of two so that a tick maps to its slot with a mask
+	private static final int WHEEL_SIZE = 512;
+
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+	private static final byte[] CRLF_PING = new byte[] { '\r', '\n', '\r', '\n' };
+
+	private final SIPTransactionStack sipStack;
+
+	private final long tick;
+
+	private final int batchSize;
+
+	// channels asking for an earlier deadline, placed by the sweep
+	private final Queue<ConnectionOrientedMessageChannel> pending = new ConcurrentLinkedQueue<ConnectionOrientedMessageChannel>();
+
+	private final ArrayList<ConnectionOrientedMessageChannel>[] wheel;
+
+	// due channels left over by the previous sweeps once the batch was full
+	private final ArrayDeque<ConnectionOrientedMessageChannel> overdue = new ArrayDeque<ConnectionOrientedMessageChannel>();
+
+	private long sweptTick = -1;
+
+	private final AtomicLong idleClosed = new AtomicLong();
+
+	private final AtomicLong keepAliveTimeouts = new AtomicLong();
+
+	private final AtomicLong keepAlivePings = new AtomicLong();
+
+	public IdleConnectionReaper(SIPTransactionStack sipStack) {
+		this(sipStack, DEFAULT_TICK, DEFAULT_BATCH_SIZE);
+	}
+
+	@SuppressWarnings("unchecked")
+	public IdleConnectionReaper(SIPTransactionStack sipStack, long tick, int batchSize) {
+		super(IdleConnectionReaper.class.getSimpleName());
+		if (tick <= 0 || batchSize <= 0)
+			throw new IllegalArgumentException("Invalid tick " + tick + " or batch size " + batchSize);
+
+		this.sipStack = sipStack;
+		this.tick = tick;
+		this.batchSize = batchSize;
+		this.wheel = new ArrayList[WHEEL_SIZE];
+		for (int i = 0; i < WHEEL_SIZE; i++)
+			wheel[i] = new ArrayList<ConnectionOrientedMessageChannel>();
+	}
+
+	public long getTick() {
+		return tick;
+	}
+
+	/**
+	 * Asks for the channel to be looked at by its next deadline, the channel
+	 * itself skips the call while it is already tracked for an earlier one.
+	 */
+	public void track(ConnectionOrientedMessageChannel channel) {
+		pending.add(channel);
+	}
+
+	/**
+	 * @return channels closed because nothing was read or written for the max
+	 *         idle time
+	 */
+	public long getIdleClosedCount() {
+		return idleClosed.get();
+	}
+
+	/**
+	 * @return channels closed because the RFC 5626 keep alive was not received
+	 *         in time
+	 */
+	public long getKeepAliveTimeoutCount() {
+		return keepAliveTimeouts.get();
+	}
+
+	/**
+	 * @return CRLF pings sent over idle channels
+	 */
+	public long getKeepAlivePingCount() {
+		return keepAlivePings.get();
+	}
+
+	@Override
+	public String getId() {
+		return toString();
+	}
+
+	@Override
+	public void runTask() {
+		try {
+			sweep(System.currentTimeMillis());
+		} catch (Exception ex) {
+			logger.logError("Exception in IdleConnectionReaper : ", ex);
+		}
+	}
+
+	void sweep(long now) {
+		long nowTick = now / tick;
+		if (sweptTick < 0)
+			sweptTick = nowTick - 1;
+
+		ConnectionOrientedMessageChannel channel;
+		while ((channel = pending.poll()) != null) {
+			long deadline = channel.getNextLivenessDeadline();
+			if (deadline != 0)
+				place(channel, deadline);
+		}
+
+		int expired = 0;
+		while (expired < batchSize && (channel = overdue.poll()) != null)
+			expired += expire(channel, now);
+
+		// after a long pause a revolution covers every slot
+		long fromTick = Math.max(sweptTick + 1, nowTick - WHEEL_SIZE + 1);
+		for (long currentTick = fromTick; currentTick <= nowTick; currentTick++) {
+			sweptTick = currentTick;
+			int index = (int) (currentTick & WHEEL_MASK);
+			ArrayList<ConnectionOrientedMessageChannel> slot = wheel[index];
+			if (slot.isEmpty())
+				continue;
+
+			ArrayList<ConnectionOrientedMessageChannel> laterRevolutions = new ArrayList<ConnectionOrientedMessageChannel>();
+			wheel[index] = laterRevolutions;
+			for (int i = 0; i < slot.size(); i++) {
+				channel = slot.get(i);
+				long livenessTick = channel.livenessTick;
+				// stale entry left when the channel was placed again for an earlier deadline
+				if (livenessTick < 0 || (livenessTick & WHEEL_MASK) != index)
+					continue;
+
+				if (livenessTick > currentTick) {
+					laterRevolutions.add(channel);
+					continue;
+				}
+
+				channel.livenessTick = -1;
+				if (expired < batchSize)
+					expired += expire(channel, now);
+				else
+					overdue.add(channel);
+			}
+		}
+
+		sweptTick = nowTick;
+		if (expired > 0 && logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
+			logger.logDebug("IdleConnectionReaper handled " + expired + " channels, " + overdue.size() + " left for the next tick");
+	}
+
+	private void place(ConnectionOrientedMessageChannel channel, long deadline) {
+		long deadlineTick = Math.max(deadline / tick, sweptTick + 1);
+		if (channel.livenessTick >= 0 && channel.livenessTick <= deadlineTick)
+			return;
+
+		channel.livenessTick = deadlineTick;
+		wheel[(int) (deadlineTick & WHEEL_MASK)].add(channel);
+	}
+
+	// returns 1 when the channel was due, 0 when it only moved to another slot
+	private int expire(ConnectionOrientedMessageChannel channel, long now) {
+		// cleared first so that a channel asking for a deadline meanwhile is queued again
+		channel.livenessDeadline = 0;
+		long deadline = channel.getNextLivenessDeadline();
+		if (deadline == 0)
+			return 0;
+
+		if (deadline > now) {
+			channel.livenessDeadline = deadline;
+			place(channel, deadline);
+			return 0;
+		}
+
+		int action;
+		StackMetrics stackMetrics = sipStack.getStackMetrics();
+		long keepAliveDeadline = channel.getKeepAliveDeadline();
+		long lastActivity = channel.getLastActivityTimestamp();
+		long maxIdleTime = channel.getMaxIdleTime();
+		if (keepAliveDeadline != 0 && keepAliveDeadline <= now) {
+			keepAliveTimeouts.incrementAndGet();
+			if (stackMetrics != null)
+				stackMetrics.countKeepAliveTimeout();
+
+			action = LivenessTask.KEEP_ALIVE_TIMEOUT;
+		} else if (maxIdleTime > 0 && lastActivity > 0 && now - lastActivity >= maxIdleTime) {
+			if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
+				logger.logDebug("Closing idle channel " + channel.getKey() + " lastActivity=" + lastActivity + " current=" + now);
+
+			idleClosed.incrementAndGet();
+			if (stackMetrics != null)
+				stackMetrics.countIdleClose();
+
+			action = LivenessTask.IDLE_CLOSE;
+		} else {
+			keepAlivePings.incrementAndGet();
+			action = LivenessTask.PING;
+		}
+
+		LivenessTask task = new LivenessTask(channel, action);
+		StackExecutor executor = sipStack.getMessageProcessorExecutor();
+		if (executor != null)
+			executor.addTaskLast(task);
+		else
+			task.execute();
+
+		return 1;
+	}
+
+	/**
+	 * Acts on a due channel from the message processor executor.
+	 */
+	private static class LivenessTask implements SIPTask {
+		static final int KEEP_ALIVE_TIMEOUT = 0;
+
+		static final int IDLE_CLOSE = 1;
+
+		static final int PING = 2;
+
+		private final ConnectionOrientedMessageChannel channel;
+
+		private final int action;
+
+		private final long startTime;
+
+		LivenessTask(ConnectionOrientedMessageChannel channel, int action) {
+			this.channel = channel;
+			this.action = action;
+			this.startTime = System.currentTimeMillis();
+		}
+
+		@Override
+		public void execute() {
+			try {
+				switch (action) {
+				case KEEP_ALIVE_TIMEOUT:
+					channel.processKeepAliveTimeout();
+					return;
+				case IDLE_CLOSE:
+					channel.close();
+					return;
+				default:
+					channel.sendKeepAlivePing(CRLF_PING);
+				}
+			} catch (Exception ex) {
+				logger.logError("Exception in IdleConnectionReaper for channel " + channel.getKey(), ex);
+			}
+
+			channel.trackLiveness();
+		}
+
+		@Override
+		public long getStartTime() {
+			return startTime;
+		}
+
+		@Override
+		public String getId() {
+			return channel.getKey();
+		}
+
+		@Override
+		public String printTaskDetails() {
+			return "Task name: SipConnectionLiveness, id: " + channel.getKey();
+		}
+	}
+}
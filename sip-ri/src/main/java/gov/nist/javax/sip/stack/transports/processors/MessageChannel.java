@@ -61,6 +61,8 @@ import gov.nist.javax.sip.message.SIPResponse;
 import gov.nist.javax.sip.stack.MessageTooLongException;
 import gov.nist.javax.sip.stack.SIPClientTransaction;
 import gov.nist.javax.sip.stack.SIPTransactionStack;
+import gov.nist.javax.sip.stack.metrics.MetricStage;
+import gov.nist.javax.sip.stack.metrics.StackMetrics;
 import gov.nist.javax.sip.stack.transports.processors.oio.UDPMessageChannel;
 
 /**
@@ -235,6 +237,7 @@ public abstract class MessageChannel {
     public void sendMessage(final SIPMessage sipMessage, Hop hop) throws IOException {
         long time = System.currentTimeMillis();
         InetAddress hopAddr = InetAddress.getByName(hop.getHost());
+        byte[] msg = null;
 
         try {
             //check for self routing
@@ -247,9 +250,14 @@ public abstract class MessageChannel {
             }
             
             messageTxId.set(sipMessage.getTransactionId());
-            byte[] msg = sipMessage.encodeAsBytes(this.getTransport());
+            StackMetrics stackMetrics = getSIPStack().getStackMetrics();
+            long encodeStart = stackMetrics != null ? System.nanoTime() : 0;
+            msg = sipMessage.encodeAsBytes(this.getTransport());
 
+            long sendStart = stackMetrics != null ? System.nanoTime() : 0;
             this.sendMessage(msg, hopAddr, hop.getPort(), sipMessage instanceof SIPRequest);
+            if (stackMetrics != null)
+                recordSentMessage(stackMetrics, sipMessage, encodeStart, sendStart);
 
             // we successfully sent the message without an exception so let's
             // now set port and address
@@ -266,8 +274,8 @@ public abstract class MessageChannel {
             throw new IOException("Error self routing message", ex);
         } finally {
         	messageTxId.remove();
-            if (MessageChannel.logger.isLoggingEnabled(ServerLogger.TRACE_MESSAGES))
-                logMessage(sipMessage, hopAddr, hop.getPort(), time);
+            if (isLoggingMessages())
+                logMessage(sipMessage, msg, hopAddr, hop.getPort(), time);
         }
     }
 
@@ -280,8 +288,52 @@ public abstract class MessageChannel {
      */
     public void sendMessage(SIPMessage sipMessage, InetAddress receiverAddress, int receiverPort)
             throws IOException, MessageTooLongException {
+        StackMetrics stackMetrics = getSIPStack().getStackMetrics();
+        long encodeStart = stackMetrics != null ? System.nanoTime() : 0;
+        byte[] msg = sipMessage.encodeAsBytes(this.getTransport());
+        long sendStart = stackMetrics != null ? System.nanoTime() : 0;
+        sendMessage(sipMessage, msg, receiverAddress, receiverPort);
+        if (stackMetrics != null)
+            recordSentMessage(stackMetrics, sipMessage, encodeStart, sendStart);
+    }
+
+    /**
+     * Record the encoding and the sending of a message in the stack metrics.
+     *
+     * @param encodeStart System.nanoTime() before the message was encoded.
+     * @param sendStart System.nanoTime() before the encoded message was sent.
+     */
+    protected void recordSentMessage(StackMetrics stackMetrics, SIPMessage sipMessage, long encodeStart,
+            long sendStart) {
+        stackMetrics.recordValue(MetricStage.ENCODE, sendStart - encodeStart);
+        stackMetrics.record(MetricStage.SEND, sendStart);
+        stackMetrics.countMessage(sipMessage, true);
+    }
+
+    /**
+     * Encode a message for the transport of this channel, to be sent with
+     * {@link #sendMessage(SIPMessage, byte[], InetAddress, int)} and kept for
+     * its retransmissions.
+     *
+     * @param sipMessage is the message to encode.
+     * @return the bytes of the message.
+     */
+    public byte[] encodeMessage(SIPMessage sipMessage) {
+        return sipMessage.encodeAsBytes(this.getTransport());
+    }
+
+    /**
+     * Send a SIP message already encoded for the transport of this channel, such
+     * as a retransmission of the last message sent by a transaction.
+     *
+     * @param sipMessage is the messge to send.
+     * @param bytes is the encoded message.
+     * @param receiverAddress is the address to which we want to send
+     * @param receiverPort is the port to which we want to send
+     */
+    public void sendMessage(SIPMessage sipMessage, byte[] bytes, InetAddress receiverAddress, int receiverPort)
+            throws IOException, MessageTooLongException {
         long time = System.currentTimeMillis();
-        byte[] bytes = sipMessage.encodeAsBytes(this.getTransport());
         messageTxId.set(sipMessage.getTransactionId());
         try {
         	sendMessage(bytes, receiverAddress, receiverPort, sipMessage instanceof SIPRequest);
@@ -297,7 +349,7 @@ public abstract class MessageChannel {
         sipMessage.setLocalAddress(this.getMessageProcessor().getIpAddress());
 
         //ready to log
-        logMessage(sipMessage, receiverAddress, receiverPort, time);
+        logMessage(sipMessage, bytes, receiverAddress, receiverPort, time);
     }
 
     /**
@@ -410,6 +462,17 @@ public abstract class MessageChannel {
         return retval;
     }
 
+    /**
+     * Whether the messages of this channel are given to the server logger,
+     * when the stack logs the messages or the server logger captures them.
+     *
+     * @return true if the messages have to be logged.
+     */
+    public boolean isLoggingMessages() {
+        return logger.isLoggingEnabled(ServerLogger.TRACE_MESSAGES)
+                || getSIPStack().getServerLogger().isCapturingMessages();
+    }
+
     /**
      * Log a message sent to an address and port via the default interface.
      *
@@ -418,13 +481,25 @@ public abstract class MessageChannel {
      * @param port is the port to which the message is directed.
      */
     public void logMessage(SIPMessage sipMessage, InetAddress address, int port, long time) {
-        if (!logger.isLoggingEnabled(ServerLogger.TRACE_MESSAGES))
+        logMessage(sipMessage, null, address, port, time);
+    }
+
+    /**
+     * Log a message sent to an address and port via the default interface.
+     *
+     * @param sipMessage is the message to log.
+     * @param bytes is the message as it was sent, null if not known.
+     * @param address is the inet address to which the message is sent.
+     * @param port is the port to which the message is directed.
+     */
+    public void logMessage(SIPMessage sipMessage, byte[] bytes, InetAddress address, int port, long time) {
+        if (!isLoggingMessages())
             return;
 
         // Default port.
         if (port == -1)
             port = 5060;
-        getSIPStack().getServerLogger().logMessage(sipMessage, this.getHost() + ":" + this.getPort(),
+        getSIPStack().getServerLogger().logMessage(sipMessage, bytes, this.getHost() + ":" + this.getPort(),
                 address.getHostAddress().toString() + ":" + port, true, time);
     }
 
@@ -437,7 +512,7 @@ public abstract class MessageChannel {
      *
      */
     public void logResponse(SIPResponse sipResponse, long receptionTime, String status) {
-    	 if (!logger.isLoggingEnabled(ServerLogger.TRACE_MESSAGES))
+    	 if (!isLoggingMessages())
              return;
     	 
         int peerport = getPeerPort();
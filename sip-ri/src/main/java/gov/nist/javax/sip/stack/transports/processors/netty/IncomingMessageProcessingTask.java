@@ -23,6 +23,7 @@ import gov.nist.core.StackLogger;
 import gov.nist.core.executor.SIPTask;
 import gov.nist.javax.sip.message.SIPMessage;
 import gov.nist.javax.sip.stack.SIPTransactionStack;
+import gov.nist.javax.sip.stack.metrics.StackMetrics;
 import gov.nist.javax.sip.stack.transports.processors.RawMessageChannel;
 
 public class IncomingMessageProcessingTask implements SIPTask {
@@ -49,6 +50,10 @@ public class IncomingMessageProcessingTask implements SIPTask {
         if (logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
             logger.logDebug("Executing task " + this + " with id: " + id);
         }
+        StackMetrics stackMetrics = sipStack.getStackMetrics();
+        if (stackMetrics != null) {
+            stackMetrics.recordQueueDelay(startTime);
+        }
         if (sipStack.sipEventInterceptor != null) {
             if (logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
                 logger.logDebug("calling beforeMessage eventinterceptor for message " + sipMessage);
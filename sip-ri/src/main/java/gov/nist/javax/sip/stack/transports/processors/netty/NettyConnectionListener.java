@@ -61,6 +61,11 @@ public class NettyConnectionListener implements ChannelFutureListener {
     @Override
     public void operationComplete(ChannelFuture channelFuture) throws Exception {
     	if (!channelFuture.isSuccess()) {																 
+            // nothing will be written, give the encoded messages back to their pool
+            ByteBuf byteBuf;
+            while ((byteBuf = pendingMessages.poll()) != null) {
+                byteBuf.release();
+            }
             if(sipStack != null && sipStack.getMessageProcessorExecutor() != null) {
                 sipStack.getMessageProcessorExecutor().addTaskLast(
                     new NettyConnectionFailureThread(messageChannel, channelFuture, "SipNettyConnectionFailureThread") 
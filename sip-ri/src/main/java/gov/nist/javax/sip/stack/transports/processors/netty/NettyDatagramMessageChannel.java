@@ -41,6 +41,8 @@ import gov.nist.javax.sip.stack.SIPClientTransaction;
 import gov.nist.javax.sip.stack.SIPTransactionStack;
 import gov.nist.javax.sip.stack.ServerRequestInterface;
 import gov.nist.javax.sip.stack.ServerResponseInterface;
+import gov.nist.javax.sip.stack.metrics.MetricStage;
+import gov.nist.javax.sip.stack.metrics.StackMetrics;
 import gov.nist.javax.sip.stack.transports.processors.MessageChannel;
 import gov.nist.javax.sip.stack.transports.processors.MessageProcessor;
 import gov.nist.javax.sip.stack.transports.processors.RawMessageChannel;
@@ -128,15 +130,24 @@ public class NettyDatagramMessageChannel extends MessageChannel implements RawMe
 			getSIPStack().selfRouteMessage(messageChannel, sipMessage);
 			return;
 		}
+		byte[] captured = null;
 		try {
-			byte[] message = sipMessage.encodeAsBytes(this.getTransport());
-			if(getSIPStack().getMaxUdpMessageSize()>0 && message.length>getSIPStack().getMaxUdpMessageSize()) {
-				logger.logError("message length = " + message.length + " , while maximum allowed for udp " + getSIPStack().getMaxUdpMessageSize());
+			StackMetrics stackMetrics = getSIPStack().getStackMetrics();
+			long encodeStart = stackMetrics != null ? System.nanoTime() : 0;
+			ByteBuf byteBuf = NettyMessageEncoder.encode(sipMessage, this.getTransport(), channel.alloc(),
+					getSIPStack().isNettyDirectBuffers());
+			int length = byteBuf.readableBytes();
+			if(getSIPStack().getMaxUdpMessageSize()>0 && length>getSIPStack().getMaxUdpMessageSize()) {
+				byteBuf.release();
+				logger.logError("message length = " + length + " , while maximum allowed for udp " + getSIPStack().getMaxUdpMessageSize());
 				throw new MessageTooLongException("Message is too long");
 			}
 			
-			ByteBuf byteBuf = Unpooled.wrappedBuffer(message);
+			captured = NettyMessageEncoder.copyForCapture(getSIPStack().getServerLogger(), byteBuf);
+			long sendStart = stackMetrics != null ? System.nanoTime() : 0;
 			writeDatagramPacket(new DatagramPacket(byteBuf, new InetSocketAddress(getPeerInetAddress(), getPeerPort())));
+			if (stackMetrics != null)
+				recordSentMessage(stackMetrics, sipMessage, encodeStart, sendStart);
 
 			// we didn't run into problems while sending so let's set ports and
 			// addresses before feeding the message to the loggers.
@@ -150,14 +161,82 @@ public class NettyDatagramMessageChannel extends MessageChannel implements RawMe
 			logger.logError("An exception occured while sending message", ex);
 			throw new IOException("An exception occured while sending message");
 		} finally {
-			if (logger.isLoggingEnabled(ServerLogger.TRACE_MESSAGES) && !sipMessage.isNullRequest())
-				logMessage(sipMessage, getPeerInetAddress(), getPeerPort(), time);
+			if (isLoggingMessages() && !sipMessage.isNullRequest())
+				logMessage(sipMessage, captured, getPeerInetAddress(), getPeerPort(), time);
 			else if (logger.isLoggingEnabled(ServerLogger.TRACE_DEBUG))
 				logger.logDebug("Sent EMPTY Message");
 		}
 
 	}
 
+	@Override
+	public void sendMessage(SIPMessage sipMessage, InetAddress receiverAddress, int receiverPort)
+			throws IOException, MessageTooLongException {
+		long time = System.currentTimeMillis();
+		StackMetrics stackMetrics = getSIPStack().getStackMetrics();
+		long encodeStart = stackMetrics != null ? System.nanoTime() : 0;
+		ByteBuf byteBuf = NettyMessageEncoder.encode(sipMessage, this.getTransport(), channel.alloc(),
+				getSIPStack().isNettyDirectBuffers());
+		int length = byteBuf.readableBytes();
+		if(getSIPStack().getMaxUdpMessageSize()>0 && length>getSIPStack().getMaxUdpMessageSize()) {
+			byteBuf.release();
+			logger.logError("message length = " + length + " , while maximum allowed for udp " + getSIPStack().getMaxUdpMessageSize());
+			throw new MessageTooLongException("Message is too long");
+		}
+
+		byte[] captured = NettyMessageEncoder.copyForCapture(getSIPStack().getServerLogger(), byteBuf);
+		long sendStart = stackMetrics != null ? System.nanoTime() : 0;
+		getMessageTxId().set(sipMessage.getTransactionId());
+		try {
+			writeDatagramPacket(new DatagramPacket(byteBuf, new InetSocketAddress(receiverAddress, receiverPort)));
+		} finally {
+			getMessageTxId().remove();
+		}
+		if (stackMetrics != null)
+			recordSentMessage(stackMetrics, sipMessage, encodeStart, sendStart);
+
+		// we successfully sent the message without an exception so let's
+		// set port and address before we feed it to the logger.
+		sipMessage.setRemoteAddress(receiverAddress);
+		sipMessage.setRemotePort(receiverPort);
+		sipMessage.setLocalPort(this.getPort());
+		sipMessage.setLocalAddress(this.getMessageProcessor().getIpAddress());
+
+		logMessage(sipMessage, captured, receiverAddress, receiverPort, time);
+	}
+
+	@Override
+	public byte[] encodeMessage(SIPMessage sipMessage) {
+		return NettyMessageEncoder.encodeAsBytes(sipMessage, this.getTransport());
+	}
+
+	@Override
+	public void sendMessage(SIPMessage sipMessage, byte[] bytes, InetAddress receiverAddress, int receiverPort)
+			throws IOException, MessageTooLongException {
+		long time = System.currentTimeMillis();
+		if(getSIPStack().getMaxUdpMessageSize()>0 && bytes.length>getSIPStack().getMaxUdpMessageSize()) {
+			logger.logError("message length = " + bytes.length + " , while maximum allowed for udp " + getSIPStack().getMaxUdpMessageSize());
+			throw new MessageTooLongException("Message is too long");
+		}
+
+		getMessageTxId().set(sipMessage.getTransactionId());
+		try {
+			writeDatagramPacket(new DatagramPacket(Unpooled.wrappedBuffer(bytes),
+					new InetSocketAddress(receiverAddress, receiverPort)));
+		} finally {
+			getMessageTxId().remove();
+		}
+
+		// we successfully sent the message without an exception so let's
+		// set port and address before we feed it to the logger.
+		sipMessage.setRemoteAddress(receiverAddress);
+		sipMessage.setRemotePort(receiverPort);
+		sipMessage.setLocalPort(this.getPort());
+		sipMessage.setLocalAddress(this.getMessageProcessor().getIpAddress());
+
+		logMessage(sipMessage, bytes, receiverAddress, receiverPort, time);
+	}
+
 	@Override
 	public void sendMessage(byte[] message, InetAddress receiverAddress, int receiverPort, boolean reconnectFlag)
 			throws IOException, MessageTooLongException {
@@ -357,7 +436,7 @@ public class NettyDatagramMessageChannel extends MessageChannel implements RawMe
 			// This is a request - process it.
 			// So far so good -- we will commit this message if
 			// all processing is OK.
-			if (logger.isLoggingEnabled(ServerLogger.TRACE_MESSAGES)) {
+			if (isLoggingMessages()) {
 
 				this.sipStack.getServerLogger().logMessage(sipMessage, this.getPeerHostPort().toString(),
 						this.getHost() + ":" + this.myPort, false, receptionTime);
@@ -376,7 +455,11 @@ public class NettyDatagramMessageChannel extends MessageChannel implements RawMe
 			if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
 				logger.logDebug("About to process " + sipRequest.getFirstLine() + "/" + sipServerRequest);
 			// try {
+			StackMetrics stackMetrics = getSIPStack().getStackMetrics();
+			long dialogStart = stackMetrics != null ? System.nanoTime() : 0;
 			sipServerRequest.processRequest(sipRequest, this);
+			if (stackMetrics != null)
+				stackMetrics.record(MetricStage.DIALOG, dialogStart);
 			// } finally {
 			// if (sipServerRequest instanceof SIPTransaction) {
 			// SIPServerTransaction sipServerTx = (SIPServerTransaction) sipServerRequest;
@@ -401,7 +484,7 @@ public class NettyDatagramMessageChannel extends MessageChannel implements RawMe
 					logger.logError("Dropping Badly formatted response message >>> " + sipResponse);
 				return;
 			}
-			if (logger.isLoggingEnabled(ServerLogger.TRACE_MESSAGES)) {
+			if (isLoggingMessages()) {
 
 				this.sipStack.getServerLogger().logMessage(sipResponse, this.getPeerHostPort().toString(),
 						this.getHost() + ":" + this.myPort, false, receptionTime);
@@ -417,7 +500,11 @@ public class NettyDatagramMessageChannel extends MessageChannel implements RawMe
 					return;
 				}
 
+				StackMetrics stackMetrics = getSIPStack().getStackMetrics();
+				long dialogStart = stackMetrics != null ? System.nanoTime() : 0;
 				sipServerResponse.processResponse(sipResponse, this);
+				if (stackMetrics != null)
+					stackMetrics.record(MetricStage.DIALOG, dialogStart);
 				// } finally {
 				// if (sipServerResponse instanceof SIPTransaction
 				// && !((SIPTransaction) sipServerResponse)
@@ -18,8 +18,8 @@
  */
 package gov.nist.javax.sip.stack.transports.processors.netty;
 
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.util.ArrayList;
 import java.util.List;
 
 import gov.nist.core.CommonLogger;
@@ -27,6 +27,9 @@ import gov.nist.core.LogWriter;
 import gov.nist.core.StackLogger;
 import gov.nist.javax.sip.message.SIPMessage;
 import gov.nist.javax.sip.parser.NettyMessageParser;
+import gov.nist.javax.sip.stack.SIPTransactionStack;
+import gov.nist.javax.sip.stack.metrics.MetricStage;
+import gov.nist.javax.sip.stack.metrics.StackMetrics;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.socket.DatagramPacket;
@@ -35,56 +38,63 @@ import io.netty.handler.codec.MessageToMessageDecoder;
 /**
  * Netty Based Datagram Message Decoder to handle Incoming SIP Messages
  * 
+ * A datagram always holds a complete message, so it is parsed in one go by a
+ * parser created once per decoder. A decoder belongs to a single channel and
+ * thus always runs on the same event loop thread.
+ * 
  * @author Jean Deruelle
  */
 public class NettyDatagramMessageDecoder extends MessageToMessageDecoder<DatagramPacket> {
     private static StackLogger logger = CommonLogger.getLogger(NettyDatagramMessageDecoder.class);
 
     private NettyMessageProcessor nettyMessageProcessor;    
+    private final NettyMessageParser nettyMessageParser;
 
     public NettyDatagramMessageDecoder(NettyMessageProcessor nettyMessageProcessor) {            
         this.nettyMessageProcessor = nettyMessageProcessor;        
+        SIPTransactionStack sipStack = nettyMessageProcessor.getSIPStack();
+        this.nettyMessageParser = new NettyMessageParser(
+                sipStack.getMaxUdpMessageSize(),
+                sipStack.isComputeContentLengthFromMessage(),
+                sipStack.isNettyParserByteScanning(),
+                sipStack.isLazyHeaderParsing());
     }
 
     @Override
     protected void decode(ChannelHandlerContext ctx, DatagramPacket msg, List<Object> out) {            
-        NettyMessageParser nettyMessageParser = new NettyMessageParser(                
-                nettyMessageProcessor.getSIPStack().getMaxUdpMessageSize(),
-                nettyMessageProcessor.getSIPStack().isComputeContentLengthFromMessage());
         ByteBuf content =  msg.content();
         if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {   
             logger.logDebug("Decoding message: \n" + content.toString(io.netty.util.CharsetUtil.UTF_8));
         }
-                                    
-        List<SIPMessage> sipMessages = new ArrayList<SIPMessage>();  
-        SIPMessage currMessage = null;
-        do {
-        	currMessage = null;
-            if(nettyMessageParser.parseBytes(content).isParsingComplete()) {
-                try {      
-                	currMessage = nettyMessageParser.consumeSIPMessage();
-                    if (currMessage != null) {
-                        if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {   
-                            logger.logDebug("following message parsed, passing it up the stack \n" + currMessage.toString());
-                        }         
-                        InetSocketAddress remoteAddress = (InetSocketAddress)msg.sender();
-                        currMessage.setRemoteAddress(remoteAddress.getAddress());
-                        currMessage.setRemotePort(remoteAddress.getPort());
-                        currMessage.setPeerPacketSourceAddress(remoteAddress.getAddress());
-                        currMessage.setPeerPacketSourcePort(remoteAddress.getPort());                          
-                        
-                        sipMessages.add(currMessage);                                 
-                    }
-                } catch (Exception e) {
-                    // e.printStackTrace();            
-                    if(logger.isLoggingEnabled(LogWriter.TRACE_ERROR)) {   
-                        logger.logError(
-                            "Parsing issue !  " + content.toString(io.netty.util.CharsetUtil.UTF_8) + " " + e.getMessage(), e);
-                    }
-                }  
-            }                 
-        } while (currMessage != null && content.readableBytes() > 0);
-       
-        out.addAll(sipMessages);                           
+
+        int start = content.readerIndex();
+        SIPMessage sipMessage;
+        StackMetrics stackMetrics = nettyMessageProcessor.getSIPStack().getStackMetrics();
+        long decodeStart = stackMetrics != null ? System.nanoTime() : 0;
+        try {      
+            sipMessage = nettyMessageParser.parseDatagram(content);
+        } catch (Exception e) {
+            if(logger.isLoggingEnabled(LogWriter.TRACE_ERROR)) {   
+                logger.logError(
+                    "Parsing issue !  " + content.toString(start, content.writerIndex() - start, io.netty.util.CharsetUtil.UTF_8) + " " + e.getMessage(), e);
+            }
+            return;
+        }
+        if (stackMetrics != null) {
+            stackMetrics.record(MetricStage.DECODE, decodeStart);
+        }
+        if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {   
+            logger.logDebug("following message parsed, passing it up the stack \n" + sipMessage.toString());
+        }         
+
+        InetSocketAddress remoteAddress = msg.sender();
+        InetAddress address = remoteAddress.getAddress();
+        int port = remoteAddress.getPort();
+        sipMessage.setRemoteAddress(address);
+        sipMessage.setRemotePort(port);
+        sipMessage.setPeerPacketSourceAddress(address);
+        sipMessage.setPeerPacketSourcePort(port);
+
+        out.add(sipMessage);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,168 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.stack.transports.processors.netty;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import gov.nist.core.ServerLogger;
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.UnpooledByteBufAllocator;
+
+/**
+ * Encodes a SIP message straight into a {@link ByteBuf} obtained from the
+ * channel allocator, producing the same bytes as
+ * {@link SIPMessage#encodeAsBytes(String)} without the intermediate String and
+ * byte arrays.
+ *
+ * The start line and headers are encoded into a per thread StringBuilder, the
+ * exact size of the message is computed from it and the body, so that the
+ * buffer is allocated once with the right capacity, and the characters are
+ * then written directly into the buffer followed by the body bytes.
+ */
+public final class NettyMessageEncoder {
+	private static final byte[] DOUBLE_CRLF = SIPMessage.DOUBLE_CRLF.getBytes(StandardCharsets.US_ASCII);
+
+	// builders growing over this capacity are not kept for the next message
+	private static final int MAX_CACHED_BUILDER_CAPACITY = 64 * 1024;
+
+	private static final ThreadLocal<StringBuilder> builders = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(1024);
+		}
+	};
+
+	private NettyMessageEncoder() {
+	}
+
+	/**
+	 * Encodes the message for transmission over the given transport.
+	 *
+	 * @param allocator the allocator of the channel the message is written to
+	 * @param direct    whether a direct buffer should be allocated instead of a
+	 *                  heap one
+	 * @return a buffer holding the encoded message, the caller owns it and is
+	 *         responsible for releasing it (writing it to a channel does)
+	 */
+	public static ByteBuf encode(SIPMessage sipMessage, String transport, ByteBufAllocator allocator,
+			boolean direct) {
+		if (sipMessage.isNullRequest()) {
+			return allocate(allocator, direct, DOUBLE_CRLF.length).writeBytes(DOUBLE_CRLF);
+		}
+
+		StringBuilder encoding = builders.get();
+		encoding.setLength(0);
+		try {
+			if (sipMessage instanceof SIPRequest) {
+				SIPRequest sipRequest = (SIPRequest) sipMessage;
+				if (sipRequest.getRequestLine() == null) {
+					return allocate(allocator, direct, 0);
+				}
+				sipRequest.getRequestLine().encode(encoding);
+			} else if (sipMessage instanceof SIPResponse && ((SIPResponse) sipMessage).getStatusLine() != null) {
+				((SIPResponse) sipMessage).getStatusLine().encode(encoding);
+			}
+			int startLineLength = encoding.length();
+			sipMessage.encodeHeaders(transport, encoding);
+
+			byte[] content = sipMessage.getRawContent();
+			int contentLength = content == null ? 0 : content.length;
+			Charset charset = Charset.forName(sipMessage.getCharset());
+			boolean utf8 = StandardCharsets.UTF_8.equals(charset);
+
+			int headersSize = estimateSize(encoding, startLineLength, charset, utf8);
+			ByteBuf byteBuf = allocate(allocator, direct, headersSize + contentLength);
+			// the start line is always UTF-8 encoded, as in encodeAsBytes
+			if (utf8) {
+				ByteBufUtil.reserveAndWriteUtf8(byteBuf, encoding, headersSize);
+			} else {
+				ByteBufUtil.reserveAndWriteUtf8(byteBuf, encoding, 0, startLineLength,
+						ByteBufUtil.utf8Bytes(encoding, 0, startLineLength));
+				byteBuf.writeCharSequence(encoding.subSequence(startLineLength, encoding.length()), charset);
+			}
+			if (content != null) {
+				byteBuf.writeBytes(content);
+			}
+			return byteBuf;
+		} finally {
+			if (encoding.capacity() > MAX_CACHED_BUILDER_CAPACITY) {
+				builders.remove();
+			}
+		}
+	}
+
+	/**
+	 * Encodes the message into a byte array, as
+	 * {@link SIPMessage#encodeAsBytes(String)} does, for the messages kept
+	 * for their retransmissions.
+	 */
+	public static byte[] encodeAsBytes(SIPMessage sipMessage, String transport) {
+		ByteBuf byteBuf = encode(sipMessage, transport, UnpooledByteBufAllocator.DEFAULT, false);
+		try {
+			// the buffer is allocated with the exact size of UTF-8 messages
+			if (byteBuf.hasArray() && byteBuf.arrayOffset() == 0 && byteBuf.readerIndex() == 0
+					&& byteBuf.array().length == byteBuf.readableBytes()) {
+				return byteBuf.array();
+			}
+			return ByteBufUtil.getBytes(byteBuf);
+		} finally {
+			// an unpooled heap buffer does not reuse its array once released
+			byteBuf.release();
+		}
+	}
+
+	/**
+	 * Copies the encoded message for a server logger capturing the messages,
+	 * before the buffer is written and released.
+	 *
+	 * @return the bytes of the buffer, null when the logger does not capture
+	 *         the messages
+	 */
+	public static byte[] copyForCapture(ServerLogger serverLogger, ByteBuf byteBuf) {
+		if (serverLogger == null || !serverLogger.isCapturingMessages()) {
+			return null;
+		}
+		return ByteBufUtil.getBytes(byteBuf);
+	}
+
+	/**
+	 * Size in bytes of the encoded start line and headers : exact for UTF-8,
+	 * an upper bound for the other charsets.
+	 */
+	private static int estimateSize(StringBuilder encoding, int startLineLength, Charset charset, boolean utf8) {
+		if (utf8) {
+			return ByteBufUtil.utf8Bytes(encoding);
+		}
+		return ByteBufUtil.utf8Bytes(encoding, 0, startLineLength) + (int) Math
+				.ceil((encoding.length() - startLineLength) * (double) charset.newEncoder().maxBytesPerChar());
+	}
+
+	private static ByteBuf allocate(ByteBufAllocator allocator, boolean direct, int size) {
+		if (direct) {
+			return allocator.directBuffer(size);
+		}
+		return allocator.heapBuffer(size);
+	}
+}
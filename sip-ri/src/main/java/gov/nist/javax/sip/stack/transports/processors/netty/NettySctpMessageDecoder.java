@@ -44,7 +44,9 @@ public class NettySctpMessageDecoder extends SctpMessageToMessageDecoder {
     public NettySctpMessageDecoder(SIPTransactionStack sipStack) {    
         this.nettyMessageParser = new NettyMessageParser(            
             sipStack.getMaxMessageSize(),
-            sipStack.isComputeContentLengthFromMessage());
+            sipStack.isComputeContentLengthFromMessage(),
+            sipStack.isNettyParserByteScanning(),
+            sipStack.isLazyHeaderParsing());
     }
 
     @Override
@@ -33,7 +33,6 @@ import javax.sip.message.Response;
 import gov.nist.core.CommonLogger;
 import gov.nist.core.InternalErrorHandler;
 import gov.nist.core.LogWriter;
-import gov.nist.core.ServerLogger;
 import gov.nist.core.StackLogger;
 import gov.nist.javax.sip.IOExceptionEventExt;
 import gov.nist.javax.sip.IOExceptionEventExt.Reason;
@@ -61,6 +60,8 @@ import gov.nist.javax.sip.stack.SIPTransaction;
 import gov.nist.javax.sip.stack.SIPTransactionStack;
 import gov.nist.javax.sip.stack.ServerRequestInterface;
 import gov.nist.javax.sip.stack.ServerResponseInterface;
+import gov.nist.javax.sip.stack.metrics.MetricStage;
+import gov.nist.javax.sip.stack.metrics.StackMetrics;
 import gov.nist.javax.sip.stack.timers.SIPStackTimerTask;
 import gov.nist.javax.sip.stack.transports.processors.HandshakeCompletedListenerImpl;
 import gov.nist.javax.sip.stack.transports.processors.MessageChannel;
@@ -68,6 +69,7 @@ import gov.nist.javax.sip.stack.transports.processors.MessageProcessor;
 import gov.nist.javax.sip.stack.transports.processors.RawMessageChannel;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
@@ -279,6 +281,17 @@ public class NettyStreamMessageChannel extends MessageChannel implements SIPMess
 	 * @param isClient
 	 */
 	protected void sendMessage(byte[] msg, boolean isClient) throws IOException, MessageTooLongException {
+		sendMessage(Unpooled.wrappedBuffer(msg), isClient);
+	}
+
+	/**
+	 * Send an encoded message to whoever is connected to us. The buffer is
+	 * released once written or if it can not be sent.
+	 * 
+	 * @param msg      is the encoded message to send.
+	 * @param isClient
+	 */
+	protected void sendMessage(ByteBuf msg, boolean isClient) throws IOException, MessageTooLongException {
 
 		if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
 			logger.logDebug("sendMessage isClient  = " + isClient + " this = " + this);
@@ -309,6 +322,63 @@ public class NettyStreamMessageChannel extends MessageChannel implements SIPMess
 		sendTCPMessage(message, receiverAddress, receiverPort, retry);
 	}
 
+	@Override
+	public void sendMessage(SIPMessage sipMessage, InetAddress receiverAddress, int receiverPort)
+			throws IOException, MessageTooLongException {
+		long time = System.currentTimeMillis();
+		StackMetrics stackMetrics = getSIPStack().getStackMetrics();
+		long encodeStart = stackMetrics != null ? System.nanoTime() : 0;
+		Channel currentChannel = channel;
+		ByteBuf msg = NettyMessageEncoder.encode(sipMessage, this.getTransport(),
+				currentChannel != null ? currentChannel.alloc() : ByteBufAllocator.DEFAULT,
+				getSIPStack().isNettyDirectBuffers());
+		byte[] captured = NettyMessageEncoder.copyForCapture(getSIPStack().getServerLogger(), msg);
+		long sendStart = stackMetrics != null ? System.nanoTime() : 0;
+		getMessageTxId().set(sipMessage.getTransactionId());
+		try {
+			sendTCPMessage(msg, receiverAddress, receiverPort, sipMessage instanceof SIPRequest);
+		} finally {
+			getMessageTxId().remove();
+		}
+		if (stackMetrics != null)
+			recordSentMessage(stackMetrics, sipMessage, encodeStart, sendStart);
+
+		// we successfully sent the message without an exception so let's
+		// set port and address before we feed it to the logger.
+		sipMessage.setRemoteAddress(receiverAddress);
+		sipMessage.setRemotePort(receiverPort);
+		sipMessage.setLocalPort(this.getPort());
+		sipMessage.setLocalAddress(this.getMessageProcessor().getIpAddress());
+
+		logMessage(sipMessage, captured, receiverAddress, receiverPort, time);
+	}
+
+	@Override
+	public byte[] encodeMessage(SIPMessage sipMessage) {
+		return NettyMessageEncoder.encodeAsBytes(sipMessage, this.getTransport());
+	}
+
+	@Override
+	public void sendMessage(SIPMessage sipMessage, byte[] bytes, InetAddress receiverAddress, int receiverPort)
+			throws IOException, MessageTooLongException {
+		long time = System.currentTimeMillis();
+		getMessageTxId().set(sipMessage.getTransactionId());
+		try {
+			sendTCPMessage(Unpooled.wrappedBuffer(bytes), receiverAddress, receiverPort, sipMessage instanceof SIPRequest);
+		} finally {
+			getMessageTxId().remove();
+		}
+
+		// we successfully sent the message without an exception so let's
+		// set port and address before we feed it to the logger.
+		sipMessage.setRemoteAddress(receiverAddress);
+		sipMessage.setRemotePort(receiverPort);
+		sipMessage.setLocalPort(this.getPort());
+		sipMessage.setLocalAddress(this.getMessageProcessor().getIpAddress());
+
+		logMessage(sipMessage, bytes, receiverAddress, receiverPort, time);
+	}
+
 	/**
 	 * Send a message to a specified address.
 	 * 
@@ -323,9 +393,31 @@ public class NettyStreamMessageChannel extends MessageChannel implements SIPMess
 			logger.logError("receiverAddress = " + receiverAddress);
 			throw new IllegalArgumentException("Null argument");
 		}
+		sendTCPMessage(Unpooled.wrappedBuffer(message), receiverAddress, receiverPort, retry);
+	}
+
+	/**
+	 * Send an encoded message to a specified address. The buffer is released
+	 * once written or if it can not be sent.
+	 * 
+	 * @param byteBuf         Encoded message to send.
+	 * @param receiverAddress Address to send it to.
+	 * @param receiverPort    Receiver port.
+	 * @throws IOException If there is a problem connecting or sending.
+	 */
+	public void sendTCPMessage(ByteBuf byteBuf, InetAddress receiverAddress, int receiverPort, boolean retry)
+			throws IOException, MessageTooLongException {
+		if (byteBuf == null || receiverAddress == null) {
+			logger.logError("receiverAddress = " + receiverAddress);
+			if (byteBuf != null)
+				byteBuf.release();
+			throw new IllegalArgumentException("Null argument");
+		}
 		
-		if(getSIPStack().getMaxMessageSize()>0 && message.length>getSIPStack().getMaxMessageSize()) {
-			logger.logError("message length = " + message.length + " , while maximum allowed for tcp " + getSIPStack().getMaxMessageSize());
+		int length = byteBuf.readableBytes();
+		if(getSIPStack().getMaxMessageSize()>0 && length>getSIPStack().getMaxMessageSize()) {
+			byteBuf.release();
+			logger.logError("message length = " + length + " , while maximum allowed for tcp " + getSIPStack().getMaxMessageSize());
 			throw new MessageTooLongException("Message is too long");
 		}
 		
@@ -347,7 +439,6 @@ public class NettyStreamMessageChannel extends MessageChannel implements SIPMess
 			}
 		}
 
-		ByteBuf byteBuf = Unpooled.wrappedBuffer(message);
 		if (channel == null || !channel.isActive()) {
 			// Take a cached socket to the destination,
 			// if none create a new one and cache it
@@ -686,7 +777,7 @@ public class NettyStreamMessageChannel extends MessageChannel implements SIPMess
 			if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
 				logger.logDebug("----Processing Message---");
 			}
-			if (logger.isLoggingEnabled(ServerLogger.TRACE_MESSAGES)) {
+			if (isLoggingMessages()) {
 
 				sipStack.getServerLogger().logMessage(sipMessage, this.getPeerHostPort().toString(),
 						this.messageProcessor.getIpAddress().getHostAddress() + ":" + this.messageProcessor.getPort(),
@@ -728,7 +819,11 @@ public class NettyStreamMessageChannel extends MessageChannel implements SIPMess
 
 			if (sipServerRequest != null) {
 				// try {
+				StackMetrics stackMetrics = getSIPStack().getStackMetrics();
+				long dialogStart = stackMetrics != null ? System.nanoTime() : 0;
 				sipServerRequest.processRequest(sipRequest, this);
+				if (stackMetrics != null)
+					stackMetrics.record(MetricStage.DIALOG, dialogStart);
 				// } finally {
 				// if (sipServerRequest instanceof SIPTransaction) {
 				// SIPServerTransaction sipServerTx = (SIPServerTransaction) sipServerRequest;
@@ -796,7 +891,11 @@ public class NettyStreamMessageChannel extends MessageChannel implements SIPMess
 					NettyStreamMessageChannel.logger.logDebug(
 							"Delivering message to server response interface.");
 				
+				StackMetrics stackMetrics = getSIPStack().getStackMetrics();
+				long dialogStart = stackMetrics != null ? System.nanoTime() : 0;
 				sipServerResponse.processResponse(sipResponse, this);
+				if (stackMetrics != null)
+					stackMetrics.record(MetricStage.DIALOG, dialogStart);
 				// } finally {
 				// if (sipServerResponse instanceof SIPTransaction
 				// && !((SIPTransaction) sipServerResponse)
@@ -831,7 +930,12 @@ public class NettyStreamMessageChannel extends MessageChannel implements SIPMess
 			return;
 		}
 
-		byte[] msg = sipMessage.encodeAsBytes(this.getTransport());
+		StackMetrics stackMetrics = getSIPStack().getStackMetrics();
+		long encodeStart = stackMetrics != null ? System.nanoTime() : 0;
+		Channel currentChannel = channel;
+		ByteBuf msg = NettyMessageEncoder.encode(sipMessage, this.getTransport(),
+				currentChannel != null ? currentChannel.alloc() : ByteBufAllocator.DEFAULT,
+				getSIPStack().isNettyDirectBuffers());
 
 		long time = System.currentTimeMillis();
 
@@ -860,7 +964,11 @@ public class NettyStreamMessageChannel extends MessageChannel implements SIPMess
 
 		// JvB: also retry for responses, if the connection is gone we should
 		// try to reconnect
+		byte[] captured = NettyMessageEncoder.copyForCapture(getSIPStack().getServerLogger(), msg);
+		long sendStart = stackMetrics != null ? System.nanoTime() : 0;
 		this.sendMessage(msg, sipMessage instanceof SIPRequest);
+		if (stackMetrics != null)
+			recordSentMessage(stackMetrics, sipMessage, encodeStart, sendStart);
 
 		// message was sent without any exception so let's set set port and
 		// address before we feed it to the logger
@@ -869,8 +977,8 @@ public class NettyStreamMessageChannel extends MessageChannel implements SIPMess
 		sipMessage.setLocalAddress(this.getMessageProcessor().getIpAddress());
 		sipMessage.setLocalPort(this.getPort());
 
-		if (logger.isLoggingEnabled(ServerLogger.TRACE_MESSAGES))
-			logMessage(sipMessage, peerAddress, peerPort, time);
+		if (isLoggingMessages())
+			logMessage(sipMessage, captured, peerAddress, peerPort, time);
 	}
 
 	@Override
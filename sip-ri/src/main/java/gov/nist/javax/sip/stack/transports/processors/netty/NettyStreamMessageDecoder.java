@@ -27,6 +27,8 @@ import gov.nist.core.StackLogger;
 import gov.nist.javax.sip.message.SIPMessage;
 import gov.nist.javax.sip.parser.NettyMessageParser;
 import gov.nist.javax.sip.stack.SIPTransactionStack;
+import gov.nist.javax.sip.stack.metrics.MetricStage;
+import gov.nist.javax.sip.stack.metrics.StackMetrics;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
@@ -41,10 +43,15 @@ public class NettyStreamMessageDecoder extends ByteToMessageDecoder {
 
     NettyMessageParser nettyMessageParser = null;
 
+    private final SIPTransactionStack sipStack;
+
     public NettyStreamMessageDecoder(SIPTransactionStack sipStack) {    
+        this.sipStack = sipStack;
         this.nettyMessageParser = new NettyMessageParser(            
             sipStack.getMaxMessageSize(),
-            sipStack.isComputeContentLengthFromMessage());
+            sipStack.isComputeContentLengthFromMessage(),
+            sipStack.isNettyParserByteScanning(),
+            sipStack.isLazyHeaderParsing());
     }
 
     @Override
@@ -55,12 +62,18 @@ public class NettyStreamMessageDecoder extends ByteToMessageDecoder {
           
         List<SIPMessage> sipMessages = new ArrayList<SIPMessage>();  
         SIPMessage currMessage = null;
+        StackMetrics stackMetrics = sipStack.getStackMetrics();
         do {
         	currMessage = null;
+            // a message split over several reads is only timed for its last part
+            long decodeStart = stackMetrics != null ? System.nanoTime() : 0;
             if(nettyMessageParser.parseBytes(in).isParsingComplete()) {
                 try {  
                 	currMessage = nettyMessageParser.consumeSIPMessage();
                     if (currMessage != null) {
+                        if (stackMetrics != null) {
+                            stackMetrics.record(MetricStage.DECODE, decodeStart);
+                        }
                         if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {   
                             logger.logDebug("following message parsed, passing it up the stack \n" + currMessage.toString());
                         }         
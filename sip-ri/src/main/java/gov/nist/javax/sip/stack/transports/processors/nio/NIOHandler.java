@@ -34,7 +34,6 @@ import gov.nist.core.LogWriter;
 import gov.nist.core.StackLogger;
 import gov.nist.javax.sip.SipStackImpl;
 import gov.nist.javax.sip.stack.SIPTransactionStack;
-import gov.nist.javax.sip.stack.transports.processors.ConnectionOrientedMessageProcessor;
 import gov.nist.javax.sip.stack.transports.processors.HandshakeCompletedListenerImpl;
 import gov.nist.javax.sip.stack.transports.processors.KeyedSemaphore;
 
@@ -69,8 +68,6 @@ public class NIOHandler {
 
     private NioTcpMessageProcessor messageProcessor;
 
-    protected SocketTimeoutAuditor socketTimeoutAuditor = null;
-
     private AtomicBoolean stopped = new AtomicBoolean(false);
 
     // A cache of client sockets that can be re-used for
@@ -110,11 +107,7 @@ public class NIOHandler {
     protected NIOHandler(SIPTransactionStack sipStack, NioTcpMessageProcessor messageProcessor) {
         this.sipStack = (SipStackImpl) sipStack;
         this.messageProcessor = messageProcessor;
-        if (sipStack.nioSocketMaxIdleTime > 0 && messageProcessor instanceof ConnectionOrientedMessageProcessor) {
-            // https://java.net/jira/browse/JSIP-471 use property from the stack instead of hard coded 20s
-        	socketTimeoutAuditor = new SocketTimeoutAuditor(sipStack.nioSocketMaxIdleTime, this);
-			sipStack.getTimer().scheduleWithFixedDelay(socketTimeoutAuditor, sipStack.nioSocketMaxIdleTime, sipStack.nioSocketMaxIdleTime);
-        }
+        // https://java.net/jira/browse/JSIP-471 idle channels are closed by the IdleConnectionReaper of the stack
     }
 
     /**
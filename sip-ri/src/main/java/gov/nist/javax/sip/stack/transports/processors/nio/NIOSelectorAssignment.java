@@ -0,0 +1,9 @@
+package gov.nist.javax.sip.stack.transports.processors.nio;
+
+/**
+ * How a NioTcpMessageProcessor with several selector threads picks the
+ * selector of a new connection.
+ */
+public enum NIOSelectorAssignment {
+    ROUND_ROBIN,LEAST_LOAD
+}
@@ -52,6 +52,7 @@ import gov.nist.javax.sip.message.SIPMessage;
 import gov.nist.javax.sip.message.SIPRequest;
 import gov.nist.javax.sip.message.SIPResponse;
 import gov.nist.javax.sip.parser.NioPipelineParser;
+import gov.nist.javax.sip.stack.ByteBufferFactory;
 import gov.nist.javax.sip.stack.SIPClientTransaction;
 import gov.nist.javax.sip.stack.SIPTransaction;
 import gov.nist.javax.sip.stack.SIPTransactionStack;
@@ -65,12 +66,11 @@ public class NioTcpMessageChannel extends ConnectionOrientedMessageChannel {
 			.getLogger(NioTcpMessageChannel.class);
 
 	protected SocketChannel socketChannel;
-	protected long lastActivityTimeStamp;
+	protected volatile long lastActivityTimeStamp;
 	NioPipelineParser nioParser = null;
 
         
 	private static final int BUF_SIZE = 4096;        
-	private final ByteBuffer byteBuffer  = ByteBuffer.allocateDirect(BUF_SIZE);
                 
 	public void readChannel() {
                 if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
@@ -78,6 +78,8 @@ public class NioTcpMessageChannel extends ConnectionOrientedMessageChannel {
                 }
                 
 		this.isRunning = true;
+		// The read buffer is only held for the duration of the read, it comes from the cache of the selector thread
+		ByteBuffer byteBuffer = ByteBufferFactory.getInstance().acquire(BUF_SIZE);
 		try {
 			int nbytes = this.socketChannel.read(byteBuffer);
 			if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
@@ -93,12 +95,9 @@ public class NioTcpMessageChannel extends ConnectionOrientedMessageChannel {
 					"This is usually an indication we are stuck and it is better to disconnect.");                        
                         
 			byteBuffer.flip();
-			byte[] msg = new byte[byteBuffer.remaining()];
-			byteBuffer.get(msg);
-			byteBuffer.clear();
 
 			// Otherwise just add the bytes to queue
-			addBytes(msg);
+			addBytes(byteBuffer);
 			lastActivityTimeStamp = System.currentTimeMillis();
 
 		} catch (Exception ex) { // https://java.net/jira/browse/JSIP-464 make sure to close connections on all exceptions to avoid the stack to hang
@@ -124,7 +123,9 @@ public class NioTcpMessageChannel extends ConnectionOrientedMessageChannel {
 				if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
 					logger.logDebug("Issue closing the socket " + ex1);
 			}
-		} 
+		} finally {
+			ByteBufferFactory.getInstance().release(byteBuffer);
+		}
 //		catch (Exception ex) {
 //			InternalErrorHandler.handleException(ex, logger);
 //		}
@@ -136,10 +137,17 @@ public class NioTcpMessageChannel extends ConnectionOrientedMessageChannel {
 		nioParser.addBytes(bytes);
 	}
 
+	// Called with the bytes read from the socket, the buffer is reused once this returns so nothing may keep it
+	protected void addBytes(ByteBuffer buffer) throws Exception {
+		nioParser.addBytes(buffer);
+	}
+
 	protected NioTcpMessageChannel(NioTcpMessageProcessor nioTcpMessageProcessor,
 			SocketChannel socketChannel) throws IOException {
 		super(nioTcpMessageProcessor.getSIPStack());
 		super.myClientInputStream = socketChannel.socket().getInputStream();
+		// set before the liveness tracking which needs the transport
+		messageProcessor = nioTcpMessageProcessor;
 		try {
 			this.peerAddress = socketChannel.socket().getInetAddress();
 			this.peerPort = socketChannel.socket().getPort();
@@ -154,6 +162,7 @@ public class NioTcpMessageChannel extends ConnectionOrientedMessageChannel {
 
             myAddress = nioTcpMessageProcessor.getIpAddress().getHostAddress();
             myPort = nioTcpMessageProcessor.getPort();
+            trackLiveness();
 
 		} finally {
 			if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
@@ -189,7 +198,7 @@ public class NioTcpMessageChannel extends ConnectionOrientedMessageChannel {
 
             myAddress = nioTcpMessageProcessor.getIpAddress().getHostAddress();
             myPort = nioTcpMessageProcessor.getPort();
-
+            trackLiveness();
 
 		} finally {
 			if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
@@ -205,6 +214,9 @@ public class NioTcpMessageChannel extends ConnectionOrientedMessageChannel {
 
 	@Override
 	protected void close(boolean removeSocket, boolean stopKeepAliveTask) {
+		if(removeSocket) {
+			stopLivenessTracking();
+		}
 		try {
 			if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
 				logger.logDebug("Closing NioTcpMessageChannel "
@@ -212,6 +224,7 @@ public class NioTcpMessageChannel extends ConnectionOrientedMessageChannel {
 			}
 			NIOHandler nioHandler = ((NioTcpMessageProcessor) messageProcessor).nioHandler;
 			nioHandler.removeMessageChannel(socketChannel);
+			((NioTcpMessageProcessor) messageProcessor).releaseSocket(socketChannel);
 			if(socketChannel != null) {
 				socketChannel.close();
 			}
@@ -456,9 +469,15 @@ public class NioTcpMessageChannel extends ConnectionOrientedMessageChannel {
 		return false;
 	}
 	
+	@Override
 	public long getLastActivityTimestamp() {
 		return lastActivityTimeStamp;
 	}
+
+	@Override
+	protected long getMaxIdleTime() {
+		return sipStack.nioSocketMaxIdleTime;
+	}
 	
 	public void triggerConnectSuccess() {
         if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
@@ -36,26 +36,36 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Queue;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import gov.nist.core.CommonLogger;
 import gov.nist.core.HostPort;
 import gov.nist.core.LogWriter;
 import gov.nist.core.StackLogger;
 import gov.nist.core.executor.SIPTask;
+import gov.nist.javax.sip.SipStackImpl;
 import gov.nist.javax.sip.stack.SIPTransactionStack;
 import gov.nist.javax.sip.stack.transports.processors.ConnectionOrientedMessageChannel;
 import gov.nist.javax.sip.stack.transports.processors.ConnectionOrientedMessageProcessor;
+import gov.nist.javax.sip.stack.transports.processors.KeyedSemaphore;
 import gov.nist.javax.sip.stack.transports.processors.MessageChannel;
 
 /**
  * NIO implementation for TCP.
  * 
+ * By default a single selector thread accepts, reads and writes for every connection of the
+ * listening point. With gov.nist.javax.sip.NIO_SELECTOR_THREADS set above one, an acceptor thread
+ * hands the accepted connections to that many selector threads, each with its own selector,
+ * change requests and pending data, picked round robin or by the least number of connections
+ * (gov.nist.javax.sip.NIO_SELECTOR_ASSIGNMENT). Both may be set for a single listening point by
+ * suffixing the property with .TRANSPORT.port, for example gov.nist.javax.sip.NIO_SELECTOR_THREADS.TLS.5061
+ * 
  * @author mranga
  *
  */
@@ -63,17 +73,24 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
     private static final int MAX_CHANGE_REQS = 10000;
     private static final int MAX_PENDING_DATA = 10000;
     
-    protected Selector selector ;
     private static StackLogger logger = CommonLogger.getLogger(NioTcpMessageProcessor.class);
-    protected Thread selectorThread;
     protected NIOHandler nioHandler;    
     protected ServerSocketChannel channel;
 
-    // Cache the change request here, the selector thread will read it when it wakes up and execute the request
-    protected final Queue<ChangeRequest> changeRequests = new ConcurrentLinkedQueue<ChangeRequest> ();
+    protected int selectorThreads = 1;
+    protected NIOSelectorAssignment selectorAssignment = NIOSelectorAssignment.ROUND_ROBIN;
+
+    // The selector threads, every connection is served by one of them for its whole life
+    protected ProcessorTask[] reactors;
+    // Accepts the inbound connections, this is reactors[0] itself when there is a single selector thread
+    protected ProcessorTask acceptor;
+
+    // Selector thread of each socket, set when the socket is accepted or connected
+    private final Map<SocketChannel, ProcessorTask> socketReactors = new ConcurrentHashMap<SocketChannel, ProcessorTask>();
+    private final AtomicInteger nextReactor = new AtomicInteger();
 
-    // Data send over a socket is cached here before hand, the selector thread will take it later for physical send
-    private final Map<SocketChannel, Queue<PendingData>> pendingData = Collections.synchronizedMap(new WeakHashMap<SocketChannel, Queue<PendingData>>());
+    // Serializes the creation of the outbound channels per destination
+    private final KeyedSemaphore channelCreationSemaphore = new KeyedSemaphore();
     
     
     public static class PendingData {
@@ -129,9 +146,10 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
         	logger.logDebug("Blocking set to false now " + address);
       
 
-        changeRequests.add(new ChangeRequest(socketChannel, ChangeRequest.REGISTER, SelectionKey.OP_READ));
+        ProcessorTask reactor = assignReactor(socketChannel);
+        reactor.changeRequests.add(new ChangeRequest(socketChannel, ChangeRequest.REGISTER, SelectionKey.OP_READ));
 
-        selector.wakeup();
+        reactor.selector.wakeup();
         return socketChannel;
     }
     
@@ -146,7 +164,7 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
         	logger.logDebug("Init connect " + address);     
         }
         socketChannel.connect(address);
-    	changeRequests.add(new ChangeRequest(socketChannel, ChangeRequest.REGISTER, SelectionKey.OP_CONNECT));
+    	assignReactor(socketChannel).changeRequests.add(new ChangeRequest(socketChannel, ChangeRequest.REGISTER, SelectionKey.OP_CONNECT));
         //we don't wake the selector, wait for corresponding "send" operation to initiate the handshake
         return socketChannel;
     }
@@ -164,43 +182,140 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
     	if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
     		logger.logDebug("Sending data " + data.length + " bytes on socket " + socket);
     	
-    	
-        Queue<PendingData> queue = this.pendingData.get(socket);
-        //this condition optimizes in case the socket has an already existing
-        //queue. Contention will be avoided
-        if (queue == null) {
-            //Use the socket itself as monitor object, the map itself is already
-            //concurrent coll
-            synchronized (socket) {
-                //this condition is necessary to ensure consistency
-                if (!pendingData.containsKey(socket)) {
-                    queue = new ConcurrentLinkedQueue<PendingData>();
-                    this.pendingData.put(socket, queue);
-                } else {
-                    queue = this.pendingData.get(socket);
+    	ProcessorTask reactor = assignReactor(socket);
+    	reactor.send(socket, data);
+    	if (!socket.isOpen()) {
+    		// closed while the data was queued, releaseSocket may have missed the queue
+    		reactor.pendingData.remove(socket);
+    		throw new ClosedChannelException();
+    	}
+    }
+    
+    /**
+     * Returns the selector thread serving the socket, a socket seen for the first time is given
+     * to the one picked by the configured assignment. A closed socket is not assigned, releaseSocket
+     * may already have forgotten it.
+     *
+     * @throws ClosedChannelException if the socket is closed
+     */
+    protected ProcessorTask assignReactor(SocketChannel socketChannel) throws ClosedChannelException {
+        ProcessorTask reactor = socketReactors.get(socketChannel);
+        if (reactor != null) {
+            return reactor;
+        }
+        if (!socketChannel.isOpen()) {
+            throw new ClosedChannelException();
+        }
+        ProcessorTask candidate = selectReactor();
+        reactor = socketReactors.putIfAbsent(socketChannel, candidate);
+        if (reactor == null) {
+            reactor = candidate;
+            reactor.connections.incrementAndGet();
+            // closed meanwhile, releaseSocket may have run before the socket was added
+            if (!socketChannel.isOpen()) {
+                releaseSocket(socketChannel);
+                throw new ClosedChannelException();
+            }
+        }
+        return reactor;
+    }
+
+    private ProcessorTask selectReactor() {
+        if (reactors.length == 1) {
+            return reactors[0];
+        }
+        if (NIOSelectorAssignment.LEAST_LOAD.equals(selectorAssignment)) {
+            ProcessorTask leastLoaded = reactors[0];
+            for (int i = 1; i < reactors.length; i++) {
+                if (reactors[i].connections.get() < leastLoaded.connections.get()) {
+                    leastLoaded = reactors[i];
                 }
             }
-        }    	
+            return leastLoaded;
+        }
+        return reactors[(nextReactor.getAndIncrement() & Integer.MAX_VALUE) % reactors.length];
+    }
 
-        PendingData pData = new PendingData(MessageChannel.getMessageTxId().get() ,ByteBuffer.wrap(data));
-        queue.add(pData);
-        
-        if (socket.isConnected()) {
-            if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
-                logger.logDebug("Connected. lets set WRITE ops.");        
-            }  	        	
-            this.changeRequests.add(new ChangeRequest(socket, ChangeRequest.CHANGEOPS, SelectionKey.OP_WRITE));
-        }//if not the selector will change to WRITe mode after connect
-        
-    	if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
-    		logger.logDebug("Waking up selector thread");
-    	this.selector.wakeup();
+    /**
+     * Forgets the selector thread and the pending data of a closed socket.
+     */
+    protected void releaseSocket(SocketChannel socketChannel) {
+        if (socketChannel == null) {
+            return;
+        }
+        ProcessorTask reactor = socketReactors.remove(socketChannel);
+        if (reactor != null) {
+            reactor.pendingData.remove(socketChannel);
+            reactor.connections.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return number of connections served by each selector thread
+     */
+    public int[] getSelectorLoads() {
+        ProcessorTask[] current = reactors;
+        if (current == null) {
+            return new int[0];
+        }
+        int[] loads = new int[current.length];
+        for (int i = 0; i < current.length; i++) {
+            loads[i] = current[i].connections.get();
+        }
+        return loads;
+    }
+
+    protected void wakeupSelectors() {
+        ProcessorTask[] current = reactors;
+        if (current != null) {
+            for (ProcessorTask reactor : current) {
+                reactor.selector.wakeup();
+            }
+        }
     }
     
-    // This will be our selector thread, only one thread for all sockets. If you want to understand the overall design decisions read this first http://rox-xmlrpc.sourceforge.net/niotut/
+    // This will be our selector thread, one per reactor, every socket is served by a single one. If you want to understand the overall design decisions read this first http://rox-xmlrpc.sourceforge.net/niotut/
     class ProcessorTask implements Runnable {
+        protected final Selector selector;
+
+        // Cache the change request here, the selector thread will read it when it wakes up and execute the request
+        protected final Queue<ChangeRequest> changeRequests = new ConcurrentLinkedQueue<ChangeRequest> ();
+
+        // Data send over a socket is cached here before hand, the selector thread will take it later for physical send
+        private final Map<SocketChannel, Queue<PendingData>> pendingData = new ConcurrentHashMap<SocketChannel, Queue<PendingData>>();
 
-        public ProcessorTask() {
+        // Sockets assigned to this selector thread
+        private final AtomicInteger connections = new AtomicInteger();
+
+        public ProcessorTask() throws IOException {
+            selector = Selector.open();
+        }
+
+        public void send(SocketChannel socket, byte[] data) {
+            Queue<PendingData> queue = pendingData.get(socket);
+            //this condition optimizes in case the socket has an already existing
+            //queue. Contention will be avoided
+            if (queue == null) {
+                Queue<PendingData> newQueue = new ConcurrentLinkedQueue<PendingData>();
+                queue = pendingData.putIfAbsent(socket, newQueue);
+                if (queue == null) {
+                    queue = newQueue;
+                }
+            }
+
+            PendingData pData = new PendingData(MessageChannel.getMessageTxId().get() ,ByteBuffer.wrap(data));
+            queue.add(pData);
+            
+            if (socket.isConnected()) {
+                if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
+                    logger.logDebug("Connected. lets set WRITE ops.");        
+                }  	        	
+                this.changeRequests.add(new ChangeRequest(socket, ChangeRequest.CHANGEOPS, SelectionKey.OP_WRITE));
+            }//if not the selector will change to WRITe mode after connect
+            
+        	if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
+        		logger.logDebug("Waking up selector thread");
+        	this.selector.wakeup();
         }
         
         public void read(SelectionKey selectionKey) {
@@ -214,7 +329,7 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
             		logger.logDebug("Dead socketChannel" + socketChannel + " socket " + socketChannel.socket().getInetAddress() + ":"+socketChannel.socket().getPort());
             	selectionKey.cancel();
             	// https://java.net/jira/browse/JSIP-475 remove the socket from the hashmap
-            	pendingData.remove(socketChannel);            	
+            	releaseSocket(socketChannel);            	
             	return;
             }
             
@@ -232,7 +347,7 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
             	if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
             		logger.logDebug("Dead socketChannel" + socketChannel + " socket " + socketChannel.socket().getInetAddress() + ":"+socketChannel.socket().getPort());
             	// https://java.net/jira/browse/JSIP-475 remove the socket from the hashmap
-            	pendingData.remove(socketChannel);            	
+            	releaseSocket(socketChannel);            	
             	selectionKey.cancel();
             	return;
             }
@@ -270,7 +385,7 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
                                     // Shall we perform a retry mechanism in case the remote host connection was closed due to a TCP RST ?
                                     // https://java.net/jira/browse/JSIP-475 in the meanwhile remove the data from the hashmap
                                     queue.remove();
-                                    pendingData.remove(socketChannel);                                    
+                                    releaseSocket(socketChannel);                                    
                                     return;
                             }
 
@@ -354,13 +469,16 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
                         logger.logDebug("Cant connect ", e);        
                 }
                 selectionKey.cancel();
+                // The queued data is reported as failed, the socket itself is gone
+                final Queue<PendingData> failedData = pendingData.get(socketChannel);
+                releaseSocket(socketChannel);
     			if(sipStack.getMessageProcessorExecutor() != null) {
     				sipStack.getMessageProcessorExecutor().addTaskLast(new SIPTask() {
                         long startTime = System.currentTimeMillis();
 
                         @Override
     					public void execute() {
-    						nioTcpMessageChannel.triggerConnectFailure(pendingData.get(socketChannel));
+    						nioTcpMessageChannel.triggerConnectFailure(failedData);
     					}
 
                         @Override
@@ -379,7 +497,7 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
 						}                        
     				});
     			} else {
-    				nioTcpMessageChannel.triggerConnectFailure(pendingData.get(socketChannel));                                           
+    				nioTcpMessageChannel.triggerConnectFailure(failedData);                                           
     			}
                 return;
         	}
@@ -398,9 +516,16 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
         	 
         	 createMessageChannel(NioTcpMessageProcessor.this, client);
         	 
+        	 ProcessorTask reactor = assignReactor(client);
         	 if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
-        		 logger.logDebug("Adding to selector " + client);
-        	 client.register(selector, SelectionKey.OP_READ);
+        		 logger.logDebug("Adding to selector " + client + " selector = " + reactor.selector);
+        	 if(reactor == this) {
+        		 client.register(selector, SelectionKey.OP_READ);
+        	 } else {
+        		 // The selector belongs to another thread, it registers the socket itself when it wakes up
+        		 reactor.changeRequests.add(new ChangeRequest(client, ChangeRequest.REGISTER, SelectionKey.OP_READ));
+        		 reactor.selector.wakeup();
+        	 }
         	 
         }
         @Override
@@ -558,32 +683,38 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
      * We don't use putIfAbset from CHM since creating a channel instance itself
      * is quite heavy. See https://github.com/RestComm/jain-sip/issues/80.
      * 
-     * Using synchronized at method level, instead of any internal att, 
-     * as we had in non Nio impl. This is better than use sync section with 
-     * non-volatile variable. 
+     * The critical section is per destination key, so channels towards different
+     * destinations are created concurrently.
      * @param key
      * @param targetHost
      * @param port
      * @return
      * @throws IOException 
      */
-    private synchronized MessageChannel createMessageChannel(String key, InetAddress targetHost, int port)  throws IOException {
-        ConnectionOrientedMessageChannel retval = messageChannels.get(key);
-        //once locked, we need to check condition again
-        if( retval == null ) {
-                retval = constructMessageChannel(targetHost,
-                                port);
-                this.messageChannels.put(key, retval);
-                retval.cache();
-                if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
-                        logger.logDebug("key " + key);
-                        logger.logDebug("Creating " + retval);
-                }
-                if (this.sipStack.nioMode.equals(NIOMode.BLOCKING)) {
-                	selector.wakeup();
-                }
-        }  		
-        return retval;      
+    private MessageChannel createMessageChannel(String key, InetAddress targetHost, int port)  throws IOException {
+        channelCreationSemaphore.enterIOCriticalSection(key);
+        try {
+            ConnectionOrientedMessageChannel retval = messageChannels.get(key);
+            //once locked, we need to check condition again
+            if( retval == null ) {
+                    retval = constructMessageChannel(targetHost,
+                                    port);
+                    this.messageChannels.put(key, retval);
+                    retval.cache();
+                    if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
+                            logger.logDebug("key " + key);
+                            logger.logDebug("Creating " + retval);
+                    }
+                    if (this.sipStack.nioMode.equals(NIOMode.BLOCKING)) {
+                    	wakeupSelectors();
+                    }
+            }  		
+            // Later callers find the channel in the map, the lock of the key is not needed anymore
+            channelCreationSemaphore.remove(key);
+            return retval;
+        } finally {
+            channelCreationSemaphore.leaveIOCriticalSection(key);
+        }
     }     
 
     @Override
@@ -621,12 +752,12 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
 
     // https://java.net/jira/browse/JSIP-475
     @Override
-    public synchronized void remove(
+    public void remove(
     		ConnectionOrientedMessageChannel messageChannel) {
     	if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
             logger.logDebug(Thread.currentThread() + " removing " + ((NioTcpMessageChannel)messageChannel).getSocketChannel() + " from processor " + getIpAddress()+ ":" + getPort() + "/" + getTransport());
         }
-    	pendingData.remove(((NioTcpMessageChannel)messageChannel).getSocketChannel());
+    	releaseSocket(((NioTcpMessageChannel)messageChannel).getSocketChannel());
     	super.remove(messageChannel);
     }
     
@@ -644,26 +775,79 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
 
     @Override
     public void start() throws IOException {
-        selector = Selector.open();
+        configureSelectors();
+        ProcessorTask[] newReactors = new ProcessorTask[selectorThreads];
+        for (int i = 0; i < newReactors.length; i++) {
+            newReactors[i] = createProcessorTask();
+        }
+        reactors = newReactors;
+        acceptor = selectorThreads == 1 ? reactors[0] : createProcessorTask();
+
         channel = ServerSocketChannel.open();
         channel.configureBlocking(false);
         InetSocketAddress isa  = new InetSocketAddress(super.getIpAddress(), super.getPort());
         channel.socket().bind(isa);
-        channel.register(selector, SelectionKey.OP_ACCEPT);
-        selectorThread = new Thread(createProcessorTask());
-        selectorThread.start();
-        selectorThread.setName("NioSelector-" + getTransport() + '-' + getIpAddress().getHostAddress() + '/' + getPort());
+        channel.register(acceptor.selector, SelectionKey.OP_ACCEPT);
+
+        String name = getTransport() + '-' + getIpAddress().getHostAddress() + '/' + getPort();
+        if (acceptor != reactors[0]) {
+            new Thread(acceptor, "NioAcceptor-" + name).start();
+        }
+        for (int i = 0; i < reactors.length; i++) {
+            new Thread(reactors[i], reactors.length == 1 ? "NioSelector-" + name : "NioSelector-" + name + '-' + i).start();
+        }
+    }
+
+    /**
+     * Reads the number of selector threads and their assignment, the stack wide values may be
+     * overridden for this listening point with the .TRANSPORT.port suffixed properties.
+     */
+    protected void configureSelectors() {
+        selectorThreads = sipStack.nioSelectorThreads;
+        selectorAssignment = sipStack.nioSelectorAssignment;
+        if (sipStack instanceof SipStackImpl) {
+            Properties configurationProperties = ((SipStackImpl) sipStack).getConfigurationProperties();
+            String suffix = "." + getTransport().toUpperCase() + "." + getPort();
+            String threads = configurationProperties.getProperty("gov.nist.javax.sip.NIO_SELECTOR_THREADS" + suffix);
+            if (threads != null) {
+                try {
+                    selectorThreads = Integer.parseInt(threads);
+                } catch (NumberFormatException e) {
+                    logger.logError("Bad configuration value for gov.nist.javax.sip.NIO_SELECTOR_THREADS" + suffix + "=" + threads, e);
+                }
+            }
+            String assignment = configurationProperties.getProperty("gov.nist.javax.sip.NIO_SELECTOR_ASSIGNMENT" + suffix);
+            if (assignment != null) {
+                try {
+                    selectorAssignment = NIOSelectorAssignment.valueOf(assignment);
+                } catch (IllegalArgumentException e) {
+                    logger.logError("Bad configuration value for gov.nist.javax.sip.NIO_SELECTOR_ASSIGNMENT" + suffix + "=" + assignment, e);
+                }
+            }
+        }
+        if (selectorThreads < 1) {
+            selectorThreads = 1;
+        }
+        if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
+            logger.logDebug("Selector threads " + selectorThreads + " assignment " + selectorAssignment + " for " + getTransport() + ":" + getPort());
+        }
     }
     
-    protected ProcessorTask createProcessorTask() {
+    protected ProcessorTask createProcessorTask() throws IOException {
     	return new ProcessorTask();
     }
 
     @Override
     public void stop() {
     	try {
-    		if(selector.isOpen())
-    			selector.close();
+    		if(acceptor != null && acceptor.selector.isOpen())
+    			acceptor.selector.close();
+    		if(reactors != null) {
+    			for(ProcessorTask reactor : reactors) {
+    				if(reactor.selector.isOpen())
+    					reactor.selector.close();
+    			}
+    		}
     		
     		nioHandler.stop();    		
     	} catch (Exception ex) {
@@ -43,17 +43,20 @@ public interface NioTlsChannelInterface {
 	 */
 	void sendEncryptedData(byte[] msg) throws IOException ;
 	/**
-	 * Initialize the buffer again.
+	 * Initialize the buffer again. The buffer is taken from the ByteBufferFactory pool and
+	 * the SSLStateMachine gives it back once it is done with it.
 	 * @return
 	 */
 	ByteBuffer prepareAppDataBuffer();
 	/**
-	 * Initialize the buffer again.
+	 * Initialize the buffer again. The buffer is taken from the ByteBufferFactory pool and
+	 * the SSLStateMachine gives it back once it is done with it.
 	 * @return
 	 */
 	ByteBuffer prepareAppDataBuffer(int capacity);
 	/**
-	 * Initialize the buffer again.
+	 * Initialize the buffer again. The buffer is taken from the ByteBufferFactory pool and
+	 * the SSLStateMachine gives it back once it is done with it.
 	 * @return
 	 */
 	ByteBuffer prepareEncryptedDataBuffer();
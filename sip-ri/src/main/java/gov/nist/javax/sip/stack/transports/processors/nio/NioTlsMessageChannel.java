@@ -107,15 +107,15 @@ public class NioTlsMessageChannel extends NioTcpMessageChannel implements NioTls
 	}
 	
 	public ByteBuffer prepareEncryptedDataBuffer() {
-		return ByteBufferFactory.getInstance().allocateDirect(netBufferMax);
+		return ByteBufferFactory.getInstance().acquire(netBufferMax);
 	}
 	
 	public ByteBuffer prepareAppDataBuffer() {
-		return ByteBufferFactory.getInstance().allocateDirect(appBufferMax);
+		return ByteBufferFactory.getInstance().acquire(appBufferMax);
 	}
 	
 	public ByteBuffer prepareAppDataBuffer(int capacity) {
-		return ByteBufferFactory.getInstance().allocateDirect(capacity);
+		return ByteBufferFactory.getInstance().acquire(capacity);
 	}
 	
 	public static class SSLReconnectedException extends IOException {
@@ -127,7 +127,7 @@ public class NioTlsMessageChannel extends NioTcpMessageChannel implements NioTls
 		
 		ByteBuffer b = ByteBuffer.wrap(msg);
 		try {
-			sslStateMachine.wrap(b, ByteBufferFactory.getInstance().allocateDirect(netBufferMax), new MessageSendCallback() {
+			sslStateMachine.wrap(b, new MessageSendCallback() {
 
 				@Override
 				public void doSend(byte[] bytes) throws IOException {
@@ -163,7 +163,7 @@ public class NioTlsMessageChannel extends NioTcpMessageChannel implements NioTls
 		
 		ByteBuffer b = ByteBuffer.wrap(message);
 		try {
-			sslStateMachine.wrap(b, ByteBufferFactory.getInstance().allocateDirect(netBufferMax), new MessageSendCallback() {
+			sslStateMachine.wrap(b, new MessageSendCallback() {
 				
 				@Override
 				public void doSend(byte[] bytes) throws IOException {
@@ -208,6 +208,16 @@ public class NioTlsMessageChannel extends NioTcpMessageChannel implements NioTls
 		ByteBuffer buffer = ByteBuffer.wrap(bytes);
 		sslStateMachine.unwrap(buffer);
 	}
+
+	@Override
+	protected void addBytes(ByteBuffer buffer) throws Exception {
+		if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
+			logger.logDebug("Adding TLS bytes for decryption " + buffer.remaining());
+		}
+		if(!buffer.hasRemaining()) return;
+		// Decrypt straight from the read buffer, a partial record is copied to the record buffer of the state machine
+		sslStateMachine.unwrap(buffer);
+	}
 	
 	@Override
 	public String getTransport() {
@@ -28,7 +28,6 @@ package gov.nist.javax.sip.stack.transports.processors.nio;
 import gov.nist.core.CommonLogger;
 import gov.nist.core.LogLevels;
 import gov.nist.core.LogWriter;
-import gov.nist.core.ServerLogger;
 import gov.nist.core.StackLogger;
 import gov.nist.javax.sip.SipStackImpl;
 import static gov.nist.javax.sip.SipStackImpl.DEFAULT_CIPHERS;
@@ -116,15 +115,15 @@ public class NioTlsWebSocketMessageChannel extends NioWebSocketMessageChannel im
 	}
 
 	public ByteBuffer prepareEncryptedDataBuffer() {
-		return ByteBufferFactory.getInstance().allocateDirect(netBufferMax);
+		return ByteBufferFactory.getInstance().acquire(netBufferMax);
 	}
 
 	public ByteBuffer prepareAppDataBuffer() {
-		return ByteBufferFactory.getInstance().allocateDirect(appBufferMax);
+		return ByteBufferFactory.getInstance().acquire(appBufferMax);
 	}
 
 	public ByteBuffer prepareAppDataBuffer(int capacity) {
-		return ByteBufferFactory.getInstance().allocateDirect(capacity);
+		return ByteBufferFactory.getInstance().acquire(capacity);
 	}
 
 	public static class SSLReconnectedException extends IOException {
@@ -146,7 +145,7 @@ public class NioTlsWebSocketMessageChannel extends NioWebSocketMessageChannel im
 			final ByteBuffer b1 = ByteBuffer.wrap(NioWebSocketMessageChannel.wrapBufferIntoWebSocketFrame(msg, client));
 			ByteBuffer b = ByteBuffer.wrap(http.getBytes());
 			try {
-				sslStateMachine.wrap(b, ByteBufferFactory.getInstance().allocateDirect(netBufferMax), new MessageSendCallback() {
+				sslStateMachine.wrap(b, new MessageSendCallback() {
 
 					@Override
 					public void doSend(byte[] bytes) throws IOException {
@@ -154,7 +153,7 @@ public class NioTlsWebSocketMessageChannel extends NioWebSocketMessageChannel im
 								NioTlsWebSocketMessageChannel.super.peerAddress, NioTlsWebSocketMessageChannel.super.peerPort, false);
 
 						try {
-							sslStateMachine.wrap(b1, ByteBufferFactory.getInstance().allocateDirect(netBufferMax), new MessageSendCallback() {
+							sslStateMachine.wrap(b1, new MessageSendCallback() {
 
 								@Override
 								public void doSend(byte[] bytes) throws IOException {
@@ -172,7 +171,7 @@ public class NioTlsWebSocketMessageChannel extends NioWebSocketMessageChannel im
 		} else {
 			ByteBuffer b = ByteBuffer.wrap(NioWebSocketMessageChannel.wrapBufferIntoWebSocketFrame(msg, client));
 			try {
-				sslStateMachine.wrap(b, ByteBufferFactory.getInstance().allocateDirect(netBufferMax), new MessageSendCallback() {
+				sslStateMachine.wrap(b, new MessageSendCallback() {
 
 					@Override
 					public void doSend(byte[] bytes) throws IOException {
@@ -218,7 +217,7 @@ public class NioTlsWebSocketMessageChannel extends NioWebSocketMessageChannel im
 			final ByteBuffer b1 = ByteBuffer.wrap(NioWebSocketMessageChannel.wrapBufferIntoWebSocketFrame(message, client));
 			ByteBuffer b = ByteBuffer.wrap(http.getBytes());
 			try {
-				sslStateMachine.wrap(b, ByteBufferFactory.getInstance().allocateDirect(netBufferMax), new MessageSendCallback() {
+				sslStateMachine.wrap(b, new MessageSendCallback() {
 
 					@Override
 					public void doSend(byte[] bytes) throws IOException {
@@ -226,7 +225,7 @@ public class NioTlsWebSocketMessageChannel extends NioWebSocketMessageChannel im
 								receiverAddress, receiverPort, false);
 
 						try {
-							sslStateMachine.wrap(b1, ByteBufferFactory.getInstance().allocateDirect(netBufferMax), new MessageSendCallback() {
+							sslStateMachine.wrap(b1, new MessageSendCallback() {
 
 								@Override
 								public void doSend(byte[] bytes) throws IOException {
@@ -246,7 +245,7 @@ public class NioTlsWebSocketMessageChannel extends NioWebSocketMessageChannel im
 		} else {
 			ByteBuffer b = ByteBuffer.wrap(NioWebSocketMessageChannel.wrapBufferIntoWebSocketFrame(message, client));
 			try {
-				sslStateMachine.wrap(b, ByteBufferFactory.getInstance().allocateDirect(netBufferMax), new MessageSendCallback() {
+				sslStateMachine.wrap(b, new MessageSendCallback() {
 
 					@Override
 					public void doSend(byte[] bytes) throws IOException {
@@ -269,8 +268,8 @@ public class NioTlsWebSocketMessageChannel extends NioWebSocketMessageChannel im
 		final byte[] msg = sipMessage.encodeAsBytes(this.getTransport());
 		sendMessage(msg, receiverAddress, receiverPort, this.client);
 
-		if (logger.isLoggingEnabled(ServerLogger.TRACE_MESSAGES))
-			logMessage(sipMessage, receiverAddress, receiverPort, System.currentTimeMillis());
+		if (isLoggingMessages())
+			logMessage(sipMessage, msg, receiverAddress, receiverPort, System.currentTimeMillis());
     }
 
 	public void sendHttpMessage(final byte message[], final InetAddress receiverAddress,
@@ -279,7 +278,7 @@ public class NioTlsWebSocketMessageChannel extends NioWebSocketMessageChannel im
 
 		ByteBuffer b = ByteBuffer.wrap(message);
 		try {
-			sslStateMachine.wrap(b, ByteBufferFactory.getInstance().allocateDirect(netBufferMax), new MessageSendCallback() {
+			sslStateMachine.wrap(b, new MessageSendCallback() {
 
 				@Override
 				public void doSend(byte[] bytes) throws IOException {
@@ -325,6 +324,16 @@ public class NioTlsWebSocketMessageChannel extends NioWebSocketMessageChannel im
 		sslStateMachine.unwrap(buffer);
 	}
 
+	@Override
+	protected void addBytes(ByteBuffer buffer) throws Exception {
+		if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
+			logger.logDebug("Adding WSS bytes for decryption " + buffer.remaining());
+		}
+		if(!buffer.hasRemaining()) return;
+		// Decrypt straight from the read buffer, a partial record is copied to the record buffer of the state machine
+		sslStateMachine.unwrap(buffer);
+	}
+
 	@Override
 	protected void sendNonWebSocketMessage(byte[] msg, final boolean isClient) throws IOException {
 
@@ -341,7 +350,7 @@ public class NioTlsWebSocketMessageChannel extends NioWebSocketMessageChannel im
 
 		ByteBuffer b = ByteBuffer.wrap(msg);
 		try {
-			sslStateMachine.wrap(b, ByteBufferFactory.getInstance().allocateDirect(netBufferMax), new MessageSendCallback() {
+			sslStateMachine.wrap(b, new MessageSendCallback() {
 
 				@Override
 				public void doSend(byte[] bytes) throws IOException {
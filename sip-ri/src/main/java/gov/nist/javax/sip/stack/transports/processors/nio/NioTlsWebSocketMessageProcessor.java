@@ -98,7 +98,7 @@ public class NioTlsWebSocketMessageProcessor extends NioWebSocketMessageProcesso
     				logger.logDebug("key " + key);
     				logger.logDebug("Creating " + retval);
     			}
-    			selector.wakeup();
+    			wakeupSelectors();
     			return retval;
 
     		}
@@ -117,7 +117,7 @@ public class NioTlsWebSocketMessageProcessor extends NioWebSocketMessageProcesso
         } else {
         	NioTlsWebSocketMessageChannel retval = new NioTlsWebSocketMessageChannel(targetHost, port, sipStack, this);
             
-            selector.wakeup();
+            wakeupSelectors();
  //           retval.getSocketChannel().register(selector, SelectionKey.OP_READ);
             this.messageChannels.put(key, retval);
             retval.cache();
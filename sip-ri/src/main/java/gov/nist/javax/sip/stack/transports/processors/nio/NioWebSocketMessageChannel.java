@@ -188,6 +188,14 @@ public class NioWebSocketMessageChannel extends NioTcpMessageChannel{
 		this.codec = new WebSocketCodec(false, true);
 	}
 	
+	@Override
+	protected void addBytes(ByteBuffer buffer) throws Exception {
+		// The websocket framing and the http handshake work on arrays
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		addBytes(bytes);
+	}
+
 	@Override
 	protected void addBytes(byte[] bytes) throws Exception {
 		String s = new String(bytes);
@@ -52,6 +52,10 @@ import javax.net.ssl.SSLPeerUnverifiedException;
  * and only supply them when they are ready to the original TCP channel once they are
  * decrypted.
  * 
+ * The buffers prepared by the channel come from the {@link ByteBufferFactory} pool,
+ * they are taken for the duration of a wrap or an unwrap and given back right after,
+ * so a connection only holds a buffer while a TLS record is partially received.
+ * 
  * @author vladimirralev
  *
  */
@@ -65,6 +69,10 @@ public class SSLStateMachine {
 			new LinkedList<MessageSendItem>();
 	protected NioTlsChannelInterface channel;
 	protected ByteBuffer tlsRecordBuffer;
+	// Pooled storage behind tlsRecordBuffer, it is kept until the end of the unwrap since src may still point to it
+	private ByteBuffer tlsRecordStorage;
+	// Application data buffer of the running unwrap, replaced on overflow
+	private ByteBuffer appDataBuffer;
 	private Object unwrapLock = new Object();
 	private Object wrapLock = new Object();
 
@@ -74,8 +82,21 @@ public class SSLStateMachine {
 	}
 
 	public void wrapRemaining() throws IOException {
-		wrap(null, channel.prepareEncryptedDataBuffer(), null);
+		wrap(null, null);
+	}
+
+	/**
+	 * Wraps into an encrypted data buffer prepared by the channel and gives it back once done.
+	 */
+	public void wrap(ByteBuffer src, MessageSendCallback callback) throws IOException {
+		ByteBuffer dst = channel.prepareEncryptedDataBuffer();
+		try {
+			wrap(src, dst, callback);
+		} finally {
+			ByteBufferFactory.getInstance().release(dst);
+		}
 	}
+
 	public void wrap(ByteBuffer src, ByteBuffer dst, 
 			MessageSendCallback callback) throws IOException {
 		synchronized (wrapLock) {
@@ -242,23 +263,45 @@ public class SSLStateMachine {
 
 			throw e;
 		} finally {
-
+			ByteBufferFactory.getInstance().release(encryptedDataBuffer);
 		}
 	}
 
 	public void unwrap(ByteBuffer src) throws Exception {
-		ByteBuffer outputBuffer = channel.prepareAppDataBuffer();
-		unwrap(src, outputBuffer);
+		synchronized (unwrapLock) {
+			appDataBuffer = channel.prepareAppDataBuffer();
+			try {
+				unwrap(src, appDataBuffer);
+			} finally {
+				ByteBufferFactory.getInstance().release(appDataBuffer);
+				appDataBuffer = null;
+				if(tlsRecordBuffer == null && tlsRecordStorage != null) {
+					// The record was complete, nothing is left to buffer until the next partial record
+					ByteBufferFactory.getInstance().release(tlsRecordStorage);
+					tlsRecordStorage = null;
+				}
+			}
+		}
 	}
 
 	private void startBuffer(ByteBuffer src) {
 		if(tlsRecordBuffer == null) {
 
 			// Begin buffering, if there is already a buffer the normalization will take of adding the bytes
-			tlsRecordBuffer = ByteBufferFactory.getInstance().allocateDirect(33270); // max record size in other implementations
+			if(src == tlsRecordStorage) {
+				// The remaining bytes of the previous record are already in the storage, just move them to its start
+				tlsRecordStorage.compact();
+			} else {
+				if(tlsRecordStorage == null) {
+					tlsRecordStorage = ByteBufferFactory.getInstance().acquire(33270); // max record size in other implementations
+				} else {
+					tlsRecordStorage.clear();
+				}
 
-			// Append the current buffer
-			tlsRecordBuffer.put(src);
+				// Append the current buffer
+				tlsRecordStorage.put(src);
+			}
+			tlsRecordBuffer = tlsRecordStorage;
 
 			// Prepare the buffer for reading
 			tlsRecordBuffer.flip();
@@ -340,7 +383,9 @@ public class SSLStateMachine {
 								+ " new buffer size: " + sslEngine.getSession().getPacketBufferSize() + dst.position());
 					}
 					ByteBuffer newBuf = channel.prepareAppDataBuffer(sslEngine.getSession().getPacketBufferSize());
+					ByteBufferFactory.getInstance().release(dst);
 					dst = newBuf;
+					appDataBuffer = newBuf;
 					if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
 						logger.logDebug(" new outNetBuffer remaining: " +  dst.remaining()
 								+ " new outNetBuffer postion: " +  dst.position());
@@ -352,6 +397,7 @@ public class SSLStateMachine {
 					dst.flip();
 					byte[] a = new byte[dst.remaining()];
 					dst.get(a);
+					dst.clear();
 					// take it and feed the plain text to out chunk-by-chunk parser
 					channel.addPlaintextBytes(a);
 				}
@@ -68,6 +68,8 @@ import gov.nist.javax.sip.stack.SIPClientTransaction;
 import gov.nist.javax.sip.stack.SIPTransactionStack;
 import gov.nist.javax.sip.stack.ServerRequestInterface;
 import gov.nist.javax.sip.stack.ServerResponseInterface;
+import gov.nist.javax.sip.stack.metrics.MetricStage;
+import gov.nist.javax.sip.stack.metrics.StackMetrics;
 import gov.nist.javax.sip.stack.timers.SIPStackTimerTask;
 import gov.nist.javax.sip.stack.transports.processors.MessageChannel;
 import gov.nist.javax.sip.stack.transports.processors.MessageProcessor;
@@ -375,7 +377,11 @@ public class UDPMessageChannel extends MessageChannel implements
         SIPMessage sipMessage = null;
         try {
             this.receptionTime = System.currentTimeMillis();
+            StackMetrics stackMetrics = sipStack.getStackMetrics();
+            long decodeStart = stackMetrics != null ? System.nanoTime() : 0;
             sipMessage = myParser.parseSIPMessage(msgBytes, true, false, this);
+            if (stackMetrics != null)
+                stackMetrics.record(MetricStage.DECODE, decodeStart);
             /*@see Issue 292 */
             if (sipMessage instanceof SIPRequest) {
                 String sipVersion = ((SIPRequest)sipMessage).getRequestLine().getSipVersion();
@@ -537,7 +543,7 @@ public class UDPMessageChannel extends MessageChannel implements
             this.peerProtocol = topMostVia.getTransport();
         }
 
-        this.processMessage(sipMessage);
+        this.processMessage(sipMessage, msgBytes);
         if(sipStack.sipEventInterceptor != null) {
             sipStack.sipEventInterceptor.afterMessage(sipMessage);
         }
@@ -549,6 +555,14 @@ public class UDPMessageChannel extends MessageChannel implements
      * @param sipMessage
      */
     public void processMessage(SIPMessage sipMessage) {
+        processMessage(sipMessage, null);
+    }
+
+    /**
+     * Process the parsed message with the bytes it was received as, handed
+     * to the server logger.
+     */
+    private void processMessage(SIPMessage sipMessage, byte[] msgBytes) {
         sipMessage.setRemoteAddress(this.peerAddress);
         sipMessage.setRemotePort(this.getPeerPort());
         sipMessage.setLocalPort(this.getPort());
@@ -566,10 +580,9 @@ public class UDPMessageChannel extends MessageChannel implements
             // This is a request - process it.
             // So far so good -- we will commit this message if
             // all processing is OK.
-            if (logger.isLoggingEnabled(
-                    ServerLogger.TRACE_MESSAGES)) {
+            if (isLoggingMessages()) {
 
-                this.sipStack.getServerLogger().logMessage(sipMessage, this
+                this.sipStack.getServerLogger().logMessage(sipMessage, msgBytes, this
                         .getPeerHostPort().toString(), this.getHost() + ":"
                         + this.myPort, false, receptionTime);
 
@@ -591,7 +604,11 @@ public class UDPMessageChannel extends MessageChannel implements
                         "About to process " + sipRequest.getFirstLine() + "/"
                                 + sipServerRequest);
             // try {
+                StackMetrics stackMetrics = getSIPStack().getStackMetrics();
+                long dialogStart = stackMetrics != null ? System.nanoTime() : 0;
                 sipServerRequest.processRequest(sipRequest, this);
+                if (stackMetrics != null)
+                    stackMetrics.record(MetricStage.DIALOG, dialogStart);
             // } finally {
             //     if (sipServerRequest instanceof SIPTransaction) {
             //         SIPServerTransaction sipServerTx = (SIPServerTransaction) sipServerRequest;
@@ -620,10 +637,9 @@ public class UDPMessageChannel extends MessageChannel implements
                                     + sipResponse);
                 return;
             }
-            if (logger.isLoggingEnabled(
-                    ServerLogger.TRACE_MESSAGES)) {
+            if (isLoggingMessages()) {
 
-                this.sipStack.getServerLogger().logMessage(sipResponse, this
+                this.sipStack.getServerLogger().logMessage(sipResponse, msgBytes, this
                         .getPeerHostPort().toString(), this.getHost() + ":"
                         + this.myPort, false, receptionTime);
 
@@ -642,7 +658,11 @@ public class UDPMessageChannel extends MessageChannel implements
                         return;
                     }
 
+                    StackMetrics stackMetrics = getSIPStack().getStackMetrics();
+                    long dialogStart = stackMetrics != null ? System.nanoTime() : 0;
                     sipServerResponse.processResponse(sipResponse, this);
+                    if (stackMetrics != null)
+                        stackMetrics.record(MetricStage.DIALOG, dialogStart);
                 // } finally {
                 //     if (sipServerResponse instanceof SIPTransaction
                 //             && !((SIPTransaction) sipServerResponse)
@@ -747,11 +767,17 @@ public class UDPMessageChannel extends MessageChannel implements
 			getSIPStack().selfRouteMessage(messageChannel, sipMessage);
 			return;            
 		}	
+        byte[] msg = null;
         try {
-            byte[] msg = sipMessage.encodeAsBytes(this.getTransport());
+            StackMetrics stackMetrics = sipStack.getStackMetrics();
+            long encodeStart = stackMetrics != null ? System.nanoTime() : 0;
+            msg = sipMessage.encodeAsBytes(this.getTransport());
 
+            long sendStart = stackMetrics != null ? System.nanoTime() : 0;
             sendMessage(msg, peerAddress, peerPort, peerProtocol,
                     sipMessage instanceof SIPRequest);
+            if (stackMetrics != null)
+                recordSentMessage(stackMetrics, sipMessage, encodeStart, sendStart);
 
             // we didn't run into problems while sending so let's set ports and
             // addresses before feeding the message to the loggers.
@@ -767,10 +793,9 @@ public class UDPMessageChannel extends MessageChannel implements
                     "An exception occured while sending message", ex);
             throw new IOException("An exception occured while sending message");
         } finally {
-            if (logger.isLoggingEnabled(
-                    ServerLogger.TRACE_MESSAGES)
+            if (isLoggingMessages()
                     && !sipMessage.isNullRequest())
-                logMessage(sipMessage, peerAddress, peerPort, time);
+                logMessage(sipMessage, msg, peerAddress, peerPort, time);
             else if (logger.isLoggingEnabled(
                     ServerLogger.TRACE_DEBUG))
                 logger.logDebug("Sent EMPTY Message");
@@ -0,0 +1,155 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.util;
+
+import java.security.SecureRandom;
+import java.util.SplittableRandom;
+
+import gov.nist.javax.sip.SIPConstants;
+import gov.nist.javax.sip.Utils;
+import gov.nist.javax.sip.UtilsExt;
+
+/**
+ * Default generator of the branch identifiers, tags and Call-IDs of the stack.
+ *
+ * Each thread draws the identifiers from its own random generator, seeded
+ * once from a SecureRandom, and writes them in base 62 into its own char
+ * buffer, so generating an identifier neither contends on a shared random
+ * generator nor allocates more than the resulting string.
+ *
+ * <ul>
+ * <li>a tag holds 63 random bits in 11 characters</li>
+ * <li>a branch identifier holds the magic cookie, the signature of the stack
+ * checked by {@link Utils#responseBelongsToUs}, the node prefix and 126 random
+ * bits in 22 characters</li>
+ * <li>a Call-ID holds the node prefix and 126 random bits, followed by the
+ * given address</li>
+ * </ul>
+ *
+ * The node prefix tells apart the identifiers of the nodes of a cluster, it is
+ * empty by default. The identifiers are unique but, unlike the ones of the
+ * UUIDIdGenerator, not drawn from a cryptographically strong generator.
+ */
+public class RandomIdGenerator implements UtilsExt {
+	private static final char[] BASE62 = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz".toCharArray();
+	// 62^11 is above 2^63, so 11 digits hold the 63 low bits of a long
+	private static final int LONG_DIGITS = 11;
+
+	private static final SecureRandom seeder = new SecureRandom();
+
+	private final char[] nodePrefix;
+	private final char[] branchPrefix;
+
+	private final ThreadLocal<GeneratorState> states = new ThreadLocal<GeneratorState>() {
+		@Override
+		protected GeneratorState initialValue() {
+			return new GeneratorState();
+		}
+	};
+
+	public RandomIdGenerator() {
+		this(null);
+	}
+
+	/**
+	 * @param nodePrefix prefix of the branch identifiers and Call-IDs, made of
+	 *                   letters, digits, '.', '_' or '-', none if null or empty
+	 */
+	public RandomIdGenerator(String nodePrefix) {
+		if (nodePrefix == null || nodePrefix.isEmpty()) {
+			this.nodePrefix = new char[0];
+		} else {
+			for (int i = 0; i < nodePrefix.length(); i++) {
+				char c = nodePrefix.charAt(i);
+				if (c > 127 || (!Character.isLetterOrDigit(c) && c != '.' && c != '_' && c != '-'))
+					throw new IllegalArgumentException("Invalid character in the node prefix " + nodePrefix);
+			}
+			this.nodePrefix = (nodePrefix + "-").toCharArray();
+		}
+		this.branchPrefix = (SIPConstants.BRANCH_MAGIC_COOKIE + "-" + Utils.getSignature() + "-"
+				+ new String(this.nodePrefix)).toCharArray();
+	}
+
+	public String getNodePrefix() {
+		return nodePrefix.length == 0 ? null : new String(nodePrefix, 0, nodePrefix.length - 1);
+	}
+
+	public String generateCallIdentifier(String address) {
+		GeneratorState state = states.get();
+		String host = String.valueOf(address);
+		char[] buffer = state.getBuffer(nodePrefix.length + 2 * LONG_DIGITS + 1 + host.length());
+		int pos = append(buffer, 0, nodePrefix);
+		pos = appendBase62(buffer, pos, state.random.nextLong());
+		pos = appendBase62(buffer, pos, state.random.nextLong());
+		buffer[pos++] = '@';
+		host.getChars(0, host.length(), buffer, pos);
+		return new String(buffer, 0, pos + host.length());
+	}
+
+	public String generateTag() {
+		GeneratorState state = states.get();
+		char[] buffer = state.getBuffer(LONG_DIGITS);
+		return new String(buffer, 0, appendBase62(buffer, 0, state.random.nextLong()));
+	}
+
+	public String generateBranchId() {
+		GeneratorState state = states.get();
+		char[] buffer = state.getBuffer(branchPrefix.length + 2 * LONG_DIGITS);
+		int pos = append(buffer, 0, branchPrefix);
+		pos = appendBase62(buffer, pos, state.random.nextLong());
+		pos = appendBase62(buffer, pos, state.random.nextLong());
+		return new String(buffer, 0, pos);
+	}
+
+	private static int append(char[] buffer, int pos, char[] chars) {
+		System.arraycopy(chars, 0, buffer, pos, chars.length);
+		return pos + chars.length;
+	}
+
+	private static int appendBase62(char[] buffer, int pos, long value) {
+		value &= Long.MAX_VALUE;
+		for (int i = pos + LONG_DIGITS - 1; i >= pos; i--) {
+			buffer[i] = BASE62[(int) (value % 62)];
+			value /= 62;
+		}
+		return pos + LONG_DIGITS;
+	}
+
+	/**
+	 * Random generator and char buffer of a thread.
+	 */
+	private static final class GeneratorState {
+		private final SplittableRandom random;
+		private char[] buffer = new char[128];
+
+		private GeneratorState() {
+			long seed;
+			synchronized (seeder) {
+				seed = seeder.nextLong();
+			}
+			random = new SplittableRandom(seed);
+		}
+
+		private char[] getBuffer(int length) {
+			if (buffer.length < length)
+				buffer = new char[length];
+			return buffer;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2019 - 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.util;
+
+import java.util.UUID;
+
+import gov.nist.javax.sip.SIPConstants;
+import gov.nist.javax.sip.Utils;
+import gov.nist.javax.sip.UtilsExt;
+
+/**
+ * Generator of the branch identifiers, tags and Call-IDs made of random UUIDs,
+ * as the stack generated them before the RandomIdGenerator. The UUIDs are drawn
+ * from the SecureRandom shared by the JVM.
+ */
+public class UUIDIdGenerator implements UtilsExt {
+
+	public String generateCallIdentifier(String address) {
+		return UUID.randomUUID().toString() + "@" + address;
+	}
+
+	public String generateTag() {
+		return UUID.randomUUID().toString();
+	}
+
+	public String generateBranchId() {
+		// prepend with a magic cookie to indicate we are bis09 compatible.
+		return SIPConstants.BRANCH_MAGIC_COOKIE + "-" + Utils.getSignature() + "-" + UUID.randomUUID().toString();
+	}
+}
@@ -0,0 +1,184 @@
+package gov.nist.javax.sip;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sip.RequestEvent;
+
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import junit.framework.TestCase;
+
+/**
+ * Checks that the listener mailboxes keep the events of a Call-ID in order,
+ * do not let a blocked call delay the other ones, and honor
+ * REENTRANT_LISTENER.
+ */
+public class ListenerMailboxDispatcherTest extends TestCase {
+
+	private static final String REQUEST = "INFO sip:bob@127.0.0.1:5070 SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 127.0.0.1:5060;branch=z9hG4bK-%2$d\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: <sip:alice@127.0.0.1>;tag=1\r\n"
+			+ "To: <sip:bob@127.0.0.1>;tag=2\r\n"
+			+ "Call-ID: %1$s\r\n"
+			+ "CSeq: %2$d INFO\r\n"
+			+ "Content-Length: 0\r\n\r\n";
+
+	private SipStackImpl sipStack;
+	private RecordingEventScanner eventScanner;
+	private ListenerMailboxDispatcher dispatcher;
+	private StringMsgParser parser = new StringMsgParser();
+
+	@Override
+	protected void setUp() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("javax.sip.STACK_NAME", "ListenerMailboxDispatcherTest");
+		sipStack = new SipStackImpl(properties);
+		eventScanner = new RecordingEventScanner(sipStack);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		dispatcher.shutdown();
+		sipStack.stop();
+	}
+
+	private void dispatch(String callId, int seq) throws Exception {
+		SIPRequest request = (SIPRequest) parser.parseSIPMessage(String.format(REQUEST, callId, seq).getBytes(), true, false, null);
+		dispatcher.dispatch(new EventWrapper(new RequestEvent(this, null, null, request), null));
+	}
+
+	public void testEventsOfACallAreOrderedAndBlockedCallsDoNotDelayOthers() throws Exception {
+		dispatcher = new ListenerMailboxDispatcher(eventScanner, true, 4, 0);
+		eventScanner.blockedCallId = "slow";
+		for (int seq = 1; seq <= 100; seq++) {
+			dispatch("slow", seq);
+			dispatch("fast-" + (seq % 10), seq);
+		}
+
+		assertTrue(eventScanner.fastDelivered.await(10, TimeUnit.SECONDS));
+		assertTrue(dispatcher.getMailboxDepth("slow") >= 99);
+		assertTrue(dispatcher.getPendingEvents() >= 100);
+		assertTrue(dispatcher.getMaxMailboxDepth() >= 99);
+
+		eventScanner.release.countDown();
+		waitForDelivery(200);
+		assertEquals(0, dispatcher.getPendingEvents());
+		assertEquals(0, dispatcher.getMailboxes());
+		for (List<Long> sequence : eventScanner.sequences()) {
+			for (int i = 1; i < sequence.size(); i++) {
+				assertTrue(sequence.toString(), sequence.get(i - 1) < sequence.get(i));
+			}
+		}
+		assertEquals(1, eventScanner.maxConcurrentSlow.get());
+	}
+
+	public void testNonReEntrantListenerIsCalledByOneThreadAtATime() throws Exception {
+		dispatcher = new ListenerMailboxDispatcher(eventScanner, false, 4, 0);
+		for (int seq = 1; seq <= 50; seq++) {
+			dispatch("call-" + (seq % 5), seq);
+		}
+		waitForDelivery(50);
+		assertEquals(1, eventScanner.maxConcurrent.get());
+		assertEquals(50, eventScanner.serialOrder.size());
+		for (int i = 1; i < eventScanner.serialOrder.size(); i++) {
+			assertEquals(i + 1, eventScanner.serialOrder.get(i).longValue());
+		}
+	}
+
+	public void testSaturationAboveMaxPendingEvents() throws Exception {
+		dispatcher = new ListenerMailboxDispatcher(eventScanner, true, 2, 10);
+		eventScanner.blockedCallId = "slow";
+		for (int seq = 1; seq <= 10; seq++) {
+			dispatch("slow", seq);
+		}
+		assertFalse(dispatcher.isSaturated());
+		dispatch("slow", 11);
+		assertTrue(dispatcher.isSaturated());
+		eventScanner.release.countDown();
+		waitForDelivery(11);
+		assertFalse(dispatcher.isSaturated());
+	}
+
+	public void testNoDispatcherOnceTheScannerIsStopped() throws Exception {
+		dispatcher = new ListenerMailboxDispatcher(eventScanner, true, 2, 0);
+		eventScanner.start();
+		assertNotNull(eventScanner.getMailboxDispatcher());
+		eventScanner.forceStop();
+		assertNull(eventScanner.getMailboxDispatcher());
+	}
+
+	private void waitForDelivery(int events) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while ((dispatcher.getDeliveredEvents() < events || dispatcher.getMailboxes() > 0)
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(events, dispatcher.getDeliveredEvents());
+	}
+
+	private static class RecordingEventScanner extends EventScanner {
+		private volatile String blockedCallId;
+		private final CountDownLatch release = new CountDownLatch(1);
+		private final CountDownLatch fastDelivered = new CountDownLatch(100);
+		private final AtomicInteger concurrent = new AtomicInteger();
+		private final AtomicInteger maxConcurrent = new AtomicInteger();
+		private final AtomicInteger concurrentSlow = new AtomicInteger();
+		private final AtomicInteger maxConcurrentSlow = new AtomicInteger();
+		private final Map<String, List<Long>> sequences = new ConcurrentHashMap<String, List<Long>>();
+		private final List<Long> serialOrder = Collections.synchronizedList(new ArrayList<Long>());
+
+		RecordingEventScanner(SipStackImpl sipStack) {
+			super(sipStack);
+		}
+
+		@Override
+		public void deliverEvent(EventWrapper eventWrapper) {
+			SIPRequest request = (SIPRequest) ((RequestEvent) eventWrapper.sipEvent).getRequest();
+			String callId = request.getCallId().getCallId();
+			long seq = request.getCSeq().getSeqNumber();
+			boolean slow = callId.equals(blockedCallId);
+			max(maxConcurrent, concurrent.incrementAndGet());
+			if (slow)
+				max(maxConcurrentSlow, concurrentSlow.incrementAndGet());
+			try {
+				if (slow)
+					release.await(10, TimeUnit.SECONDS);
+				else
+					fastDelivered.countDown();
+				List<Long> sequence = sequences.get(callId);
+				if (sequence == null) {
+					sequence = Collections.synchronizedList(new ArrayList<Long>());
+					sequences.put(callId, sequence);
+				}
+				sequence.add(seq);
+				serialOrder.add(seq);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			} finally {
+				if (slow)
+					concurrentSlow.decrementAndGet();
+				concurrent.decrementAndGet();
+			}
+		}
+
+		private List<List<Long>> sequences() {
+			return new ArrayList<List<Long>>(sequences.values());
+		}
+
+		private static void max(AtomicInteger max, int value) {
+			for (int current = max.get(); value > current; current = max.get()) {
+				if (max.compareAndSet(current, value))
+					return;
+			}
+		}
+	}
+}
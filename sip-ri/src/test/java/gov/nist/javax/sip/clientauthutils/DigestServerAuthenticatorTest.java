@@ -0,0 +1,164 @@
+package gov.nist.javax.sip.clientauthutils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import javax.sip.header.WWWAuthenticateHeader;
+import javax.sip.message.Response;
+
+import gov.nist.javax.sip.header.HeaderFactoryImpl;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import junit.framework.TestCase;
+
+/**
+ * Challenge and answer round trips through the DigestServerAuthenticator.
+ */
+public class DigestServerAuthenticatorTest extends TestCase {
+
+	private static final String REALM = "example.com";
+
+	private static final String URI = "sip:example.com";
+
+	private static final String REGISTER = "REGISTER sip:example.com SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 127.0.0.1:5060;branch=z9hG4bK-1\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: <sip:alice@example.com>;tag=1\r\n"
+			+ "To: <sip:alice@example.com>\r\n"
+			+ "Call-ID: register-1@127.0.0.1\r\n"
+			+ "CSeq: 1 REGISTER\r\n"
+			+ "Contact: <sip:alice@127.0.0.1:5060>\r\n";
+
+	private int lookups;
+
+	private DigestServerAuthenticator authenticator;
+
+	@Override
+	protected void setUp() throws Exception {
+		lookups = 0;
+		authenticator = new DigestServerAuthenticator(new ServerAccountManager() {
+			public String getCredentialHash(String username, String realm, String algorithm) {
+				lookups++;
+				if (!username.equals("alice"))
+					return null;
+				return DigestServerAuthenticator.computeCredentialHash(username, realm, "secret", algorithm);
+			}
+		});
+	}
+
+	public void testChallenge() throws Exception {
+		authenticator.setAlgorithms(DigestServerAuthenticator.SHA_256, DigestServerAuthenticator.MD5);
+		SIPResponse response = parse(REGISTER, null).createResponse(Response.UNAUTHORIZED);
+		authenticator.generateChallenge(new HeaderFactoryImpl(), response, REALM, true);
+
+		String encoded = response.encode();
+		assertTrue(encoded, encoded.contains("algorithm=SHA-256"));
+		assertTrue(encoded, encoded.contains("algorithm=MD5"));
+		assertTrue(encoded, encoded.contains("qop=\"auth\""));
+		assertTrue(encoded, encoded.contains("stale=TRUE"));
+
+		response = parse(REGISTER, null).createResponse(Response.PROXY_AUTHENTICATION_REQUIRED);
+		authenticator.generateChallenge(new HeaderFactoryImpl(), response, REALM, false);
+		assertNotNull(response.getHeader("Proxy-Authenticate"));
+	}
+
+	public void testRegisterRefreshReusesNonce() throws Exception {
+		String nonce = challenge();
+
+		assertEquals(DigestAuthenticationResult.SUCCESS, authenticate("alice", "secret", nonce, 1, "MD5"));
+		assertEquals(DigestAuthenticationResult.SUCCESS, authenticate("alice", "secret", nonce, 2, "MD5"));
+		assertEquals(DigestAuthenticationResult.REPLAYED, authenticate("alice", "secret", nonce, 2, "MD5"));
+		assertEquals(DigestAuthenticationResult.SUCCESS, authenticate("alice", "secret", nonce, 100, "MD5"));
+		assertEquals(DigestAuthenticationResult.SUCCESS, authenticate("alice", "secret", nonce, 50, "MD5"));
+		assertEquals(DigestAuthenticationResult.REPLAYED, authenticate("alice", "secret", nonce, 30, "MD5"));
+		assertEquals(1, lookups);
+		assertEquals(1, authenticator.getNonceManager().getTrackedNonces());
+	}
+
+	public void testSha256AndSession() throws Exception {
+		String nonce = challenge();
+
+		assertEquals(DigestAuthenticationResult.SUCCESS, authenticate("alice", "secret", nonce, 1, "SHA-256"));
+		assertEquals(DigestAuthenticationResult.SUCCESS, authenticate("alice", "secret", nonce, 2, "MD5-sess"));
+		assertEquals(DigestAuthenticationResult.UNSUPPORTED, authenticate("alice", "secret", nonce, 3, "SHA-1"));
+	}
+
+	public void testRefused() throws Exception {
+		String nonce = challenge();
+
+		assertEquals(DigestAuthenticationResult.FAILED, authenticate("alice", "wrong", nonce, 1, "MD5"));
+		// a failed attempt does not use up the count
+		assertEquals(DigestAuthenticationResult.SUCCESS, authenticate("alice", "secret", nonce, 1, "MD5"));
+		assertEquals(DigestAuthenticationResult.UNKNOWN_USER, authenticate("bob", "secret", nonce, 1, "MD5"));
+		assertEquals(DigestAuthenticationResult.INVALID_NONCE,
+				authenticate("alice", "secret", nonce.substring(1) + "A", 1, "MD5"));
+		assertEquals(DigestAuthenticationResult.INVALID_NONCE, authenticate("alice", "secret", "abc", 1, "MD5"));
+		assertEquals(DigestAuthenticationResult.MISSING_CREDENTIALS,
+				authenticator.authenticate(parse(REGISTER, null), REALM));
+		assertEquals(DigestAuthenticationResult.MISSING_CREDENTIALS,
+				authenticator.authenticate(parse(REGISTER, header("alice", "secret", nonce, 1, "MD5")), "other.com"));
+	}
+
+	public void testStaleNonce() throws Exception {
+		authenticator = new DigestServerAuthenticator(new ServerAccountManager() {
+			public String getCredentialHash(String username, String realm, String algorithm) {
+				return DigestServerAuthenticator.computeCredentialHash(username, realm, "secret", algorithm);
+			}
+		}, new DigestNonceManager(new byte[16], 1), 10, 1000);
+		String nonce = challenge();
+		Thread.sleep(10);
+
+		assertEquals(DigestAuthenticationResult.STALE_NONCE, authenticate("alice", "secret", nonce, 1, "MD5"));
+	}
+
+	public void testInvalidateCredentials() throws Exception {
+		String nonce = challenge();
+
+		assertEquals(DigestAuthenticationResult.SUCCESS, authenticate("alice", "secret", nonce, 1, "MD5"));
+		authenticator.invalidateCredentials("alice", REALM);
+		assertEquals(DigestAuthenticationResult.SUCCESS, authenticate("alice", "secret", nonce, 2, "MD5"));
+		assertEquals(2, lookups);
+	}
+
+	private String challenge() throws Exception {
+		SIPResponse response = parse(REGISTER, null).createResponse(Response.UNAUTHORIZED);
+		authenticator.generateChallenge(new HeaderFactoryImpl(), response, REALM, false);
+		return ((WWWAuthenticateHeader) response.getHeader("WWW-Authenticate")).getNonce();
+	}
+
+	private DigestAuthenticationResult authenticate(String username, String password, String nonce, int nc,
+			String algorithm) throws Exception {
+		return authenticator.authenticate(parse(REGISTER, header(username, password, nonce, nc, algorithm)), REALM);
+	}
+
+	private static SIPRequest parse(String message, String authorization) throws Exception {
+		if (authorization != null)
+			message += "Authorization: " + authorization + "\r\n";
+		message += "Content-Length: 0\r\n\r\n";
+		return (SIPRequest) new StringMsgParser().parseSIPMessage(message.getBytes(), true, false, null);
+	}
+
+	private static String header(String username, String password, String nonce, int nc, String algorithm)
+			throws Exception {
+		String base = algorithm.startsWith("SHA-256") ? "SHA-256" : "MD5";
+		String ncValue = String.format("%08x", nc);
+		String cnonce = "0a4f113b";
+		String ha1 = hash(base, username + ":" + REALM + ":" + password);
+		if (algorithm.endsWith("-sess"))
+			ha1 = hash(base, ha1 + ":" + nonce + ":" + cnonce);
+		String ha2 = hash(base, "REGISTER:" + URI);
+		String response = hash(base, ha1 + ":" + nonce + ":" + ncValue + ":" + cnonce + ":auth:" + ha2);
+		return "Digest username=\"" + username + "\",realm=\"" + REALM + "\",nonce=\"" + nonce + "\",uri=\"" + URI
+				+ "\",response=\"" + response + "\",algorithm=" + algorithm + ",cnonce=\"" + cnonce
+				+ "\",qop=auth,nc=" + ncValue;
+	}
+
+	private static String hash(String algorithm, String value) throws Exception {
+		byte[] digest = MessageDigest.getInstance(algorithm).digest(value.getBytes(StandardCharsets.UTF_8));
+		StringBuilder builder = new StringBuilder();
+		for (byte b : digest)
+			builder.append(String.format("%02x", b & 0xFF));
+		return builder.toString();
+	}
+}
@@ -0,0 +1,254 @@
+package gov.nist.javax.sip.dns;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sip.address.Hop;
+
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.EDNSOption;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.NAPTRRecord;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.SRVRecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TSIG;
+import org.xbill.DNS.lookup.LookupSession;
+
+import gov.nist.javax.sip.address.AddressFactoryImpl;
+import junit.framework.TestCase;
+
+/**
+ * Checks the caching, negative caching and query coalescing of the
+ * CachingDNSLookupPerformer against a resolver answering from a static zone.
+ */
+public class CachingDNSLookupPerformerTest extends TestCase {
+
+	private StaticResolver resolver;
+	private CachingDNSLookupPerformer lookupPerformer;
+
+	@Override
+	protected void setUp() throws Exception {
+		resolver = new StaticResolver();
+		resolver.add(new NAPTRRecord(Name.fromString("example.com."), DClass.IN, 300, 10, 10, "s", "SIP+D2U", "",
+				Name.fromString("_sip._udp.example.com.")));
+		resolver.add(new SRVRecord(Name.fromString("_sip._udp.example.com."), DClass.IN, 300, 0, 10, 5070,
+				Name.fromString("sip1.example.com.")));
+		resolver.add(new ARecord(Name.fromString("sip1.example.com."), DClass.IN, 300,
+				InetAddress.getByName("192.0.2.10")));
+		resolver.add(new ARecord(Name.fromString("short.example.com."), DClass.IN, 1,
+				InetAddress.getByName("192.0.2.20")));
+		resolver.add(new ARecord(Name.fromString("zero.example.com."), DClass.IN, 0,
+				InetAddress.getByName("192.0.2.30")));
+
+		lookupPerformer = new CachingDNSLookupPerformer(LookupSession.builder().resolver(resolver).clearCaches().build());
+	}
+
+	public void testAnswersAreCached() {
+		List<Hop> hops = lookupPerformer.locateHopsForNonNumericAddressWithPort("sip1.example.com", 5060, "udp");
+		assertEquals(1, hops.size());
+		assertEquals("192.0.2.10", hops.get(0).getHost());
+		int queries = resolver.queries.get();
+
+		hops = lookupPerformer.locateHopsForNonNumericAddressWithPort("SIP1.example.com", 5060, "udp");
+		assertEquals(1, hops.size());
+		assertEquals(queries, resolver.queries.get());
+		assertEquals(2, lookupPerformer.getCacheHits());
+	}
+
+	public void testFullyQualifiedNamesShareTheCache() {
+		lookupPerformer.locateHopsForNonNumericAddressWithPort("sip1.example.com", 5060, "udp");
+		int queries = resolver.queries.get();
+
+		List<Hop> hops = lookupPerformer.locateHopsForNonNumericAddressWithPort("sip1.example.com.", 5060, "udp");
+		assertEquals(1, hops.size());
+		assertEquals(queries, resolver.queries.get());
+	}
+
+	public void testReturnedListsCanBeConsumed() {
+		lookupPerformer.locateHopsForNonNumericAddressWithPort("sip1.example.com", 5060, "udp").remove(0);
+		assertEquals(1, lookupPerformer.locateHopsForNonNumericAddressWithPort("sip1.example.com", 5060, "udp").size());
+		lookupPerformer.performNAPTRLookup("example.com", false, "udp").remove(0);
+		assertEquals(1, lookupPerformer.performNAPTRLookup("example.com", false, "udp").size());
+	}
+
+	public void testMissingNamesAreNegativelyCached() {
+		assertTrue(lookupPerformer.performSRVLookup("_sip._tcp.unknown.example.com.").isEmpty());
+		assertTrue(lookupPerformer.performNAPTRLookup("sip1.example.com", false, "udp").isEmpty());
+		int queries = resolver.queries.get();
+
+		assertTrue(lookupPerformer.performSRVLookup("_sip._tcp.unknown.example.com.").isEmpty());
+		assertTrue(lookupPerformer.performNAPTRLookup("sip1.example.com", false, "udp").isEmpty());
+		assertEquals(queries, resolver.queries.get());
+
+		lookupPerformer.setNegativeCacheTtl(0);
+		lookupPerformer.clearCache();
+		lookupPerformer.performSRVLookup("_sip._tcp.unknown.example.com.");
+		lookupPerformer.performSRVLookup("_sip._tcp.unknown.example.com.");
+		assertEquals(queries + 2, resolver.queries.get());
+	}
+
+	public void testExpiredAnswersAreQueriedAgain() throws Exception {
+		lookupPerformer.locateHopsForNonNumericAddressWithPort("short.example.com", 5060, "udp");
+		int queries = resolver.queries.get();
+		Thread.sleep(1100);
+		List<Hop> hops = lookupPerformer.locateHopsForNonNumericAddressWithPort("short.example.com", 5060, "udp");
+		assertEquals(1, hops.size());
+		// the A record expired, the negative AAAA answer is cached for 30 seconds
+		assertEquals(queries + 1, resolver.queries.get());
+	}
+
+	public void testZeroTtlAnswersAreKeptForTheMinimumTtl() throws Exception {
+		lookupPerformer.locateHopsForNonNumericAddressWithPort("zero.example.com", 5060, "udp");
+		int queries = resolver.queries.get();
+		List<Hop> hops = lookupPerformer.locateHopsForNonNumericAddressWithPort("zero.example.com", 5060, "udp");
+		assertEquals(1, hops.size());
+		assertEquals(queries, resolver.queries.get());
+
+		Thread.sleep(1100);
+		lookupPerformer.locateHopsForNonNumericAddressWithPort("zero.example.com", 5060, "udp");
+		assertEquals(queries + 1, resolver.queries.get());
+	}
+
+	public void testConcurrentLookupsShareOneQuery() throws Exception {
+		resolver.pause();
+		CompletionStage<List<SRVRecord>> first = lookupPerformer.performSRVLookupAsync("_sip._udp.example.com.");
+		CompletionStage<List<SRVRecord>> second = lookupPerformer.performSRVLookupAsync("_sip._udp.example.com.");
+		assertFalse(first.toCompletableFuture().isDone());
+		resolver.resume();
+
+		assertEquals(1, first.toCompletableFuture().get(5, TimeUnit.SECONDS).size());
+		assertEquals(1, second.toCompletableFuture().get(5, TimeUnit.SECONDS).size());
+		assertEquals(1, resolver.queries.get());
+		assertEquals(1, lookupPerformer.getCoalescedLookups());
+	}
+
+	public void testCacheIsBounded() {
+		lookupPerformer.setMaxCacheEntries(2);
+		lookupPerformer.performSRVLookup("_sip._udp.example.com.");
+		lookupPerformer.performNAPTRLookup("example.com", false, "udp");
+		lookupPerformer.locateHopsForNonNumericAddressWithPort("sip1.example.com", 5060, "udp");
+		assertEquals(2, lookupPerformer.getCacheSize());
+	}
+
+	public void testHopperFactoryResolvesAheadOfHopping() throws Exception {
+		Rfc3263HopperFactory hopperFactory = new Rfc3263HopperFactory();
+		hopperFactory.setLookupPerformer(lookupPerformer, "UDP", "TLS");
+		javax.sip.address.SipURI uri = new AddressFactoryImpl().createSipURI("bob", "example.com");
+
+		hopperFactory.resolve(uri).toCompletableFuture().get(5, TimeUnit.SECONDS);
+		int queries = resolver.queries.get();
+		// NAPTR, SRV, A and AAAA
+		assertEquals(4, queries);
+
+		Hop hop = hopperFactory.build(uri).hop();
+		assertEquals("192.0.2.10", hop.getHost());
+		assertEquals(5070, hop.getPort());
+		assertEquals(queries, resolver.queries.get());
+	}
+
+	/**
+	 * Resolver answering from the records it was given, NXDOMAIN for unknown
+	 * names, counting the queries and optionally holding the answers.
+	 */
+	private static class StaticResolver implements Resolver {
+		private final Map<Name, List<Record>> zone = new HashMap<Name, List<Record>>();
+		private final AtomicInteger queries = new AtomicInteger();
+		private final Map<Message, CompletableFuture<Message>> heldAnswers = new ConcurrentHashMap<Message, CompletableFuture<Message>>();
+		private volatile boolean paused;
+
+		void add(Record record) {
+			List<Record> records = zone.get(record.getName());
+			if (records == null) {
+				records = new ArrayList<Record>();
+				zone.put(record.getName(), records);
+			}
+			records.add(record);
+		}
+
+		void pause() {
+			paused = true;
+		}
+
+		void resume() {
+			paused = false;
+			for (Map.Entry<Message, CompletableFuture<Message>> entry : heldAnswers.entrySet()) {
+				entry.getValue().complete(answer(entry.getKey()));
+			}
+			heldAnswers.clear();
+		}
+
+		@Override
+		public CompletionStage<Message> sendAsync(Message query) {
+			queries.incrementAndGet();
+			if (paused) {
+				CompletableFuture<Message> future = new CompletableFuture<Message>();
+				heldAnswers.put(query, future);
+				return future;
+			}
+			return CompletableFuture.completedFuture(answer(query));
+		}
+
+		@Override
+		public CompletionStage<Message> sendAsync(Message query, Executor executor) {
+			return sendAsync(query);
+		}
+
+		private Message answer(Message query) {
+			Record question = query.getQuestion();
+			Message response = new Message(query.getHeader().getID());
+			response.getHeader().setFlag(Flags.QR);
+			response.addRecord(question, Section.QUESTION);
+			List<Record> records = zone.get(question.getName());
+			if (records == null) {
+				response.getHeader().setRcode(Rcode.NXDOMAIN);
+				return response;
+			}
+			for (Record record : records) {
+				if (record.getType() == question.getType()) {
+					response.addRecord(record, Section.ANSWER);
+				}
+			}
+			return response;
+		}
+
+		@Override
+		public void setPort(int port) {
+		}
+
+		@Override
+		public void setTCP(boolean flag) {
+		}
+
+		@Override
+		public void setIgnoreTruncation(boolean flag) {
+		}
+
+		@Override
+		public void setEDNS(int version, int payloadSize, int flags, List<EDNSOption> options) {
+		}
+
+		@Override
+		public void setTSIGKey(TSIG key) {
+		}
+
+		@Override
+		public void setTimeout(Duration timeout) {
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package gov.nist.javax.sip.dns;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.sip.DialogTerminatedEvent;
+import javax.sip.IOExceptionEvent;
+import javax.sip.ListeningPoint;
+import javax.sip.RequestEvent;
+import javax.sip.ResponseEvent;
+import javax.sip.SipListener;
+import javax.sip.TimeoutEvent;
+import javax.sip.TransactionTerminatedEvent;
+import javax.sip.address.Hop;
+
+import gov.nist.javax.sip.SipProviderImpl;
+import gov.nist.javax.sip.SipStackImpl;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import junit.framework.TestCase;
+
+/**
+ * Routing of the requests sent statelessly through the asynchronous next hop
+ * lookup of the DNSAwareRouter.
+ */
+public class DNSAwareRouterTest extends TestCase {
+
+	private static final String OPTIONS = "OPTIONS sip:bob@127.0.0.1:5095 SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 127.0.0.1:5094;branch=z9hG4bK-options\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: Alice <sip:alice@127.0.0.1>;tag=9fxced76sl\r\n"
+			+ "To: Bob <sip:bob@127.0.0.1>\r\n"
+			+ "Call-ID: options-1@127.0.0.1\r\n"
+			+ "CSeq: 1 OPTIONS\r\n"
+			+ "Content-Length: 0\r\n\r\n";
+
+	private SipStackImpl sipStack;
+	private SipProviderImpl sipProvider;
+
+	@Override
+	protected void setUp() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("javax.sip.STACK_NAME", "DNSAwareRouterTest");
+		properties.setProperty("javax.sip.ROUTER_PATH", DNSAwareRouter.class.getName());
+		sipStack = new SipStackImpl(properties);
+		ListeningPoint listeningPoint = sipStack.createListeningPoint("127.0.0.1", 5094, ListeningPoint.UDP);
+		sipProvider = (SipProviderImpl) sipStack.createSipProvider(listeningPoint);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		sipStack.stop();
+	}
+
+	private static SIPRequest parse() throws Exception {
+		return parse(OPTIONS);
+	}
+
+	private static SIPRequest parse(String message) throws Exception {
+		return (SIPRequest) new StringMsgParser().parseSIPMessage(message.getBytes(), true, false, null);
+	}
+
+	public void testNextHopIsFoundAsynchronously() throws Exception {
+		DNSAwareRouter router = (DNSAwareRouter) sipStack.getRouter();
+		Hop hop = router.getNextHopAsync(parse()).toCompletableFuture().get(5, TimeUnit.SECONDS);
+		assertEquals("127.0.0.1", hop.getHost());
+		assertEquals(5095, hop.getPort());
+	}
+
+	public void testStatelessRequestIsSentOnceRouted() throws Exception {
+		DatagramSocket socket = new DatagramSocket(5095, InetAddress.getByName("127.0.0.1"));
+		try {
+			socket.setSoTimeout(5000);
+			sipProvider.sendRequest(parse());
+
+			DatagramPacket packet = new DatagramPacket(new byte[2048], 2048);
+			socket.receive(packet);
+			String received = new String(packet.getData(), 0, packet.getLength(), "UTF-8");
+			assertTrue(received.startsWith("OPTIONS sip:bob@127.0.0.1:5095 SIP/2.0"));
+		} finally {
+			socket.close();
+		}
+	}
+
+	public void testUnroutableStatelessRequestIsReported() throws Exception {
+		final BlockingQueue<IOExceptionEvent> ioExceptions = new ArrayBlockingQueue<IOExceptionEvent>(1);
+		sipProvider.addSipListener(new SipListener() {
+			public void processRequest(RequestEvent requestEvent) {
+			}
+
+			public void processResponse(ResponseEvent responseEvent) {
+			}
+
+			public void processTimeout(TimeoutEvent timeoutEvent) {
+			}
+
+			public void processIOException(IOExceptionEvent exceptionEvent) {
+				ioExceptions.offer(exceptionEvent);
+			}
+
+			public void processTransactionTerminated(TransactionTerminatedEvent transactionTerminatedEvent) {
+			}
+
+			public void processDialogTerminated(DialogTerminatedEvent dialogTerminatedEvent) {
+			}
+		});
+
+		// the router only follows a Route to a SIP URI
+		sipProvider.sendRequest(parse(OPTIONS.replace("Max-Forwards: 70\r\n",
+				"Max-Forwards: 70\r\nRoute: <tel:+15551234567>\r\n")));
+
+		IOExceptionEvent ioException = ioExceptions.poll(5, TimeUnit.SECONDS);
+		assertNotNull(ioException);
+		assertEquals("127.0.0.1", ioException.getHost());
+		assertEquals(5095, ioException.getPort());
+		assertEquals("UDP", ioException.getTransport());
+	}
+}
@@ -0,0 +1,174 @@
+package gov.nist.javax.sip.executor;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import gov.nist.core.executor.EventDrivenStackExecutor;
+import gov.nist.core.executor.MessageProcessorExecutor;
+import gov.nist.core.executor.SIPTask;
+import gov.nist.javax.sip.Utils;
+import junit.framework.Assert;
+
+public class EventDrivenStackExecutorTest {
+    private EventDrivenStackExecutor executor;
+
+    private static final String CALLID = "16505551212@192.168.1.100";
+
+    @Before
+    public void setUp() {
+        executor = new EventDrivenStackExecutor();
+        executor.start(8, 25L);
+    }
+
+    private static class RecordingTask implements SIPTask {
+        private final String id;
+        private final int sequence;
+        private final List<Integer> executed;
+        private final CountDownLatch latch;
+        private final long startTime = System.currentTimeMillis();
+
+        RecordingTask(String id, int sequence, List<Integer> executed, CountDownLatch latch) {
+            this.id = id;
+            this.sequence = sequence;
+            this.executed = executed;
+            this.latch = latch;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void execute() {
+            executed.add(sequence);
+            latch.countDown();
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public String printTaskDetails() {
+            return "Task name: RecordingTask, sequence: " + sequence;
+        }
+    }
+
+    @Test
+    public void testSameAffinityAsMessageProcessorExecutor() {
+        MessageProcessorExecutor messageProcessorExecutor = new MessageProcessorExecutor();
+        messageProcessorExecutor.start(8, 25L);
+        try {
+            Assert.assertEquals(messageProcessorExecutor.findQueueIndex(CALLID), executor.findQueueIndex(CALLID));
+            for (int i = 0; i < 100; i++) {
+                String callId = Utils.getInstance().generateCallIdentifier("127.0.0.1");
+                Assert.assertEquals(messageProcessorExecutor.findQueueIndex(callId), executor.findQueueIndex(callId));
+            }
+        } finally {
+            messageProcessorExecutor.stop();
+        }
+    }
+
+    @Test
+    public void testTasksOfACallRunInOrder() throws InterruptedException {
+        List<Integer> executed = new CopyOnWriteArrayList<Integer>();
+        CountDownLatch latch = new CountDownLatch(1000);
+        for (int i = 0; i < 1000; i++) {
+            executor.addTaskLast(new RecordingTask(CALLID, i, executed, latch));
+        }
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(Integer.valueOf(i), executed.get(i));
+        }
+    }
+
+    @Test
+    public void testIdleWorkerWokenUp() throws InterruptedException {
+        List<Integer> executed = new CopyOnWriteArrayList<Integer>();
+        for (int i = 0; i < 100; i++) {
+            CountDownLatch latch = new CountDownLatch(1);
+            executor.addTaskLast(new RecordingTask(CALLID, i, executed, latch));
+            // far below the task interval the stack executors poll with
+            Assert.assertTrue(latch.await(1, TimeUnit.SECONDS));
+            Thread.sleep(1);
+        }
+        Assert.assertEquals(100, executed.size());
+    }
+
+    @Test
+    public void testTaskFirstRunsBeforeQueuedTasks() throws InterruptedException {
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final List<Integer> executed = new CopyOnWriteArrayList<Integer>();
+        CountDownLatch latch = new CountDownLatch(3);
+        // keep the worker busy while the other tasks are queued
+        executor.addTaskLast(new RecordingTask(CALLID, 0, executed, new CountDownLatch(1)) {
+            @Override
+            public void execute() {
+                try {
+                    blocker.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                }
+            }
+        });
+        executor.addTaskLast(new RecordingTask(CALLID, 2, executed, latch));
+        executor.addTaskLast(new RecordingTask(CALLID, 3, executed, latch));
+        executor.addTaskFirst(new RecordingTask(CALLID, 1, executed, latch));
+        blocker.countDown();
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Integer.valueOf(1), executed.get(0));
+        Assert.assertEquals(Integer.valueOf(2), executed.get(1));
+        Assert.assertEquals(Integer.valueOf(3), executed.get(2));
+    }
+
+    @Test
+    public void testQueueSizeCountsTheWaitingTasks() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final List<Integer> executed = new CopyOnWriteArrayList<Integer>();
+        executor.addTaskLast(new RecordingTask(CALLID, 0, executed, new CountDownLatch(1)) {
+            @Override
+            public void execute() {
+                started.countDown();
+                try {
+                    blocker.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                }
+            }
+        });
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        int index = executor.findQueueIndex(CALLID);
+        Assert.assertEquals(0, executor.getQueueSize(index));
+
+        CountDownLatch latch = new CountDownLatch(3);
+        executor.addTaskLast(new RecordingTask(CALLID, 2, executed, latch));
+        executor.addTaskLast(new RecordingTask(CALLID, 3, executed, latch));
+        executor.addTaskFirst(new RecordingTask(CALLID, 1, executed, latch));
+        Assert.assertEquals(3, executor.getQueueSize(index));
+        blocker.countDown();
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, executor.getQueueSize(index));
+    }
+
+    @Test
+    public void testSpinning() throws InterruptedException {
+        executor.stop();
+        executor = new EventDrivenStackExecutor();
+        executor.setSpinCount(1000);
+        executor.start(2, 25L);
+        List<Integer> executed = new CopyOnWriteArrayList<Integer>();
+        CountDownLatch latch = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            executor.addTaskLast(new RecordingTask(CALLID + i, i, executed, latch));
+        }
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void teardown() {
+        executor.stop();
+    }
+}
@@ -0,0 +1,73 @@
+package gov.nist.javax.sip.message;
+
+import gov.nist.javax.sip.address.AddressFactoryImpl;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import junit.framework.TestCase;
+
+/**
+ * Checks that a CANCEL shares the cancel match id of the INVITE it cancels,
+ * with and without the RFC 3261 magic cookie in the branch.
+ */
+public class CancelMatchIdTest extends TestCase {
+
+	private static final String INVITE = "INVITE sip:bob@biloxi.example.com SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP client.atlanta.example.com:5060;branch=%s\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: Alice <sip:alice@atlanta.example.com>;tag=9fxced76sl\r\n"
+			+ "To: Bob <sip:bob@biloxi.example.com>\r\n"
+			+ "Call-ID: 3848276298220188511@atlanta.example.com\r\n"
+			+ "CSeq: 1 INVITE\r\n"
+			+ "Contact: <sip:alice@client.atlanta.example.com>\r\n"
+			+ "Content-Length: 0\r\n\r\n";
+
+	private static SIPRequest parse(String branch) throws Exception {
+		return (SIPRequest) new StringMsgParser().parseSIPMessage(String.format(INVITE, branch).getBytes(), true,
+				false, null);
+	}
+
+	public void testRfc3261() throws Exception {
+		SIPRequest invite = parse("z9hG4bK74bf9");
+		SIPRequest cancel = invite.createCancelRequest();
+
+		assertEquals("z9hg4bk74bf9:client.atlanta.example.com:5060", invite.getCancelMatchId());
+		assertEquals(invite.getCancelMatchId(), cancel.getCancelMatchId());
+		// the branch is not case sensitive
+		assertEquals(invite.getCancelMatchId(), parse("Z9HG4BK74BF9").getCancelMatchId());
+		assertFalse(invite.getCancelMatchId().equals(parse("z9hG4bK74bf8").getCancelMatchId()));
+
+		cancel.getTopmostVia().setPort(5070);
+		assertFalse(invite.getCancelMatchId().equals(cancel.getCancelMatchId()));
+	}
+
+	public void testNonCookieBranch() throws Exception {
+		SIPRequest invite = parse("74bf9");
+		SIPRequest cancel = invite.createCancelRequest();
+
+		assertEquals("74bf9:client.atlanta.example.com:5060:sip:bob@biloxi.example.com:null:9fxced76sl"
+				+ ":3848276298220188511@atlanta.example.com:1", invite.getCancelMatchId());
+		assertEquals(invite.getCancelMatchId(), cancel.getCancelMatchId());
+		assertEquals(invite.getCancelMatchId(), parse("74BF9").getCancelMatchId());
+		assertFalse(invite.getCancelMatchId().equals(parse("74bf8").getCancelMatchId()));
+
+		// RFC 2543 also compares the Request-URI, tags, Call-ID and CSeq number
+		cancel.getCSeq().setSeqNumber(2);
+		assertFalse(invite.getCancelMatchId().equals(cancel.getCancelMatchId()));
+		cancel = invite.createCancelRequest();
+		cancel.setRequestURI(new AddressFactoryImpl().createURI("sip:carol@biloxi.example.com"));
+		assertFalse(invite.getCancelMatchId().equals(cancel.getCancelMatchId()));
+		cancel = invite.createCancelRequest();
+		cancel.getFromHeader().setTag("other");
+		assertFalse(invite.getCancelMatchId().equals(cancel.getCancelMatchId()));
+	}
+
+	public void testNoBranch() throws Exception {
+		SIPRequest invite = (SIPRequest) new StringMsgParser().parseSIPMessage(
+				String.format(INVITE, "").replace(";branch=", "").getBytes(), true, false, null);
+		SIPRequest cancel = invite.createCancelRequest();
+
+		assertNotNull(invite.getCancelMatchId());
+		assertEquals(invite.getCancelMatchId(), cancel.getCancelMatchId());
+		cancel.getCallId().setCallId("other@atlanta.example.com");
+		assertFalse(invite.getCancelMatchId().equals(cancel.getCancelMatchId()));
+	}
+}
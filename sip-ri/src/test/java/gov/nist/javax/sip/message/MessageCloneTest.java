@@ -0,0 +1,186 @@
+package gov.nist.javax.sip.message;
+
+import javax.sip.header.ContactHeader;
+import javax.sip.header.RouteHeader;
+import javax.sip.header.SupportedHeader;
+import javax.sip.header.ViaHeader;
+import javax.sip.message.Request;
+
+import gov.nist.javax.sip.address.AddressFactoryImpl;
+import gov.nist.javax.sip.header.CSeq;
+import gov.nist.javax.sip.header.CallID;
+import gov.nist.javax.sip.header.Event;
+import gov.nist.javax.sip.header.Expires;
+import gov.nist.javax.sip.header.ExtensionHeaderImpl;
+import gov.nist.javax.sip.header.From;
+import gov.nist.javax.sip.header.MinExpires;
+import gov.nist.javax.sip.header.SIPHeader;
+import gov.nist.javax.sip.header.Subject;
+import gov.nist.javax.sip.header.Supported;
+import gov.nist.javax.sip.header.Via;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import junit.framework.TestCase;
+
+/**
+ * Checks that cloned messages and headers compare equal to their original,
+ * and that a copy on write clone does not share the headers it modifies.
+ */
+public class MessageCloneTest extends TestCase {
+
+	private static final String INVITE = "INVITE sip:bob@biloxi.example.com SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP proxy.example.com:5060;branch=z9hG4bK-proxy\r\n"
+			+ "Via: SIP/2.0/UDP client.atlanta.example.com:5060;branch=z9hG4bK74bf9\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "Route: <sip:edge.biloxi.example.com;lr>\r\n"
+			+ "From: Alice <sip:alice@atlanta.example.com>;tag=9fxced76sl\r\n"
+			+ "To: Bob <sip:bob@biloxi.example.com>\r\n"
+			+ "Call-ID: 3848276298220188511@atlanta.example.com\r\n"
+			+ "CSeq: 1 INVITE\r\n"
+			+ "Contact: <sip:alice@client.atlanta.example.com>;expires=3600\r\n"
+			+ "Supported: timer, 100rel\r\n"
+			+ "Session-Expires: 1800;refresher=uac\r\n"
+			+ "User-Agent: corsac-sip\r\n"
+			+ "Content-Type: application/sdp\r\n"
+			+ "Content-Length: 129\r\n\r\n"
+			+ "v=0\r\n"
+			+ "o=alice 2890844526 2890844526 IN IP4 client.atlanta.example.com\r\n"
+			+ "s=-\r\n"
+			+ "c=IN IP4 192.0.2.101\r\n"
+			+ "t=0 0\r\n"
+			+ "m=audio 49172 RTP/AVP 0\r\n";
+
+	private SIPRequest request;
+
+	@Override
+	protected void setUp() throws Exception {
+		request = (SIPRequest) new StringMsgParser().parseSIPMessage(INVITE.getBytes(), true, false, null);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		SIPMessage.setCopyOnWriteClone(false);
+	}
+
+	public void testCloneEqualsTheOriginal() throws Exception {
+		SIPRequest clone = (SIPRequest) request.clone();
+		assertEquals(request, clone);
+		assertEquals(request.encode(), clone.encode());
+
+		SIPRequest parsed = (SIPRequest) new StringMsgParser().parseSIPMessage(INVITE.getBytes(), true, false, null);
+		assertEquals(request, parsed);
+		parsed.getTopmostVia().setBranch("z9hG4bK-other");
+		assertFalse(request.equals(parsed));
+	}
+
+	public void testHeadersCompareTheirFields() throws Exception {
+		Subject subject = new Subject();
+		subject.setSubject("lunch");
+		Subject other = (Subject) subject.clone();
+		assertEquals(subject, other);
+		other.setSubject("dinner");
+		assertFalse(subject.equals(other));
+
+		Supported supported = new Supported("timer");
+		assertEquals(supported, new Supported("timer"));
+		assertFalse(supported.equals(new Supported("100rel")));
+
+		// the header name is compared along with the fields of the header
+		ExtensionHeaderImpl extension = new ExtensionHeaderImpl("X-Foo");
+		extension.setValue("bar");
+		ExtensionHeaderImpl renamed = new ExtensionHeaderImpl("X-Baz");
+		renamed.setValue("bar");
+		assertFalse(extension.equals(renamed));
+
+		Event event = new Event();
+		event.setEventType("presence");
+		Event otherEvent = (Event) event.clone();
+		assertEquals(event, otherEvent);
+		otherEvent.setEventId("1");
+		assertFalse(event.equals(otherEvent));
+
+		Expires expires = new Expires();
+		expires.setExpires(60);
+		MinExpires minExpires = new MinExpires();
+		minExpires.setExpires(60);
+		assertFalse(expires.equals(minExpires));
+		assertFalse(minExpires.equals(expires));
+	}
+
+	public void testMatchUsesTheTemplateFields() throws Exception {
+		SIPRequest template = new SIPRequest();
+		template.setHeader(new Supported("timer"));
+		template.removeContent();
+		assertTrue(request.match(template));
+		template.setHeader(new Supported("path"));
+		assertFalse(request.match(template));
+	}
+
+	public void testCommonHeadersMatchTheirTemplateFields() throws Exception {
+		AddressFactoryImpl addressFactory = new AddressFactoryImpl();
+		From from = new From();
+		from.setAddress(addressFactory.createAddress("sip:alice@atlanta.example.com"));
+		assertTrue(((From) request.getFromHeader()).match(from));
+		from.setAddress(addressFactory.createAddress("sip:carol@atlanta.example.com"));
+		assertFalse(((From) request.getFromHeader()).match(from));
+
+		Via via = new Via();
+		via.setHost("proxy.example.com");
+		via.setPort(5060);
+		assertTrue(request.getTopmostVia().match(via));
+		via.setTransport("TCP");
+		assertFalse(request.getTopmostVia().match(via));
+
+		CallID callId = new CallID();
+		callId.setCallId("3848276298220188511@ATLANTA.example.com");
+		assertTrue(((CallID) request.getCallId()).match(callId));
+		callId.setCallId("3848276298220188512@atlanta.example.com");
+		assertFalse(((CallID) request.getCallId()).match(callId));
+
+		CSeq cseq = new CSeq(1, Request.INVITE);
+		assertTrue(((CSeq) request.getCSeq()).match(cseq));
+		cseq.setMethod(Request.BYE);
+		assertFalse(((CSeq) request.getCSeq()).match(cseq));
+	}
+
+	public void testCopyOnWriteCloneDoesNotShareModifiedHeaders() throws Exception {
+		SIPMessage.setCopyOnWriteClone(true);
+		String encoded = request.encode();
+		SIPRequest clone = (SIPRequest) request.clone();
+		assertEquals(request, clone);
+		assertEquals(encoded, clone.encode());
+
+		// headers modified through the clone
+		clone.getFrom().setTag("changed");
+		((ViaHeader) clone.getHeader(ViaHeader.NAME)).setBranch("z9hG4bK-changed");
+		((RouteHeader) clone.getHeader(RouteHeader.NAME)).setParameter("transport", "tcp");
+		clone.removeHeader(SupportedHeader.NAME);
+		assertEquals(encoded, request.encode());
+
+		// headers modified through the original
+		String cloneEncoded = clone.encode();
+		((ContactHeader) request.getHeader(ContactHeader.NAME)).setExpires(60);
+		request.getCSeq().setSeqNumber(2);
+		assertEquals(cloneEncoded, clone.encode());
+		assertEquals(3600, ((ContactHeader) clone.getHeader(ContactHeader.NAME)).getExpires());
+		assertEquals(1, clone.getCSeq().getSeqNumber());
+	}
+
+	public void testIdentifiersDoNotUnshareTheVia() throws Exception {
+		SIPMessage.setCopyOnWriteClone(true);
+		SIPRequest clone = (SIPRequest) request.clone();
+		SIPHeader via = clone.headers.get("via");
+		assertSame(request.headers.get("via"), via);
+
+		assertEquals(request.getTransactionId(), clone.getTransactionId());
+		clone.getViaHost();
+		clone.getViaPort();
+		clone.getCancelMatchId();
+		clone.createCancelRequest();
+		assertSame(via, clone.headers.get("via"));
+		assertSame(via, request.headers.get("via"));
+
+		// handed out, the via list may be modified
+		clone.getTopmostVia();
+		assertNotSame(via, clone.headers.get("via"));
+	}
+}
@@ -0,0 +1,101 @@
+package gov.nist.javax.sip.message;
+
+import java.util.ListIterator;
+
+import javax.sip.header.ContactHeader;
+import javax.sip.header.RouteHeader;
+import javax.sip.header.SubjectHeader;
+import javax.sip.header.ViaHeader;
+
+import gov.nist.javax.sip.header.SIPHeader;
+import gov.nist.javax.sip.header.Subject;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import junit.framework.TestCase;
+
+/**
+ * Checks that the SIPMessage headers keep their order, names and lists when
+ * they are attached, replaced and removed.
+ */
+public class MessageHeadersTest extends TestCase {
+
+	private static final String INVITE = "INVITE sip:bob@biloxi.example.com SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP proxy.example.com:5060;branch=z9hG4bK-proxy\r\n"
+			+ "Via: SIP/2.0/UDP client.atlanta.example.com:5060;branch=z9hG4bK74bf9\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: Alice <sip:alice@atlanta.example.com>;tag=9fxced76sl\r\n"
+			+ "To: Bob <sip:bob@biloxi.example.com>\r\n"
+			+ "Call-ID: 3848276298220188511@atlanta.example.com\r\n"
+			+ "CSeq: 1 INVITE\r\n"
+			+ "Contact: <sip:alice@client.atlanta.example.com>\r\n"
+			+ "Subject: lunch\r\n"
+			+ "Content-Length: 0\r\n\r\n";
+
+	private SIPRequest request;
+
+	@Override
+	protected void setUp() throws Exception {
+		request = (SIPRequest) new StringMsgParser().parseSIPMessage(INVITE.getBytes(), true, false, null);
+	}
+
+	private String headerNames() {
+		StringBuilder names = new StringBuilder();
+		for (ListIterator<String> it = request.getHeaderNames(); it.hasNext();) {
+			names.append(it.next()).append(' ');
+		}
+		return names.toString().trim();
+	}
+
+	public void testHeadersKeepTheirOrder() {
+		// the Content-Length of the new message comes first, and is encoded last
+		assertEquals("Content-Length Via Max-Forwards From To Call-ID CSeq Contact Subject", headerNames());
+		String encoded = request.encode();
+		assertTrue(encoded, encoded.startsWith("INVITE sip:bob@biloxi.example.com SIP/2.0\r\nVia: "));
+		assertTrue(encoded, encoded.endsWith("Subject: lunch\r\nContent-Length: 0\r\n\r\n"));
+	}
+
+	public void testLookupIsCaseInsensitive() {
+		assertNotNull(request.getHeader("subject"));
+		assertNotNull(request.getHeader("SUBJECT"));
+		assertTrue(request.hasHeader(new String("contact")));
+		assertFalse(request.hasHeader(RouteHeader.NAME));
+	}
+
+	public void testSetHeaderReplacesTheHeader() throws Exception {
+		Subject subject = new Subject();
+		subject.setSubject("dinner");
+		request.setHeader(subject);
+		assertEquals("dinner", ((SubjectHeader) request.getHeader(SubjectHeader.NAME)).getSubject());
+		assertEquals(1, request.getMessageAsEncodedStrings().stream().filter(h -> h.startsWith("Subject")).count());
+	}
+
+	public void testRemoveHeader() {
+		request.removeHeader(SubjectHeader.NAME);
+		assertNull(request.getHeader(SubjectHeader.NAME));
+		assertEquals("Content-Length Via Max-Forwards From To Call-ID CSeq Contact", headerNames());
+
+		request.removeHeader(ViaHeader.NAME, true);
+		assertEquals("client.atlanta.example.com", request.getTopmostVia().getHost());
+		request.removeHeader(ViaHeader.NAME, true);
+		assertNull(request.getHeader(ViaHeader.NAME));
+		assertEquals("Content-Length Max-Forwards From To Call-ID CSeq Contact", headerNames());
+	}
+
+	public void testListHeadersAreConcatenated() throws Exception {
+		request.addHeader("Contact: <sip:alice@192.0.2.1>");
+		int contacts = 0;
+		for (ListIterator<SIPHeader> it = request.getHeaders(ContactHeader.NAME); it.hasNext(); it.next()) {
+			contacts++;
+		}
+		assertEquals(2, contacts);
+		assertEquals("Content-Length Via Max-Forwards From To Call-ID CSeq Contact Subject", headerNames());
+	}
+
+	public void testCloneCopiesTheHeaders() {
+		SIPRequest clone = (SIPRequest) request.clone();
+		clone.removeHeader(SubjectHeader.NAME);
+		assertNotNull(request.getHeader(SubjectHeader.NAME));
+		assertEquals(request.getViaHeaders().size(), clone.getViaHeaders().size());
+		assertNotSame(request.getTopmostVia(), clone.getTopmostVia());
+		assertEquals(request.getTopmostVia(), clone.getTopmostVia());
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.parser;
+
+import javax.sip.header.ContentLengthHeader;
+
+import gov.nist.javax.sip.SipStackImpl;
+import gov.nist.javax.sip.header.SIPHeaderNames;
+import gov.nist.javax.sip.message.SIPMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import junit.framework.Assert;
+
+/**
+ * Runs the NettyMessageParser test cases with byte scanning enabled, plus the
+ * cases specific to the byte level header scanner.
+ */
+public class NettyMessageParserByteScanningTest extends NettyMessageParserTest {
+
+    private static final String LOOKALIKE_HEADERS = "MESSAGE sip:bob@biloxi.com SIP/2.0\r\n"
+            + "Via: SIP/2.0/UDP 127.0.0.1:5060;branch=z9hG4bK776asdhds\r\n"
+            + "Max-Forwards: 70\r\n"
+            + "To: <sip:bob@biloxi.com>\r\n"
+            + "From: <sip:alice@atlanta.com>;tag=1928301774\r\n"
+            + "Call-ID: a84b4c76e66710@pc33.atlanta.com\r\n"
+            + "CSeq: 1 MESSAGE\r\n"
+            + "Location-Info: 1234\r\n"
+            + "content-length : 5 \r\n"
+            + "\r\n"
+            + "hello";
+
+    private static final String INVALID_CONTENT_LENGTH = "MESSAGE sip:bob@biloxi.com SIP/2.0\r\n"
+            + "Via: SIP/2.0/UDP 127.0.0.1:5060;branch=z9hG4bK776asdhds\r\n"
+            + "Call-ID: a84b4c76e66710@pc33.atlanta.com\r\n"
+            + "CSeq: 1 MESSAGE\r\n"
+            + "Content-Length: 5a\r\n"
+            + "\r\n";
+
+    private static final String UTF8_DISPLAY_NAME = "MESSAGE sip:bob@biloxi.com SIP/2.0\r\n"
+            + "Via: SIP/2.0/UDP 127.0.0.1:5060;branch=z9hG4bK776asdhds\r\n"
+            + "To: <sip:bob@biloxi.com>\r\n"
+            + "From: \"\u0410\u043b\u0438\u0441\u0430\" <sip:alice@atlanta.com>;tag=1928301774\r\n"
+            + "Call-ID: a84b4c76e66710@pc33.atlanta.com\r\n"
+            + "CSeq: 1 MESSAGE\r\n"
+            + "l: 0\r\n"
+            + "\r\n";
+
+    @Override
+    protected NettyMessageParser createParser() {
+        return new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false, true);
+    }
+
+    public void testHeaderNameTable() {
+        int contentLength = HeaderNameTable.idOf(SIPHeaderNames.CONTENT_LENGTH);
+        Assert.assertEquals(HeaderNameTable.CONTENT_LENGTH, contentLength);
+        Assert.assertEquals(contentLength, HeaderNameTable.idOf("l"));
+        Assert.assertEquals(contentLength, HeaderNameTable.idOf("CONTENT-length"));
+        Assert.assertEquals(HeaderNameTable.idOf(SIPHeaderNames.CALL_ID), HeaderNameTable.idOf("i"));
+        Assert.assertEquals(HeaderNameTable.UNKNOWN, HeaderNameTable.idOf("X-Custom"));
+        Assert.assertEquals(HeaderNameTable.UNKNOWN, HeaderNameTable.idOf("y"));
+
+        ByteBuf byteBuf = Unpooled.wrappedBuffer("xxVIA: SIP/2.0".getBytes());
+        Assert.assertEquals(HeaderNameTable.idOf(SIPHeaderNames.VIA), HeaderNameTable.lookup(byteBuf, 2, 5));
+        Assert.assertEquals("via", HeaderNameTable.getLowerCaseName(HeaderNameTable.lookup(byteBuf, 2, 5)));
+        Assert.assertEquals(HeaderNameTable.UNKNOWN, HeaderNameTable.lookup(byteBuf, 0, 5));
+    }
+
+    public void testContentLengthLookalikeHeaders() throws Exception {
+        NettyMessageParser parser = createParser();
+        ByteBuf byteBuf = Unpooled.wrappedBuffer(LOOKALIKE_HEADERS.getBytes());
+        Assert.assertTrue(parser.parseBytes(byteBuf).isParsingComplete());
+        SIPMessage msg = parser.consumeSIPMessage();
+        Assert.assertNotNull(msg);
+        Assert.assertNotNull(msg.getHeader("Location-Info"));
+        Assert.assertEquals(5, ((ContentLengthHeader) msg.getHeader(ContentLengthHeader.NAME)).getContentLength());
+        Assert.assertEquals("hello", new String(msg.getRawContent()));
+    }
+
+    public void testInvalidContentLength() throws Exception {
+        NettyMessageParser parser = createParser();
+        ByteBuf byteBuf = Unpooled.wrappedBuffer(INVALID_CONTENT_LENGTH.getBytes());
+        parser.parseBytes(byteBuf);
+        Assert.assertNotNull(parser.getParseException());
+    }
+
+    public void testNonAsciiHeaderValue() throws Exception {
+        NettyMessageParser parser = createParser();
+        ByteBuf byteBuf = Unpooled.wrappedBuffer(UTF8_DISPLAY_NAME.getBytes("UTF-8"));
+        Assert.assertTrue(parser.parseBytes(byteBuf).isParsingComplete());
+        SIPMessage msg = parser.consumeSIPMessage();
+        Assert.assertNotNull(msg);
+        Assert.assertEquals("\u0410\u043b\u0438\u0441\u0430", msg.getFrom().getAddress().getDisplayName());
+        Assert.assertEquals(0, msg.getContentLength().getContentLength());
+    }
+
+    public void testSameMessageAsStringParsing() throws Exception {
+        NettyMessageParser stringParser = new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false);
+        NettyMessageParser scanningParser = createParser();
+        // the string based parser mistakes any header starting with an l for a compact Content-Length
+        String message = LOOKALIKE_HEADERS.replace("Location-Info: 1234", "Organization: Biloxi")
+                .replace("content-length : 5 ", "Content-Length: 5");
+        stringParser.parseBytes(Unpooled.wrappedBuffer(message.getBytes()));
+        scanningParser.parseBytes(Unpooled.wrappedBuffer(message.getBytes()));
+        SIPMessage expected = stringParser.consumeSIPMessage();
+        SIPMessage actual = scanningParser.consumeSIPMessage();
+        Assert.assertEquals(expected.encode(), actual.encode());
+    }
+}
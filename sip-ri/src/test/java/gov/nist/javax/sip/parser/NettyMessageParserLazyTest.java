@@ -0,0 +1,196 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.parser;
+
+import java.util.ListIterator;
+
+import javax.sip.header.ContactHeader;
+import javax.sip.header.RecordRouteHeader;
+import javax.sip.header.SupportedHeader;
+import javax.sip.header.TimeStampHeader;
+
+import gov.nist.javax.sip.SipStackImpl;
+import gov.nist.javax.sip.header.Contact;
+import gov.nist.javax.sip.header.SIPHeader;
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import io.netty.buffer.Unpooled;
+import junit.framework.Assert;
+
+/**
+ * Runs the NettyMessageParser test cases with lazy header parsing enabled, plus
+ * the cases specific to the headers left unparsed until accessed.
+ */
+public class NettyMessageParserLazyTest extends NettyMessageParserTest {
+
+    private static final String INVITE = "INVITE sip:bob@biloxi.com SIP/2.0\r\n"
+            + "Via: SIP/2.0/UDP 127.0.0.1:5060;branch=z9hG4bK776asdhds\r\n"
+            + "Max-Forwards: 70\r\n"
+            + "To: <sip:bob@biloxi.com>\r\n"
+            + "From: <sip:alice@atlanta.com>;tag=1928301774\r\n"
+            + "Call-ID: a84b4c76e66710@pc33.atlanta.com\r\n"
+            + "CSeq: 1 INVITE\r\n"
+            + "Record-Route: <sip:proxy.atlanta.com;lr>\r\n"
+            + "Timestamp: 54\r\n"
+            + "k: timer ,  100rel\r\n"
+            + "P-Custom:   kept as is\r\n"
+            + "Contact: <sip:alice@pc33.atlanta.com>\r\n"
+            + "Content-Length: 0\r\n"
+            + "\r\n";
+
+    private static final String INTERLEAVED = "INVITE sip:bob@biloxi.com SIP/2.0\r\n"
+            + "Record-Route: <sip:proxy.atlanta.com;lr>\r\n"
+            + "Via: SIP/2.0/UDP 127.0.0.1:5060;branch=z9hG4bK776asdhds\r\n"
+            + "Timestamp: 54\r\n"
+            + "Max-Forwards: 70\r\n"
+            + "To: <sip:bob@biloxi.com>\r\n"
+            + "P-Custom:   kept as is\r\n"
+            + "From: <sip:alice@atlanta.com>;tag=1928301774\r\n"
+            + "Call-ID: a84b4c76e66710@pc33.atlanta.com\r\n"
+            + "Contact: <sip:alice@pc33.atlanta.com>\r\n"
+            + "CSeq: 1 INVITE\r\n"
+            + "Content-Length: 0\r\n"
+            + "\r\n";
+
+    private static final String MALFORMED_CONTACT = "OPTIONS sip:bob@biloxi.com SIP/2.0\r\n"
+            + "Via: SIP/2.0/UDP 127.0.0.1:5060;branch=z9hG4bK776asdhds\r\n"
+            + "To: <sip:bob@biloxi.com>\r\n"
+            + "From: <sip:alice@atlanta.com>;tag=1928301774\r\n"
+            + "Call-ID: a84b4c76e66710@pc33.atlanta.com\r\n"
+            + "CSeq: 1 OPTIONS\r\n"
+            + "Contact: <sip:alice@pc33.atlanta.com\r\n"
+            + "Content-Length: 0\r\n"
+            + "\r\n";
+
+    @Override
+    protected NettyMessageParser createParser() {
+        return new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false, false, true);
+    }
+
+    private SIPMessage parse(String message) throws Exception {
+        NettyMessageParser parser = createParser();
+        Assert.assertTrue(parser.parseBytes(Unpooled.wrappedBuffer(message.getBytes())).isParsingComplete());
+        SIPMessage msg = parser.consumeSIPMessage();
+        Assert.assertNotNull(msg);
+        return msg;
+    }
+
+    public void testUntouchedHeadersEncodedVerbatim() throws Exception {
+        SIPMessage msg = parse(INVITE);
+        String encoded = msg.encode();
+        Assert.assertTrue(encoded.contains("k: timer ,  100rel\r\n"));
+        Assert.assertTrue(encoded.contains("P-Custom:   kept as is\r\n"));
+        Assert.assertTrue(new String(msg.encodeAsBytes("UDP")).contains("k: timer ,  100rel\r\n"));
+        Assert.assertEquals(70, msg.getMaxForwards().getMaxForwards());
+        Assert.assertEquals("1928301774", msg.getFromTag());
+    }
+
+    private static String headerNames(String encoded) {
+        StringBuilder names = new StringBuilder();
+        String headers = encoded.substring(encoded.indexOf("\r\n") + 2, encoded.indexOf("\r\n\r\n"));
+        for (String line : headers.split("\r\n")) {
+            names.append(line.substring(0, line.indexOf(':')).trim()).append(',');
+        }
+        return names.toString();
+    }
+
+    public void testHeaderOrderIsKept() throws Exception {
+        String received = headerNames(INTERLEAVED);
+        SIPRequest request = (SIPRequest) parse(INTERLEAVED);
+        Assert.assertEquals(received, headerNames(request.encode()));
+        Assert.assertEquals(received, headerNames(new String(request.encodeAsBytes("UDP"))));
+        Assert.assertEquals(received, headerNames(((SIPRequest) request.clone()).encode()));
+
+        // a header parsed on access stays at its position
+        Assert.assertNotNull(request.getHeader(TimeStampHeader.NAME));
+        Assert.assertNotNull(request.getHeader(RecordRouteHeader.NAME));
+        Assert.assertEquals(received, headerNames(request.encode()));
+    }
+
+    public void testHeaderParsedOnAccess() throws Exception {
+        SIPMessage msg = parse(INVITE);
+        ListIterator<SIPHeader> supported = msg.getHeaders(SupportedHeader.NAME);
+        Assert.assertEquals("timer", ((SupportedHeader) supported.next()).getOptionTag());
+        Assert.assertEquals("100rel", ((SupportedHeader) supported.next()).getOptionTag());
+        Assert.assertFalse(supported.hasNext());
+        Assert.assertTrue(msg.hasHeader("p-custom"));
+        Assert.assertEquals("kept as is", msg.getHeader("P-Custom").toString().split(":")[1].trim());
+        // once parsed the header is encoded in its canonical form
+        Assert.assertFalse(msg.encode().contains("k: timer"));
+        Assert.assertTrue(msg.encode().contains("Supported: timer,100rel\r\n"));
+    }
+
+    public void testMalformedLazyHeader() throws Exception {
+        SIPMessage msg = parse(MALFORMED_CONTACT);
+        Assert.assertNull(msg.getHeader(ContactHeader.NAME));
+        Assert.assertEquals("Contact: <sip:alice@pc33.atlanta.com", msg.getUnrecognizedHeaders().next());
+        Assert.assertTrue(msg.encode().contains("Contact: <sip:alice@pc33.atlanta.com\r\n"));
+    }
+
+    public void testCloneDoesNotShareTheUnrecognizedHeaders() throws Exception {
+        SIPMessage msg = parse(MALFORMED_CONTACT);
+        Assert.assertNull(msg.getHeader(ContactHeader.NAME));
+        SIPMessage clone = (SIPMessage) msg.clone();
+        ListIterator<String> cloneUnrecognized = clone.getUnrecognizedHeaders();
+        Assert.assertEquals("Contact: <sip:alice@pc33.atlanta.com", cloneUnrecognized.next());
+
+        cloneUnrecognized.add("Contact: <sip:carol@chicago.com");
+        ListIterator<String> unrecognized = msg.getUnrecognizedHeaders();
+        unrecognized.next();
+        Assert.assertFalse(unrecognized.hasNext());
+    }
+
+    public void testAddAndRemoveLazyHeader() throws Exception {
+        SIPMessage msg = parse(INVITE);
+        msg.addHeader("Contact: <sip:carol@chicago.com>");
+        ListIterator<SIPHeader> contacts = msg.getHeaders(ContactHeader.NAME);
+        // the received contact stays first
+        Assert.assertEquals("sip:alice@pc33.atlanta.com", ((Contact) contacts.next()).getAddress().getURI().toString());
+        Assert.assertEquals("sip:carol@chicago.com", ((Contact) contacts.next()).getAddress().getURI().toString());
+
+        msg.removeHeader("P-Custom");
+        Assert.assertNull(msg.getHeader("P-Custom"));
+        Assert.assertFalse(msg.encode().contains("P-Custom"));
+    }
+
+    public void testCloneAndResponse() throws Exception {
+        SIPRequest request = (SIPRequest) parse(INVITE);
+        SIPRequest clone = (SIPRequest) request.clone();
+        clone.removeHeader("P-Custom");
+        Assert.assertTrue(request.encode().contains("P-Custom:   kept as is\r\n"));
+        Assert.assertFalse(clone.encode().contains("P-Custom"));
+        Assert.assertEquals(request.getHeader(SupportedHeader.NAME), clone.getHeader(SupportedHeader.NAME));
+
+        SIPResponse response = request.createResponse(180);
+        Assert.assertNotNull(response.getHeader(RecordRouteHeader.NAME));
+        Assert.assertNotNull(response.getHeader(TimeStampHeader.NAME));
+        Assert.assertNull(response.getHeader("P-Custom"));
+    }
+
+    public void testSameMessageAsEagerParsing() throws Exception {
+        NettyMessageParser eagerParser = new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false, true);
+        Assert.assertTrue(eagerParser.parseBytes(Unpooled.wrappedBuffer(INVITE.getBytes())).isParsingComplete());
+        SIPMessage expected = eagerParser.consumeSIPMessage();
+        SIPMessage actual = parse(INVITE);
+        Assert.assertEquals(expected, actual);
+        // equals parsed everything, encoding is the canonical one
+        Assert.assertEquals(expected.encode().length(), actual.encode().length());
+    }
+}
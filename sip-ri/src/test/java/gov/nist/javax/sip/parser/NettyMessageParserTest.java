@@ -253,8 +253,12 @@ public class NettyMessageParserTest extends junit.framework.TestCase {
             + "Content-Length: 0\r\n"
             + "\r\n";    
 
+    protected NettyMessageParser createParser() {
+        return new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false);
+    }
+
     public void testIPV6ScopeIdParam() throws Exception {
-        NettyMessageParser parser = new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false);
+        NettyMessageParser parser = createParser();
         ByteBuf byteBuf = Unpooled.wrappedBuffer(IPV6MESSAGE.getBytes());
         Assert.assertTrue(parser.parseBytes(byteBuf).isParsingComplete());        
         SIPMessage msg = parser.consumeSIPMessage();
@@ -264,7 +268,7 @@ public class NettyMessageParserTest extends junit.framework.TestCase {
     }
 
     public void testTryingResponse() throws Exception {
-        NettyMessageParser parser = new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false);
+        NettyMessageParser parser = createParser();
         ByteBuf byteBuf = Unpooled.wrappedBuffer(TRYING_RESPONSE.getBytes());
         Assert.assertTrue(parser.parseBytes(byteBuf).isParsingComplete());        
         SIPMessage msg = parser.consumeSIPMessage();  
@@ -274,7 +278,7 @@ public class NettyMessageParserTest extends junit.framework.TestCase {
     }
 
     public void testOKResponse() throws Exception {
-        NettyMessageParser parser = new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false);
+        NettyMessageParser parser = createParser();
         ByteBuf byteBuf = Unpooled.wrappedBuffer(OK_RESPONSE.getBytes());
         Assert.assertTrue(parser.parseBytes(byteBuf).isParsingComplete());        
         SIPMessage msg = parser.consumeSIPMessage();       
@@ -283,7 +287,7 @@ public class NettyMessageParserTest extends junit.framework.TestCase {
     }
 
     public void testSplitOKResponse() throws Exception {
-        NettyMessageParser parser = new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false);
+        NettyMessageParser parser = createParser();
         ByteBuf byteBuf = Unpooled.wrappedBuffer(SPLIT_OK_RESPONSE_FIRST_PART.getBytes());
         Assert.assertTrue(parser.parseBytes(byteBuf).isParsingComplete());        
         SIPMessage msg = parser.consumeSIPMessage();       
@@ -298,7 +302,7 @@ public class NettyMessageParserTest extends junit.framework.TestCase {
 
 
     public void testEmptyMessageBody() throws Exception {
-        NettyMessageParser parser = new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false);
+        NettyMessageParser parser = createParser();
         ByteBuf byteBuf = Unpooled.wrappedBuffer(EMPTY_MESSAGE_BODY.getBytes());
         Assert.assertTrue(parser.parseBytes(byteBuf).isParsingComplete());        
         SIPMessage msg = parser.consumeSIPMessage();               
@@ -309,7 +313,7 @@ public class NettyMessageParserTest extends junit.framework.TestCase {
     }
 
     public void testMultipleRequests() throws Exception {
-        NettyMessageParser parser = new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false);
+        NettyMessageParser parser = createParser();
         ByteBuf byteBuf = Unpooled.wrappedBuffer(IPV6MESSAGE.getBytes());
         ByteBuf secondByteBuf = Unpooled.wrappedBuffer(EMPTY_MESSAGE_BODY.getBytes());
         ByteBuf thirdBuf = Unpooled.wrappedBuffer(IPV6MESSAGE.getBytes());
@@ -335,7 +339,7 @@ public class NettyMessageParserTest extends junit.framework.TestCase {
     }
 
     public void testMultipleACKRequestsSplit() throws Exception {
-        NettyMessageParser parser = new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false);
+        NettyMessageParser parser = createParser();
         ByteBuf byteBuf = Unpooled.wrappedBuffer(MULTIPLE_ACK_REQUESTS_SPLIT_FIRST_PART.getBytes());
         Assert.assertTrue(parser.parseBytes(byteBuf).isParsingComplete());        
         SIPMessage msg = parser.consumeSIPMessage();               
@@ -364,7 +368,7 @@ public class NettyMessageParserTest extends junit.framework.TestCase {
     }
 
     public void testMultipleACKRequestsSplitInit() throws Exception {
-        NettyMessageParser parser = new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false);
+        NettyMessageParser parser = createParser();
         ByteBuf byteBuf = Unpooled.wrappedBuffer(MULTIPLE_ACK_REQUESTS_SPLIT_FIRST_PART.getBytes());
         Assert.assertTrue(parser.parseBytes(byteBuf).isParsingComplete());        
         SIPMessage msg = parser.consumeSIPMessage();               
@@ -403,7 +407,7 @@ public class NettyMessageParserTest extends junit.framework.TestCase {
     }
 
     public void testMultipleResponses() throws Exception {
-        NettyMessageParser parser = new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false);
+        NettyMessageParser parser = createParser();
         ByteBuf byteBuf = Unpooled.wrappedBuffer(MULTIPLE_RESPONSES.getBytes());
         Assert.assertTrue(parser.parseBytes(byteBuf).isParsingComplete());        
         SIPMessage msg = parser.consumeSIPMessage();               
@@ -421,7 +425,7 @@ public class NettyMessageParserTest extends junit.framework.TestCase {
     }
 
     public void testMultipleResponsesParseException() throws Exception {
-        NettyMessageParser parser = new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false);
+        NettyMessageParser parser = createParser();
         ByteBuf byteBuf = Unpooled.wrappedBuffer(MULTIPLE_RESPONSES_PARSE_EXCEPTION.getBytes());
         Assert.assertTrue(parser.parseBytes(byteBuf).isParsingComplete());        
         boolean exceptionThrown = false;
@@ -441,7 +445,7 @@ public class NettyMessageParserTest extends junit.framework.TestCase {
     }
 
     public void testCRLF() throws Exception {
-        NettyMessageParser parser = new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false);
+        NettyMessageParser parser = createParser();
         ByteBuf byteBuf = Unpooled.wrappedBuffer(CRLF.getBytes());
         Assert.assertTrue(parser.parseBytes(byteBuf).isParsingComplete());        
         SIPMessage msg = parser.consumeSIPMessage();
@@ -449,7 +453,7 @@ public class NettyMessageParserTest extends junit.framework.TestCase {
     }
 
     public void testDoubleCRLF() throws Exception {
-        NettyMessageParser parser = new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false);
+        NettyMessageParser parser = createParser();
         ByteBuf byteBuf = Unpooled.wrappedBuffer(DOUBLE_CRLF.getBytes());
         Assert.assertTrue(parser.parseBytes(byteBuf).isParsingComplete());        
         SIPMessage msg = parser.consumeSIPMessage();        
@@ -457,7 +461,7 @@ public class NettyMessageParserTest extends junit.framework.TestCase {
     }
 
     public void testNormalBodySeparation() throws Exception {
-        NettyMessageParser parser = new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false);    
+        NettyMessageParser parser = createParser();    
         ByteBuf headerByteBuf = Unpooled.wrappedBuffer(HEADER_CHUNK.getBytes());
         ByteBuf emptyLineByteBuf = Unpooled.wrappedBuffer(CRLF.getBytes());
         ByteBuf bodyByteBuf = Unpooled.wrappedBuffer(BODY_CHUNK.getBytes());
@@ -468,7 +472,7 @@ public class NettyMessageParserTest extends junit.framework.TestCase {
     }
 
     public void testSplitBody() throws Exception {
-        NettyMessageParser parser = new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false);    
+        NettyMessageParser parser = createParser();    
         ByteBuf headerByteBuf = Unpooled.wrappedBuffer(HEADER_CHUNK.getBytes());
         ByteBuf emptyLineByteBuf = Unpooled.wrappedBuffer(CRLF.getBytes());
         ByteBuf bodyByteBuf = Unpooled.wrappedBuffer(SPLIT_BODY_CHUNK_FIRST_PART.getBytes());
@@ -484,7 +488,7 @@ public class NettyMessageParserTest extends junit.framework.TestCase {
     }
 
     public void testSplitBodyAndMultipleRequests() throws Exception {
-        NettyMessageParser parser = new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false);    
+        NettyMessageParser parser = createParser();    
         ByteBuf headerByteBuf = Unpooled.wrappedBuffer(HEADER_CHUNK.getBytes());
         ByteBuf emptyLineByteBuf = Unpooled.wrappedBuffer(CRLF.getBytes());
         ByteBuf bodyByteBuf = Unpooled.wrappedBuffer(SPLIT_BODY_CHUNK_FIRST_PART.getBytes());
@@ -512,7 +516,7 @@ public class NettyMessageParserTest extends junit.framework.TestCase {
     }
 
     public void testCompactBodySeparation() throws Exception {
-        NettyMessageParser parser = new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false);    
+        NettyMessageParser parser = createParser();    
         ByteBuf headerByteBuf = Unpooled.wrappedBuffer(HEADER_CHUNK_COMPACT.getBytes());
         ByteBuf emptyLineByteBuf = Unpooled.wrappedBuffer(CRLF.getBytes());
         ByteBuf bodyByteBuf = Unpooled.wrappedBuffer(BODY_CHUNK.getBytes());
@@ -523,7 +527,7 @@ public class NettyMessageParserTest extends junit.framework.TestCase {
     }
     
     public void testHeaderSeparationAtChunkEndAndContentLengthNotLastHeader() throws Exception {
-        NettyMessageParser parser = new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false);    
+        NettyMessageParser parser = createParser();    
         ByteBuf headerByteBuf = Unpooled.wrappedBuffer(INVITE_HEADER_CHUNK.getBytes());
         ByteBuf contentLenghtheaderByteBuf = Unpooled.wrappedBuffer(CONTENT_LENGTH_HEADER.getBytes());
         ByteBuf header1ByteBuf = Unpooled.wrappedBuffer(HEADER1.getBytes());
@@ -540,7 +544,7 @@ public class NettyMessageParserTest extends junit.framework.TestCase {
     }
 
     public void testBodySeparationAtChunkEnd() throws Exception {
-        NettyMessageParser parser = new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false);    
+        NettyMessageParser parser = createParser();    
         ByteBuf headerByteBuf = Unpooled.wrappedBuffer(HEADER_CHUNK.getBytes());
         ByteBuf crByteBuf = Unpooled.wrappedBuffer("\r".getBytes());
         ByteBuf lfByteBuf = Unpooled.wrappedBuffer("\n".getBytes());
@@ -552,7 +556,7 @@ public class NettyMessageParserTest extends junit.framework.TestCase {
     }
 
     public void testSingleCRLFAndMessage() throws Exception {
-        NettyMessageParser parser = new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false);    
+        NettyMessageParser parser = createParser();    
         ByteBuf singleCRLFByteBuf = Unpooled.wrappedBuffer(CRLF.getBytes());
         ByteBuf fullMessageByteBuf = Unpooled.wrappedBuffer(IPV6MESSAGE.getBytes());
         ByteBuf messageByteBuf = Unpooled.wrappedBuffer(singleCRLFByteBuf, fullMessageByteBuf);
@@ -568,7 +572,7 @@ public class NettyMessageParserTest extends junit.framework.TestCase {
     }
 
     public void testDoubleCRLFAndMessage() throws Exception {
-        NettyMessageParser parser = new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false);    
+        NettyMessageParser parser = createParser();    
         ByteBuf doubleCRLFByteBuf = Unpooled.wrappedBuffer(DOUBLE_CRLF.getBytes());
         ByteBuf fullMessageByteBuf = Unpooled.wrappedBuffer(IPV6MESSAGE.getBytes());
         ByteBuf messageByteBuf = Unpooled.wrappedBuffer(doubleCRLFByteBuf, fullMessageByteBuf);
@@ -584,7 +588,7 @@ public class NettyMessageParserTest extends junit.framework.TestCase {
     }
 
     public void testNormalBodySeparationButSplit() throws Exception {
-        NettyMessageParser parser = new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false);    
+        NettyMessageParser parser = createParser();    
         ByteBuf headerByteBuf = Unpooled.wrappedBuffer(HEADER_CHUNK.getBytes());
         Assert.assertFalse(parser.parseBytes(headerByteBuf).isParsingComplete());        
         SIPMessage msg = parser.consumeSIPMessage();        
@@ -597,4 +601,57 @@ public class NettyMessageParserTest extends junit.framework.TestCase {
         Assert.assertNotNull(msg);        
     }
 
+    public void testDatagramsWithReusedParser() throws Exception {
+        NettyMessageParser parser = createParser();
+        ByteBuf byteBuf = Unpooled.wrappedBuffer(TRYING_RESPONSE.getBytes());
+        SIPMessage msg = parser.parseDatagram(byteBuf);
+        Assert.assertEquals(100, ((SIPResponse) msg).getStatusCode());
+        Assert.assertEquals(0, byteBuf.readableBytes());
+
+        byteBuf = Unpooled.wrappedBuffer((HEADER_CHUNK + CRLF + BODY_CHUNK).getBytes());
+        msg = parser.parseDatagram(byteBuf);
+        Assert.assertEquals(145, msg.getContentLength().getContentLength());
+        Assert.assertEquals(BODY_CHUNK, new String(msg.getRawContent()));
+
+        byteBuf = Unpooled.wrappedBuffer(OK_RESPONSE.getBytes());
+        msg = parser.parseDatagram(byteBuf);
+        Assert.assertEquals(200, ((SIPResponse) msg).getStatusCode());
+        Assert.assertNull(msg.getContent());
+    }
+
+    public void testDatagramKeepAlive() throws Exception {
+        NettyMessageParser parser = createParser();
+        Assert.assertTrue(parser.parseDatagram(Unpooled.wrappedBuffer(DOUBLE_CRLF.getBytes())).isNullRequest());
+        Assert.assertTrue(parser.parseDatagram(Unpooled.wrappedBuffer(CRLF.getBytes())).isNullRequest());
+    }
+
+    public void testDatagramWithoutContentLength() throws Exception {
+        NettyMessageParser parser = createParser();
+        SIPMessage msg = parser.parseDatagram(Unpooled.wrappedBuffer((INVITE_HEADER_CHUNK + CRLF + BODY_CHUNK).getBytes()));
+        Assert.assertEquals(145, msg.getContentLength().getContentLength());
+        Assert.assertEquals(BODY_CHUNK, new String(msg.getRawContent()));
+    }
+
+    public void testDatagramParseException() throws Exception {
+        NettyMessageParser parser = createParser();
+        // a truncated body
+        ByteBuf byteBuf = Unpooled.wrappedBuffer((HEADER_CHUNK + CRLF + BODY_CHUNK.substring(10)).getBytes());
+        try {
+            parser.parseDatagram(byteBuf);
+            fail("a truncated body should not be parsed");
+        } catch (ParseException e) {
+        }
+        Assert.assertEquals(0, byteBuf.readableBytes());
+
+        // a message without the empty line ending its headers
+        try {
+            parser.parseDatagram(Unpooled.wrappedBuffer(INVITE_HEADER_CHUNK.getBytes()));
+            fail("headers without an empty line should not be parsed");
+        } catch (ParseException e) {
+        }
+
+        SIPMessage msg = parser.parseDatagram(Unpooled.wrappedBuffer(OK_RESPONSE.getBytes()));
+        Assert.assertEquals(200, ((SIPResponse) msg).getStatusCode());
+    }
+
 }
@@ -0,0 +1,337 @@
+package gov.nist.javax.sip.stack;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.Properties;
+
+import javax.sip.header.RetryAfterHeader;
+import javax.sip.message.Response;
+
+import gov.nist.core.executor.SIPTask;
+import gov.nist.core.executor.StackExecutor;
+import gov.nist.javax.sip.SipStackImpl;
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import gov.nist.javax.sip.stack.transports.processors.MessageChannel;
+import junit.framework.TestCase;
+
+/**
+ * Tests of the AdaptiveOverloadControlMessageValve against a simulated
+ * worker, the valve being timed by a manual clock and the worker queue being
+ * run by the test, so that the load offered does not depend on the speed of
+ * the machine.
+ */
+public class AdaptiveOverloadControlMessageValveTest extends TestCase {
+
+	private static final long SERVICE_TIME = 2;
+	private static final long CALL_DEADLINE = 500;
+	private static final int CAPACITY = (int) (1000 / SERVICE_TIME);
+
+	private static final String INVITE = "INVITE sip:bob@127.0.0.1:5070 SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 127.0.0.1:5060;branch=z9hG4bK-%1$d\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: <sip:alice@127.0.0.1>;tag=%1$d\r\n"
+			+ "To: <sip:bob@127.0.0.1>%2$s\r\n"
+			+ "Call-ID: call-%1$d@127.0.0.1\r\n"
+			+ "CSeq: 1 INVITE\r\n"
+			+ "Contact: <sip:alice@127.0.0.1:5060>\r\n"
+			+ "Content-Length: 0\r\n\r\n";
+
+	private SipStackImpl sipStack;
+	private ManualClockValve valve;
+	private SimulatedWorker worker;
+	private RecordingMessageChannel messageChannel;
+	private SIPRequest[] requests;
+
+	@Override
+	protected void setUp() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("javax.sip.STACK_NAME", "AdaptiveOverloadControlMessageValveTest");
+		properties.setProperty("gov.nist.javax.sip.OVERLOAD_MAX_QUEUE_SIZE", "50");
+		sipStack = new SipStackImpl(properties);
+		worker = new SimulatedWorker();
+		valve = new ManualClockValve();
+		valve.init(sipStack);
+		valve.executor = worker;
+		messageChannel = new RecordingMessageChannel();
+
+		StringMsgParser parser = new StringMsgParser();
+		requests = new SIPRequest[100];
+		for (int i = 0; i < requests.length; i++) {
+			requests[i] = (SIPRequest) parser.parseSIPMessage(String.format(INVITE, i, "").getBytes(), true, false, null);
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		sipStack.stop();
+	}
+
+	public void testIdleStackAdmitsAllRequests() {
+		for (SIPRequest request : requests) {
+			valve.now += 10;
+			assertTrue(valve.processRequest(request, messageChannel));
+			worker.runAll();
+		}
+		assertEquals(requests.length, valve.getAdmittedRequests());
+		assertEquals(0, valve.getRejectedRequests());
+		assertEquals(0, valve.getQueueingDelay(getCallId()));
+		assertEquals(1.0, valve.getAdmissionRate(getCallId()));
+	}
+
+	public void testProbeWaitingBeyondTheTargetDelayLowersTheAdmissionRate() {
+		// the probe queued by the first request is never run
+		for (int i = 0; i < 40; i++) {
+			valve.now += 10;
+			valve.processRequest(requests[i % requests.length], messageChannel);
+		}
+		// halved on each of the last two intervals
+		assertEquals(0.25, valve.getAdmissionRate(getCallId()));
+		assertTrue(valve.getRejectedRequests() > 0);
+
+		SIPResponse response = messageChannel.lastResponse;
+		assertEquals(Response.SERVICE_UNAVAILABLE, response.getStatusCode());
+		// 15 intervals to raise the admission rate back to 1
+		assertEquals(2, ((RetryAfterHeader) response.getHeader(RetryAfterHeader.NAME)).getRetryAfter());
+	}
+
+	public void testQueueAboveTheMaximumSizeLowersTheAdmissionRate() {
+		worker.extraQueueSize = 51;
+		for (int i = 0; i < 40; i++) {
+			valve.now += 10;
+			valve.processRequest(requests[i % requests.length], messageChannel);
+			worker.runAll();
+		}
+		assertEquals(0, valve.getQueueingDelay(getCallId()));
+		assertTrue(valve.getAdmissionRate(getCallId()) < 1.0);
+		assertTrue(valve.getRejectedRequests() > 0);
+	}
+
+	public void testAdmissionRateRecoversOnceTheProbesAreBack() {
+		for (int i = 0; i < 100; i++) {
+			valve.now += 10;
+			valve.processRequest(requests[i % requests.length], messageChannel);
+		}
+		assertEquals(0.01, valve.getAdmissionRate(getCallId()));
+
+		worker.runAll();
+		for (int i = 0; i < 300; i++) {
+			valve.now += 10;
+			valve.processRequest(requests[i % requests.length], messageChannel);
+			worker.runAll();
+		}
+		assertEquals(1.0, valve.getAdmissionRate(getCallId()));
+		long rejected = valve.getRejectedRequests();
+		for (SIPRequest request : requests) {
+			valve.now += 10;
+			assertTrue(valve.processRequest(request, messageChannel));
+			worker.runAll();
+		}
+		assertEquals(rejected, valve.getRejectedRequests());
+	}
+
+	public void testRequestsWithinDialogsAreNotRejected() throws Exception {
+		for (int i = 0; i < 40; i++) {
+			valve.now += 10;
+			valve.processRequest(requests[i % requests.length], messageChannel);
+		}
+		assertTrue(valve.getAdmissionRate(getCallId()) < 1.0);
+
+		SIPRequest request = (SIPRequest) new StringMsgParser().parseSIPMessage(
+				String.format(INVITE, 0, ";tag=callee").getBytes(), true, false, null);
+		for (int i = 0; i < 10; i++) {
+			valve.now += 10;
+			assertTrue(valve.processRequest(request, messageChannel));
+		}
+	}
+
+	public void testGoodputStaysFlatUnderOverload() {
+		int nominalGoodput = offerLoad(CAPACITY * 8 / 10, 4000);
+		int overloadGoodput = offerLoad(CAPACITY * 3, 4000);
+
+		assertTrue("goodput " + overloadGoodput + " under 3x overload, " + nominalGoodput + " under nominal load",
+				overloadGoodput >= nominalGoodput * 3 / 4);
+		assertTrue(valve.getRejectedRequests() > 0);
+		assertTrue(valve.getAdmissionRate(getCallId()) < 1.0);
+	}
+
+	private String getCallId() {
+		return requests[0].getCallId().getCallId();
+	}
+
+	/**
+	 * Offers calls at the given rate for the given time to the simulated
+	 * worker, each of them taking the service time of the worker once
+	 * admitted by the valve.
+	 *
+	 * @return the number of calls served per second before their deadline
+	 */
+	private int offerLoad(int callsPerSecond, long duration) {
+		final int[] goodCalls = new int[1];
+		long offeredCalls = 0;
+		for (long elapsed = 0; elapsed < duration; elapsed++, valve.now++) {
+			for (long due = callsPerSecond * elapsed / 1000; offeredCalls < due; offeredCalls++) {
+				final SIPRequest request = requests[(int) (offeredCalls % requests.length)];
+				final long arrivalTime = valve.now;
+				worker.addTaskLast(new CallTask(request, arrivalTime) {
+					@Override
+					public void execute() {
+						if (valve.processRequest(request, messageChannel)) {
+							worker.busyUntil = valve.now + SERVICE_TIME;
+							if (worker.busyUntil - arrivalTime <= CALL_DEADLINE) {
+								goodCalls[0]++;
+							}
+						}
+					}
+				});
+			}
+			worker.run(valve.now);
+		}
+		// the calls still queued are late
+		worker.queue.clear();
+		worker.busyUntil = valve.now;
+		return (int) (goodCalls[0] * 1000L / duration);
+	}
+
+	private static class ManualClockValve extends AdaptiveOverloadControlMessageValve {
+		private long now = 1000;
+
+		@Override
+		protected long currentTimeMillis() {
+			return now;
+		}
+	}
+
+	/**
+	 * Single worker queue, run by the test instead of a thread.
+	 */
+	private static class SimulatedWorker implements StackExecutor {
+		private final ArrayDeque<SIPTask> queue = new ArrayDeque<SIPTask>();
+		private int extraQueueSize;
+		private long busyUntil;
+
+		public void start(int workersNumber, long taskInterval) {
+		}
+
+		public void stop() {
+		}
+
+		public void addTaskFirst(SIPTask task) {
+			queue.addFirst(task);
+		}
+
+		public void addTaskLast(SIPTask task) {
+			queue.addLast(task);
+		}
+
+		public int getQueueSize(int index) {
+			return queue.size() + extraQueueSize;
+		}
+
+		private void runAll() {
+			while (!queue.isEmpty()) {
+				queue.poll().execute();
+			}
+		}
+
+		/**
+		 * Runs the queued tasks until one keeps the worker busy past the given time.
+		 */
+		private void run(long now) {
+			while (busyUntil <= now && !queue.isEmpty()) {
+				queue.poll().execute();
+			}
+		}
+	}
+
+	private abstract static class CallTask implements SIPTask {
+		private final String callId;
+		private final long startTime;
+
+		CallTask(SIPRequest request, long startTime) {
+			this.callId = request.getCallId().getCallId();
+			this.startTime = startTime;
+		}
+
+		public String getId() {
+			return callId;
+		}
+
+		public long getStartTime() {
+			return startTime;
+		}
+
+		public String printTaskDetails() {
+			return "Task name: CallTask, id: " + callId;
+		}
+	}
+
+	private static class RecordingMessageChannel extends MessageChannel {
+		private SIPResponse lastResponse;
+
+		public void sendMessage(SIPMessage sipMessage) throws IOException, MessageTooLongException {
+			lastResponse = (SIPResponse) sipMessage;
+		}
+
+		public void sendMessage(byte[] message, InetAddress receiverAddress, int receiverPort, boolean reconnectFlag) {
+		}
+
+		public void close() {
+		}
+
+		public SIPTransactionStack getSIPStack() {
+			return null;
+		}
+
+		public String getTransport() {
+			return "UDP";
+		}
+
+		public boolean isReliable() {
+			return false;
+		}
+
+		public boolean isSecure() {
+			return false;
+		}
+
+		public String getPeerAddress() {
+			return "127.0.0.1";
+		}
+
+		public InetAddress getPeerInetAddress() {
+			return InetAddress.getLoopbackAddress();
+		}
+
+		public String getPeerProtocol() {
+			return "UDP";
+		}
+
+		public int getPeerPort() {
+			return 5060;
+		}
+
+		public int getPeerPacketSourcePort() {
+			return 5060;
+		}
+
+		public InetAddress getPeerPacketSourceAddress() {
+			return InetAddress.getLoopbackAddress();
+		}
+
+		public String getKey() {
+			return "127.0.0.1:5060/UDP";
+		}
+
+		public String getViaHost() {
+			return "127.0.0.1";
+		}
+
+		public int getViaPort() {
+			return 5060;
+		}
+	}
+}
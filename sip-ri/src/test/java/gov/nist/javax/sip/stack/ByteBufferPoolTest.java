@@ -0,0 +1,90 @@
+package gov.nist.javax.sip.stack;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+/**
+ * Size classes, thread caches, shared queue and discards of the ByteBufferPool.
+ */
+public class ByteBufferPoolTest extends TestCase {
+	public void testSizeClasses() {
+		assertEquals(0, ByteBufferPool.getSizeClass(1));
+		assertEquals(0, ByteBufferPool.getSizeClass(512));
+		assertEquals(1, ByteBufferPool.getSizeClass(513));
+		assertEquals(3, ByteBufferPool.getSizeClass(4096));
+		assertEquals(7, ByteBufferPool.getSizeClass(65536));
+		assertEquals(-1, ByteBufferPool.getSizeClass(65537));
+	}
+
+	public void testReleasedBufferIsReusedByTheSameThread() {
+		ByteBufferPool pool = new ByteBufferPool(2, 0);
+		ByteBuffer buffer = pool.acquire(4000);
+		assertEquals(4096, buffer.capacity());
+		assertEquals(1, pool.getMisses());
+
+		buffer.put((byte) 1).flip();
+		pool.release(buffer);
+
+		ByteBuffer reused = pool.acquire(3000);
+		assertSame(buffer, reused);
+		assertEquals(0, reused.position());
+		assertEquals(4096, reused.limit());
+		assertEquals(1, pool.getHits());
+	}
+
+	public void testSharedQueueServesOtherThreads() throws Exception {
+		final ByteBufferPool pool = new ByteBufferPool(0, 1);
+		final ByteBuffer buffer = pool.acquire(16709);
+		assertEquals(32768, buffer.capacity());
+		pool.release(buffer);
+		assertEquals(1, pool.getSharedCount());
+
+		final ByteBuffer[] acquired = new ByteBuffer[1];
+		Thread thread = new Thread() {
+			public void run() {
+				acquired[0] = pool.acquire(20000);
+			}
+		};
+		thread.start();
+		thread.join();
+
+		assertSame(buffer, acquired[0]);
+		assertEquals(0, pool.getSharedCount());
+		assertEquals(1, pool.getHits());
+	}
+
+	public void testForeignAndSurplusBuffersAreDiscarded() {
+		ByteBufferPool pool = new ByteBufferPool(1, 0);
+		pool.release(ByteBuffer.allocateDirect(1000));
+		assertEquals(1, pool.getDiscards());
+
+		ByteBuffer first = pool.acquire(1024);
+		ByteBuffer second = pool.acquire(1024);
+		pool.release(first);
+		pool.release(second);
+		assertEquals(2, pool.getReleases());
+		assertEquals(2, pool.getDiscards());
+
+		ByteBuffer large = pool.acquire(100000);
+		assertEquals(100000, large.capacity());
+		assertEquals(1, pool.getUnpooled());
+		pool.release(large);
+		assertEquals(3, pool.getDiscards());
+	}
+
+	public void testHeapBuffers() {
+		ByteBufferPool pool = new ByteBufferPool(1, 1);
+		ByteBuffer direct = pool.acquire(512);
+		assertTrue(direct.isDirect());
+
+		pool.setUseDirect(false);
+		pool.release(direct);
+		assertEquals(1, pool.getDiscards());
+
+		ByteBuffer heap = pool.acquire(512);
+		assertFalse(heap.isDirect());
+		pool.release(heap);
+		assertSame(heap, pool.acquire(512));
+	}
+}
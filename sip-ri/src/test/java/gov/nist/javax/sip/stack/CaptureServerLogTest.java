@@ -0,0 +1,198 @@
+package gov.nist.javax.sip.stack;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Properties;
+
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import junit.framework.TestCase;
+
+/**
+ * Files written by the CaptureServerLog writer thread, and the Call-ID filter
+ * and sampling applied before the messages reach the ring.
+ */
+public class CaptureServerLogTest extends TestCase {
+
+	private static final String INVITE = "INVITE sip:bob@127.0.0.1:5070 SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 127.0.0.1:5060;branch=z9hG4bK-%1$d\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: <sip:alice@127.0.0.1>;tag=%1$d\r\n"
+			+ "To: <sip:bob@127.0.0.1>\r\n"
+			+ "Call-ID: call-%1$d@127.0.0.1\r\n"
+			+ "CSeq: 1 INVITE\r\n"
+			+ "Contact: <sip:alice@127.0.0.1:5060>\r\n"
+			+ "Content-Length: 0\r\n\r\n";
+
+	private File directory;
+	private CaptureServerLog serverLog;
+
+	@Override
+	protected void setUp() throws Exception {
+		directory = File.createTempFile("CaptureServerLogTest", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (serverLog != null)
+			serverLog.closeLogFile();
+
+		for (File file : directory.listFiles())
+			file.delete();
+		directory.delete();
+	}
+
+	private CaptureServerLog start(String format, String callIds) {
+		Properties properties = new Properties();
+		properties.setProperty("javax.sip.STACK_NAME", "CaptureServerLogTest");
+		properties.setProperty("gov.nist.javax.sip.CAPTURE_FILE", new File(directory, "capture").getPath());
+		properties.setProperty("gov.nist.javax.sip.CAPTURE_FORMAT", format);
+		if (callIds != null)
+			properties.setProperty("gov.nist.javax.sip.CAPTURE_CALL_IDS", callIds);
+
+		serverLog = new CaptureServerLog();
+		serverLog.setStackProperties(properties);
+		return serverLog;
+	}
+
+	private static SIPMessage invite(int call) throws Exception {
+		return new StringMsgParser().parseSIPMessage(String.format(INVITE, call).getBytes(), true, false, null);
+	}
+
+	public void testLengthPrefixedRecords() throws Exception {
+		start(CaptureServerLog.FORMAT_LENGTH_PREFIXED, null);
+		assertTrue(serverLog.isCapturingMessages());
+
+		SIPMessage message = invite(1);
+		serverLog.logMessage(message, "127.0.0.1:5060", "127.0.0.1:5070", true, 1000);
+		serverLog.logMessage(invite(2), "127.0.0.1:5070", "127.0.0.1:5060", false, 2000);
+		serverLog.closeLogFile();
+		assertFalse(serverLog.isCapturingMessages());
+		assertEquals(2, serverLog.getCapturedMessages());
+
+		DataInputStream input = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(new File(directory, "capture.0.cap"))));
+		try {
+			assertEquals(CaptureServerLog.LENGTH_PREFIXED_MAGIC, input.readInt());
+			assertEquals(CaptureServerLog.LENGTH_PREFIXED_VERSION, input.readShort());
+
+			input.readInt();
+			assertEquals(1000, input.readLong());
+			assertEquals(1, input.readByte());
+			assertEquals("UDP", readString(input));
+			assertEquals("127.0.0.1:5060", readString(input));
+			assertEquals("127.0.0.1:5070", readString(input));
+			byte[] encoded = message.encodeAsBytes("UDP");
+			assertEquals(encoded.length, input.readInt());
+			byte[] payload = new byte[encoded.length];
+			input.readFully(payload);
+			assertEquals(new String(encoded), new String(payload));
+
+			int length = input.readInt();
+			assertEquals(2000, input.readLong());
+			input.skipBytes(length - 8);
+			assertEquals(-1, input.read());
+		} finally {
+			input.close();
+		}
+	}
+
+	public void testTransportBytesAreCapturedAsIs() throws Exception {
+		start(CaptureServerLog.FORMAT_LENGTH_PREFIXED, null);
+		byte[] bytes = "bytes as written by the transport".getBytes("UTF-8");
+		serverLog.logMessage(invite(1), bytes, "127.0.0.1:5060", "127.0.0.1:5070", true, 1000);
+		serverLog.closeLogFile();
+
+		DataInputStream input = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(new File(directory, "capture.0.cap"))));
+		try {
+			input.skipBytes(6 + 4 + 8 + 1);
+			readString(input);
+			readString(input);
+			readString(input);
+			assertEquals(bytes.length, input.readInt());
+			byte[] payload = new byte[bytes.length];
+			input.readFully(payload);
+			assertEquals(new String(bytes, "UTF-8"), new String(payload, "UTF-8"));
+			assertEquals(-1, input.read());
+		} finally {
+			input.close();
+		}
+	}
+
+	public void testPcapRecords() throws Exception {
+		start(CaptureServerLog.FORMAT_PCAP, null);
+		SIPMessage message = invite(1);
+		serverLog.logMessage(message, "127.0.0.1:5060", "10.0.0.1:5070", true, 1500);
+		serverLog.closeLogFile();
+
+		DataInputStream input = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(new File(directory, "capture.0.pcap"))));
+		try {
+			assertEquals(0xa1b2c3d4, input.readInt());
+			input.skipBytes(16);
+			assertEquals(101, input.readInt());
+
+			int length = message.encodeAsBytes("UDP").length;
+			assertEquals(1, input.readInt());
+			assertEquals(500000, input.readInt());
+			assertEquals(28 + length, input.readInt());
+			assertEquals(28 + length, input.readInt());
+
+			byte[] ip = new byte[20];
+			input.readFully(ip);
+			assertEquals(0x45, ip[0]);
+			assertEquals(17, ip[9]);
+			assertEquals(127, ip[12]);
+			assertEquals(10, ip[16]);
+			int checksum = 0;
+			for (int i = 0; i < ip.length; i += 2)
+				checksum += ((ip[i] & 0xFF) << 8) | (ip[i + 1] & 0xFF);
+			while ((checksum >> 16) != 0)
+				checksum = (checksum & 0xFFFF) + (checksum >> 16);
+			assertEquals(0xFFFF, checksum);
+
+			assertEquals(5060, input.readUnsignedShort());
+			assertEquals(5070, input.readUnsignedShort());
+			assertEquals(8 + length, input.readUnsignedShort());
+		} finally {
+			input.close();
+		}
+	}
+
+	public void testCallIdFilterAndSampling() throws Exception {
+		start(CaptureServerLog.FORMAT_LENGTH_PREFIXED, "call-1@127.0.0.1");
+		serverLog.logMessage(invite(1), "127.0.0.1:5060", "127.0.0.1:5070", true, 1000);
+		serverLog.logMessage(invite(2), "127.0.0.1:5060", "127.0.0.1:5070", true, 1000);
+		assertEquals(1, serverLog.getCapturedMessages());
+		assertEquals(1, serverLog.getFilteredMessages());
+
+		serverLog.removeCallIdFilter("call-1@127.0.0.1");
+		serverLog.setSamplingRate(0);
+		serverLog.logMessage(invite(3), "127.0.0.1:5060", "127.0.0.1:5070", true, 1000);
+		assertEquals(2, serverLog.getFilteredMessages());
+
+		serverLog.setSamplingRate(1);
+		serverLog.logMessage(invite(3), "127.0.0.1:5060", "127.0.0.1:5070", true, 1000);
+		assertEquals(2, serverLog.getCapturedMessages());
+	}
+
+	public void testHostPortParsing() {
+		assertEquals(5060, CaptureServerLog.port("127.0.0.1:5060"));
+		assertEquals(5061, CaptureServerLog.port("[::1]:5061"));
+		assertEquals(0, CaptureServerLog.port("::1"));
+		assertEquals(4, CaptureServerLog.address("192.168.1.2:5060").length);
+		assertEquals(16, CaptureServerLog.address("[::1]:5060").length);
+		assertEquals(0, CaptureServerLog.address("example.com:5060")[0]);
+	}
+
+	private static String readString(DataInputStream input) throws Exception {
+		byte[] bytes = new byte[input.readShort()];
+		input.readFully(bytes);
+		return new String(bytes, "ISO-8859-1");
+	}
+}
@@ -0,0 +1,123 @@
+package gov.nist.javax.sip.stack;
+
+import java.util.Properties;
+
+import javax.sip.DialogState;
+import javax.sip.ListeningPoint;
+import javax.sip.message.Request;
+
+import gov.nist.javax.sip.SipProviderImpl;
+import gov.nist.javax.sip.SipStackImpl;
+import gov.nist.javax.sip.header.CallID;
+import gov.nist.javax.sip.header.extensions.Join;
+import gov.nist.javax.sip.header.extensions.Replaces;
+import junit.framework.TestCase;
+
+/**
+ * Lookups of the dialogs of the dialog table by Replaces and Join headers and
+ * by state, and the upkeep of the per-state sets.
+ */
+public class DialogIndexTest extends TestCase {
+
+	private static final String CALL_ID = "call-1@127.0.0.1";
+
+	private SipStackImpl sipStack;
+	private SipProviderImpl sipProvider;
+
+	@Override
+	protected void setUp() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("javax.sip.STACK_NAME", "DialogIndexTest");
+		sipStack = new SipStackImpl(properties);
+		ListeningPoint listeningPoint = sipStack.createListeningPoint("127.0.0.1", 5093, ListeningPoint.UDP);
+		sipProvider = (SipProviderImpl) sipStack.createSipProvider(listeningPoint);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		sipStack.stop();
+	}
+
+	private SIPDialog createDialog(String myTag, String hisTag, int state) {
+		SIPDialog dialog = new SIPDialog(sipProvider);
+		dialog.setStack(sipStack);
+		dialog.dialogId = (CALL_ID + ":" + myTag + ":" + hisTag).toLowerCase();
+		dialog.callIdHeader = new CallID(CALL_ID);
+		dialog.myTag = myTag;
+		dialog.hisTag = hisTag;
+		dialog.method = Request.INVITE;
+		dialog.dialogState.set(state);
+		return dialog;
+	}
+
+	private Replaces replaces(String fromTag, String toTag) throws Exception {
+		Replaces replaces = new Replaces();
+		replaces.setCallId(CALL_ID);
+		replaces.setFromTag(fromTag);
+		replaces.setToTag(toTag);
+		return replaces;
+	}
+
+	private Join join(String fromTag, String toTag) throws Exception {
+		Join join = new Join();
+		join.setCallId(CALL_ID);
+		join.setFromTag(fromTag);
+		join.setToTag(toTag);
+		return join;
+	}
+
+	public void testReplacesAndJoinFindTheDialog() throws Exception {
+		SIPDialog dialog = sipStack.putDialog(createDialog("alice-tag", "bob-tag", SIPDialog.CONFIRMED_STATE));
+
+		// the to-tag is the local tag of the dialog
+		assertSame(dialog, sipStack.getReplacesDialog(replaces("bob-tag", "alice-tag")));
+		assertSame(dialog, sipStack.getJoinDialog(join("bob-tag", "alice-tag")));
+		assertNull(sipStack.getReplacesDialog(replaces("bob-tag", "carol-tag")));
+	}
+
+	public void testReversedTagsNeedTheLastResponseTags() throws Exception {
+		SIPDialog dialog = sipStack.putDialog(createDialog("alice-tag", "bob-tag", SIPDialog.CONFIRMED_STATE));
+
+		// the tags the other way round are taken only as the last response carried them
+		assertNull(sipStack.getReplacesDialog(replaces("alice-tag", "bob-tag")));
+		assertNull(sipStack.getJoinDialog(join("alice-tag", "bob-tag")));
+
+		dialog.lastResponseFromTag = "alice-tag";
+		dialog.lastResponseToTag = "bob-tag";
+		assertSame(dialog, sipStack.getReplacesDialog(replaces("alice-tag", "bob-tag")));
+		assertSame(dialog, sipStack.getJoinDialog(join("ALICE-TAG", "BOB-TAG")));
+
+		dialog.lastResponseFromTag = "bob-tag";
+		dialog.lastResponseToTag = "alice-tag";
+		assertNull(sipStack.getReplacesDialog(replaces("alice-tag", "bob-tag")));
+	}
+
+	public void testDialogsAreFiledByState() throws Exception {
+		SIPDialog confirmed = sipStack.putDialog(createDialog("alice-tag", "bob-tag", SIPDialog.CONFIRMED_STATE));
+		SIPDialog pending = sipStack.putDialog(createDialog("alice-tag", "carol-tag", SIPDialog.NULL_STATE));
+		assertEquals(1, sipStack.getDialogCount(DialogState.CONFIRMED));
+		assertTrue(sipStack.getDialogs(DialogState.CONFIRMED).contains(confirmed));
+		assertEquals(0, sipStack.getDialogCount(DialogState.TERMINATED));
+
+		pending.setState(SIPDialog.CONFIRMED_STATE);
+		assertEquals(2, sipStack.getDialogCount(DialogState.CONFIRMED));
+		assertTrue(sipStack.getDialogs(DialogState.CONFIRMED).contains(pending));
+
+		confirmed.setState(SIPDialog.TERMINATED_STATE);
+		assertEquals(1, sipStack.getDialogCount(DialogState.CONFIRMED));
+		assertFalse(sipStack.getDialogs(DialogState.CONFIRMED).contains(confirmed));
+		assertTrue(sipStack.getDialogs(DialogState.TERMINATED).contains(confirmed));
+
+		sipStack.removeDialog(confirmed.getDialogId());
+		assertEquals(0, sipStack.getDialogCount(DialogState.TERMINATED));
+		sipStack.removeDialog(pending.getDialogId());
+		assertEquals(0, sipStack.getDialogCount(DialogState.CONFIRMED));
+		assertTrue(sipStack.getDialogs(DialogState.CONFIRMED).isEmpty());
+	}
+
+	public void testDialogOutsideTheTableIsNotFiled() throws Exception {
+		SIPDialog dialog = createDialog("alice-tag", "bob-tag", SIPDialog.NULL_STATE);
+		dialog.setState(SIPDialog.CONFIRMED_STATE);
+		assertEquals(0, sipStack.getDialogCount(DialogState.CONFIRMED));
+	}
+}
@@ -0,0 +1,175 @@
+package gov.nist.javax.sip.stack;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Properties;
+
+import javax.sip.DialogState;
+import javax.sip.ListeningPoint;
+import javax.sip.message.Request;
+
+import gov.nist.javax.sip.SipProviderImpl;
+import gov.nist.javax.sip.SipStackImpl;
+import gov.nist.javax.sip.header.CallID;
+import gov.nist.javax.sip.header.Contact;
+import gov.nist.javax.sip.header.ContactList;
+import gov.nist.javax.sip.header.RouteList;
+import gov.nist.javax.sip.parser.AddressParser;
+import gov.nist.javax.sip.parser.ContactParser;
+import gov.nist.javax.sip.parser.RouteParser;
+import junit.framework.TestCase;
+
+/**
+ * Round trip of the dialog snapshots, and write through, passivation and
+ * activation of the dialogs with an InMemoryDialogStore.
+ */
+public class DialogStoreTest extends TestCase {
+
+	private static final String DIALOG_ID = "call-1@127.0.0.1:alice-tag:bob-tag";
+
+	private SipStackImpl sipStack;
+	private SipProviderImpl sipProvider;
+	private DialogStore dialogStore;
+
+	@Override
+	protected void setUp() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("javax.sip.STACK_NAME", "DialogStoreTest");
+		properties.setProperty("gov.nist.javax.sip.DIALOG_STORE", InMemoryDialogStore.class.getName());
+		sipStack = new SipStackImpl(properties);
+		ListeningPoint listeningPoint = sipStack.createListeningPoint("127.0.0.1", 5097, ListeningPoint.UDP);
+		sipProvider = (SipProviderImpl) sipStack.createSipProvider(listeningPoint);
+		dialogStore = sipStack.getDialogStore();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		sipStack.stop();
+	}
+
+	private SIPDialog createConfirmedDialog() throws Exception {
+		SIPDialog dialog = new SIPDialog(sipProvider);
+		dialog.setStack(sipStack);
+		dialog.dialogId = DIALOG_ID;
+		dialog.callIdHeader = new CallID("call-1@127.0.0.1");
+		dialog.myTag = "alice-tag";
+		dialog.hisTag = "bob-tag";
+		dialog.method = Request.INVITE;
+		dialog.localSequenceNumber = 3;
+		dialog.remoteSequenceNumber = 7;
+		dialog.originalLocalSequenceNumber = 1;
+		dialog.localParty = new AddressParser("\"Alice\" <sip:alice@127.0.0.1>").address(true);
+		dialog.remoteParty = new AddressParser("<sip:bob@127.0.0.2>").address(true);
+		dialog.remoteTarget = new AddressParser("<sip:bob@127.0.0.2:5070;transport=tcp>").address(true);
+		dialog.routeList = (RouteList) new RouteParser("Route: <sip:proxy1@127.0.0.3;lr>,<sip:proxy2@127.0.0.4;lr>\n").parse();
+		dialog.contactHeader = (Contact) ((ContactList) new ContactParser("Contact: <sip:alice@127.0.0.1:5097>\n").parse()).getFirst();
+		dialog.firstTransactionSeen = true;
+		dialog.firstTransactionIsServerTransaction = false;
+		dialog.firstTransactionMethod = Request.INVITE;
+		dialog.firstTransactionId = "z9hG4bK-1";
+		dialog.firstTransactionPort = 5070;
+		dialog.lastResponseStatusCode = Integer.valueOf(200);
+		dialog.lastResponseCSeqNumber = 1;
+		dialog.lastResponseMethod = Request.INVITE;
+		dialog.lastResponseFromTag = "alice-tag";
+		dialog.lastResponseToTag = "bob-tag";
+		dialog.lastInviteResponseCSeqNumber = 1;
+		dialog.lastInviteResponseCode = 200;
+		dialog.isAcknowledged = true;
+		dialog.dialogState.set(SIPDialog.CONFIRMED_STATE);
+		return dialog;
+	}
+
+	public void testSnapshotRoundTrip() throws Exception {
+		SIPDialog dialog = createConfirmedDialog();
+		SIPDialog decoded = DialogSnapshotCodec.decode(DialogSnapshotCodec.encode(dialog), sipStack);
+
+		assertEquals(DIALOG_ID, decoded.getDialogId());
+		assertEquals("call-1@127.0.0.1", decoded.getCallId().getCallId());
+		assertEquals("alice-tag", decoded.getLocalTag());
+		assertEquals("bob-tag", decoded.getRemoteTag());
+		assertEquals(3, decoded.getLocalSeqNumber());
+		assertEquals(7, decoded.getRemoteSeqNumber());
+		assertEquals(DialogState.CONFIRMED, decoded.getState());
+		assertFalse(decoded.isServer());
+		assertTrue(decoded.isAtleastOneAckSent());
+		assertSame(sipProvider, decoded.getSipProvider());
+		assertEquals(dialog.getLocalParty(), decoded.getLocalParty());
+		assertEquals(dialog.getRemoteParty(), decoded.getRemoteParty());
+		assertEquals(dialog.getRemoteTarget(), decoded.getRemoteTarget());
+		assertEquals(dialog.getMyContactHeader(), decoded.getMyContactHeader());
+		assertEquals(dialog.routeList.encode(), decoded.routeList.encode());
+		assertEquals(Integer.valueOf(200), decoded.getLastResponseStatusCode());
+		assertEquals(Request.INVITE, decoded.getLastResponseMethod());
+		assertEquals(5070, decoded.firstTransactionPort);
+	}
+
+	public void testSnapshotOfUnknownVersionIsRejected() throws Exception {
+		byte[] snapshot = DialogSnapshotCodec.encode(createConfirmedDialog());
+		snapshot[0] = (byte) (DialogSnapshotCodec.VERSION + 1);
+		try {
+			DialogSnapshotCodec.decode(snapshot, sipStack);
+			fail("decoded a snapshot of an unknown version");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testConfirmedDialogIsWrittenThrough() throws Exception {
+		SIPDialog dialog = createConfirmedDialog();
+		sipStack.putDialog(dialog);
+		assertEquals(1, dialogStore.size());
+
+		// CSeq changes are written in batches off the message path
+		dialog.setRemoteSequenceNumber(8);
+		assertEquals(7, DialogSnapshotCodec.decode(dialogStore.get(DIALOG_ID), sipStack).getRemoteSeqNumber());
+		sipStack.flushDialogs();
+		assertEquals(8, DialogSnapshotCodec.decode(dialogStore.get(DIALOG_ID), sipStack).getRemoteSeqNumber());
+
+		sipStack.removeDialog(DIALOG_ID);
+		assertEquals(0, dialogStore.size());
+	}
+
+	public void testPassivatedDialogIsActivatedOnLookup() throws Exception {
+		SIPDialog dialog = createConfirmedDialog();
+		sipStack.putDialog(dialog);
+		assertTrue(sipStack.passivateDialog(dialog));
+		assertNull(sipStack.dialogTable.get(DIALOG_ID));
+
+		SIPDialog activated = sipStack.getDialog(DIALOG_ID);
+		assertNotNull(activated);
+		assertNotSame(dialog, activated);
+		assertSame(activated, sipStack.getDialog(DIALOG_ID));
+		assertEquals(3, activated.getLocalSeqNumber());
+		Iterator<?> routes = activated.getRouteSet();
+		assertTrue(routes.hasNext());
+
+		// the passivated instance no longer writes to the store
+		dialog.setRemoteSequenceNumber(20);
+		activated.setRemoteSequenceNumber(9);
+		sipStack.flushDialogs();
+		assertEquals(9, DialogSnapshotCodec.decode(dialogStore.get(DIALOG_ID), sipStack).getRemoteSeqNumber());
+	}
+
+	public void testChangedDialogsAreWrittenByTheTimer() throws Exception {
+		SIPDialog dialog = createConfirmedDialog();
+		sipStack.putDialog(dialog);
+		dialog.incrementLocalSequenceNumber();
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (DialogSnapshotCodec.decode(dialogStore.get(DIALOG_ID), sipStack).getLocalSeqNumber() != 4
+				&& System.currentTimeMillis() < deadline)
+			Thread.sleep(50);
+
+		assertEquals(4, DialogSnapshotCodec.decode(dialogStore.get(DIALOG_ID), sipStack).getLocalSeqNumber());
+	}
+
+	public void testEarlyDialogIsNotPassivated() throws Exception {
+		SIPDialog dialog = createConfirmedDialog();
+		dialog.dialogState.set(SIPDialog.EARLY_STATE);
+		sipStack.putDialog(dialog);
+		assertEquals(0, dialogStore.size());
+		assertFalse(sipStack.passivateDialog(dialog));
+		assertSame(dialog, sipStack.getDialog(DIALOG_ID));
+	}
+}
@@ -0,0 +1,107 @@
+package gov.nist.javax.sip.stack;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Properties;
+
+import javax.sip.ListeningPoint;
+
+import gov.nist.javax.sip.SipStackImpl;
+import gov.nist.javax.sip.stack.transports.processors.IdleConnectionReaper;
+import gov.nist.javax.sip.stack.transports.processors.nio.NioMessageProcessorFactory;
+import junit.framework.TestCase;
+
+/**
+ * Keep alive timeouts and idle connections closed by the timing wheel of the
+ * stack instead of a timer task per connection.
+ */
+public class IdleConnectionReaperTest extends TestCase {
+
+	private static final int PORT = 5097;
+
+	private SipStackImpl sipStack;
+
+	private void startStack(String keepAliveTimeout, String maxIdleTime) throws Exception {
+		startStack(keepAliveTimeout, maxIdleTime, "-1");
+	}
+
+	private void startStack(String keepAliveTimeout, String maxIdleTime, String pingInterval) throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("javax.sip.STACK_NAME", "IdleConnectionReaperTest");
+		properties.setProperty("gov.nist.javax.sip.MESSAGE_PROCESSOR_FACTORY",
+				NioMessageProcessorFactory.class.getName());
+		properties.setProperty("gov.nist.javax.sip.RELIABLE_CONNECTION_KEEP_ALIVE_TIMEOUT", keepAliveTimeout);
+		properties.setProperty("gov.nist.javax.sip.NIO_MAX_SOCKET_IDLE_TIME", maxIdleTime);
+		properties.setProperty("gov.nist.javax.sip.RELIABLE_CONNECTION_KEEP_ALIVE_PING_INTERVAL", pingInterval);
+		properties.setProperty("gov.nist.javax.sip.STACK_METRICS", "true");
+		sipStack = new SipStackImpl(properties);
+		sipStack.createListeningPoint("127.0.0.1", PORT, ListeningPoint.TCP);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (sipStack != null)
+			sipStack.stop();
+	}
+
+	private void waitForClose(Socket socket) throws Exception {
+		socket.setSoTimeout(10000);
+		InputStream inputStream = socket.getInputStream();
+		// the pong of the ping, if any, is read before the end of the stream
+		while (inputStream.read() != -1)
+			;
+	}
+
+	public void testKeepAliveTimeoutClosesConnection() throws Exception {
+		startStack("1", "600000");
+		Socket socket = new Socket("127.0.0.1", PORT);
+		try {
+			OutputStream outputStream = socket.getOutputStream();
+			outputStream.write("\r\n\r\n".getBytes("UTF-8"));
+			outputStream.flush();
+			waitForClose(socket);
+		} finally {
+			socket.close();
+		}
+
+		IdleConnectionReaper reaper = sipStack.getIdleConnectionReaper();
+		assertEquals(1, reaper.getKeepAliveTimeoutCount());
+		assertEquals(0, reaper.getIdleClosedCount());
+		assertEquals(1, sipStack.getStackMetrics().getKeepAliveTimeouts());
+	}
+
+	public void testIdleConnectionIsClosed() throws Exception {
+		startStack("-1", "1500");
+		Socket socket = new Socket("127.0.0.1", PORT);
+		try {
+			waitForClose(socket);
+		} finally {
+			socket.close();
+		}
+
+		IdleConnectionReaper reaper = sipStack.getIdleConnectionReaper();
+		assertEquals(1, reaper.getIdleClosedCount());
+		assertEquals(0, reaper.getKeepAliveTimeoutCount());
+		assertEquals(1, sipStack.getStackMetrics().getIdleClosedConnections());
+	}
+
+	public void testIdleConnectionIsPinged() throws Exception {
+		startStack("-1", "600000", "1");
+		Socket socket = new Socket("127.0.0.1", PORT);
+		try {
+			socket.setSoTimeout(10000);
+			InputStream inputStream = socket.getInputStream();
+			byte[] ping = new byte[4];
+			for (int i = 0; i < ping.length; i++)
+				ping[i] = (byte) inputStream.read();
+			assertEquals("\r\n\r\n", new String(ping, "UTF-8"));
+		} finally {
+			socket.close();
+		}
+
+		IdleConnectionReaper reaper = sipStack.getIdleConnectionReaper();
+		assertTrue(reaper.getKeepAlivePingCount() >= 1);
+		assertEquals(0, reaper.getIdleClosedCount());
+	}
+}
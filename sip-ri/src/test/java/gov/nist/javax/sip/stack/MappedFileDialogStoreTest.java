@@ -0,0 +1,85 @@
+package gov.nist.javax.sip.stack;
+
+import java.io.File;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Slots of the MappedFileDialogStore, and the dialogs found again once the
+ * file is reopened.
+ */
+public class MappedFileDialogStoreTest extends TestCase {
+
+	private File file;
+	private MappedFileDialogStore store;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("MappedFileDialogStoreTest", ".dialogs");
+		store = open();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		store.destroy();
+		file.delete();
+	}
+
+	private MappedFileDialogStore open() throws Exception {
+		MappedFileDialogStore store = new MappedFileDialogStore();
+		store.slotSize = 256;
+		store.slots = 4;
+		store.open(file);
+		return store;
+	}
+
+	private static byte[] snapshot(int length, int value) {
+		byte[] snapshot = new byte[length];
+		Arrays.fill(snapshot, (byte) value);
+		return snapshot;
+	}
+
+	public void testPutGetRemove() {
+		store.put("dialog-1", snapshot(100, 1));
+		store.put("dialog-2", snapshot(50, 2));
+		assertEquals(2, store.size());
+		assertTrue(Arrays.equals(snapshot(100, 1), store.get("dialog-1")));
+
+		store.put("dialog-1", snapshot(20, 3));
+		assertEquals(2, store.size());
+		assertTrue(Arrays.equals(snapshot(20, 3), store.get("dialog-1")));
+
+		store.remove("dialog-1");
+		assertNull(store.get("dialog-1"));
+		assertEquals(1, store.size());
+	}
+
+	public void testDialogsAreFoundAfterReopening() throws Exception {
+		store.put("dialog-1", snapshot(100, 1));
+		store.put("dialog-2", snapshot(50, 2));
+		store.remove("dialog-2");
+		store.destroy();
+
+		store = open();
+		assertEquals(1, store.size());
+		assertTrue(Arrays.equals(snapshot(100, 1), store.get("dialog-1")));
+		assertNull(store.get("dialog-2"));
+	}
+
+	public void testSnapshotsNotFittingAreRejected() {
+		store.put("dialog-large", snapshot(256, 1));
+		assertNull(store.get("dialog-large"));
+
+		for (int i = 0; i < 5; i++) {
+			store.put("dialog-" + i, snapshot(10, i));
+		}
+		assertEquals(4, store.size());
+		assertNull(store.get("dialog-4"));
+		assertEquals(2, store.getRejectedSnapshots());
+
+		store.remove("dialog-0");
+		store.put("dialog-4", snapshot(10, 4));
+		assertTrue(Arrays.equals(snapshot(10, 4), store.get("dialog-4")));
+	}
+}
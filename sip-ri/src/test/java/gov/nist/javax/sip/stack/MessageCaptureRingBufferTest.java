@@ -0,0 +1,140 @@
+package gov.nist.javax.sip.stack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+/**
+ * Order, truncation and drops of the MessageCaptureRingBuffer.
+ */
+public class MessageCaptureRingBufferTest extends TestCase {
+
+	private static class Record {
+		long time;
+		boolean sent;
+		String transport;
+		String from;
+		String to;
+		int originalLength;
+		byte[] payload;
+	}
+
+	private static class Collector implements MessageCaptureRingBuffer.RecordHandler {
+		List<Record> records = new ArrayList<Record>();
+
+		@Override
+		public void onRecord(long time, boolean sent, String transport, String from, String to, int originalLength,
+				ByteBuffer payload) throws IOException {
+			Record record = new Record();
+			record.time = time;
+			record.sent = sent;
+			record.transport = transport;
+			record.from = from;
+			record.to = to;
+			record.originalLength = originalLength;
+			record.payload = new byte[payload.remaining()];
+			payload.get(record.payload);
+			records.add(record);
+		}
+	}
+
+	public void testRecordsAreDrainedInOrder() throws Exception {
+		MessageCaptureRingBuffer ringBuffer = new MessageCaptureRingBuffer(3, 64);
+		assertEquals(4, ringBuffer.getCapacity());
+
+		assertTrue(ringBuffer.offer(1, true, "UDP", "127.0.0.1:5060", "127.0.0.1:5070", "first".getBytes()));
+		assertTrue(ringBuffer.offer(2, false, "TCP", "127.0.0.1:5070", "127.0.0.1:5060", "second".getBytes()));
+		assertEquals(2, ringBuffer.size());
+
+		Collector collector = new Collector();
+		assertEquals(2, ringBuffer.drain(collector, 10));
+		assertEquals(0, ringBuffer.size());
+
+		Record first = collector.records.get(0);
+		assertEquals(1, first.time);
+		assertTrue(first.sent);
+		assertEquals("UDP", first.transport);
+		assertEquals("127.0.0.1:5060", first.from);
+		assertEquals("127.0.0.1:5070", first.to);
+		assertEquals("first", new String(first.payload));
+
+		Record second = collector.records.get(1);
+		assertFalse(second.sent);
+		assertEquals("TCP", second.transport);
+		assertEquals("second", new String(second.payload));
+	}
+
+	public void testMessagesAreTruncatedToTheSnapLength() throws Exception {
+		MessageCaptureRingBuffer ringBuffer = new MessageCaptureRingBuffer(2, 4);
+		assertTrue(ringBuffer.offer(1, true, null, null, null, "truncated".getBytes()));
+
+		Collector collector = new Collector();
+		ringBuffer.drain(collector, 10);
+		Record record = collector.records.get(0);
+		assertEquals(9, record.originalLength);
+		assertEquals("trun", new String(record.payload));
+		assertEquals("", record.transport);
+	}
+
+	public void testMessagesAreDroppedWhenFull() throws Exception {
+		MessageCaptureRingBuffer ringBuffer = new MessageCaptureRingBuffer(2, 16);
+		assertTrue(ringBuffer.offer(1, true, "UDP", "a", "b", new byte[1]));
+		assertTrue(ringBuffer.offer(2, true, "UDP", "a", "b", new byte[1]));
+		assertFalse(ringBuffer.offer(3, true, "UDP", "a", "b", new byte[1]));
+		assertEquals(1, ringBuffer.getDroppedMessages());
+
+		Collector collector = new Collector();
+		assertEquals(1, ringBuffer.drain(collector, 1));
+		assertTrue(ringBuffer.offer(4, true, "UDP", "a", "b", new byte[1]));
+		assertEquals(2, ringBuffer.drain(collector, 10));
+		assertEquals(2, collector.records.get(1).time);
+		assertEquals(4, collector.records.get(2).time);
+	}
+
+	public void testRingOver2GBIsRejected() {
+		try {
+			new MessageCaptureRingBuffer(1 << 20, 1 << 12);
+			fail("the size of the ring overflows an int");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
+	public void testConcurrentProducers() throws Exception {
+		final MessageCaptureRingBuffer ringBuffer = new MessageCaptureRingBuffer(1024, 16);
+		final int producers = 4;
+		final int messages = 10000;
+		final CountDownLatch done = new CountDownLatch(producers);
+		for (int i = 0; i < producers; i++) {
+			final int producer = i;
+			new Thread() {
+				public void run() {
+					for (int j = 0; j < messages; j++) {
+						ringBuffer.offer(j, true, "UDP", "producer-" + producer, null, new byte[8]);
+					}
+					done.countDown();
+				}
+			}.start();
+		}
+
+		Collector collector = new Collector();
+		long[] last = new long[producers];
+		Arrays.fill(last, -1);
+		long drained = 0;
+		while (done.getCount() > 0 || ringBuffer.size() > 0) {
+			ringBuffer.drain(collector, 256);
+			for (Record record : collector.records) {
+				int producer = Integer.parseInt(record.from.substring("producer-".length()));
+				assertTrue(record.time > last[producer]);
+				last[producer] = record.time;
+			}
+			drained += collector.records.size();
+			collector.records.clear();
+		}
+		assertEquals(producers * messages, drained + ringBuffer.getDroppedMessages());
+	}
+}
@@ -0,0 +1,103 @@
+package gov.nist.javax.sip.stack;
+
+import java.net.Socket;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.util.Properties;
+
+import javax.sip.ListeningPoint;
+
+import gov.nist.javax.sip.SipStackImpl;
+import gov.nist.javax.sip.stack.transports.processors.MessageProcessor;
+import gov.nist.javax.sip.stack.transports.processors.nio.NioMessageProcessorFactory;
+import gov.nist.javax.sip.stack.transports.processors.nio.NioTcpMessageProcessor;
+import junit.framework.TestCase;
+
+/**
+ * Selector threads configured per listening point and the spreading of the
+ * accepted connections over them.
+ */
+public class NioSelectorPoolTest extends TestCase {
+
+	private static final int POOLED_PORT = 5098;
+	private static final int SINGLE_PORT = 5099;
+
+	private SipStackImpl sipStack;
+
+	@Override
+	protected void setUp() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("javax.sip.STACK_NAME", "NioSelectorPoolTest");
+		properties.setProperty("gov.nist.javax.sip.MESSAGE_PROCESSOR_FACTORY",
+				NioMessageProcessorFactory.class.getName());
+		properties.setProperty("gov.nist.javax.sip.NIO_SELECTOR_THREADS.TCP." + POOLED_PORT, "2");
+		sipStack = new SipStackImpl(properties);
+		sipStack.createListeningPoint("127.0.0.1", POOLED_PORT, ListeningPoint.TCP);
+		sipStack.createListeningPoint("127.0.0.1", SINGLE_PORT, ListeningPoint.TCP);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		sipStack.stop();
+	}
+
+	private NioTcpMessageProcessor getProcessor(int port) {
+		for (MessageProcessor messageProcessor : sipStack.getMessageProcessors())
+			if (messageProcessor.getPort() == port)
+				return (NioTcpMessageProcessor) messageProcessor;
+
+		return null;
+	}
+
+	private int getConnections(NioTcpMessageProcessor processor) {
+		int connections = 0;
+		for (int load : processor.getSelectorLoads())
+			connections += load;
+
+		return connections;
+	}
+
+	private void waitForConnections(NioTcpMessageProcessor processor, int connections) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (getConnections(processor) != connections && System.currentTimeMillis() < deadline)
+			Thread.sleep(20);
+
+		assertEquals(connections, getConnections(processor));
+	}
+
+	public void testSelectorThreadsPerListeningPoint() {
+		assertEquals(2, getProcessor(POOLED_PORT).getSelectorLoads().length);
+		assertEquals(1, getProcessor(SINGLE_PORT).getSelectorLoads().length);
+	}
+
+	public void testConnectionsAreSpreadRoundRobin() throws Exception {
+		NioTcpMessageProcessor processor = getProcessor(POOLED_PORT);
+		Socket first = new Socket("127.0.0.1", POOLED_PORT);
+		Socket second = new Socket("127.0.0.1", POOLED_PORT);
+		try {
+			waitForConnections(processor, 2);
+			int[] loads = processor.getSelectorLoads();
+			assertEquals(1, loads[0]);
+			assertEquals(1, loads[1]);
+		} finally {
+			first.close();
+			second.close();
+		}
+
+		waitForConnections(processor, 0);
+	}
+
+	public void testClosedSocketIsNotAssigned() throws Exception {
+		NioTcpMessageProcessor processor = getProcessor(POOLED_PORT);
+		SocketChannel socketChannel = SocketChannel.open();
+		socketChannel.close();
+		try {
+			processor.send(socketChannel, "\r\n\r\n".getBytes("UTF-8"));
+			fail("sent on a closed socket");
+		} catch (ClosedChannelException e) {
+			// expected
+		}
+
+		assertEquals(0, getConnections(processor));
+	}
+}
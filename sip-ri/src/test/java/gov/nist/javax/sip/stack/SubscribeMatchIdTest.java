@@ -0,0 +1,70 @@
+package gov.nist.javax.sip.stack;
+
+import javax.sip.header.EventHeader;
+
+import gov.nist.javax.sip.header.Event;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import junit.framework.TestCase;
+
+/**
+ * Checks that a NOTIFY gets the subscribe match id of the SUBSCRIBE that
+ * created the subscription, under the comparison rules of Event.match.
+ */
+public class SubscribeMatchIdTest extends TestCase {
+
+	private static final String SUBSCRIBE = "SUBSCRIBE sip:bob@biloxi.example.com SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP client.atlanta.example.com:5060;branch=z9hG4bK74bf9\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: Alice <sip:alice@atlanta.example.com>;tag=9fxced76sl\r\n"
+			+ "To: Bob <sip:bob@biloxi.example.com>\r\n"
+			+ "Call-ID: 3848276298220188511@atlanta.example.com\r\n"
+			+ "CSeq: 1 SUBSCRIBE\r\n"
+			+ "Event: presence;id=Abc\r\n"
+			+ "Contact: <sip:alice@client.atlanta.example.com>\r\n"
+			+ "Content-Length: 0\r\n\r\n";
+
+	private static final String NOTIFY = "NOTIFY sip:alice@client.atlanta.example.com SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP biloxi.example.com:5060;branch=z9hG4bK776asdhds\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: Bob <sip:bob@biloxi.example.com>;tag=1928301774\r\n"
+			+ "To: Alice <sip:alice@atlanta.example.com>;tag=9FXCED76SL\r\n"
+			+ "Call-ID: 3848276298220188511@atlanta.example.com\r\n"
+			+ "CSeq: 1 NOTIFY\r\n"
+			+ "Event: %s\r\n"
+			+ "Subscription-State: active;expires=3600\r\n"
+			+ "Contact: <sip:bob@biloxi.example.com>\r\n"
+			+ "Content-Length: 0\r\n\r\n";
+
+	private static SIPRequest parse(String message) throws Exception {
+		return (SIPRequest) new StringMsgParser().parseSIPMessage(message.getBytes(), true, false, null);
+	}
+
+	private static String getSubscribeMatchId(SIPRequest request, String tag) {
+		return SIPTransactionStack.getSubscribeMatchId(request.getCallId().getCallId(), tag,
+				(Event) request.getHeader(EventHeader.NAME));
+	}
+
+	public void testNotifyMatchesSubscribe() throws Exception {
+		SIPRequest subscribe = parse(SUBSCRIBE);
+		String subscribeMatchId = getSubscribeMatchId(subscribe, subscribe.getFromTag());
+
+		SIPRequest notify = parse(String.format(NOTIFY, "Presence;id=abc"));
+		assertEquals(subscribeMatchId, getSubscribeMatchId(notify, notify.getToTag()));
+
+		notify = parse(String.format(NOTIFY, "presence;id=other"));
+		assertFalse(subscribeMatchId.equals(getSubscribeMatchId(notify, notify.getToTag())));
+
+		notify = parse(String.format(NOTIFY, "presence"));
+		assertFalse(subscribeMatchId.equals(getSubscribeMatchId(notify, notify.getToTag())));
+
+		notify = parse(String.format(NOTIFY, "dialog;id=abc"));
+		assertFalse(subscribeMatchId.equals(getSubscribeMatchId(notify, notify.getToTag())));
+	}
+
+	public void testMissingParts() throws Exception {
+		SIPRequest subscribe = parse(SUBSCRIBE);
+		assertNull(getSubscribeMatchId(subscribe, null));
+		assertNull(SIPTransactionStack.getSubscribeMatchId(subscribe.getCallId().getCallId(), "tag", null));
+	}
+}
@@ -0,0 +1,184 @@
+package gov.nist.javax.sip.stack;
+
+import java.net.InetAddress;
+import java.util.Properties;
+
+import javax.sip.ListeningPoint;
+import javax.sip.header.EventHeader;
+import javax.sip.message.Request;
+
+import gov.nist.javax.sip.ListeningPointImpl;
+import gov.nist.javax.sip.SipProviderImpl;
+import gov.nist.javax.sip.SipStackImpl;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.parser.EventParser;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import junit.framework.TestCase;
+
+/**
+ * Lookups of the transactions through the indexes kept by the stack, and the
+ * cleanup of these indexes when the transactions are removed.
+ */
+public class TransactionIndexTest extends TestCase {
+
+	private static final String REQUEST = "%1$s sip:bob@127.0.0.1:5070 SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 127.0.0.1:5096;branch=%2$s\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: Alice <sip:alice@127.0.0.1>;tag=9fxced76sl\r\n"
+			+ "To: Bob <sip:bob@127.0.0.1>\r\n"
+			+ "Call-ID: %2$s@127.0.0.1\r\n"
+			+ "CSeq: 1 %1$s\r\n"
+			+ "Contact: <sip:alice@127.0.0.1:5096>\r\n"
+			+ "Content-Length: 0\r\n\r\n";
+
+	private static final String SUBSCRIBE = "SUBSCRIBE sip:bob@127.0.0.1:5070 SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 127.0.0.1:5096;branch=%1$s\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: Alice <sip:alice@127.0.0.1>;tag=9fxced76sl\r\n"
+			+ "To: Bob <sip:bob@127.0.0.1>\r\n"
+			+ "Call-ID: subscribe@127.0.0.1\r\n"
+			+ "CSeq: 1 SUBSCRIBE\r\n"
+			+ "Contact: <sip:alice@127.0.0.1:5096>\r\n"
+			+ "Event: presence;id=%2$s\r\n"
+			+ "Content-Length: 0\r\n\r\n";
+
+	// the tags and the case of the Event type differ from the SUBSCRIBE
+	private static final String NOTIFY = "NOTIFY sip:alice@127.0.0.1:5096 SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 127.0.0.1:5070;branch=z9hG4bK-notify\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: Bob <sip:bob@127.0.0.1>;tag=bob-tag\r\n"
+			+ "To: Alice <sip:alice@127.0.0.1>;tag=9FXCED76SL\r\n"
+			+ "Call-ID: subscribe@127.0.0.1\r\n"
+			+ "CSeq: 1 NOTIFY\r\n"
+			+ "Contact: <sip:bob@127.0.0.1:5070>\r\n"
+			+ "Event: Presence;id=%1$s\r\n"
+			+ "Subscription-State: active\r\n"
+			+ "Content-Length: 0\r\n\r\n";
+
+	private SipStackImpl sipStack;
+	private SipProviderImpl sipProvider;
+
+	@Override
+	protected void setUp() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("javax.sip.STACK_NAME", "TransactionIndexTest");
+		sipStack = new SipStackImpl(properties);
+		ListeningPoint listeningPoint = sipStack.createListeningPoint("127.0.0.1", 5096, ListeningPoint.UDP);
+		sipProvider = (SipProviderImpl) sipStack.createSipProvider(listeningPoint);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		sipStack.stop();
+	}
+
+	private static SIPRequest parse(String method, String branch) throws Exception {
+		return (SIPRequest) new StringMsgParser().parseSIPMessage(String.format(REQUEST, method, branch).getBytes(),
+				true, false, null);
+	}
+
+	private static SIPRequest parseSubscribe(String branch, String eventId) throws Exception {
+		return (SIPRequest) new StringMsgParser()
+				.parseSIPMessage(String.format(SUBSCRIBE, branch, eventId).getBytes(), true, false, null);
+	}
+
+	private SIPClientTransaction findSubscribeTransaction(String eventId) throws Exception {
+		SIPRequest notify = (SIPRequest) new StringMsgParser()
+				.parseSIPMessage(String.format(NOTIFY, eventId).getBytes(), true, false, null);
+		return sipStack.findSubscribeTransaction(notify,
+				(ListeningPointImpl) sipProvider.getListeningPoint(ListeningPoint.UDP));
+	}
+
+	private SIPServerTransaction addServerTransaction(SIPRequest request) throws Exception {
+		ListeningPointImpl listeningPoint = (ListeningPointImpl) sipProvider.getListeningPoint(ListeningPoint.UDP);
+		SIPServerTransaction serverTransaction = sipStack.createServerTransaction(sipProvider, listeningPoint
+				.getMessageProcessor().createMessageChannel(InetAddress.getByName("127.0.0.1"), 5070));
+		serverTransaction.setOriginalRequest(request);
+		sipStack.addTransaction(serverTransaction);
+		return serverTransaction;
+	}
+
+	public void testFindCancelClientTransaction() throws Exception {
+		SIPRequest invite = parse(Request.INVITE, "z9hG4bK-invite");
+		SIPClientTransaction inviteTransaction = (SIPClientTransaction) sipProvider.getNewClientTransaction(invite);
+		SIPRequest options = parse(Request.OPTIONS, "z9hG4bK-options");
+		sipProvider.getNewClientTransaction(options);
+
+		assertSame(inviteTransaction, sipStack.findCancelTransaction(invite.createCancelRequest(), false));
+		// only an INVITE can be cancelled
+		SIPRequest optionsCancel = parse(Request.CANCEL, "z9hG4bK-options");
+		assertNull(sipStack.findCancelTransaction(optionsCancel, false));
+
+		sipStack.removeTransaction(inviteTransaction);
+		assertNull(sipStack.findCancelTransaction(invite.createCancelRequest(), false));
+	}
+
+	public void testFindCancelServerTransaction() throws Exception {
+		SIPRequest invite = parse(Request.INVITE, "z9hG4bK-invite");
+		SIPServerTransaction inviteTransaction = addServerTransaction(invite);
+
+		assertSame(inviteTransaction, sipStack.findCancelTransaction(invite.createCancelRequest(), true));
+		assertNull(sipStack.findCancelTransaction(invite.createCancelRequest(), false));
+		SIPRequest otherInvite = parse(Request.INVITE, "z9hG4bK-other");
+		assertNull(sipStack.findCancelTransaction(otherInvite.createCancelRequest(), true));
+
+		sipStack.removeTransaction(inviteTransaction);
+		assertNull(sipStack.findCancelTransaction(invite.createCancelRequest(), true));
+	}
+
+	public void testFindCancelOfRfc2543ServerTransaction() throws Exception {
+		SIPRequest invite = parse(Request.INVITE, "rfc2543-invite");
+		SIPServerTransaction inviteTransaction = addServerTransaction(invite);
+
+		SIPRequest cancel = invite.createCancelRequest();
+		assertSame(inviteTransaction, sipStack.findCancelTransaction(cancel, true));
+		assertTrue(inviteTransaction.doesCancelMatchTransaction(cancel));
+		// without the magic cookie the branch alone does not identify the INVITE
+		cancel.getCSeq().setSeqNumber(2);
+		assertNull(sipStack.findCancelTransaction(cancel, true));
+		assertFalse(inviteTransaction.doesCancelMatchTransaction(cancel));
+
+		sipStack.removeTransaction(inviteTransaction);
+		assertNull(sipStack.findCancelTransaction(invite.createCancelRequest(), true));
+	}
+
+	public void testFindSubscribeTransaction() throws Exception {
+		// chained applications may send several SUBSCRIBEs with the same id
+		SIPClientTransaction first = (SIPClientTransaction) sipProvider
+				.getNewClientTransaction(parseSubscribe("z9hG4bK-subscribe-1", "1"));
+		SIPClientTransaction second = (SIPClientTransaction) sipProvider
+				.getNewClientTransaction(parseSubscribe("z9hG4bK-subscribe-2", "1"));
+		SIPClientTransaction other = (SIPClientTransaction) sipProvider
+				.getNewClientTransaction(parseSubscribe("z9hG4bK-subscribe-3", "2"));
+		sipProvider.getNewClientTransaction(parse(Request.OPTIONS, "z9hG4bK-options"));
+		assertEquals(2, sipStack.subscribeTransactionTable.size());
+
+		assertSame(first, findSubscribeTransaction("1"));
+		assertSame(other, findSubscribeTransaction("2"));
+		assertNull(findSubscribeTransaction("3"));
+
+		sipStack.removeTransaction(first);
+		assertSame(second, findSubscribeTransaction("1"));
+		sipStack.removeTransaction(second);
+		assertNull(findSubscribeTransaction("1"));
+		assertSame(other, findSubscribeTransaction("2"));
+
+		sipStack.removeTransaction(other);
+		assertNull(findSubscribeTransaction("2"));
+		assertTrue(sipStack.subscribeTransactionTable.isEmpty());
+	}
+
+	public void testEventHeaderSetAfterTheTransactionWasCreated() throws Exception {
+		SIPRequest subscribe = parseSubscribe("z9hG4bK-subscribe-1", "1");
+		subscribe.removeHeader(EventHeader.NAME);
+		SIPClientTransaction transaction = (SIPClientTransaction) sipProvider.getNewClientTransaction(subscribe);
+		assertNull(findSubscribeTransaction("1"));
+
+		subscribe.setHeader(new EventParser("Event: presence;id=1\n").parse());
+		transaction.sendRequest();
+		assertSame(transaction, findSubscribeTransaction("1"));
+
+		sipStack.removeTransaction(transaction);
+		assertTrue(sipStack.subscribeTransactionTable.isEmpty());
+	}
+}
@@ -0,0 +1,130 @@
+package gov.nist.javax.sip.stack.metrics;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import junit.framework.TestCase;
+
+/**
+ * Histogram buckets, merging of the striped recorders and the JMX view of
+ * the StackMetrics.
+ */
+public class StackMetricsTest extends TestCase {
+
+	private static final String INVITE = "INVITE sip:bob@127.0.0.1:5070 SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 127.0.0.1:5060;branch=z9hG4bK-1\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: <sip:alice@127.0.0.1>;tag=1\r\n"
+			+ "To: <sip:bob@127.0.0.1>\r\n"
+			+ "Call-ID: call-1@127.0.0.1\r\n"
+			+ "CSeq: 1 INVITE\r\n"
+			+ "Contact: <sip:alice@127.0.0.1:5060>\r\n"
+			+ "Content-Length: 0\r\n\r\n";
+
+	public void testBucketsCoverTheValues() {
+		int previous = -1;
+		for (long value = 0; value < 1L << 20; value++) {
+			int index = StageHistogram.getIndex(value);
+			assertTrue(index == previous || index == previous + 1);
+			assertTrue(StageHistogram.getHighestValue(index) >= value);
+			assertTrue(StageHistogram.getHighestValue(index) - value <= Math.max(1, value / 16));
+			previous = index;
+		}
+		assertEquals(StageHistogram.BUCKETS - 1, StageHistogram.getIndex(Long.MAX_VALUE));
+	}
+
+	public void testPercentiles() {
+		StackMetrics metrics = new StackMetrics();
+		for (int i = 1; i <= 1000; i++) {
+			metrics.recordValue(MetricStage.DECODE, i * 1000L);
+		}
+
+		LatencySnapshot latencies = metrics.getLatencies(MetricStage.DECODE);
+		assertEquals(1000, latencies.getCount());
+		assertEquals(1000000, latencies.getMax());
+		assertEquals(500500.0, latencies.getMean());
+		assertEquals(500000, latencies.getPercentile(50), 500000 / 16);
+		assertEquals(990000, latencies.getPercentile(99), 990000 / 16);
+		assertEquals(0, metrics.getLatencies(MetricStage.SEND).getCount());
+	}
+
+	public void testThreadsAreMergedOnRead() throws Exception {
+		final StackMetrics metrics = new StackMetrics();
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					for (int j = 0; j < 10000; j++) {
+						metrics.recordValue(MetricStage.LISTENER, j);
+						metrics.countRetransmission();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(40000, metrics.getLatencies(MetricStage.LISTENER).getCount());
+		assertEquals(9999, metrics.getLatencies(MetricStage.LISTENER).getMax());
+		assertEquals(40000, metrics.getRetransmissions());
+	}
+
+	public void testThreadChurnKeepsTheStripes() throws Exception {
+		final StackMetrics metrics = new StackMetrics();
+		int stripes = metrics.getStripeCount();
+		assertTrue(stripes >= 2 && stripes <= 64);
+		for (int i = 0; i < 500; i++) {
+			Thread thread = new Thread() {
+				public void run() {
+					metrics.recordValue(MetricStage.LISTENER, 10);
+				}
+			};
+			thread.start();
+			thread.join();
+		}
+
+		assertEquals(stripes, metrics.getStripeCount());
+		assertEquals(500, metrics.getLatencies(MetricStage.LISTENER).getCount());
+	}
+
+	public void testMessageCounters() throws Exception {
+		StackMetrics metrics = new StackMetrics();
+		SIPRequest invite = (SIPRequest) new StringMsgParser().parseSIPMessage(INVITE.getBytes(), true, false, null);
+		SIPMessage ringing = invite.createResponse(180);
+
+		metrics.countMessage(invite, false);
+		metrics.countMessage(invite, false);
+		metrics.countMessage(ringing, true);
+		metrics.countTimerFire();
+
+		assertEquals(2, metrics.getReceivedRequests("INVITE"));
+		assertEquals(0, metrics.getSentRequests("INVITE"));
+		assertEquals(0, metrics.getReceivedRequests("FOO"));
+		assertEquals(1, metrics.getSentResponses(180));
+		assertEquals(0, metrics.getReceivedResponses(180));
+		assertEquals(1, metrics.getTimerFires());
+		assertTrue(metrics.printMetrics().contains("INVITE: received=2 sent=0"));
+	}
+
+	public void testJmxRegistration() throws Exception {
+		StackMetrics metrics = new StackMetrics();
+		metrics.recordValue(MetricStage.ENCODE, 100);
+		metrics.register("StackMetricsTest");
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("gov.nist.javax.sip:type=StackMetrics,name=\"StackMetricsTest\"");
+			assertTrue(server.isRegistered(name));
+			assertEquals(1L, server.invoke(name, "getStageCount", new Object[] { "ENCODE" },
+					new String[] { String.class.getName() }));
+		} finally {
+			metrics.unregister();
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package gov.nist.javax.sip.stack.timers;
+
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import gov.nist.core.executor.EventDrivenStackExecutor;
+import gov.nist.javax.sip.SipStackImpl;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+public class TimingWheelSipTimerTest extends TestCase {
+
+    private static final String CALLID = "16505551212@192.168.1.100";
+
+    private SipStackImpl sipStack;
+    private TimingWheelSipTimer timer;
+
+    @Override
+    protected void setUp() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("javax.sip.STACK_NAME", "TimingWheelSipTimerTest");
+        properties.setProperty("gov.nist.javax.sip.TIMER_CLASS_NAME", TimingWheelSipTimer.class.getName());
+        properties.setProperty("gov.nist.javax.sip.timers.TIMING_WHEEL_TICK", "1");
+        // the timing wheel does not depend on the MessageProcessorExecutor
+        properties.setProperty("gov.nist.javax.sip.STACK_EXECUTOR", EventDrivenStackExecutor.class.getName());
+        sipStack = new SipStackImpl(properties);
+        timer = (TimingWheelSipTimer) sipStack.getTimer();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        sipStack.stop();
+    }
+
+    private static class RecordingTimerTask extends SIPStackTimerTask {
+        private final String id;
+        private final CountDownLatch latch;
+        private final AtomicInteger runs = new AtomicInteger();
+        private volatile long runTime;
+        private volatile String threadName;
+
+        RecordingTimerTask(String id, CountDownLatch latch) {
+            super("RecordingTimerTask");
+            this.id = id;
+            this.latch = latch;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void runTask() {
+            runTime = System.currentTimeMillis();
+            threadName = Thread.currentThread().getName();
+            runs.incrementAndGet();
+            latch.countDown();
+        }
+    }
+
+    public void testTimerFiresAfterItsDelay() throws InterruptedException {
+        Assert.assertEquals(1L, timer.getTick());
+        CountDownLatch latch = new CountDownLatch(1);
+        RecordingTimerTask task = new RecordingTimerTask(CALLID, latch);
+        long scheduleTime = System.currentTimeMillis();
+        timer.schedule(task, 50);
+        Assert.assertEquals(1, timer.getLiveTimers());
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(task.runTime - scheduleTime >= 50);
+        Assert.assertEquals(0, timer.getLiveTimers());
+        Assert.assertEquals(1, timer.getFiredTimers());
+    }
+
+    public void testTimerBeyondFirstLevel() throws InterruptedException {
+        // with 1 ms ticks the first level spans 512 ms
+        CountDownLatch latch = new CountDownLatch(2);
+        RecordingTimerTask shortTask = new RecordingTimerTask(CALLID, latch);
+        RecordingTimerTask longTask = new RecordingTimerTask(CALLID, latch);
+        long scheduleTime = System.currentTimeMillis();
+        timer.schedule(longTask, 700);
+        timer.schedule(shortTask, 300);
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(shortTask.runTime - scheduleTime >= 300);
+        Assert.assertTrue(longTask.runTime - scheduleTime >= 700);
+        Assert.assertTrue(longTask.runTime > shortTask.runTime);
+    }
+
+    public void testCancelRemovesTimers() throws InterruptedException {
+        RecordingTimerTask[] tasks = new RecordingTimerTask[1000];
+        CountDownLatch latch = new CountDownLatch(1);
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new RecordingTimerTask(CALLID + i, latch);
+            timer.schedule(tasks[i], i % 2 == 0 ? 100 : 60000);
+        }
+        Assert.assertEquals(1000, timer.getLiveTimers());
+        for (int i = 0; i < tasks.length; i++) {
+            Assert.assertTrue(timer.cancel(tasks[i]));
+        }
+        Assert.assertEquals(0, timer.getLiveTimers());
+        Assert.assertEquals(1000, timer.getCancelledTimers());
+        Assert.assertFalse(timer.cancel(tasks[0]));
+
+        Thread.sleep(200);
+        Assert.assertEquals(0, timer.getFiredTimers());
+        for (int i = 0; i < tasks.length; i++) {
+            Assert.assertEquals(0, tasks[i].runs.get());
+        }
+    }
+
+    public void testPeriodicTimer() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(3);
+        RecordingTimerTask task = new RecordingTimerTask(CALLID, latch);
+        timer.scheduleWithFixedDelay(task, 10, 10);
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        timer.cancel(task);
+        int runs = task.runs.get();
+        Thread.sleep(100);
+        Assert.assertTrue(task.runs.get() <= runs + 1);
+        Assert.assertEquals(0, timer.getLiveTimers());
+    }
+
+    public void testTimersOfACallRunOnItsQueue() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(50);
+        RecordingTimerTask[] tasks = new RecordingTimerTask[50];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new RecordingTimerTask(CALLID, latch);
+            timer.schedule(tasks[i], i % 5);
+        }
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        for (RecordingTimerTask task : tasks) {
+            threadNames.add(task.threadName);
+        }
+        Assert.assertEquals(1, threadNames.size());
+    }
+}
@@ -0,0 +1,134 @@
+package gov.nist.javax.sip.stack.transports.processors;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.text.ParseException;
+import java.util.Properties;
+
+import javax.sip.ListeningPoint;
+
+import gov.nist.javax.sip.SipStackImpl;
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.stack.SIPTransactionStack;
+import junit.framework.TestCase;
+
+/**
+ * Deadlines of the IdleConnectionReaper swept with a simulated clock, so that
+ * idle times longer than a revolution of the wheel are covered.
+ */
+public class IdleConnectionWheelTest extends TestCase {
+
+	private static final long START = 1000000L * IdleConnectionReaper.DEFAULT_TICK;
+
+	private SipStackImpl sipStack;
+
+	@Override
+	protected void setUp() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("javax.sip.STACK_NAME", "IdleConnectionWheelTest");
+		sipStack = new SipStackImpl(properties);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		sipStack.stop();
+	}
+
+	private long sweepUntil(IdleConnectionReaper reaper, long from, long to) {
+		for (long now = from; now <= to; now += reaper.getTick())
+			reaper.sweep(now);
+
+		return to;
+	}
+
+	private void assertClosedAfter(long maxIdleTime) {
+		IdleConnectionReaper reaper = new IdleConnectionReaper(sipStack);
+		IdleChannel channel = new IdleChannel(sipStack, START, maxIdleTime);
+		reaper.sweep(START);
+		reaper.track(channel);
+
+		long now = sweepUntil(reaper, START, START + maxIdleTime - reaper.getTick());
+		assertEquals(0, reaper.getIdleClosedCount());
+		sweepUntil(reaper, now, START + maxIdleTime + reaper.getTick());
+		assertEquals(1, reaper.getIdleClosedCount());
+	}
+
+	public void testIdleTimeWithinTheWheel() {
+		assertClosedAfter(30000);
+	}
+
+	public void testIdleTimeBeyondTheWheel() {
+		assertClosedAfter(600000);
+	}
+
+	public void testDefaultIdleTime() {
+		assertClosedAfter(7200000);
+	}
+
+	public void testLongPauseStillClosesTheChannel() {
+		IdleConnectionReaper reaper = new IdleConnectionReaper(sipStack);
+		IdleChannel channel = new IdleChannel(sipStack, START, 30000);
+		reaper.sweep(START);
+		reaper.track(channel);
+
+		// the timer thread was held up for longer than a revolution
+		reaper.sweep(START + 1000000);
+		assertEquals(1, reaper.getIdleClosedCount());
+	}
+
+	private static class IdleChannel extends ConnectionOrientedMessageChannel {
+		private final long lastActivity;
+
+		private final long maxIdleTime;
+
+		IdleChannel(SIPTransactionStack sipStack, long lastActivity, long maxIdleTime) {
+			super(sipStack);
+			this.lastActivity = lastActivity;
+			this.maxIdleTime = maxIdleTime;
+			this.key = "idle-channel";
+		}
+
+		@Override
+		public long getLastActivityTimestamp() {
+			return lastActivity;
+		}
+
+		@Override
+		protected long getMaxIdleTime() {
+			return maxIdleTime;
+		}
+
+		@Override
+		protected void close(boolean removeSocket, boolean stopKeepAliveTask) {
+			stopLivenessTracking();
+		}
+
+		@Override
+		protected void sendMessage(byte[] msg, boolean b) throws IOException {
+		}
+
+		@Override
+		public String getTransport() {
+			return ListeningPoint.TCP;
+		}
+
+		@Override
+		public boolean isSecure() {
+			return false;
+		}
+
+		@Override
+		public void sendMessage(byte[] message, InetAddress receiverAddress, int receiverPort, boolean retry)
+				throws IOException {
+		}
+
+		@Override
+		public void handleException(ParseException ex, SIPMessage sipMessage, Class<?> headerClass, String header,
+				String message) throws ParseException {
+		}
+
+		@Override
+		public void run() {
+		}
+	}
+}
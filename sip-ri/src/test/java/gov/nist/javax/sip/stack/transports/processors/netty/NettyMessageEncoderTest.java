@@ -0,0 +1,104 @@
+/*
+ * Mobius Software LTD
+ * Copyright 2023, Mobius Software LTD and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package gov.nist.javax.sip.stack.transports.processors.netty;
+
+import gov.nist.javax.sip.SipStackImpl;
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.parser.NettyMessageParser;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+/**
+ * Checks that the NettyMessageEncoder produces the same bytes as
+ * SIPMessage.encodeAsBytes.
+ */
+public class NettyMessageEncoderTest extends TestCase {
+
+    private static final String INVITE = "INVITE sip:bob@biloxi.com SIP/2.0\r\n"
+            + "Via: SIP/2.0/TCP 127.0.0.1:5060;branch=z9hG4bK776asdhds\r\n"
+            + "Max-Forwards: 70\r\n"
+            + "To: <sip:bob@biloxi.com>\r\n"
+            + "From: \"\u0410\u043b\u0438\u0441\u0430\" <sip:alice@atlanta.com>;tag=1928301774\r\n"
+            + "Call-ID: a84b4c76e66710@pc33.atlanta.com\r\n"
+            + "CSeq: 1 INVITE\r\n"
+            + "Contact: <sip:alice@pc33.atlanta.com>\r\n"
+            + "Content-Type: application/sdp\r\n"
+            + "Content-Length: 34\r\n"
+            + "\r\n"
+            + "v=0\r\n"
+            + "c=IN IP4 192.0.2.101\r\n"
+            + "t=0 0\r\n";
+
+    private static final String OK = "SIP/2.0 200 OK\r\n"
+            + "Via: SIP/2.0/UDP 127.0.0.1:5060;branch=z9hG4bK776asdhds\r\n"
+            + "To: <sip:bob@biloxi.com>;tag=314159\r\n"
+            + "From: <sip:alice@atlanta.com>;tag=1928301774\r\n"
+            + "Call-ID: a84b4c76e66710@pc33.atlanta.com\r\n"
+            + "CSeq: 1 INVITE\r\n"
+            + "Content-Length: 0\r\n"
+            + "\r\n";
+
+    private SIPMessage parse(String message) throws Exception {
+        NettyMessageParser parser = new NettyMessageParser(SipStackImpl.MAX_DATAGRAM_SIZE, false);
+        Assert.assertTrue(parser.parseBytes(Unpooled.wrappedBuffer(message.getBytes("UTF-8"))).isParsingComplete());
+        return parser.consumeSIPMessage();
+    }
+
+    private void assertSameEncoding(SIPMessage sipMessage, boolean direct) {
+        byte[] expected = sipMessage.encodeAsBytes("UDP");
+        ByteBuf byteBuf = NettyMessageEncoder.encode(sipMessage, "UDP", PooledByteBufAllocator.DEFAULT, direct);
+        try {
+            Assert.assertEquals(direct, byteBuf.isDirect());
+            // the size estimate is exact for UTF-8 messages
+            Assert.assertEquals(expected.length, byteBuf.capacity());
+            Assert.assertTrue(ByteBufUtil.equals(Unpooled.wrappedBuffer(expected), byteBuf));
+        } finally {
+            byteBuf.release();
+        }
+    }
+
+    public void testRequestWithBody() throws Exception {
+        SIPMessage invite = parse(INVITE);
+        assertSameEncoding(invite, false);
+        assertSameEncoding(invite, true);
+    }
+
+    public void testResponse() throws Exception {
+        assertSameEncoding(parse(OK), false);
+    }
+
+    public void testEncodeAsBytes() throws Exception {
+        SIPMessage invite = parse(INVITE);
+        Assert.assertTrue(java.util.Arrays.equals(invite.encodeAsBytes("UDP"),
+                NettyMessageEncoder.encodeAsBytes(invite, "UDP")));
+    }
+
+    public void testNullRequest() throws Exception {
+        SIPRequest keepAlive = new SIPRequest();
+        keepAlive.setNullRequest();
+        ByteBuf byteBuf = NettyMessageEncoder.encode(keepAlive, "TCP", PooledByteBufAllocator.DEFAULT, false);
+        Assert.assertEquals(SIPMessage.DOUBLE_CRLF, byteBuf.toString(io.netty.util.CharsetUtil.US_ASCII));
+        byteBuf.release();
+    }
+}
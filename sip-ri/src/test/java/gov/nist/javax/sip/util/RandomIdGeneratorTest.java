@@ -0,0 +1,115 @@
+package gov.nist.javax.sip.util;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import gov.nist.javax.sip.SIPConstants;
+import gov.nist.javax.sip.Utils;
+import gov.nist.javax.sip.message.SIPResponse;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import junit.framework.TestCase;
+
+/**
+ * Checks the format and the uniqueness of the identifiers generated by the
+ * RandomIdGenerator, and that the stack still recognizes its own branches.
+ */
+public class RandomIdGeneratorTest extends TestCase {
+
+	private static final String RESPONSE = "SIP/2.0 200 OK\r\n"
+			+ "Via: SIP/2.0/UDP 127.0.0.1:5060;branch=%s\r\n"
+			+ "From: <sip:alice@127.0.0.1>;tag=1\r\n"
+			+ "To: <sip:bob@127.0.0.1>;tag=2\r\n"
+			+ "Call-ID: call@127.0.0.1\r\n"
+			+ "CSeq: 1 INVITE\r\n"
+			+ "Content-Length: 0\r\n\r\n";
+
+	@Override
+	protected void tearDown() throws Exception {
+		Utils.setIdGenerator(new RandomIdGenerator());
+	}
+
+	public void testIdentifiersAreTokens() {
+		RandomIdGenerator generator = new RandomIdGenerator();
+		String tag = generator.generateTag();
+		assertEquals(11, tag.length());
+		assertTrue(tag, tag.matches("[0-9A-Za-z]+"));
+
+		String branch = generator.generateBranchId();
+		assertTrue(branch, branch.startsWith(SIPConstants.BRANCH_MAGIC_COOKIE + "-" + Utils.getSignature() + "-"));
+		assertTrue(branch, branch.matches("z9hG4bK-[0-9a-f]+-[0-9A-Za-z]{22}"));
+
+		String callId = generator.generateCallIdentifier("192.0.2.1");
+		assertTrue(callId, callId.matches("[0-9A-Za-z]{22}@192\\.0\\.2\\.1"));
+	}
+
+	public void testNodePrefix() {
+		RandomIdGenerator generator = new RandomIdGenerator("node-1");
+		assertEquals("node-1", generator.getNodePrefix());
+		assertTrue(generator.generateCallIdentifier("example.com").startsWith("node-1-"));
+		assertTrue(generator.generateBranchId().startsWith(
+				SIPConstants.BRANCH_MAGIC_COOKIE + "-" + Utils.getSignature() + "-node-1-"));
+		assertNull(new RandomIdGenerator("").getNodePrefix());
+		try {
+			new RandomIdGenerator("node 1");
+			fail("the node prefix must be a token");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void testLongAddressesGrowTheBuffer() {
+		StringBuilder address = new StringBuilder();
+		for (int i = 0; i < 20; i++) {
+			address.append("host").append(i).append('.');
+		}
+		address.append("example.com");
+		RandomIdGenerator generator = new RandomIdGenerator();
+		assertTrue(generator.generateCallIdentifier(address.toString()).endsWith("@" + address));
+		assertEquals(11, generator.generateTag().length());
+	}
+
+	public void testIdentifiersAreUniqueAcrossThreads() throws Exception {
+		final RandomIdGenerator generator = new RandomIdGenerator();
+		final Set<String> branches = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		final Set<String> duplicates = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				public void run() {
+					for (int i = 0; i < 50000; i++) {
+						String branch = generator.generateBranchId();
+						if (!branches.add(branch))
+							duplicates.add(branch);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(200000, branches.size());
+		assertTrue(duplicates.isEmpty());
+
+		Set<String> tags = new HashSet<String>();
+		for (int i = 0; i < 100000; i++) {
+			assertTrue(tags.add(generator.generateTag()));
+		}
+	}
+
+	public void testResponseBelongsToUs() throws Exception {
+		StringMsgParser parser = new StringMsgParser();
+		String branch = Utils.getInstance().generateBranchId();
+		SIPResponse response = (SIPResponse) parser.parseSIPMessage(String.format(RESPONSE, branch).getBytes(), true, false, null);
+		assertTrue(Utils.getInstance().responseBelongsToUs(response));
+
+		Utils.setIdGenerator(new UUIDIdGenerator());
+		branch = Utils.getInstance().generateBranchId();
+		response = (SIPResponse) parser.parseSIPMessage(String.format(RESPONSE, branch).getBytes(), true, false, null);
+		assertTrue(Utils.getInstance().responseBelongsToUs(response));
+
+		response = (SIPResponse) parser.parseSIPMessage(String.format(RESPONSE, "z9hG4bK-other").getBytes(), true, false, null);
+		assertFalse(Utils.getInstance().responseBelongsToUs(response));
+	}
+}
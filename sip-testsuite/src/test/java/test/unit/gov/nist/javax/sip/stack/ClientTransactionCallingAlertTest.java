@@ -47,6 +47,7 @@ import org.apache.logging.log4j.core.appender.ConsoleAppender;
 import org.apache.logging.log4j.core.config.Configuration;
 
 import gov.nist.javax.sip.ClientTransactionExt;
+import gov.nist.javax.sip.stack.SIPTransactionStack;
 import gov.nist.javax.sip.stack.transports.processors.netty.NettyMessageProcessorFactory;
 import gov.nist.javax.sip.stack.transports.processors.nio.NioMessageProcessorFactory;
 import junit.framework.TestCase;
@@ -638,5 +639,7 @@ public class ClientTransactionCallingAlertTest extends TestCase {
 
         }
         assertTrue("Timeout must be seen", shootist.timeoutSeen);
+        assertTrue("Retransmissions must be written from the encoded request",
+                ((SIPTransactionStack) shootist.sipStack).getCachedRetransmissionCount() > 0);
     }
 }